@@ -97,6 +97,8 @@ public class QFacility extends RelationalPathSpatial<QFacility> {
 
     public final BooleanPath usageParkAndRide = createBoolean("usageParkAndRide");
 
+    public final NumberPath<Long> version = createNumber("version", Long.class);
+
     public final com.querydsl.sql.PrimaryKey<QFacility> constraint4c = createPrimaryKey(id);
 
     public final com.querydsl.sql.ForeignKey<QContact> facilityOperatorContactIdFk = createForeignKey(operatorContactId, "ID");
@@ -189,6 +191,7 @@ public class QFacility extends RelationalPathSpatial<QFacility> {
         addMetadata(usageCommercial, ColumnMetadata.named("USAGE_COMMERCIAL").withIndex(34).ofType(Types.BOOLEAN).withSize(1).notNull());
         addMetadata(usageHsl, ColumnMetadata.named("USAGE_HSL").withIndex(33).ofType(Types.BOOLEAN).withSize(1).notNull());
         addMetadata(usageParkAndRide, ColumnMetadata.named("USAGE_PARK_AND_RIDE").withIndex(32).ofType(Types.BOOLEAN).withSize(1).notNull());
+        addMetadata(version, ColumnMetadata.named("VERSION").withIndex(36).ofType(Types.BIGINT).withSize(19).notNull());
     }
 
 }
@@ -31,6 +31,8 @@ public class QFacilityPrediction extends RelationalPathSpatial<QFacilityPredicti
 
     public final NumberPath<Long> facilityId = createNumber("facilityId", Long.class);
 
+    public final SimplePath<byte[]> spacesAvailable = createSimple("spacesAvailable", byte[].class);
+
     public final NumberPath<Integer> spacesAvailableAt0000 = createNumber("spacesAvailableAt0000", Integer.class);
 
     public final NumberPath<Integer> spacesAvailableAt0005 = createNumber("spacesAvailableAt0005", Integer.class);
@@ -642,6 +644,7 @@ public class QFacilityPrediction extends RelationalPathSpatial<QFacilityPredicti
     public void addMetadata() {
         addMetadata(capacityType, ColumnMetadata.named("CAPACITY_TYPE").withIndex(2).ofType(Types.VARCHAR).withSize(64).notNull());
         addMetadata(facilityId, ColumnMetadata.named("FACILITY_ID").withIndex(1).ofType(Types.BIGINT).withSize(19).notNull());
+        addMetadata(spacesAvailable, ColumnMetadata.named("SPACES_AVAILABLE").withIndex(293).ofType(Types.VARBINARY).withSize(2147483647));
         addMetadata(spacesAvailableAt0000, ColumnMetadata.named("SPACES_AVAILABLE_AT_0000").withIndex(5).ofType(Types.INTEGER).withSize(10));
         addMetadata(spacesAvailableAt0005, ColumnMetadata.named("SPACES_AVAILABLE_AT_0005").withIndex(6).ofType(Types.INTEGER).withSize(10));
         addMetadata(spacesAvailableAt0010, ColumnMetadata.named("SPACES_AVAILABLE_AT_0010").withIndex(7).ofType(Types.INTEGER).withSize(10));
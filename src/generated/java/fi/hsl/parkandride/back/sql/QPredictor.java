@@ -29,6 +29,10 @@ public class QPredictor extends RelationalPathSpatial<QPredictor> {
 
     public final EnumPath<fi.hsl.parkandride.core.domain.CapacityType> capacityType = createEnum("capacityType", fi.hsl.parkandride.core.domain.CapacityType.class);
 
+    public final DateTimePath<org.joda.time.DateTime> claimedUntil = createDateTime("claimedUntil", org.joda.time.DateTime.class);
+
+    public final DateTimePath<org.joda.time.DateTime> earliestNewUtilization = createDateTime("earliestNewUtilization", org.joda.time.DateTime.class);
+
     public final NumberPath<Long> facilityId = createNumber("facilityId", Long.class);
 
     public final NumberPath<Long> id = createNumber("id", Long.class);
@@ -75,6 +79,8 @@ public class QPredictor extends RelationalPathSpatial<QPredictor> {
 
     public void addMetadata() {
         addMetadata(capacityType, ColumnMetadata.named("CAPACITY_TYPE").withIndex(4).ofType(Types.VARCHAR).withSize(64).notNull());
+        addMetadata(claimedUntil, ColumnMetadata.named("CLAIMED_UNTIL").withIndex(9).ofType(Types.TIMESTAMP).withSize(23).withDigits(10));
+        addMetadata(earliestNewUtilization, ColumnMetadata.named("EARLIEST_NEW_UTILIZATION").withIndex(10).ofType(Types.TIMESTAMP).withSize(23).withDigits(10));
         addMetadata(facilityId, ColumnMetadata.named("FACILITY_ID").withIndex(3).ofType(Types.BIGINT).withSize(19).notNull());
         addMetadata(id, ColumnMetadata.named("ID").withIndex(1).ofType(Types.BIGINT).withSize(19).notNull());
         addMetadata(internalState, ColumnMetadata.named("INTERNAL_STATE").withIndex(8).ofType(Types.CLOB).withSize(2147483647).notNull());
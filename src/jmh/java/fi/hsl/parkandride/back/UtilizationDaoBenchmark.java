@@ -0,0 +1,96 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import fi.hsl.parkandride.FeatureProfile;
+import fi.hsl.parkandride.core.back.UtilizationRepository;
+import fi.hsl.parkandride.core.domain.Utilization;
+import fi.hsl.parkandride.core.domain.UtilizationKey;
+import fi.hsl.parkandride.dev.DevHelper;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static fi.hsl.parkandride.core.back.PredictionRepository.PREDICTION_RESOLUTION;
+import static fi.hsl.parkandride.core.domain.CapacityType.CAR;
+import static fi.hsl.parkandride.core.domain.Usage.PARK_AND_RIDE;
+
+/**
+ * Resampling the utilizations of one facility from the in-memory H2 database, as done by the predictors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 8, time = 2) // the H2 query path is still being compiled after 3 iterations
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilizationDaoBenchmark {
+
+    private static final DateTime NOW = new DateTime(2016, 3, 1, 12, 3, 17);
+
+    /**
+     * 1 day is the range of the reference weeks, 21 days the whole history of the predictors.
+     */
+    @Param({"1", "21"})
+    public int days;
+
+    private ConfigurableApplicationContext context;
+    private UtilizationRepository utilizationRepository;
+    private TransactionTemplate txTemplate;
+    private UtilizationKey utilizationKey;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(DaoTestApplication.class)
+                .profiles(FeatureProfile.DEV_API)
+                .web(false)
+                .run();
+        context.getBean(DevHelper.class).deleteAll();
+        utilizationRepository = context.getBean(UtilizationRepository.class);
+        txTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        txTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        txTemplate.setReadOnly(true);
+
+        utilizationKey = new UtilizationKey(context.getBean(Dummies.class).createFacility(), CAR, PARK_AND_RIDE);
+        List<Utilization> utilizations = new ArrayList<>();
+        for (DateTime t = NOW.minusWeeks(4); !t.isAfter(NOW); t = t.plusMinutes(1)) {
+            utilizations.add(newUtilization(t, t.getMinuteOfDay() % 200));
+            if (utilizations.size() == 1000) {
+                utilizationRepository.insertUtilizations(utilizations);
+                utilizations.clear();
+            }
+        }
+        utilizationRepository.insertUtilizations(utilizations);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Utilization> findUtilizationsWithResolution() {
+        return txTemplate.execute(tx ->
+                utilizationRepository.findUtilizationsWithResolution(utilizationKey, NOW.minusDays(days), NOW, PREDICTION_RESOLUTION));
+    }
+
+    private Utilization newUtilization(DateTime timestamp, int spacesAvailable) {
+        Utilization u = new Utilization();
+        u.facilityId = utilizationKey.facilityId;
+        u.capacityType = utilizationKey.capacityType;
+        u.usage = utilizationKey.usage;
+        u.timestamp = timestamp;
+        u.spacesAvailable = spacesAvailable;
+        u.capacity = 200;
+        return u;
+    }
+}
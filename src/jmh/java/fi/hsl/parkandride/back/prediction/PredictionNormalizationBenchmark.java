@@ -0,0 +1,52 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back.prediction;
+
+import fi.hsl.parkandride.core.domain.prediction.Prediction;
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static fi.hsl.parkandride.core.back.PredictionRepository.PREDICTION_WINDOW;
+
+/**
+ * Normalization of the predictions of one predictor before they are saved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredictionNormalizationBenchmark {
+
+    private static final DateTime START = new DateTime(2016, 3, 1, 12, 5);
+
+    /**
+     * Minutes between the predictions: finer than the prediction resolution needs rounding,
+     * coarser needs interpolation.
+     */
+    @Param({"1", "5", "60"})
+    public int intervalMinutes;
+
+    private List<Prediction> predictions;
+
+    @Setup
+    public void setUp() {
+        predictions = new ArrayList<>();
+        DateTime end = START.plus(PREDICTION_WINDOW);
+        for (DateTime t = START.plusSeconds(17); t.isBefore(end); t = t.plusMinutes(intervalMinutes)) {
+            predictions.add(new Prediction(t, t.getMinuteOfDay() % 200));
+        }
+    }
+
+    @Benchmark
+    public TimeSeries normalizeToPredictionWindow() {
+        return PredictionDao.normalizeToPredictionWindow(START, predictions);
+    }
+}
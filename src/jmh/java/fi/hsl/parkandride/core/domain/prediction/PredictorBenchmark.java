@@ -0,0 +1,86 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import fi.hsl.parkandride.core.domain.Utilization;
+import fi.hsl.parkandride.core.domain.UtilizationKey;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static fi.hsl.parkandride.core.domain.CapacityType.CAR;
+import static fi.hsl.parkandride.core.domain.Usage.PARK_AND_RIDE;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * One predictor update of the 5-minute prediction pass, over four weeks of utilizations reported every minute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredictorBenchmark {
+
+    private static final UtilizationKey UTILIZATION_KEY = new UtilizationKey(1L, CAR, PARK_AND_RIDE);
+    private static final int CAPACITY = 500;
+    private static final DateTime NOW = new DateTime(2016, 3, 1, 12, 3, 17);
+
+    @Param({AverageOfPreviousWeeksPredictor.TYPE, RelativizedAverageOfPreviousWeeksPredictor.TYPE, SameAsLatestPredictor.TYPE})
+    public String predictorType;
+
+    private Predictor predictor;
+    private UtilizationHistory history;
+    private PredictorState previousState;
+
+    @Setup
+    public void setUp() {
+        predictor = Stream.of(new AverageOfPreviousWeeksPredictor(), new RelativizedAverageOfPreviousWeeksPredictor(), new SameAsLatestPredictor())
+                .filter(p -> p.getType().equals(predictorType))
+                .findFirst().get();
+        List<Utilization> utilizations = new ArrayList<>();
+        for (DateTime t = NOW.minusWeeks(4); !t.isAfter(NOW); t = t.plusMinutes(1)) {
+            utilizations.add(newUtilization(t));
+        }
+        history = new UtilizationHistoryList(utilizations);
+
+        // the state after the previous update, 5 minutes ago
+        previousState = new PredictorState(1L, predictorType, UTILIZATION_KEY);
+        List<Utilization> previous = utilizations.stream()
+                .filter(u -> !u.timestamp.isAfter(NOW.minusMinutes(5)))
+                .collect(toList());
+        predictor.predict(previousState, new UtilizationHistoryList(previous), CAPACITY);
+    }
+
+    @Benchmark
+    public List<Prediction> update() {
+        PredictorState state = new PredictorState(previousState.predictorId, previousState.predictorType, previousState.utilizationKey);
+        state.latestUtilization = previousState.latestUtilization;
+        state.internalState = previousState.internalState;
+        return predictor.predict(state, history, CAPACITY);
+    }
+
+    @Benchmark
+    public List<Prediction> updateWithoutPreviousState() {
+        return predictor.predict(new PredictorState(1L, predictorType, UTILIZATION_KEY), history, CAPACITY);
+    }
+
+    private static Utilization newUtilization(DateTime timestamp) {
+        // a daily pattern: the facility fills up in the morning and empties in the evening
+        double dayFraction = timestamp.getMinuteOfDay() / (24.0 * 60);
+        Utilization u = new Utilization();
+        u.facilityId = UTILIZATION_KEY.facilityId;
+        u.capacityType = UTILIZATION_KEY.capacityType;
+        u.usage = UTILIZATION_KEY.usage;
+        u.timestamp = timestamp;
+        u.spacesAvailable = (int) Math.round(CAPACITY / 2.0 * (1 + Math.cos(2 * Math.PI * dayFraction)));
+        u.capacity = CAPACITY;
+        return u;
+    }
+}
@@ -4,11 +4,13 @@
 package fi.hsl.parkandride;
 
 import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import fi.hsl.parkandride.core.domain.Phone;
 import fi.hsl.parkandride.core.domain.Time;
 import fi.hsl.parkandride.core.service.BatchingRequestLogService;
+import fi.hsl.parkandride.core.service.FacilityService;
 import fi.hsl.parkandride.front.*;
 import fi.hsl.parkandride.front.geojson.GeojsonDeserializer;
 import fi.hsl.parkandride.front.geojson.GeojsonSerializer;
@@ -105,6 +107,11 @@ public class Application extends WebMvcConfigurerAdapter {
             return filter;
         }
 
+        @Bean
+        public UtilizationsResponseCache utilizationsResponseCache(FacilityService facilityService, ObjectMapper objectMapper) {
+            return new UtilizationsResponseCache(facilityService, objectMapper);
+        }
+
         @Bean
         public Features features() {
             return new Features();
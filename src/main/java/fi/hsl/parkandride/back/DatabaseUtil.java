@@ -0,0 +1,23 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class DatabaseUtil {
+
+    /**
+     * For using PostgreSQL specific SQL, with a fallback for H2.
+     */
+    public static boolean isPostgreSQL(Connection connection) {
+        try {
+            return connection.getMetaData().getDatabaseProductName().equals("PostgreSQL");
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Failed to read connection metadata", e);
+        }
+    }
+}
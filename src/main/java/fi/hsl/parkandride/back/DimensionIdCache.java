@@ -0,0 +1,93 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * Node-local, size-bounded cache of the ids of the values of an append-only dimension table, such as
+ * request_log_source. The rows are never updated nor deleted, so a cached id never becomes stale and the cache
+ * needs no invalidation. The NULL value is cached like any other value.
+ * Ids inserted by a transaction are cached only after it commits, so that a rollback will not leave behind
+ * ids which do not exist.
+ */
+public class DimensionIdCache {
+
+    private final Cache<Optional<String>, Long> idsByValue;
+    private final Cache<Long, Optional<String>> valuesById;
+
+    public DimensionIdCache(long maximumSize) {
+        this.idsByValue = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.valuesById = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * @return the ids of the cached values; the value may be null
+     */
+    public Map<String, Long> getIds(Collection<String> values) {
+        Map<String, Long> ids = new HashMap<>();
+        for (String value : values) {
+            Long id = idsByValue.getIfPresent(Optional.ofNullable(value));
+            if (id != null) {
+                ids.put(value, id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the values of the cached ids; a value may be null
+     */
+    public Map<Long, String> getValues(Collection<Long> ids) {
+        Map<Long, String> values = new HashMap<>();
+        valuesById.getAllPresent(ids).forEach((id, value) -> values.put(id, value.orElse(null)));
+        return values;
+    }
+
+    /**
+     * @param id a committed id of the value
+     */
+    public void put(String value, long id) {
+        idsByValue.put(Optional.ofNullable(value), id);
+        valuesById.put(id, Optional.ofNullable(value));
+    }
+
+    /**
+     * @param ids committed ids by value
+     */
+    public void putAll(Map<String, Long> ids) {
+        ids.forEach(this::put);
+    }
+
+    /**
+     * Caches the ids once the current transaction commits, or immediately if there is no transaction.
+     */
+    public void putAllAfterCommit(Map<String, Long> ids) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            putAll(ids);
+            return;
+        }
+        Map<String, Long> inserted = new HashMap<>(ids);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                putAll(inserted);
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        idsByValue.invalidateAll();
+        valuesById.invalidateAll();
+    }
+
+    public long size() {
+        return idsByValue.size();
+    }
+}
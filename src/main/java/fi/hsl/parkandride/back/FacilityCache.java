@@ -0,0 +1,150 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import fi.hsl.parkandride.core.domain.Facility;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * Node-local, size-bounded cache of facilities. The cache stores and returns copies, so that callers may
+ * freely modify the facilities they put or get.
+ * Each entry remembers the version of the facility row it was loaded from, so that changes made by the
+ * other cluster nodes can be detected by comparing the versions with the database.
+ * A transaction which has modified facilities bypasses the cache until it commits.
+ */
+public class FacilityCache implements PublicMetrics {
+
+    private static class Entry {
+        final long version;
+        final Facility facility;
+
+        Entry(long version, Facility facility) {
+            this.version = version;
+            this.facility = facility;
+        }
+    }
+
+    private final Cache<Long, Entry> cache;
+
+    public FacilityCache(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return false if the current transaction has modified facilities
+     */
+    public boolean isUsableInCurrentTransaction() {
+        return !findPendingChanges().isPresent();
+    }
+
+    public Optional<Facility> get(long facilityId) {
+        return Optional.ofNullable(cache.getIfPresent(facilityId)).map(e -> e.facility.copy());
+    }
+
+    public Map<Long, Facility> getAll(Collection<Long> facilityIds) {
+        Map<Long, Facility> facilities = new HashMap<>();
+        cache.getAllPresent(facilityIds).forEach((id, entry) -> facilities.put(id, entry.facility.copy()));
+        return facilities;
+    }
+
+    /**
+     * @param version the version of the facility row, read before the facility itself
+     */
+    public void put(long facilityId, long version, Facility facility) {
+        cache.put(facilityId, new Entry(version, facility.copy()));
+    }
+
+    public void invalidate(long facilityId) {
+        cache.invalidate(facilityId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Invalidates the facility now and once again after the current transaction commits, so that
+     * a load which happens before the commit will not leave stale data behind.
+     */
+    public void facilityChanged(long facilityId) {
+        invalidate(facilityId);
+        pendingChanges().ifPresent(p -> p.facilityIds.add(facilityId));
+    }
+
+    /**
+     * Evicts the facilities whose version differs from the current version in the database.
+     *
+     * @param currentVersions versions of all facilities by id
+     */
+    public void evictChanged(Map<Long, Long> currentVersions) {
+        cache.asMap().forEach((facilityId, entry) -> {
+            Long currentVersion = currentVersions.get(facilityId);
+            if (currentVersion == null || currentVersion != entry.version) {
+                cache.asMap().remove(facilityId, entry);
+            }
+        });
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = cache.stats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("cache.facility.size", cache.size()));
+        metrics.add(new Metric<>("cache.facility.hits", stats.hitCount()));
+        metrics.add(new Metric<>("cache.facility.misses", stats.missCount()));
+        metrics.add(new Metric<>("cache.facility.evictions", stats.evictionCount()));
+        metrics.add(new Metric<>("cache.facility.hitRatio", stats.hitRate()));
+        return metrics;
+    }
+
+    private Optional<PendingChanges> pendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return Optional.empty();
+        }
+        Optional<PendingChanges> existing = findPendingChanges();
+        if (existing.isPresent()) {
+            return existing;
+        }
+        PendingChanges pending = new PendingChanges();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return Optional.of(pending);
+    }
+
+    private Optional<PendingChanges> findPendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return Optional.empty();
+        }
+        for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+            if (s instanceof PendingChanges && ((PendingChanges) s).owner() == this) {
+                return Optional.of((PendingChanges) s);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private class PendingChanges extends TransactionSynchronizationAdapter {
+        final Set<Long> facilityIds = new HashSet<>();
+
+        FacilityCache owner() {
+            return FacilityCache.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            facilityIds.forEach(FacilityCache.this::invalidate);
+        }
+    }
+}
@@ -4,6 +4,7 @@
 package fi.hsl.parkandride.back;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.querydsl.core.ResultTransformer;
@@ -28,6 +29,7 @@ import fi.hsl.parkandride.core.service.TransactionalWrite;
 import fi.hsl.parkandride.core.service.ValidationException;
 import org.geolatte.geom.Point;
 import org.joda.time.DateTime;
+import org.springframework.scheduling.annotation.Scheduled;
 
 import java.util.*;
 import java.util.Map.Entry;
@@ -202,13 +204,20 @@ public class FacilityDao implements FacilityRepository {
 
     public static final String FACILITY_ID_SEQ = "facility_id_seq";
     private static final SimpleExpression<Long> nextFacilityId = SQLExpressions.nextval(FACILITY_ID_SEQ);
+    private static final SimpleExpression<Long> nextFacilityVersion = SQLExpressions.nextval("facility_version_seq");
 
     private final PostgreSQLQueryFactory queryFactory;
     private final FacilityHistoryRepository facilityHistoryRepository;
+    private final LatestUtilizationStore latestUtilizationStore;
+    private final FacilityCache facilityCache;
 
-    public FacilityDao(PostgreSQLQueryFactory queryFactory, FacilityHistoryRepository facilityHistoryRepository) {
+    private volatile Map<Long, Long> polledVersions;
+
+    public FacilityDao(PostgreSQLQueryFactory queryFactory, FacilityHistoryRepository facilityHistoryRepository, LatestUtilizationStore latestUtilizationStore, FacilityCache facilityCache) {
         this.queryFactory = queryFactory;
         this.facilityHistoryRepository = facilityHistoryRepository;
+        this.latestUtilizationStore = latestUtilizationStore;
+        this.facilityCache = facilityCache;
     }
 
     @TransactionalWrite
@@ -226,6 +235,7 @@ public class FacilityDao implements FacilityRepository {
         insert.set(qFacility.id, facilityId);
         populate(facility, insert);
         insert.execute();
+        facilityCache.facilityChanged(facilityId);
 
         insertAliases(facilityId, facility.aliases);
         insertPorts(facilityId, facility.ports);
@@ -233,6 +243,7 @@ public class FacilityDao implements FacilityRepository {
         updatePaymentMethods(facilityId, facility.paymentInfo.paymentMethods);
         insertPricing(facilityId, facility.pricingMethod.getPricing(facility));
         insertUnavailableCapacity(facilityId, facility.unavailableCapacities);
+        latestUtilizationStore.utilizationKeysChanged();
 
         // History updated
         final DateTime currentDate = DateTime.now();
@@ -260,6 +271,7 @@ public class FacilityDao implements FacilityRepository {
         if (update.execute() != 1) {
             throw new FacilityNotFoundException(facilityId);
         }
+        facilityCache.facilityChanged(facilityId);
 
         updateAliases(facilityId, newFacility.aliases, oldFacility.aliases);
         updatePorts(facilityId, newFacility.ports, oldFacility.ports);
@@ -275,6 +287,7 @@ public class FacilityDao implements FacilityRepository {
         if (!Objects.equals(newFacility.pricing, oldFacility.pricing)) {
             deletePricing(facilityId);
             insertPricing(facilityId, newFacility.pricing);
+            latestUtilizationStore.utilizationKeysChanged();
         }
 
         if (!Objects.equals(newFacility.unavailableCapacities, oldFacility.unavailableCapacities)) {
@@ -285,6 +298,7 @@ public class FacilityDao implements FacilityRepository {
         final DateTime now = DateTime.now();
         if (!(Objects.equals(newFacility.status, oldFacility.status) && Objects.equals(newFacility.statusDescription, oldFacility.statusDescription))) {
             facilityHistoryRepository.updateStatusHistory(now, facilityId, newFacility.status, newFacility.statusDescription);
+            latestUtilizationStore.facilitiesChanged();
         }
 
         if (!(Objects.equals(newFacility.builtCapacity, oldFacility.builtCapacity)) || !(Objects.equals(newFacility.unavailableCapacities, oldFacility.unavailableCapacities))) {
@@ -295,7 +309,21 @@ public class FacilityDao implements FacilityRepository {
     @TransactionalRead
     @Override
     public Facility getFacility(long facilityId) {
-        return getFacility(facilityId, false);
+        if (!facilityCache.isUsableInCurrentTransaction()) {
+            return getFacility(facilityId, false);
+        }
+        Optional<Facility> cached = facilityCache.get(facilityId);
+        if (cached.isPresent()) {
+            Facility facility = cached.get();
+            facility.initialize(); // openNow depends on the current time
+            return facility;
+        }
+        Map<Long, Long> versions = findVersions(ImmutableSet.of(facilityId));
+        Facility facility = getFacility(facilityId, false);
+        if (versions.containsKey(facilityId)) {
+            facilityCache.put(facilityId, versions.get(facilityId), facility);
+        }
+        return facility;
     }
 
     @TransactionalRead
@@ -323,18 +351,78 @@ public class FacilityDao implements FacilityRepository {
         if (facility == null) {
             throw new FacilityNotFoundException(facilityId);
         }
-        ImmutableMap<Long, Facility> facilityMap = ImmutableMap.of(facilityId, facility);
-        fetchAliases(facilityMap);
-        fetchPorts(facilityMap);
-        fetchServices(facilityMap);
-        fetchPaymentMethods(facilityMap);
-        fetchPricing(facilityMap);
-        fetchUnavailableCapacity(facilityMap);
-
-        facility.initialize();
+        fetchDetails(ImmutableMap.of(facilityId, facility));
         return facility;
     }
 
+    @TransactionalRead
+    @Override
+    public Map<Long, Facility> getFacilities(Collection<Long> facilityIds) {
+        if (facilityIds.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        Set<Long> ids = new LinkedHashSet<>(facilityIds);
+        boolean useCache = facilityCache.isUsableInCurrentTransaction();
+        Map<Long, Facility> facilitiesById = useCache ? facilityCache.getAll(ids) : new HashMap<>();
+        facilitiesById.values().forEach(Facility::initialize); // openNow depends on the current time
+        Set<Long> missing = Sets.difference(ids, facilitiesById.keySet()).immutableCopy();
+        if (!missing.isEmpty()) {
+            Map<Long, Long> versions = useCache ? findVersions(missing) : ImmutableMap.of();
+            Map<Long, Facility> loaded = fromFacility()
+                    .where(qFacility.id.in(missing))
+                    .transform(groupBy(qFacility.id).as(facilityMapping));
+            fetchDetails(loaded);
+            loaded.forEach((facilityId, facility) -> {
+                if (versions.containsKey(facilityId)) {
+                    facilityCache.put(facilityId, versions.get(facilityId), facility);
+                }
+            });
+            facilitiesById.putAll(loaded);
+        }
+        Map<Long, Facility> facilities = new LinkedHashMap<>();
+        for (Long facilityId : ids) {
+            Facility facility = facilitiesById.get(facilityId);
+            if (facility == null) {
+                throw new FacilityNotFoundException(facilityId);
+            }
+            facilities.put(facilityId, facility);
+        }
+        return facilities;
+    }
+
+    /**
+     * Evicts the cached facilities which have been modified or deleted by the other cluster nodes, and
+     * signals the latest utilization store if any facility has changed since the previous poll, so that
+     * status changes made on the other nodes are stale for at most one poll interval.
+     */
+    @Scheduled(fixedDelayString = "${facility.cache.poll:10000}")
+    @TransactionalRead
+    public void evictChangedFacilities() {
+        Map<Long, Long> versions = queryFactory.from(qFacility)
+                .transform(groupBy(qFacility.id).as(qFacility.version));
+        facilityCache.evictChanged(versions);
+        if (polledVersions != null && !polledVersions.equals(versions)) {
+            latestUtilizationStore.facilitiesChanged();
+        }
+        polledVersions = versions;
+    }
+
+    private Map<Long, Long> findVersions(Set<Long> facilityIds) {
+        return queryFactory.from(qFacility)
+                .where(qFacility.id.in(facilityIds))
+                .transform(groupBy(qFacility.id).as(qFacility.version));
+    }
+
+    private void fetchDetails(Map<Long, Facility> facilitiesById) {
+        fetchAliases(facilitiesById);
+        fetchPorts(facilitiesById);
+        fetchServices(facilitiesById);
+        fetchPaymentMethods(facilitiesById);
+        fetchPricing(facilitiesById);
+        fetchUnavailableCapacity(facilitiesById);
+        facilitiesById.values().forEach(Facility::initialize);
+    }
+
     @TransactionalRead
     @Override
     public SearchResults<FacilityInfo> findFacilities(PageableFacilitySearch search) {
@@ -708,6 +796,7 @@ public class FacilityDao implements FacilityRepository {
     }
 
     private void populate(Facility facility, StoreClause store) {
+        store.set(qFacility.version, nextFacilityVersion);
         nameMapping.populate(facility.name, store);
         store.set(qFacility.location, facility.location);
         store.set(qFacility.operatorId, facility.operatorId);
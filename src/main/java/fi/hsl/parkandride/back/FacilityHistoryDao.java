@@ -7,6 +7,7 @@ import com.querydsl.core.Tuple;
 import com.querydsl.core.dml.StoreClause;
 import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.MappingProjection;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.sql.SQLExpressions;
 import com.querydsl.sql.dml.SQLInsertClause;
@@ -22,6 +23,7 @@ import fi.hsl.parkandride.core.service.TransactionalWrite;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +35,7 @@ import static com.querydsl.core.group.GroupBy.list;
 import static com.querydsl.core.types.Projections.constructor;
 import static com.querydsl.sql.SQLExpressions.select;
 import static fi.hsl.parkandride.core.domain.CapacityType.*;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
@@ -197,13 +200,37 @@ public class FacilityHistoryDao implements FacilityHistoryRepository {
     @TransactionalRead
     public List<FacilityStatusHistory> getStatusHistory(long facilityId, LocalDate startInclusive, LocalDate endInclusive) {
         return getStatusHistoryQuery(facilityId)
-                .where(qFacilityStatusHistory.startTs.loe(endInclusive.toDateTimeAtStartOfDay().millisOfDay().withMaximumValue()).andAnyOf(
-                        qFacilityStatusHistory.endTs.isNull(),
-                        qFacilityStatusHistory.endTs.goe(startInclusive.toDateTimeAtStartOfDay())
-                )).fetch();
+                .where(statusHistoryBetween(startInclusive, endInclusive))
+                .fetch();
+    }
+
+    @Override
+    @TransactionalRead
+    public Map<Long, List<FacilityStatusHistory>> getStatusHistories(Collection<Long> facilityIds, LocalDate startInclusive, LocalDate endInclusive) {
+        if (facilityIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return getStatusHistoryQuery()
+                .where(qFacilityStatusHistory.facilityId.in(facilityIds), statusHistoryBetween(startInclusive, endInclusive))
+                .orderBy(qFacilityStatusHistory.facilityId.asc(), qFacilityStatusHistory.startTs.asc())
+                .fetch().stream()
+                .collect(groupingBy(h -> h.facilityId, toList()));
+    }
+
+    private static Predicate statusHistoryBetween(LocalDate startInclusive, LocalDate endInclusive) {
+        return qFacilityStatusHistory.startTs.loe(endInclusive.toDateTimeAtStartOfDay().millisOfDay().withMaximumValue()).andAnyOf(
+                qFacilityStatusHistory.endTs.isNull(),
+                qFacilityStatusHistory.endTs.goe(startInclusive.toDateTimeAtStartOfDay())
+        );
     }
 
     private PostgreSQLQuery<FacilityStatusHistory> getStatusHistoryQuery(long facilityId) {
+        return getStatusHistoryQuery()
+                .where(qFacilityStatusHistory.facilityId.eq(facilityId))
+                .orderBy(qFacilityStatusHistory.startTs.asc());
+    }
+
+    private PostgreSQLQuery<FacilityStatusHistory> getStatusHistoryQuery() {
         return queryFactory.query()
                 .select(constructor(
                         FacilityStatusHistory.class,
@@ -213,9 +240,7 @@ public class FacilityHistoryDao implements FacilityHistoryRepository {
                         qFacilityStatusHistory.status,
                         statusHistoryDescriptionMapping
                 ))
-                .from(qFacilityStatusHistory)
-                .where(qFacilityStatusHistory.facilityId.eq(facilityId))
-                .orderBy(qFacilityStatusHistory.startTs.asc());
+                .from(qFacilityStatusHistory);
     }
 
     @Override
@@ -227,18 +252,40 @@ public class FacilityHistoryDao implements FacilityHistoryRepository {
     @Override
     @TransactionalRead
     public List<FacilityCapacityHistory> getCapacityHistory(long facilityId, LocalDate startInclusive, LocalDate endInclusive) {
-        return getFacilityCapacityHistories(facilityId, q -> q.where(
-                qFacilityCapacityHistory.startTs.loe(endInclusive.toDateTimeAtStartOfDay().millisOfDay().withMaximumValue()).andAnyOf(
-                        qFacilityCapacityHistory.endTs.isNull(),
-                        qFacilityCapacityHistory.endTs.goe(startInclusive.toDateTimeAtStartOfDay())
-                )));
+        return getFacilityCapacityHistories(facilityId, q -> q.where(capacityHistoryBetween(startInclusive, endInclusive)));
+    }
+
+    @Override
+    @TransactionalRead
+    public Map<Long, List<FacilityCapacityHistory>> getCapacityHistories(Collection<Long> facilityIds, LocalDate startInclusive, LocalDate endInclusive) {
+        if (facilityIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        final PostgreSQLQuery<ExtendedCapacityHistory> q = getCapacityHistoryQuery()
+                .where(qFacilityCapacityHistory.facilityId.in(facilityIds), capacityHistoryBetween(startInclusive, endInclusive))
+                .orderBy(qFacilityCapacityHistory.facilityId.asc(), qFacilityCapacityHistory.startTs.asc());
+        return withUnavailableCapacities(q.fetch()).stream()
+                .collect(groupingBy(h -> h.facilityId, toList()));
+    }
+
+    private static Predicate capacityHistoryBetween(LocalDate startInclusive, LocalDate endInclusive) {
+        return qFacilityCapacityHistory.startTs.loe(endInclusive.toDateTimeAtStartOfDay().millisOfDay().withMaximumValue()).andAnyOf(
+                qFacilityCapacityHistory.endTs.isNull(),
+                qFacilityCapacityHistory.endTs.goe(startInclusive.toDateTimeAtStartOfDay())
+        );
     }
 
     private List<FacilityCapacityHistory> getFacilityCapacityHistories(long facilityId, Consumer<PostgreSQLQuery<ExtendedCapacityHistory>> modifyQuery) {
-        final List<ExtendedCapacityHistory> capacityHistory = getCapacityHistoryWithoutUnavailableCapacities(facilityId, modifyQuery);
+        final PostgreSQLQuery<ExtendedCapacityHistory> q = getCapacityHistoryQuery()
+                .where(qFacilityCapacityHistory.facilityId.eq(facilityId))
+                .orderBy(qFacilityCapacityHistory.startTs.asc());
+        modifyQuery.accept(q);
+        return withUnavailableCapacities(q.fetch());
+    }
 
+    private List<FacilityCapacityHistory> withUnavailableCapacities(List<ExtendedCapacityHistory> capacityHistory) {
         final Set<Long> historyEntryIds = capacityHistory.stream().map(c -> c.id).collect(toSet());
-        final Map<Long, List<UnavailableCapacity>> unavailableCapacities = queryFactory
+        final Map<Long, List<UnavailableCapacity>> unavailableCapacities = historyEntryIds.isEmpty() ? new HashMap<>() : queryFactory
                 .from(qUnavailableCapacityHistory)
                 .where(qUnavailableCapacityHistory.capacityHistoryId.in(historyEntryIds))
                 .transform(groupBy(qUnavailableCapacityHistory.capacityHistoryId).as(list(unavailableCapacityHistoryMapping)));
@@ -251,8 +298,8 @@ public class FacilityHistoryDao implements FacilityHistoryRepository {
                 .collect(toList());
     }
 
-    private List<ExtendedCapacityHistory> getCapacityHistoryWithoutUnavailableCapacities(long facilityId, Consumer<PostgreSQLQuery<ExtendedCapacityHistory>> modifyQuery) {
-        final PostgreSQLQuery<ExtendedCapacityHistory> q = queryFactory.query()
+    private PostgreSQLQuery<ExtendedCapacityHistory> getCapacityHistoryQuery() {
+        return queryFactory.query()
                 .select(constructor(
                         ExtendedCapacityHistory.class,
                         qFacilityCapacityHistory.id,
@@ -273,11 +320,7 @@ public class FacilityHistoryDao implements FacilityHistoryRepository {
                             }
                         }
                 ))
-                .from(qFacilityCapacityHistory)
-                .where(qFacilityCapacityHistory.facilityId.eq(facilityId))
-                .orderBy(qFacilityCapacityHistory.startTs.asc());
-        modifyQuery.accept(q);
-        return q.fetch();
+                .from(qFacilityCapacityHistory);
     }
 
     public static class ExtendedCapacityHistory extends FacilityCapacityHistory {
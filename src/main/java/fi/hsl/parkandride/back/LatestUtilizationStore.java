@@ -0,0 +1,240 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import fi.hsl.parkandride.core.domain.Utilization;
+import fi.hsl.parkandride.core.domain.UtilizationKey;
+import org.joda.time.DateTime;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Node-local snapshot of the latest utilization of each (facility, capacity type, usage) combination.
+ * Changes made in a transaction are applied only after it commits; until then the transaction
+ * which made them must read from the database.
+ */
+public class LatestUtilizationStore {
+
+    private static final Comparator<UtilizationKey> KEY_ORDER = Comparator
+            .<UtilizationKey, String>comparing(k -> k.capacityType.name())
+            .thenComparing(k -> k.usage.name());
+
+    private final boolean enabled;
+
+    private volatile ConcurrentNavigableMap<Long, SortedMap<UtilizationKey, Utilization>> latestByFacilityId = new ConcurrentSkipListMap<>();
+    private volatile Set<UtilizationKey> pricedKeys = null;
+    private volatile DateTime loadedAt;
+
+    private final AtomicLong utilizationsVersion = new AtomicLong();
+    private final AtomicLong facilitiesVersion = new AtomicLong();
+
+    public LatestUtilizationStore(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return pricedKeys != null;
+    }
+
+    public DateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return changes whenever a newer utilization is stored or the store is (re)loaded or invalidated
+     */
+    public long getUtilizationsVersion() {
+        return utilizationsVersion.get();
+    }
+
+    /**
+     * @return changes whenever the status or pricing of some facility may have changed, i.e. on (re)load,
+     * on invalidation and on {@link #facilitiesChanged()}
+     */
+    public long getFacilitiesVersion() {
+        return facilitiesVersion.get();
+    }
+
+    /**
+     * @return false if the current transaction has uncommitted changes which the store does not yet reflect
+     */
+    public boolean isUpToDateForCurrentTransaction() {
+        return !findPendingChanges().isPresent();
+    }
+
+    public Set<Utilization> find(Long... facilityIds) {
+        Set<UtilizationKey> pricedKeys = this.pricedKeys;
+        ConcurrentNavigableMap<Long, SortedMap<UtilizationKey, Utilization>> latestByFacilityId = this.latestByFacilityId;
+        Collection<SortedMap<UtilizationKey, Utilization>> facilities;
+        if (facilityIds.length == 0) {
+            facilities = latestByFacilityId.values();
+        } else {
+            facilities = new ArrayList<>();
+            for (Long facilityId : new TreeSet<>(Arrays.asList(facilityIds))) {
+                Optional.ofNullable(latestByFacilityId.get(facilityId)).ifPresent(facilities::add);
+            }
+        }
+        Set<Utilization> results = new LinkedHashSet<>();
+        for (SortedMap<UtilizationKey, Utilization> latest : facilities) {
+            latest.forEach((key, u) -> {
+                if (pricedKeys != null && pricedKeys.contains(key)) {
+                    results.add(u.copy());
+                }
+            });
+        }
+        return results;
+    }
+
+    public void load(Set<UtilizationKey> pricedKeys, Collection<Utilization> latestUtilizations) {
+        ConcurrentNavigableMap<Long, SortedMap<UtilizationKey, Utilization>> loaded = new ConcurrentSkipListMap<>();
+        merge(loaded, latestUtilizations);
+        this.latestByFacilityId = loaded;
+        this.pricedKeys = unmodifiableSet(new HashSet<>(pricedKeys));
+        this.loadedAt = DateTime.now();
+        utilizationsVersion.incrementAndGet();
+        facilitiesVersion.incrementAndGet();
+    }
+
+    public void merge(Collection<Utilization> utilizations) {
+        if (merge(latestByFacilityId, utilizations)) {
+            utilizationsVersion.incrementAndGet();
+        }
+    }
+
+    private static boolean merge(ConcurrentNavigableMap<Long, SortedMap<UtilizationKey, Utilization>> latestByFacilityId,
+                                 Collection<Utilization> utilizations) {
+        boolean changed = false;
+        for (Utilization u : utilizations) {
+            Utilization normalized = u.copy();
+            normalized.timestamp = new DateTime(u.timestamp.getMillis());
+            UtilizationKey key = u.getUtilizationKey();
+            SortedMap<UtilizationKey, Utilization> before = latestByFacilityId.get(u.facilityId);
+            SortedMap<UtilizationKey, Utilization> after = latestByFacilityId.compute(u.facilityId, (facilityId, previous) -> {
+                Utilization current = previous == null ? null : previous.get(key);
+                if (current != null && (current.timestamp.isAfter(normalized.timestamp) || current.equals(normalized))) {
+                    return previous;
+                }
+                SortedMap<UtilizationKey, Utilization> updated = new TreeMap<>(KEY_ORDER);
+                if (previous != null) {
+                    updated.putAll(previous);
+                }
+                updated.put(key, normalized);
+                return Collections.unmodifiableSortedMap(updated);
+            });
+            changed |= before != after;
+        }
+        return changed;
+    }
+
+    public void invalidate() {
+        pricedKeys = null;
+        latestByFacilityId = new ConcurrentSkipListMap<>();
+        utilizationsVersion.incrementAndGet();
+        facilitiesVersion.incrementAndGet();
+    }
+
+    /**
+     * Merges the utilizations once the current transaction commits, or immediately if there is no transaction.
+     */
+    public void utilizationsInserted(Collection<Utilization> utilizations) {
+        if (!enabled) {
+            return;
+        }
+        List<Utilization> copies = new ArrayList<>();
+        utilizations.forEach(u -> copies.add(u.copy()));
+        Optional<PendingChanges> pending = pendingChanges();
+        if (pending.isPresent()) {
+            pending.get().inserted.addAll(copies);
+        } else {
+            merge(copies);
+        }
+    }
+
+    /**
+     * Invalidates the store now and once again after the current transaction commits, so that
+     * a reload which happens before the commit will not leave stale data behind.
+     */
+    public void utilizationKeysChanged() {
+        if (!enabled) {
+            return;
+        }
+        invalidate();
+        pendingChanges().ifPresent(p -> p.invalidate = true);
+    }
+
+    /**
+     * Signals that the status of some facility has changed once the current transaction commits,
+     * or immediately if there is no transaction.
+     */
+    public void facilitiesChanged() {
+        if (!enabled) {
+            return;
+        }
+        Optional<PendingChanges> pending = pendingChanges();
+        if (pending.isPresent()) {
+            pending.get().facilitiesChanged = true;
+        } else {
+            facilitiesVersion.incrementAndGet();
+        }
+    }
+
+    private Optional<PendingChanges> pendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return Optional.empty();
+        }
+        Optional<PendingChanges> existing = findPendingChanges();
+        if (existing.isPresent()) {
+            return existing;
+        }
+        PendingChanges pending = new PendingChanges();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return Optional.of(pending);
+    }
+
+    private Optional<PendingChanges> findPendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return Optional.empty();
+        }
+        for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+            if (s instanceof PendingChanges && ((PendingChanges) s).owner() == this) {
+                return Optional.of((PendingChanges) s);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private class PendingChanges extends TransactionSynchronizationAdapter {
+        final List<Utilization> inserted = new ArrayList<>();
+        boolean invalidate = false;
+        boolean facilitiesChanged = false;
+
+        LatestUtilizationStore owner() {
+            return LatestUtilizationStore.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            if (invalidate) {
+                invalidate();
+            } else {
+                merge(inserted);
+                if (facilitiesChanged) {
+                    facilitiesVersion.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -3,45 +3,66 @@
 
 package fi.hsl.parkandride.back;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Maps;
+import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.Tuple;
-import com.querydsl.core.types.MappingProjection;
+import com.querydsl.core.QueryFlag;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.ComparableExpression;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.core.types.dsl.SimpleExpression;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.sql.ColumnMetadata;
 import com.querydsl.sql.RelationalPath;
 import com.querydsl.sql.SQLExpressions;
 import com.querydsl.sql.dml.SQLInsertClause;
 import com.querydsl.sql.dml.SQLUpdateClause;
 import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
 import fi.hsl.parkandride.back.sql.QRequestLog;
+import fi.hsl.parkandride.back.sql.QRequestLogBatch;
+import fi.hsl.parkandride.back.sql.QRequestLogDaily;
+import fi.hsl.parkandride.back.sql.QRequestLogMonthly;
 import fi.hsl.parkandride.back.sql.QRequestLogSource;
 import fi.hsl.parkandride.back.sql.QRequestLogUrl;
 import fi.hsl.parkandride.core.back.RequestLogRepository;
 import fi.hsl.parkandride.core.domain.RequestLogEntry;
 import fi.hsl.parkandride.core.domain.RequestLogKey;
 import fi.hsl.parkandride.core.service.TransactionalRead;
+import fi.hsl.parkandride.core.service.TransactionalWrite;
 import fi.hsl.parkandride.util.MapUtils;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Connection;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.function.BiConsumer;
-import java.util.function.Supplier;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collector;
 
 import static com.querydsl.core.group.GroupBy.groupBy;
-import static com.querydsl.core.types.Projections.constructor;
 import static fi.hsl.parkandride.util.MapUtils.extractFromKeys;
 import static java.util.Comparator.comparing;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
 import static java.util.stream.Collectors.*;
-import static org.springframework.transaction.annotation.Isolation.SERIALIZABLE;
+import static org.springframework.transaction.annotation.Isolation.READ_COMMITTED;
 
 public class RequestLogDao implements RequestLogRepository {
 
@@ -54,123 +75,308 @@ public class RequestLogDao implements RequestLogRepository {
     private static final QRequestLog qRequestLog = QRequestLog.requestLog;
     private static final QRequestLogSource qRequestLogSource = QRequestLogSource.requestLogSource;
     private static final QRequestLogUrl qRequestLogUrl = QRequestLogUrl.requestLogUrl;
+    private static final QRequestLogBatch qRequestLogBatch = QRequestLogBatch.requestLogBatch;
+    private static final QRequestLogDaily qRequestLogDaily = QRequestLogDaily.requestLogDaily;
+    private static final QRequestLogMonthly qRequestLogMonthly = QRequestLogMonthly.requestLogMonthly;
+
+    private static final CountTable<DateTime> hourly = new CountTable<>(qRequestLog,
+            qRequestLog.sourceId, qRequestLog.urlId, qRequestLog.ts, qRequestLog.count);
+    private static final CountTable<LocalDate> daily = new CountTable<>(qRequestLogDaily,
+            qRequestLogDaily.sourceId, qRequestLogDaily.urlId, qRequestLogDaily.localDate, qRequestLogDaily.count);
+    private static final CountTable<LocalDate> monthly = new CountTable<>(qRequestLogMonthly,
+            qRequestLogMonthly.sourceId, qRequestLogMonthly.urlId, qRequestLogMonthly.monthStart, qRequestLogMonthly.count);
 
     private final PostgreSQLQueryFactory queryFactory;
+    private final Dimension sources;
+    private final Dimension urls;
 
-    public RequestLogDao(PostgreSQLQueryFactory queryFactory) {
+    /**
+     * @param maxCachedIds how many source and url ids this node caches of each
+     */
+    public RequestLogDao(PostgreSQLQueryFactory queryFactory, long maxCachedIds) {
         this.queryFactory = queryFactory;
+        this.sources = new Dimension(qRequestLogSource, qRequestLogSource.id, qRequestLogSource.source, nextSourceId, new DimensionIdCache(maxCachedIds));
+        this.urls = new Dimension(qRequestLogUrl, qRequestLogUrl.id, qRequestLogUrl.url, nextUrlId, new DimensionIdCache(maxCachedIds));
+    }
+
+    /**
+     * For when the dimension tables have been emptied, e.g. between tests.
+     */
+    public void invalidateCachedIds() {
+        sources.cache.invalidateAll();
+        urls.cache.invalidateAll();
     }
 
     @TransactionalRead
     @Override
     public List<RequestLogEntry> getLogEntriesBetween(DateTime startInclusive, DateTime endInclusive) {
-        final BiMap<Long, String> urls = getAllUrlPatterns();
-        final BiMap<Long, String> sources = getAllSources();
-        final List<RequestLogEntry> list = queryFactory.from(qRequestLog)
-                .select(constructor(RequestLogEntry.class, new RequestLogKeyProjection(sources, urls), qRequestLog.count))
-                .where(qRequestLog.ts.between(startInclusive, endInclusive))
+        return getLogEntries(hourly, hourly.period.between(startInclusive, endInclusive), ts -> ts);
+    }
+
+    @TransactionalRead
+    @Override
+    public List<RequestLogEntry> getDailyLogEntriesBetween(LocalDate startInclusive, LocalDate endInclusive) {
+        return getLogEntries(daily, daily.period.between(startInclusive, endInclusive), LocalDate::toDateTimeAtStartOfDay);
+    }
+
+    @TransactionalRead
+    @Override
+    public List<RequestLogEntry> getMonthlyLogEntriesBetween(LocalDate startInclusive, LocalDate endInclusive) {
+        return getLogEntries(monthly, monthly.period.between(startInclusive, endInclusive), LocalDate::toDateTimeAtStartOfDay);
+    }
+
+    private <T extends Comparable<? super T>> List<RequestLogEntry> getLogEntries(CountTable<T> table, Predicate where, Function<T, DateTime> toTimestamp) {
+        final List<Tuple> rows = queryFactory.from(table.table)
+                .select(table.sourceId, table.urlId, table.period, table.count)
+                .where(where)
                 .fetch();
-        list.sort(comparing(entry -> entry.key));
-        return list;
+        final Map<Long, String> sourcesById = getValues(extractFrom(rows, table.sourceId), sources);
+        final Map<Long, String> urlsById = getValues(extractFrom(rows, table.urlId), urls);
+        return rows.stream()
+                .map(row -> new RequestLogEntry(
+                        urlsById.get(row.get(table.urlId)),
+                        sourcesById.get(row.get(table.sourceId)),
+                        toTimestamp.apply(row.get(table.period)),
+                        row.get(table.count)))
+                .sorted(comparing(entry -> entry.key))
+                .collect(toList());
     }
 
+    /**
+     * Safe to run concurrently on every cluster node: the counts are added to the rows by upserting them
+     * (at READ COMMITTED), so the flushes of different nodes never conflict on a serialization failure.
+     */
     @Override
-    @Transactional(readOnly = false, isolation = SERIALIZABLE, propagation = Propagation.REQUIRES_NEW)
+    @Transactional(readOnly = false, isolation = READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
     public void batchIncrement(Map<RequestLogKey, Long> nonNormalizedRequestLogCounts) {
+        increment(nonNormalizedRequestLogCounts);
+    }
+
+    @Override
+    @Transactional(readOnly = false, isolation = READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public boolean batchIncrement(String batchId, Map<RequestLogKey, Long> requestLogCounts) {
+        // A batch is retried only by the node which spooled it, and never concurrently
+        if (queryFactory.from(qRequestLogBatch).where(qRequestLogBatch.id.eq(batchId)).fetchCount() > 0) {
+            return false;
+        }
+        queryFactory.insert(qRequestLogBatch)
+                .set(qRequestLogBatch.id, batchId)
+                .set(qRequestLogBatch.applied, DateTime.now())
+                .execute();
+        increment(requestLogCounts);
+        return true;
+    }
+
+    @Override
+    @TransactionalWrite
+    public void deleteAppliedBatchesBefore(DateTime time) {
+        queryFactory.delete(qRequestLogBatch)
+                .where(qRequestLogBatch.applied.before(time))
+                .execute();
+    }
+
+    private void increment(Map<RequestLogKey, Long> nonNormalizedRequestLogCounts) {
         if (nonNormalizedRequestLogCounts.isEmpty()) {
             return;
         }
         // Normalize timestamps to hour
         final Map<RequestLogKey, Long> requestLogCounts = normalizeTimestamps(nonNormalizedRequestLogCounts);
+        final boolean isPostgreSQL = DatabaseUtil.isPostgreSQL(queryFactory.getConnection());
 
-        // Get rows to update
-        final Set<DateTime> timestamps = extractFromKeys(requestLogCounts, key -> key.timestamp);
-        final Map<RequestLogKey, Long> previousCountsForUpdate = getPreviousCountsForUpdate(timestamps);
+        // Resolve the ids of only the sources and urls in this batch, inserting the new ones
+        final Map<String, Long> sourceIds = getOrInsertIds(extractFromKeys(requestLogCounts, key -> key.source), sources, isPostgreSQL);
+        final Map<String, Long> urlIds = getOrInsertIds(extractFromKeys(requestLogCounts, key -> key.urlPattern), urls, isPostgreSQL);
 
-        // Insert new sources and urls
-        final BiMap<Long, String> allSources = insertNewSources(extractFromKeys(requestLogCounts, key -> key.source));
-        final BiMap<Long, String> allUrls = insertNewUrls(extractFromKeys(requestLogCounts, key -> key.urlPattern));
-
-        // Partition for insert/update
-        final Map<Boolean, List<Map.Entry<RequestLogKey, Long>>> partitioned = requestLogCounts.entrySet().stream().collect(
-                partitioningBy(entry -> previousCountsForUpdate.containsKey(entry.getKey()))
-        );
+        // The day and month rollups are kept in the same transaction, and always written after the hours
+        upsertCounts(hourly, requestLogCounts, key -> key.timestamp, sourceIds, urlIds, isPostgreSQL);
+        upsertCounts(daily, requestLogCounts, key -> dayOf(key.timestamp), sourceIds, urlIds, isPostgreSQL);
+        upsertCounts(monthly, requestLogCounts, key -> monthOf(key.timestamp), sourceIds, urlIds, isPostgreSQL);
+    }
 
-        // Insert non-existing rows
-        insertNew(partitioned.get(Boolean.FALSE), allSources.inverse(), allUrls.inverse());
-        // Update
-        updateExisting(partitioned.get(Boolean.TRUE), allSources.inverse(), allUrls.inverse());
+    private static LocalDate dayOf(DateTime hour) {
+        return hour.toLocalDate();
     }
 
-    private BiMap<Long, String> insertNewUrls(Set<String> toInsert) {
-        return insertMissing(toInsert, this::getAllUrlPatterns, qRequestLogUrl, (insert, url) -> {
-            insert.set(qRequestLogUrl.id, nextUrlId);
-            insert.set(qRequestLogUrl.url, url);
-        });
+    private static LocalDate monthOf(DateTime hour) {
+        return hour.toLocalDate().withDayOfMonth(1);
     }
 
-    private BiMap<Long, String> insertNewSources(Set<String> toInsert) {
-        return insertMissing(toInsert, this::getAllSources, qRequestLogSource, (insert, source) -> {
-            insert.set(qRequestLogSource.id, nextSourceId);
-            insert.set(qRequestLogSource.source, source);
-        });
+    @Override
+    @TransactionalWrite
+    public void rebuildDailyAndMonthlyCounts(LocalDate startInclusive, LocalDate endInclusive) {
+        final LocalDate start = startInclusive.withDayOfMonth(1);
+        final LocalDate end = endInclusive.withDayOfMonth(1).plusMonths(1);
+        final Connection connection = queryFactory.getConnection();
+        if (DatabaseUtil.isPostgreSQL(connection)) {
+            // Concurrent increments wait until the rebuilt counts are committed and are then added to them,
+            // so that the hourly counts of the increments which are still in progress are not lost
+            new JdbcTemplate(new SingleConnectionDataSource(connection, true))
+                    .execute("LOCK TABLE request_log_daily, request_log_monthly IN SHARE ROW EXCLUSIVE MODE");
+        }
+        queryFactory.delete(daily.table).where(daily.period.goe(start), daily.period.lt(end)).execute();
+        queryFactory.delete(monthly.table).where(monthly.period.goe(start), monthly.period.lt(end)).execute();
+
+        final SortedMap<CountRow<LocalDate>, Long> days = new TreeMap<>();
+        final SortedMap<CountRow<LocalDate>, Long> months = new TreeMap<>();
+        try (CloseableIterator<Tuple> rows = queryFactory.from(hourly.table)
+                .select(hourly.sourceId, hourly.urlId, hourly.period, hourly.count)
+                .where(hourly.period.goe(start.toDateTimeAtStartOfDay()), hourly.period.lt(end.toDateTimeAtStartOfDay()))
+                .iterate()) {
+            while (rows.hasNext()) {
+                final Tuple row = rows.next();
+                final DateTime hour = row.get(hourly.period);
+                final long count = row.get(hourly.count);
+                days.merge(new CountRow<>(row.get(hourly.sourceId), row.get(hourly.urlId), dayOf(hour)), count, Long::sum);
+                months.merge(new CountRow<>(row.get(hourly.sourceId), row.get(hourly.urlId), monthOf(hour)), count, Long::sum);
+            }
+        }
+        insertCounts(daily, days);
+        insertCounts(monthly, months);
     }
 
-    private BiMap<Long, String> insertMissing(Set<String> toInsert, Supplier<BiMap<Long, String>> persistedGetter, RelationalPath<?> path, BiConsumer<SQLInsertClause, String> processor) {
-        final BiMap<Long, String> persisted = persistedGetter.get();
-        final Set<String> difference = difference(toInsert, persisted);
+    private <T extends Comparable<? super T>> void insertCounts(CountTable<T> table, SortedMap<CountRow<T>, Long> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        final SQLInsertClause insert = queryFactory.insert(table.table);
+        rows.forEach((row, count) -> setCountRow(insert, table, row, count).addBatch());
+        insert.execute();
+    }
 
-        if (difference.isEmpty()) {
-            // Nothing to insert, just return the already persisted sources
-            return persisted;
+    private <T extends Comparable<? super T>> void upsertCounts(CountTable<T> table, Map<RequestLogKey, Long> requestLogCounts, Function<RequestLogKey, T> period,
+                                                     Map<String, Long> sourceIds, Map<String, Long> urlIds, boolean isPostgreSQL) {
+        // Rows are written in key order, so that concurrent flushes lock them in the same order and cannot deadlock
+        final SortedMap<CountRow<T>, Long> rows = new TreeMap<>();
+        requestLogCounts.forEach((key, count) -> rows.merge(
+                new CountRow<>(sourceIds.get(key.source), urlIds.get(key.urlPattern), period.apply(key)), count, Long::sum));
+        if (isPostgreSQL) {
+            upsertPostgreSQL(table, rows);
+        } else {
+            upsertH2(table, rows);
         }
-        insertBatch(difference, path, processor);
-        return persistedGetter.get();
     }
 
-    private <T> void insertBatch(Collection<T> batch, RelationalPath<?> expression, BiConsumer<SQLInsertClause, T> processor) {
-        if (batch.isEmpty()) {
-            return;
+    /**
+     * Only the values which this node has not cached yet are looked up from the database.
+     */
+    private Map<String, Long> getOrInsertIds(Set<String> values, Dimension dimension, boolean isPostgreSQL) {
+        final Map<String, Long> ids = dimension.cache.getIds(values);
+        final List<String> uncached = values.stream()
+                .filter(val -> !ids.containsKey(val))
+                .collect(toList());
+        if (uncached.isEmpty()) {
+            return ids;
         }
-        final SQLInsertClause insert = queryFactory.insert(expression);
-        batch.forEach(item -> {
-            processor.accept(insert, item);
-            insert.addBatch();
-        });
+        final Map<String, Long> found = findIds(uncached, dimension);
+        dimension.cache.putAll(found);
+        ids.putAll(found);
+
+        final List<String> missing = uncached.stream()
+                .filter(val -> !found.containsKey(val))
+                .sorted(nullsFirst(naturalOrder()))
+                .collect(toList());
+        if (missing.isEmpty()) {
+            return ids;
+        }
+        final SQLInsertClause insert = queryFactory.insert(dimension.table);
+        if (isPostgreSQL) {
+            // Another node may insert the same value concurrently; its id is read below.
+            // Covers also the NULL value, which has a unique partial index of its own.
+            insert.addFlag(QueryFlag.Position.END, " ON CONFLICT DO NOTHING");
+        }
+        missing.forEach(val -> insert.set(dimension.id, dimension.nextId).set(dimension.value, val).addBatch());
         insert.execute();
+        final Map<String, Long> inserted = findIds(missing, dimension);
+        dimension.cache.putAllAfterCommit(inserted);
+        ids.putAll(inserted);
+        return ids;
     }
 
-    private <T> void updateBatch(Collection<T> batch, RelationalPath<?> expression, BiConsumer<SQLUpdateClause, T> processor) {
-        if (batch.isEmpty()) {
-            return;
+    /**
+     * Requests without a source header (or a matched url pattern) are logged under the NULL value.
+     */
+    private Map<String, Long> findIds(Collection<String> values, Dimension dimension) {
+        final List<String> nonNullValues = values.stream().filter(Objects::nonNull).collect(toList());
+        BooleanExpression condition = nonNullValues.isEmpty() ? null : dimension.value.in(nonNullValues);
+        if (values.contains(null)) {
+            condition = dimension.value.isNull().or(condition);
         }
-        final SQLUpdateClause update = queryFactory.update(expression);
-        batch.forEach(item -> {
-            processor.accept(update, item);
-            update.addBatch();
-        });
-        update.execute();
+        return new HashMap<>(queryFactory.from(dimension.table)
+                .where(condition)
+                .transform(groupBy(dimension.value).as(dimension.id)));
     }
 
-    private void updateExisting(Collection<Map.Entry<RequestLogKey, Long>> entries, Map<String, Long> sourceIdsBySource, Map<String, Long> urlIdsByUrl) {
-        updateBatch(entries, qRequestLog, (update, entry) -> {
-            final RequestLogKey key = entry.getKey();
-            update.set(qRequestLog.count, qRequestLog.count.add(entry.getValue()));
-            update.where(qRequestLog.ts.eq(key.timestamp)
-                            .and(qRequestLog.sourceId.eq(sourceIdsBySource.get(key.source)))
-                            .and(qRequestLog.urlId.eq(urlIdsByUrl.get(key.urlPattern)))
-            );
-        });
+    private Map<Long, String> getValues(Set<Long> ids, Dimension dimension) {
+        final Map<Long, String> values = dimension.cache.getValues(ids);
+        final Set<Long> uncached = ids.stream()
+                .filter(id -> !values.containsKey(id))
+                .collect(toSet());
+        if (uncached.isEmpty()) {
+            return values;
+        }
+        final Map<Long, String> found = queryFactory.from(dimension.table)
+                .where(dimension.id.in(uncached))
+                .transform(groupBy(dimension.id).as(dimension.value));
+        found.forEach((id, value) -> dimension.cache.put(value, id));
+        values.putAll(found);
+        return values;
+    }
+
+    private static <T> Set<T> extractFrom(List<Tuple> rows, Expression<T> column) {
+        return rows.stream().map(row -> row.get(column)).collect(toSet());
     }
 
-    private void insertNew(List<Map.Entry<RequestLogKey, Long>> requestLogCounts, Map<String, Long> sourceIdsBySource, Map<String, Long> urlIdsByUrl) {
-        insertBatch(requestLogCounts, qRequestLog, (insert, entry) -> {
-            final RequestLogKey key = entry.getKey().roundTimestampDown();
-            insert.set(qRequestLog.ts, key.timestamp);
-            insert.set(qRequestLog.sourceId, sourceIdsBySource.get(key.source));
-            insert.set(qRequestLog.urlId, urlIdsByUrl.get(key.urlPattern));
-            insert.set(qRequestLog.count, entry.getValue());
+    private <T extends Comparable<? super T>> void upsertPostgreSQL(CountTable<T> table, SortedMap<CountRow<T>, Long> rows) {
+        final SQLInsertClause upsert = queryFactory.insert(table.table);
+        final String countColumn = columnName(table.count);
+        upsert.addFlag(QueryFlag.Position.END, "" +
+                " ON CONFLICT (" + columnName(table.sourceId) + ", " + columnName(table.urlId) + ", " + columnName(table.periodPath) + ")" +
+                " DO UPDATE SET " + countColumn + " = " + table.table.getTableName() + "." + countColumn + " + EXCLUDED." + countColumn);
+        rows.forEach((row, count) -> setCountRow(upsert, table, row, count).addBatch());
+        upsert.execute();
+    }
+
+    private <T extends Comparable<? super T>> void upsertH2(CountTable<T> table, SortedMap<CountRow<T>, Long> rows) {
+        // XXX: H2 doesn't support ON CONFLICT, so we must check which rows already exist
+        final Set<CountRow<T>> existing = new TreeSet<>();
+        queryFactory.from(table.table)
+                .select(table.sourceId, table.urlId, table.period)
+                .where(table.period.in(rows.keySet().stream().map(row -> row.period).collect(toSet())),
+                        table.sourceId.in(rows.keySet().stream().map(row -> row.sourceId).collect(toSet())),
+                        table.urlId.in(rows.keySet().stream().map(row -> row.urlId).collect(toSet())))
+                .fetch()
+                .forEach(row -> existing.add(new CountRow<>(row.get(table.sourceId), row.get(table.urlId), row.get(table.period))));
+
+        final SQLInsertClause insert = queryFactory.insert(table.table);
+        final SQLUpdateClause update = queryFactory.update(table.table);
+        rows.forEach((row, count) -> {
+            if (existing.contains(row)) {
+                update.set(table.count, table.count.add(count))
+                        .where(table.sourceId.eq(row.sourceId),
+                                table.urlId.eq(row.urlId),
+                                table.period.eq(row.period))
+                        .addBatch();
+            } else {
+                setCountRow(insert, table, row, count).addBatch();
+            }
         });
+        if (!insert.isEmpty()) {
+            insert.execute();
+        }
+        if (!update.isEmpty()) {
+            update.execute();
+        }
+    }
+
+    private static String columnName(Path<?> column) {
+        return ColumnMetadata.getName(column);
+    }
+
+    private static <T extends Comparable<? super T>> SQLInsertClause setCountRow(SQLInsertClause insert, CountTable<T> table, CountRow<T> row, long count) {
+        return insert.set(table.periodPath, row.period)
+                .set(table.sourceId, row.sourceId)
+                .set(table.urlId, row.urlId)
+                .set(table.count, count);
     }
 
     private static Map<RequestLogKey, Long> normalizeTimestamps(Map<RequestLogKey, Long> logCounts) {
@@ -198,49 +404,62 @@ public class RequestLogDao implements RequestLogRepository {
         return MapUtils.entriesToMap(Long::sum);
     }
 
-    private Map<RequestLogKey, Long> getPreviousCountsForUpdate(Set<DateTime> timestamps) {
-        final Map<Long, String> sources = getAllSources();
-        final Map<Long, String> urls = getAllUrlPatterns();
-
-        return queryFactory
-                .from(qRequestLog)
-                .where(qRequestLog.ts.in(timestamps))
-                .forUpdate()
-                .transform(groupBy(new RequestLogKeyProjection(sources, urls)).as(qRequestLog.count));
-    }
-
-    private BiMap<Long, String> getAllUrlPatterns() {
-        return HashBiMap.create(queryFactory.from(qRequestLogUrl).transform(groupBy(qRequestLogUrl.id).as(qRequestLogUrl.url)));
-    }
-
-    private BiMap<Long, String> getAllSources() {
-        return HashBiMap.create(queryFactory.from(qRequestLogSource).transform(groupBy(qRequestLogSource.id).as(qRequestLogSource.source)));
-    }
-
-    private static Set<String> difference(Set<String> toPersist, BiMap<Long, String> alreadyPersisted) {
-        return toPersist.stream()
-                .filter(val -> !alreadyPersisted.containsValue(val))
-                .collect(toSet());
+    /**
+     * A table of request counts by source, url and a period: hour, day or month.
+     */
+    private static class CountTable<T extends Comparable<? super T>> {
+        final RelationalPath<?> table;
+        final NumberPath<Long> sourceId;
+        final NumberPath<Long> urlId;
+        final ComparableExpression<T> period;
+        final Path<T> periodPath;
+        final NumberPath<Long> count;
+
+        <P extends ComparableExpression<T> & Path<T>> CountTable(RelationalPath<?> table, NumberPath<Long> sourceId, NumberPath<Long> urlId, P period,
+                                                                 NumberPath<Long> count) {
+            this.table = table;
+            this.sourceId = sourceId;
+            this.urlId = urlId;
+            this.period = period;
+            this.periodPath = period;
+            this.count = count;
+        }
     }
 
-    private static class RequestLogKeyProjection extends MappingProjection<RequestLogKey> {
+    private static class CountRow<T extends Comparable<? super T>> implements Comparable<CountRow<T>> {
+        final Long sourceId;
+        final Long urlId;
+        final T period;
 
-        private final Map<Long, String> sources;
-        private final Map<Long, String> urls;
-
-        public RequestLogKeyProjection(Map<Long, String> sources, Map<Long, String> urls) {
-            super(RequestLogKey.class, QRequestLog.requestLog.all());
-            this.sources = sources;
-            this.urls = urls;
+        CountRow(Long sourceId, Long urlId, T period) {
+            this.sourceId = sourceId;
+            this.urlId = urlId;
+            this.period = period;
         }
 
         @Override
-        protected RequestLogKey map(Tuple row) {
-            return new RequestLogKey(
-                    urls.get(row.get(qRequestLog.urlId)),
-                    sources.get(row.get(qRequestLog.sourceId)),
-                    row.get(qRequestLog.ts)
-            );
+        public int compareTo(CountRow<T> other) {
+            return ComparisonChain.start()
+                    .compare(sourceId, other.sourceId)
+                    .compare(urlId, other.urlId)
+                    .compare(period, other.period)
+                    .result();
+        }
+    }
+
+    private static class Dimension {
+        final RelationalPath<?> table;
+        final NumberPath<Long> id;
+        final StringPath value;
+        final SimpleExpression<Long> nextId;
+        final DimensionIdCache cache;
+
+        Dimension(RelationalPath<?> table, NumberPath<Long> id, StringPath value, SimpleExpression<Long> nextId, DimensionIdCache cache) {
+            this.table = table;
+            this.id = id;
+            this.value = value;
+            this.nextId = nextId;
+            this.cache = cache;
         }
     }
 
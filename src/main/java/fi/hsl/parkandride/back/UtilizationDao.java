@@ -4,43 +4,66 @@
 package fi.hsl.parkandride.back;
 
 import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.QueryFlag;
 import com.querydsl.core.Tuple;
+import com.querydsl.core.dml.StoreClause;
 import com.querydsl.core.types.MappingProjection;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.SubQueryExpression;
 import com.querydsl.core.types.dsl.ComparableExpressionBase;
 import com.querydsl.sql.StatementOptions;
 import com.querydsl.sql.dml.SQLInsertClause;
+import com.querydsl.sql.dml.SQLUpdateClause;
 import com.querydsl.sql.postgresql.PostgreSQLQuery;
 import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
+import fi.hsl.parkandride.back.sql.QFacility;
 import fi.hsl.parkandride.back.sql.QFacilityUtilization;
+import fi.hsl.parkandride.back.sql.QFacilityUtilizationDaily;
+import fi.hsl.parkandride.back.sql.QFacilityUtilizationHourly;
+import fi.hsl.parkandride.back.sql.QFacilityUtilizationRollup;
 import fi.hsl.parkandride.back.sql.QPricing;
+import fi.hsl.parkandride.core.back.PredictionRepository;
 import fi.hsl.parkandride.core.back.UtilizationRepository;
 import fi.hsl.parkandride.core.domain.*;
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
 import fi.hsl.parkandride.core.service.TransactionalRead;
 import fi.hsl.parkandride.core.service.TransactionalWrite;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
 import org.joda.time.Minutes;
-import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import static java.util.Collections.emptyMap;
 import static org.springframework.transaction.annotation.Isolation.READ_COMMITTED;
 import static org.springframework.transaction.annotation.Propagation.MANDATORY;
 
 public class UtilizationDao implements UtilizationRepository {
 
+    // utilizations may be registered with a timestamp a bit in the past, so the change feed overlaps with the previous poll
+    private static final Duration LATEST_UTILIZATION_POLL_OVERLAP = Duration.standardMinutes(5);
+    // picks up changes which the change feed cannot see, e.g. pricing changes made by other cluster nodes
+    private static final Duration LATEST_UTILIZATION_RELOAD_INTERVAL = Duration.standardMinutes(5);
+
+    private static final int UTILIZATION_FETCH_SIZE = 1000;
+    private static final int ROLLUP_BATCH_SIZE = 1000;
+    private static final long HOUR_MILLIS = Duration.standardHours(1).getMillis();
+
     private static final QFacilityUtilization qUtilization = QFacilityUtilization.facilityUtilization;
     private static final QPricing qPricing = QPricing.pricing;
+    private static final QFacilityUtilizationDaily qDaily = QFacilityUtilizationDaily.facilityUtilizationDaily;
+    private static final QFacilityUtilizationHourly qHourly = QFacilityUtilizationHourly.facilityUtilizationHourly;
+    private static final QFacilityUtilizationRollup qRollup = QFacilityUtilizationRollup.facilityUtilizationRollup;
+    private static final QFacility qFacility = QFacility.facility;
     private static final MappingProjection<Utilization> utilizationMapping = new MappingProjection<Utilization>(Utilization.class, qUtilization.all()) {
         @Override
         protected Utilization map(Tuple row) {
@@ -54,6 +77,38 @@ public class UtilizationDao implements UtilizationRepository {
             return u;
         }
     };
+    private static final MappingProjection<DailyUtilization> dailyUtilizationMapping = new MappingProjection<DailyUtilization>(DailyUtilization.class, qDaily.all()) {
+        @Override
+        protected DailyUtilization map(Tuple row) {
+            DailyUtilization d = new DailyUtilization();
+            d.facilityId = row.get(qDaily.facilityId);
+            d.capacityType = row.get(qDaily.capacityType);
+            d.usage = row.get(qDaily.usage);
+            d.date = row.get(qDaily.localDate);
+            d.minSpacesAvailable = row.get(qDaily.minSpacesAvailable);
+            d.maxSpacesAvailable = row.get(qDaily.maxSpacesAvailable);
+            d.minCapacity = row.get(qDaily.minCapacity);
+            d.maxCapacity = row.get(qDaily.maxCapacity);
+            d.lastTimestamp = row.get(qDaily.lastTs);
+            d.lastSpacesAvailable = row.get(qDaily.lastSpacesAvailable);
+            d.lastCapacity = row.get(qDaily.lastCapacity);
+            return d;
+        }
+    };
+    private static final MappingProjection<Utilization> lastUtilizationOfHourMapping = new MappingProjection<Utilization>(Utilization.class,
+            qHourly.facilityId, qHourly.capacityType, qHourly.usage, qHourly.lastTs, qHourly.lastSpacesAvailable, qHourly.lastCapacity) {
+        @Override
+        protected Utilization map(Tuple row) {
+            Utilization u = new Utilization();
+            u.facilityId = row.get(qHourly.facilityId);
+            u.capacityType = row.get(qHourly.capacityType);
+            u.usage = row.get(qHourly.usage);
+            u.timestamp = row.get(qHourly.lastTs);
+            u.spacesAvailable = row.get(qHourly.lastSpacesAvailable);
+            u.capacity = row.get(qHourly.lastCapacity);
+            return u;
+        }
+    };
     private static final RowMapper<Utilization> utilizationRowMapper = (rs, rowNum) -> {
         Utilization u = new Utilization();
         u.facilityId = rs.getLong("facility_id");
@@ -66,9 +121,12 @@ public class UtilizationDao implements UtilizationRepository {
     };
 
     private final PostgreSQLQueryFactory queryFactory;
+    private final LatestUtilizationStore latestUtilizationStore;
+    private volatile DateTime latestUtilizationsPolledAt;
 
-    public UtilizationDao(PostgreSQLQueryFactory queryFactory) {
+    public UtilizationDao(PostgreSQLQueryFactory queryFactory, LatestUtilizationStore latestUtilizationStore) {
         this.queryFactory = queryFactory;
+        this.latestUtilizationStore = latestUtilizationStore;
     }
 
     @TransactionalWrite
@@ -88,27 +146,152 @@ public class UtilizationDao implements UtilizationRepository {
             insertBatch.addBatch();
         });
         insertBatch.execute();
+        updateDailyUtilizations(utilizations);
+        latestUtilizationStore.utilizationsInserted(utilizations);
+    }
+
+    private void updateDailyUtilizations(List<Utilization> utilizations) {
+        Map<UtilizationKey, Map<LocalDate, DailyUtilization>> updates = new LinkedHashMap<>();
+        for (Utilization u : utilizations) {
+            DailyUtilization update = DailyUtilization.from(u);
+            updates.computeIfAbsent(update.getUtilizationKey(), k -> new HashMap<>())
+                    .merge(update.date, update, DailyUtilization::merge);
+        }
+        if (DatabaseUtil.isPostgreSQL(queryFactory.getConnection())) {
+            upsertDailyUtilizationsPostgreSQL(updates);
+        } else {
+            upsertDailyUtilizationsH2(updates);
+        }
+    }
+
+    private void upsertDailyUtilizationsPostgreSQL(Map<UtilizationKey, Map<LocalDate, DailyUtilization>> updates) {
+        SQLInsertClause upsertBatch = queryFactory.insert(qDaily);
+        upsertBatch.addFlag(QueryFlag.Position.END, "" +
+                " ON CONFLICT (facility_id, capacity_type, usage, local_date) DO UPDATE SET" +
+                " min_spaces_available = LEAST(facility_utilization_daily.min_spaces_available, EXCLUDED.min_spaces_available)," +
+                " max_spaces_available = GREATEST(facility_utilization_daily.max_spaces_available, EXCLUDED.max_spaces_available)," +
+                " min_capacity = LEAST(facility_utilization_daily.min_capacity, EXCLUDED.min_capacity)," +
+                " max_capacity = GREATEST(facility_utilization_daily.max_capacity, EXCLUDED.max_capacity)," +
+                " last_ts = GREATEST(facility_utilization_daily.last_ts, EXCLUDED.last_ts)," +
+                " last_spaces_available = CASE WHEN EXCLUDED.last_ts >= facility_utilization_daily.last_ts" +
+                "   THEN EXCLUDED.last_spaces_available ELSE facility_utilization_daily.last_spaces_available END," +
+                " last_capacity = CASE WHEN EXCLUDED.last_ts >= facility_utilization_daily.last_ts" +
+                "   THEN EXCLUDED.last_capacity ELSE facility_utilization_daily.last_capacity END");
+        updates.values().forEach(byDate -> byDate.values().forEach(d -> setDailyUtilization(upsertBatch, d).addBatch()));
+        upsertBatch.execute();
+    }
+
+    private void upsertDailyUtilizationsH2(Map<UtilizationKey, Map<LocalDate, DailyUtilization>> updates) {
+        // XXX: H2 doesn't support ON CONFLICT, so we must merge with the existing rows in memory
+        Set<LocalDate> dates = new HashSet<>();
+        updates.values().forEach(byDate -> dates.addAll(byDate.keySet()));
+        Map<UtilizationKey, Map<LocalDate, DailyUtilization>> existing = new HashMap<>();
+        queryFactory.from(qDaily)
+                .select(dailyUtilizationMapping)
+                .where(qDaily.facilityId.in(updates.keySet().stream().map(key -> key.facilityId).collect(Collectors.toSet())),
+                        qDaily.localDate.in(dates))
+                .fetch()
+                .forEach(d -> existing.computeIfAbsent(d.getUtilizationKey(), k -> new HashMap<>()).put(d.date, d));
+
+        SQLInsertClause insertBatch = queryFactory.insert(qDaily);
+        SQLUpdateClause updateBatch = queryFactory.update(qDaily);
+        updates.forEach((key, byDate) -> byDate.forEach((date, update) -> {
+            DailyUtilization old = existing.getOrDefault(key, emptyMap()).get(date);
+            if (old == null) {
+                setDailyUtilization(insertBatch, update).addBatch();
+            } else {
+                setDailyUtilization(updateBatch, old.merge(update))
+                        .where(qDaily.facilityId.eq(key.facilityId),
+                                qDaily.capacityType.eq(key.capacityType),
+                                qDaily.usage.eq(key.usage),
+                                qDaily.localDate.eq(date))
+                        .addBatch();
+            }
+        }));
+        if (!insertBatch.isEmpty()) {
+            insertBatch.execute();
+        }
+        if (!updateBatch.isEmpty()) {
+            updateBatch.execute();
+        }
+    }
+
+    private static <C extends StoreClause<C>> C setDailyUtilization(C clause, DailyUtilization d) {
+        return clause.set(qDaily.facilityId, d.facilityId)
+                .set(qDaily.capacityType, d.capacityType)
+                .set(qDaily.usage, d.usage)
+                .set(qDaily.localDate, d.date)
+                .set(qDaily.minSpacesAvailable, d.minSpacesAvailable)
+                .set(qDaily.maxSpacesAvailable, d.maxSpacesAvailable)
+                .set(qDaily.minCapacity, d.minCapacity)
+                .set(qDaily.maxCapacity, d.maxCapacity)
+                .set(qDaily.lastTs, d.lastTimestamp)
+                .set(qDaily.lastSpacesAvailable, d.lastSpacesAvailable)
+                .set(qDaily.lastCapacity, d.lastCapacity);
     }
 
     @TransactionalRead
     @Override
     public Set<Utilization> findLatestUtilization(Long... facilityIds) {
+        if (latestUtilizationStore.isEnabled() && latestUtilizationStore.isUpToDateForCurrentTransaction()) {
+            if (!latestUtilizationStore.isLoaded()) {
+                reloadLatestUtilizations(false);
+            }
+            return latestUtilizationStore.find(facilityIds);
+        }
+        return findLatestUtilizationFromDatabase(facilityIds);
+    }
+
+    @Override
+    public Optional<LatestUtilizationVersion> getLatestUtilizationVersion() {
+        if (!latestUtilizationStore.isEnabled()) {
+            return Optional.empty();
+        }
+        return Optional.of(new LatestUtilizationVersion(latestUtilizationStore.getUtilizationsVersion(), latestUtilizationStore.getFacilitiesVersion()));
+    }
+
+    /**
+     * Keeps the latest utilization store of this node in sync with the changes made by the other cluster nodes.
+     */
+    @Scheduled(fixedDelayString = "${utilization.latest.cache.poll:10000}")
+    @TransactionalRead
+    public void refreshLatestUtilizations() {
+        if (!latestUtilizationStore.isEnabled() || !latestUtilizationStore.isLoaded()) {
+            return; // will be loaded lazily on first use
+        }
+        DateTime now = DateTime.now();
+        if (latestUtilizationStore.getLoadedAt().isBefore(now.minus(LATEST_UTILIZATION_RELOAD_INTERVAL))) {
+            reloadLatestUtilizations(true);
+            return;
+        }
+        latestUtilizationStore.merge(queryFactory.from(qUtilization)
+                .select(utilizationMapping)
+                .where(qUtilization.ts.after(latestUtilizationsPolledAt.minus(LATEST_UTILIZATION_POLL_OVERLAP)))
+                .fetch());
+        latestUtilizationsPolledAt = now;
+    }
+
+    private synchronized void reloadLatestUtilizations(boolean force) {
+        if (!force && latestUtilizationStore.isLoaded()) {
+            return; // another thread already loaded it
+        }
+        DateTime now = DateTime.now();
+        Set<UtilizationKey> pricedKeys = findPricedUtilizationKeys(new Long[0]).stream()
+                .map(t -> new UtilizationKey(t.get(qPricing.facilityId), t.get(qPricing.capacityType), t.get(qPricing.usage)))
+                .collect(Collectors.toSet());
+        latestUtilizationStore.load(pricedKeys, findLatestUtilizationFromDatabase());
+        latestUtilizationsPolledAt = now;
+    }
+
+    private Set<Utilization> findLatestUtilizationFromDatabase(Long... facilityIds) {
         Connection connection = queryFactory.getConnection();
-        if (isPostgreSQL(connection)) {
+        if (DatabaseUtil.isPostgreSQL(connection)) {
             return findLatestUtilizationPostgreSQL(facilityIds, new SingleConnectionDataSource(connection, true));
         } else {
             return findLatestUtilizationH2(facilityIds);
         }
     }
 
-    private static boolean isPostgreSQL(Connection connection) {
-        try {
-            return connection.getMetaData().getDatabaseProductName().equals("PostgreSQL");
-        } catch (SQLException e) {
-            throw new DataAccessResourceFailureException("Failed to read connection metadata", e);
-        }
-    }
-
     private Set<Utilization> findLatestUtilizationPostgreSQL(Long[] facilityIds, SingleConnectionDataSource dataSource) {
         NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
         return new LinkedHashSet<>(jdbcTemplate.query("" +
@@ -130,14 +313,18 @@ public class UtilizationDao implements UtilizationRepository {
                 utilizationRowMapper));
     }
 
-    private Set<Utilization> findLatestUtilizationH2(Long[] facilityIds) {
-        List<Tuple> utilizationKeys = queryFactory.from(qPricing)
+    private List<Tuple> findPricedUtilizationKeys(Long[] facilityIds) {
+        return queryFactory.from(qPricing)
                 .select(qPricing.facilityId,
                         qPricing.capacityType,
                         qPricing.usage)
                 .where(facilityIds.length > 0 ? new Predicate[]{qPricing.facilityId.in((Number[]) facilityIds)} : new Predicate[0])
                 .distinct()
                 .fetch();
+    }
+
+    private Set<Utilization> findLatestUtilizationH2(Long[] facilityIds) {
+        List<Tuple> utilizationKeys = findPricedUtilizationKeys(facilityIds);
         // XXX: H2 doesn't support lateral join, so we must do loop unrolling with union
         List<SubQueryExpression<Utilization>> queries = new ArrayList<>();
         for (Tuple utilizationKey : utilizationKeys) {
@@ -195,41 +382,253 @@ public class UtilizationDao implements UtilizationRepository {
     @Transactional(readOnly = true, isolation = READ_COMMITTED, propagation = MANDATORY)
     @Override
     public List<Utilization> findUtilizationsWithResolution(UtilizationKey utilizationKey, DateTime start, DateTime end, Minutes resolution) {
-        ArrayList<Utilization> results = new ArrayList<>();
+        List<Utilization> results = new ArrayList<>();
+        resample(utilizationKey, start, end, resolution, (index, instant, spacesAvailable, capacity) -> {
+            Utilization u = new Utilization();
+            u.facilityId = utilizationKey.facilityId;
+            u.capacityType = utilizationKey.capacityType;
+            u.usage = utilizationKey.usage;
+            u.timestamp = instant;
+            u.spacesAvailable = spacesAvailable;
+            u.capacity = capacity;
+            results.add(u);
+        });
+        return results;
+    }
+
+    @Transactional(readOnly = true, isolation = READ_COMMITTED, propagation = MANDATORY)
+    @Override
+    public TimeSeries findSpacesAvailableWithPredictionResolution(UtilizationKey utilizationKey, DateTime start, DateTime end) {
+        TimeSeries series = TimeSeries.between(start, end);
+        resample(utilizationKey, start, end, PredictionRepository.PREDICTION_RESOLUTION,
+                (index, instant, spacesAvailable, capacity) -> series.set(index, spacesAvailable));
+        return series;
+    }
+
+    private interface Sample {
+        void accept(int index, DateTime instant, int spacesAvailable, int capacity);
+    }
+
+    /**
+     * Single pass over the database cursor: passes the latest utilization at or before each instant
+     * to the sample consumer, keeping only the current utilization in memory.
+     */
+    private void resample(UtilizationKey utilizationKey, DateTime start, DateTime end, Minutes resolution, Sample sample) {
         Optional<Utilization> first = findUtilizationAtInstant(utilizationKey, start);
-        try (CloseableIterator<Utilization> rest = findUtilizationsBetween(utilizationKey, start, end)) {
-            LinkedList<Utilization> utilizations = Stream.concat(
-                    StreamUtil.asStream(first),
-                    StreamUtil.asStream(rest))
-                    .collect(Collectors.toCollection(LinkedList::new));
-
-            Utilization current = null;
-            for (DateTime instant = start; !instant.isAfter(end); instant = instant.plus(resolution)) {
-                while (!utilizations.isEmpty() && !utilizations.getFirst().timestamp.isAfter(instant)) {
-                    current = utilizations.removeFirst();
+        boolean hasCurrent = first.isPresent();
+        int spacesAvailable = first.map(u -> u.spacesAvailable).orElse(0);
+        int capacity = first.map(u -> u.capacity).orElse(0);
+
+        PostgreSQLQuery<Tuple> q = queryFactory.from(qUtilization)
+                .select(qUtilization.ts, qUtilization.spacesAvailable, qUtilization.capacity)
+                .where(qUtilization.facilityId.eq(utilizationKey.facilityId),
+                        qUtilization.capacityType.eq(utilizationKey.capacityType),
+                        qUtilization.usage.eq(utilizationKey.usage),
+                        qUtilization.ts.between(start, end))
+                .orderBy(qUtilization.ts.asc());
+        q.setStatementOptions(StatementOptions.builder().setFetchSize(UTILIZATION_FETCH_SIZE).build());
+        try (CloseableIterator<Tuple> rows = q.iterate()) {
+            Tuple next = rows.hasNext() ? rows.next() : null;
+            int index = 0;
+            for (DateTime instant = start; !instant.isAfter(end); instant = instant.plus(resolution), index++) {
+                while (next != null && !next.get(qUtilization.ts).isAfter(instant)) {
+                    hasCurrent = true;
+                    spacesAvailable = next.get(qUtilization.spacesAvailable);
+                    capacity = next.get(qUtilization.capacity);
+                    next = rows.hasNext() ? rows.next() : null;
                 }
-                if (current != null) {
-                    current.timestamp = instant;
-                    results.add(current.copy());
+                if (hasCurrent) {
+                    sample.accept(index, instant, spacesAvailable, capacity);
                 }
             }
         }
-        return results;
     }
 
     @Transactional(readOnly = true, isolation = READ_COMMITTED, propagation = MANDATORY)
     @Override
     public CloseableIterator<Utilization> findUtilizations(UtilizationSearch search) {
-        // TODO: add support for JDBC setFetchSize to QueryDSL, without it PostgreSQL will not stream results, but instead reads all results to memory
+        // PostgreSQL streams the results only when the fetch size is set and the query runs in a transaction
         final PostgreSQLQuery<Utilization> q = queryFactory.from(qUtilization).select(utilizationMapping);
         q.where(qUtilization.ts.between(search.start, search.end));
         addCriteria(q, search.facilityIds, qUtilization.facilityId);
         addCriteria(q, search.capacityTypes, qUtilization.capacityType);
         addCriteria(q, search.usages, qUtilization.usage);
-        q.setStatementOptions(StatementOptions.builder().setFetchSize(100).build());
+        q.setStatementOptions(StatementOptions.builder().setFetchSize(UTILIZATION_FETCH_SIZE).build());
         return q.orderBy(qUtilization.ts.asc()).iterate();
     }
 
+    @Transactional(readOnly = true, isolation = READ_COMMITTED, propagation = MANDATORY)
+    @Override
+    public CloseableIterator<DailyUtilization> findDailyUtilizations(UtilizationSearch search) {
+        final PostgreSQLQuery<DailyUtilization> q = queryFactory.from(qDaily).select(dailyUtilizationMapping);
+        q.where(qDaily.localDate.between(search.start.toLocalDate(), search.end.toLocalDate()));
+        addCriteria(q, search.facilityIds, qDaily.facilityId);
+        addCriteria(q, search.capacityTypes, qDaily.capacityType);
+        addCriteria(q, search.usages, qDaily.usage);
+        q.setStatementOptions(StatementOptions.builder().setFetchSize(UTILIZATION_FETCH_SIZE).build());
+        return q.orderBy(qDaily.localDate.asc(), qDaily.facilityId.asc(), qDaily.capacityType.asc(), qDaily.usage.asc()).iterate();
+    }
+
+    @Transactional(readOnly = true, isolation = READ_COMMITTED, propagation = MANDATORY)
+    @Override
+    public CloseableIterator<Utilization> findLastUtilizationsOfHours(UtilizationSearch search) {
+        if (!isWholeHours(search) || !isRolledUp(search.facilityIds, search.end)) {
+            return findUtilizations(search);
+        }
+        final PostgreSQLQuery<Utilization> q = queryFactory.from(qHourly).select(lastUtilizationOfHourMapping);
+        q.where(qHourly.ts.between(search.start, search.end));
+        addCriteria(q, search.facilityIds, qHourly.facilityId);
+        addCriteria(q, search.capacityTypes, qHourly.capacityType);
+        addCriteria(q, search.usages, qHourly.usage);
+        q.setStatementOptions(StatementOptions.builder().setFetchSize(UTILIZATION_FETCH_SIZE).build());
+        return q.orderBy(qHourly.lastTs.asc()).iterate();
+    }
+
+    /**
+     * The last utilization of a partial hour at either end of the search may differ from that of the whole hour.
+     */
+    private static boolean isWholeHours(UtilizationSearch search) {
+        return search.start.getMillis() % HOUR_MILLIS == 0
+                && (search.end.getMillis() + 1) % HOUR_MILLIS == 0;
+    }
+
+    private boolean isRolledUp(Set<Long> facilityIds, DateTime end) {
+        PostgreSQLQuery<Long> q = queryFactory.from(qFacility)
+                .leftJoin(qRollup).on(qRollup.facilityId.eq(qFacility.id))
+                .select(qFacility.id.count())
+                .where(qRollup.rolledUpUntil.isNull().or(qRollup.rolledUpUntil.loe(end)));
+        addCriteria(q, facilityIds, qFacility.id);
+        return q.fetchOne() == 0;
+    }
+
+    @TransactionalWrite
+    @Override
+    public DateTime rollUpUtilizations(long facilityId, DateTime end, Duration maxRange) {
+        DateTime rolledUpUntil = queryFactory.from(qRollup)
+                .select(qRollup.rolledUpUntil)
+                .where(qRollup.facilityId.eq(facilityId))
+                .fetchOne();
+        boolean isNew = rolledUpUntil == null;
+        if (isNew) {
+            DateTime oldest = queryFactory.from(qUtilization)
+                    .select(qUtilization.ts.min())
+                    .where(qUtilization.facilityId.eq(facilityId))
+                    .fetchOne();
+            // also facilities without utilizations are marked rolled up, so that searches of all facilities can use the roll-ups
+            rolledUpUntil = oldest == null || !oldest.isBefore(end) ? end : floorToHour(oldest);
+        } else if (!rolledUpUntil.isBefore(end)) {
+            return rolledUpUntil;
+        }
+        DateTime rangeEnd = floorToHour(rolledUpUntil.plus(Math.max(maxRange.getMillis(), HOUR_MILLIS)));
+        if (rangeEnd.isAfter(end)) {
+            rangeEnd = end;
+        }
+        if (rolledUpUntil.isBefore(rangeEnd)) {
+            rollUpUtilizations(facilityId, rolledUpUntil, rangeEnd);
+        }
+
+        if (isNew) {
+            queryFactory.insert(qRollup)
+                    .set(qRollup.facilityId, facilityId)
+                    .set(qRollup.rolledUpUntil, rangeEnd)
+                    .execute();
+        } else {
+            queryFactory.update(qRollup)
+                    .set(qRollup.rolledUpUntil, rangeEnd)
+                    .where(qRollup.facilityId.eq(facilityId))
+                    .execute();
+        }
+        return rangeEnd;
+    }
+
+    private void rollUpUtilizations(long facilityId, DateTime start, DateTime end) {
+        PostgreSQLQuery<Utilization> q = queryFactory.from(qUtilization)
+                .select(utilizationMapping)
+                .where(qUtilization.facilityId.eq(facilityId),
+                        qUtilization.ts.goe(start),
+                        qUtilization.ts.before(end))
+                .orderBy(qUtilization.capacityType.asc(), qUtilization.usage.asc(), qUtilization.ts.asc());
+        q.setStatementOptions(StatementOptions.builder().setFetchSize(UTILIZATION_FETCH_SIZE).build());
+        SQLInsertClause insertBatch = queryFactory.insert(qHourly);
+        int batchSize = 0;
+        try (CloseableIterator<Utilization> utilizations = q.iterate()) {
+            HourlyUtilization hour = null;
+            while (utilizations.hasNext()) {
+                Utilization u = utilizations.next();
+                DateTime hourStart = floorToHour(u.timestamp);
+                if (hour == null || !hour.key.equals(u.getUtilizationKey()) || !hour.start.equals(hourStart)) {
+                    if (hour != null) {
+                        hour.addInsert(insertBatch);
+                        if (++batchSize == ROLLUP_BATCH_SIZE) {
+                            insertBatch.execute();
+                            insertBatch = queryFactory.insert(qHourly);
+                            batchSize = 0;
+                        }
+                    }
+                    hour = new HourlyUtilization(u.getUtilizationKey(), hourStart);
+                }
+                hour.add(u);
+            }
+            if (hour != null) {
+                hour.addInsert(insertBatch);
+                batchSize++;
+            }
+        }
+        if (batchSize > 0) {
+            insertBatch.execute();
+        }
+    }
+
+    private static DateTime floorToHour(DateTime instant) {
+        return instant.withMillis(Math.floorDiv(instant.getMillis(), HOUR_MILLIS) * HOUR_MILLIS);
+    }
+
+    /**
+     * Summary of the utilizations of one utilization key during one hour.
+     */
+    private static class HourlyUtilization {
+        final UtilizationKey key;
+        final DateTime start;
+        int minSpacesAvailable, maxSpacesAvailable, minCapacity, maxCapacity;
+        Utilization last;
+
+        HourlyUtilization(UtilizationKey key, DateTime start) {
+            this.key = key;
+            this.start = start;
+        }
+
+        /**
+         * The utilizations must be added in timestamp order.
+         */
+        void add(Utilization u) {
+            if (last == null) {
+                minSpacesAvailable = maxSpacesAvailable = u.spacesAvailable;
+                minCapacity = maxCapacity = u.capacity;
+            } else {
+                minSpacesAvailable = Math.min(minSpacesAvailable, u.spacesAvailable);
+                maxSpacesAvailable = Math.max(maxSpacesAvailable, u.spacesAvailable);
+                minCapacity = Math.min(minCapacity, u.capacity);
+                maxCapacity = Math.max(maxCapacity, u.capacity);
+            }
+            last = u;
+        }
+
+        void addInsert(SQLInsertClause insertBatch) {
+            insertBatch.set(qHourly.facilityId, key.facilityId)
+                    .set(qHourly.capacityType, key.capacityType)
+                    .set(qHourly.usage, key.usage)
+                    .set(qHourly.ts, start)
+                    .set(qHourly.minSpacesAvailable, minSpacesAvailable)
+                    .set(qHourly.maxSpacesAvailable, maxSpacesAvailable)
+                    .set(qHourly.minCapacity, minCapacity)
+                    .set(qHourly.maxCapacity, maxCapacity)
+                    .set(qHourly.lastTs, last.timestamp)
+                    .set(qHourly.lastSpacesAvailable, last.spacesAvailable)
+                    .set(qHourly.lastCapacity, last.capacity)
+                    .addBatch();
+        }
+    }
+
     private static <S, T extends Comparable<T>> PostgreSQLQuery<S> addCriteria(PostgreSQLQuery<S> q, Collection<T> collection, ComparableExpressionBase<T> path) {
         switch (collection.size()) {
             case 0:
@@ -0,0 +1,89 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back.migration;
+
+import fi.hsl.parkandride.core.domain.CapacityType;
+import fi.hsl.parkandride.core.domain.DailyUtilization;
+import fi.hsl.parkandride.core.domain.Usage;
+import fi.hsl.parkandride.core.domain.Utilization;
+import org.flywaydb.core.api.migration.spring.SpringJdbcMigration;
+import org.joda.time.DateTime;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds facility_utilization_daily, which V28 filled using the dates of the database, with the same
+ * {@link DailyUtilization#from} as the incremental updates, so that all days are in the same time zone.
+ */
+public class V34__Rebuild_daily_utilizations implements SpringJdbcMigration {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_SQL = "" +
+            "INSERT INTO facility_utilization_daily (facility_id, capacity_type, usage, local_date," +
+            " min_spaces_available, max_spaces_available, min_capacity, max_capacity," +
+            " last_ts, last_spaces_available, last_capacity)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Override
+    public void migrate(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("DELETE FROM facility_utilization_daily");
+        jdbcTemplate.setFetchSize(FETCH_SIZE);
+        List<DailyUtilization> batch = new ArrayList<>();
+        DailyUtilization[] day = new DailyUtilization[1];
+        jdbcTemplate.query("" +
+                "SELECT facility_id, capacity_type, usage, ts, spaces_available, capacity" +
+                " FROM facility_utilization" +
+                " ORDER BY facility_id, capacity_type, usage, ts", rs -> {
+            Utilization u = new Utilization();
+            u.facilityId = rs.getLong("facility_id");
+            u.capacityType = CapacityType.valueOf(rs.getString("capacity_type"));
+            u.usage = Usage.valueOf(rs.getString("usage"));
+            u.timestamp = new DateTime(rs.getTimestamp("ts").toInstant().toEpochMilli());
+            u.spacesAvailable = rs.getInt("spaces_available");
+            u.capacity = rs.getInt("capacity");
+            DailyUtilization update = DailyUtilization.from(u);
+            if (day[0] != null && day[0].getUtilizationKey().equals(update.getUtilizationKey()) && day[0].date.equals(update.date)) {
+                day[0].merge(update);
+                return;
+            }
+            if (day[0] != null) {
+                batch.add(day[0]);
+                if (batch.size() == BATCH_SIZE) {
+                    insert(jdbcTemplate, batch);
+                }
+            }
+            day[0] = update;
+        });
+        if (day[0] != null) {
+            batch.add(day[0]);
+        }
+        insert(jdbcTemplate, batch);
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, List<DailyUtilization> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, d) -> {
+            ps.setLong(1, d.facilityId);
+            ps.setString(2, d.capacityType.name());
+            ps.setString(3, d.usage.name());
+            ps.setDate(4, Date.valueOf(d.date.toString()));
+            ps.setInt(5, d.minSpacesAvailable);
+            ps.setInt(6, d.maxSpacesAvailable);
+            ps.setInt(7, d.minCapacity);
+            ps.setInt(8, d.maxCapacity);
+            ps.setTimestamp(9, new Timestamp(d.lastTimestamp.getMillis()));
+            ps.setInt(10, d.lastSpacesAvailable);
+            ps.setInt(11, d.lastCapacity);
+        });
+        batch.clear();
+    }
+}
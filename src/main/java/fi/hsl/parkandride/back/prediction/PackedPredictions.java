@@ -0,0 +1,132 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back.prediction;
+
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
+import org.joda.time.DateTime;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Binary format of the facility_prediction.spaces_available column: the predictions of the 24 hour
+ * window packed into a few hundred bytes instead of 288 INT columns.
+ * <p>
+ * Format version 1: the version byte, the number of missing values at the start of the window,
+ * the number of values and then for each value either 0 (missing) or 1 + the zigzag encoded
+ * difference to the previous value. All numbers are unsigned varints, so a typical difference
+ * takes a single byte.
+ */
+final class PackedPredictions {
+
+    private static final int VERSION = 1;
+    private static final int MISSING = 0;
+
+    private PackedPredictions() {
+    }
+
+    /**
+     * @param start start of the prediction window; the series must not start before it
+     */
+    static byte[] pack(DateTime start, TimeSeries predictions) {
+        int offset = -predictions.indexOf(start);
+        if (offset < 0) {
+            throw new IllegalArgumentException("predictions start before " + start + ": " + predictions.getStart());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(3 + predictions.size() + 16);
+        out.write(VERSION);
+        writeVarint(out, offset);
+        writeVarint(out, predictions.size());
+        int previous = 0;
+        for (int i = 0; i < predictions.size(); i++) {
+            if (predictions.hasValue(i)) {
+                int value = predictions.get(i);
+                writeVarint(out, 1 + zigzag(value - previous));
+                previous = value;
+            } else {
+                writeVarint(out, MISSING);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes only the values up to the index.
+     *
+     * @param index number of prediction resolution steps from the start of the prediction window
+     * @return the value or null if there is none
+     */
+    static Integer get(byte[] packed, int index) {
+        Reader in = new Reader(packed);
+        int offset = in.readVarint();
+        int size = in.readVarint();
+        if (index < offset || index >= offset + size) {
+            return null;
+        }
+        int value = 0;
+        int code = MISSING;
+        for (int i = offset; i <= index; i++) {
+            code = in.readVarint();
+            if (code != MISSING) {
+                value += unzigzag(code - 1);
+            }
+        }
+        return code == MISSING ? null : value;
+    }
+
+    static TimeSeries unpack(DateTime start, byte[] packed) {
+        Reader in = new Reader(packed);
+        int offset = in.readVarint();
+        int size = in.readVarint();
+        TimeSeries series = new TimeSeries(start.plus(offset * TimeSeries.STEP_MILLIS), size);
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            int code = in.readVarint();
+            if (code != MISSING) {
+                value += unzigzag(code - 1);
+                series.set(i, value);
+            }
+        }
+        return series;
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7F) != 0) {
+            out.write((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            if (bytes.length == 0 || bytes[0] != VERSION) {
+                throw new IllegalArgumentException("unsupported packed predictions format");
+            }
+            this.bytes = bytes;
+            this.position = 1;
+        }
+
+        int readVarint() {
+            int n = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                n |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return n;
+                }
+            }
+        }
+    }
+}
@@ -3,13 +3,14 @@
 
 package fi.hsl.parkandride.back.prediction;
 
-import com.querydsl.core.QueryException;
+import com.querydsl.core.QueryFlag;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.*;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.sql.dml.SQLInsertClause;
 import com.querydsl.sql.dml.SQLUpdateClause;
 import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
+import fi.hsl.parkandride.back.DatabaseUtil;
 import fi.hsl.parkandride.back.TimeUtil;
 import fi.hsl.parkandride.back.sql.QFacilityPrediction;
 import fi.hsl.parkandride.back.sql.QFacilityPredictionHistory;
@@ -17,32 +18,28 @@ import fi.hsl.parkandride.core.back.PredictionRepository;
 import fi.hsl.parkandride.core.domain.UtilizationKey;
 import fi.hsl.parkandride.core.domain.prediction.Prediction;
 import fi.hsl.parkandride.core.domain.prediction.PredictionBatch;
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
 import fi.hsl.parkandride.core.service.TransactionalRead;
 import fi.hsl.parkandride.core.service.TransactionalWrite;
 import fi.hsl.parkandride.core.service.ValidationService;
 import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 import org.joda.time.format.DateTimeFormat;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.function.BinaryOperator;
 import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.joda.time.Duration.standardDays;
 import static org.joda.time.Duration.standardHours;
 import static org.joda.time.Duration.standardMinutes;
 
 public class PredictionDao implements PredictionRepository {
 
-    private static final Logger log = LoggerFactory.getLogger(PredictionDao.class);
-
     private static final QFacilityPrediction qPrediction = QFacilityPrediction.facilityPrediction;
     private static final QFacilityPredictionHistory qPredictionHistory = QFacilityPredictionHistory.facilityPredictionHistory;
     private static final Map<String, Path<Integer>> spacesAvailableColumnsByHHmm = Collections.unmodifiableMap(
@@ -53,6 +50,13 @@ public class PredictionDao implements PredictionRepository {
                             p -> p.getMetadata().getName().substring("spacesAvailableAt".length()),
                             Function.identity())));
 
+    // in UTC, like the column names
+    private static final List<Path<Integer>> spacesAvailableColumnsBySlotOfDay = Collections.unmodifiableList(
+            IntStream.range(0, (int) (standardDays(1).getMillis() / TimeSeries.STEP_MILLIS))
+                    .mapToObj(slot -> DateTimeFormat.forPattern("HHmm").withZoneUTC().print(slot * TimeSeries.STEP_MILLIS))
+                    .map(spacesAvailableColumnsByHHmm::get)
+                    .collect(toList()));
+
     public static final List<Duration> predictionsDistancesToStore = Collections.unmodifiableList(
             Arrays.<Duration>asList(standardMinutes(5), standardMinutes(10), standardMinutes(15), standardMinutes(20),
                     standardMinutes(30), standardMinutes(45), standardHours(1), standardHours(2), standardHours(4),
@@ -60,158 +64,190 @@ public class PredictionDao implements PredictionRepository {
 
     private final PostgreSQLQueryFactory queryFactory;
     private final ValidationService validationService;
-
-    public PredictionDao(PostgreSQLQueryFactory queryFactory, ValidationService validationService) {
+    private final boolean packedStorage;
+
+    /**
+     * @param packedStorage whether to write the predictions into the packed spaces_available column
+     *                      instead of the spaces_available_at_* columns. Both formats are always readable,
+     *                      so the storage mode can be changed at any time.
+     */
+    public PredictionDao(PostgreSQLQueryFactory queryFactory, ValidationService validationService, boolean packedStorage) {
         this.queryFactory = queryFactory;
         this.validationService = validationService;
+        this.packedStorage = packedStorage;
     }
 
     @TransactionalWrite
     @Override
     public void updatePredictions(PredictionBatch pb, Long predictorId) {
-        validationService.validate(pb);
-        UtilizationKey utilizationKey = pb.utilizationKey;
-        DateTime start = toPredictionResolution(pb.sourceTimestamp);
-        List<Prediction> predictions = normalizeToPredictionWindow(start, pb.predictions);
-
-        long updatedRows = maybeUpdatePredictionLookupTable(utilizationKey, start, predictions);
-        if (updatedRows == 0) {
-            initializePredictionLookupTable(utilizationKey);
-            updatePredictions(pb, predictorId); // retry now that the lookup table exists
-        } else {
-            savePredictionHistory(predictorId, start, filterToSelectedPredictionDistances(start, predictions));
-        }
+        updatePredictions(Collections.singletonMap(predictorId, pb));
     }
 
     @TransactionalWrite
     @Override
-    public void updateOnlyPredictionHistory(PredictionBatch pb, Long predictorId) {
-        validationService.validate(pb);
-        DateTime start = toPredictionResolution(pb.sourceTimestamp);
-        List<Prediction> predictions = normalizeToPredictionWindow(start, pb.predictions);
-        savePredictionHistory(predictorId, start, filterToSelectedPredictionDistances(start, predictions));
+    public void updatePredictions(Map<Long, PredictionBatch> predictionsByPredictorId) {
+        List<NormalizedPredictions> batches = normalize(predictionsByPredictorId);
+        // many predictors of the same utilization key all write the same lookup table row, so only the last one matters
+        Map<UtilizationKey, NormalizedPredictions> latestByUtilizationKey = new LinkedHashMap<>();
+        batches.forEach(np -> latestByUtilizationKey.put(np.utilizationKey, np));
+        updatePredictionLookupTable(latestByUtilizationKey);
+        savePredictionHistory(batches);
     }
 
-    private List<Prediction> filterToSelectedPredictionDistances(DateTime start, List<Prediction> predictions) {
-        return predictions.stream()
-                .filter(p -> predictionsDistancesToStore.contains(new Duration(start, p.timestamp)))
-                .collect(toList());
+    @TransactionalWrite
+    @Override
+    public void updateOnlyPredictionHistory(PredictionBatch pb, Long predictorId) {
+        savePredictionHistory(normalize(Collections.singletonMap(predictorId, pb)));
     }
 
-    private static List<Prediction> normalizeToPredictionWindow(DateTime start, List<Prediction> predictions) {
-        DateTime end = start.plus(PREDICTION_WINDOW).minus(PREDICTION_RESOLUTION);
-        return predictions.stream()
-                // remove too fine-grained predictions
-                .collect(groupByRoundedTimeKeepingNewest()) // -> Map<DateTime, Prediction>
-                .values().stream()
-                // normalize resolution
-                .map(roundTimestampsToPredictionResolution())
-                // interpolate too coarse-grained predictions
-                .sorted(Comparator.comparing(p -> p.timestamp))
-                .map(Collections::singletonList)                            // 1. wrap values in immutable singleton lists
-                .reduce(new ArrayList<>(), linearInterpolation()).stream()  // 2. mutable ArrayList as accumulator
-                // normalize range
-                .filter(isWithin(start, end)) // after interpolation because of PredictionDaoTest.does_linear_interpolation_also_between_values_outside_the_prediction_window
-                .collect(toList());
+    private List<NormalizedPredictions> normalize(Map<Long, PredictionBatch> predictionsByPredictorId) {
+        List<NormalizedPredictions> batches = new ArrayList<>(predictionsByPredictorId.size());
+        predictionsByPredictorId.forEach((predictorId, pb) -> {
+            validationService.validate(pb);
+            DateTime start = toPredictionResolution(pb.sourceTimestamp);
+            batches.add(new NormalizedPredictions(predictorId, pb.utilizationKey, start, normalizeToPredictionWindow(start, pb.predictions)));
+        });
+        return batches;
     }
 
-    private static Predicate<Prediction> isWithin(DateTime start, DateTime end) {
-        return p -> !p.timestamp.isBefore(start) && !p.timestamp.isAfter(end);
+    private static class NormalizedPredictions {
+        final Long predictorId;
+        final UtilizationKey utilizationKey;
+        final DateTime start;
+        final TimeSeries predictions;
+
+        NormalizedPredictions(Long predictorId, UtilizationKey utilizationKey, DateTime start, TimeSeries predictions) {
+            this.predictorId = predictorId;
+            this.utilizationKey = utilizationKey;
+            this.start = start;
+            this.predictions = predictions;
+        }
     }
 
-    private static Function<Prediction, Prediction> roundTimestampsToPredictionResolution() {
-        return p -> new Prediction(toPredictionResolution(p.timestamp), p.spacesAvailable);
+    private static List<Prediction> selectPredictionDistancesToStore(DateTime start, TimeSeries predictions) {
+        List<Prediction> selected = new ArrayList<>();
+        for (Duration distance : predictionsDistancesToStore) {
+            int i = predictions.indexOf(start.plus(distance));
+            if (predictions.hasValue(i)) {
+                selected.add(new Prediction(predictions.timestampAt(i), predictions.get(i)));
+            }
+        }
+        return selected;
     }
 
-    private static Collector<Prediction, ?, Map<DateTime, Prediction>> groupByRoundedTimeKeepingNewest() {
-        return Collectors.toMap(
-                p -> toPredictionResolution(p.timestamp),
-                Function.identity(),
-                (a, b) -> a.timestamp.isAfter(b.timestamp) ? a : b,
-                HashMap::new
-        );
+    static TimeSeries normalizeToPredictionWindow(DateTime start, List<Prediction> predictions) {
+        DateTime end = start.plus(PREDICTION_WINDOW).minus(PREDICTION_RESOLUTION);
+        // slice after interpolation because of PredictionDaoTest.does_linear_interpolation_also_between_values_outside_the_prediction_window
+        return TimeSeries.fromPredictions(start, predictions).slice(start, end);
     }
 
-    private static BinaryOperator<List<Prediction>> linearInterpolation() {
-        return (interpolated, input) -> {
-            if (input.size() != 1) {
-                throw new IllegalArgumentException("expected one element, but got " + input);
-            }
-            if (interpolated.isEmpty()) {
-                interpolated.addAll(input);
-                return interpolated;
+    private void updatePredictionLookupTable(Map<UtilizationKey, NormalizedPredictions> predictionsByUtilizationKey) {
+        if (predictionsByUtilizationKey.isEmpty()) {
+            return;
+        }
+        Map<UtilizationKey, Boolean> isPackedByUtilizationKey = findPredictionLookupTableRows(predictionsByUtilizationKey.keySet());
+
+        SQLInsertClause insert = queryFactory.insert(qPrediction);
+        SQLUpdateClause update = queryFactory.update(qPrediction);
+        for (NormalizedPredictions np : predictionsByUtilizationKey.values()) {
+            Boolean isPacked = isPackedByUtilizationKey.get(np.utilizationKey);
+            if (isPacked == null) {
+                insert.set(qPrediction.facilityId, np.utilizationKey.facilityId)
+                        .set(qPrediction.capacityType, np.utilizationKey.capacityType)
+                        .set(qPrediction.usage, np.utilizationKey.usage)
+                        .addBatch();
             }
-            Prediction previous = interpolated.get(interpolated.size() - 1);
-            Prediction next = input.get(0);
-            for (DateTime timestamp = previous.timestamp.plus(PREDICTION_RESOLUTION);
-                 timestamp.isBefore(next.timestamp);
-                 timestamp = timestamp.plus(PREDICTION_RESOLUTION)) {
-                double totalDuration = new Duration(previous.timestamp, next.timestamp).getMillis();
-                double currentDuration = new Duration(previous.timestamp, timestamp).getMillis();
-                double proportion = currentDuration / totalDuration;
-                int totalChange = next.spacesAvailable - previous.spacesAvailable;
-                int currentChange = (int) Math.round(totalChange * proportion);
-                int spacesAvailable = previous.spacesAvailable + currentChange;
-                interpolated.add(new Prediction(timestamp, spacesAvailable));
+            update.where(qPrediction.facilityId.eq(np.utilizationKey.facilityId),
+                    qPrediction.capacityType.eq(np.utilizationKey.capacityType),
+                    qPrediction.usage.eq(np.utilizationKey.usage))
+                    .set(qPrediction.start, np.start);
+            if (packedStorage) {
+                update.set(qPrediction.spacesAvailable, PackedPredictions.pack(np.start, np.predictions));
+                if (!Boolean.TRUE.equals(isPacked)) {
+                    // the row is new or in the old format: clear the columns, so that the row stays narrow
+                    spacesAvailableColumnsBySlotOfDay.forEach(update::setNull);
+                }
+            } else {
+                update.setNull(qPrediction.spacesAvailable);
+                for (int i = 0; i < np.predictions.size(); i++) {
+                    if (np.predictions.hasValue(i)) {
+                        update.set(spacesAvailableAt(np.predictions.getStart().getMillis() + i * TimeSeries.STEP_MILLIS), np.predictions.get(i));
+                    }
+                }
             }
-            interpolated.add(next);
-            return interpolated;
-        };
-    }
-
-    private void initializePredictionLookupTable(UtilizationKey utilizationKey) {
-        queryFactory.insert(qPrediction)
-                .set(qPrediction.facilityId, utilizationKey.facilityId)
-                .set(qPrediction.capacityType, utilizationKey.capacityType)
-                .set(qPrediction.usage, utilizationKey.usage)
-                .execute();
+            update.addBatch();
+        }
+        if (!insert.isEmpty()) {
+            insert.execute();
+        }
+        update.execute();
     }
 
-    private long maybeUpdatePredictionLookupTable(UtilizationKey utilizationKey, DateTime start, List<Prediction> predictions) {
-        SQLUpdateClause update = queryFactory.update(qPrediction)
-                .where(qPrediction.facilityId.eq(utilizationKey.facilityId),
-                        qPrediction.capacityType.eq(utilizationKey.capacityType),
-                        qPrediction.usage.eq(utilizationKey.usage))
-                .set(qPrediction.start, start);
-        predictions.forEach(p -> update.set(spacesAvailableAt(p.timestamp), p.spacesAvailable));
-
-        return update.execute();
+    /**
+     * @return whether the row of each existing utilization key is in the packed format
+     */
+    private Map<UtilizationKey, Boolean> findPredictionLookupTableRows(Set<UtilizationKey> utilizationKeys) {
+        Set<Long> facilityIds = utilizationKeys.stream().map(key -> key.facilityId).collect(toSet());
+        Map<UtilizationKey, Boolean> isPackedByUtilizationKey = new HashMap<>();
+        queryFactory.from(qPrediction)
+                .select(qPrediction.facilityId, qPrediction.capacityType, qPrediction.usage, qPrediction.spacesAvailable.isNotNull())
+                .where(qPrediction.facilityId.in(facilityIds))
+                .fetch()
+                .forEach(row -> isPackedByUtilizationKey.put(toUtilizationKey(row), row.get(3, Boolean.class)));
+        return isPackedByUtilizationKey;
     }
 
-    private void savePredictionHistory(Long predictorId, DateTime start, List<Prediction> predictions) {
-        if (predictions.isEmpty()) {
-            return;
-        }
-        List<SubQueryExpression<DateTime>> queries = new ArrayList<>();
-        for (Prediction p : predictions) {
-            queries.add(queryFactory.from(qPredictionHistory)
-                    .select(qPredictionHistory.ts)
-                    .where(qPredictionHistory.predictorId.eq(predictorId),
-                            qPredictionHistory.forecastDistanceInMinutes.eq(((int) new Duration(start, p.timestamp).getStandardMinutes())),
-                            qPredictionHistory.ts.eq(p.timestamp)));
+    private void savePredictionHistory(List<NormalizedPredictions> batches) {
+        SQLInsertClause insert = queryFactory.insert(qPredictionHistory);
+        boolean isPostgreSQL = DatabaseUtil.isPostgreSQL(queryFactory.getConnection());
+        Set<List<Object>> conflicts = isPostgreSQL ? Collections.emptySet() : findPredictionHistoryConflicts(batches);
+        for (NormalizedPredictions np : batches) {
+            for (Prediction p : selectPredictionDistancesToStore(np.start, np.predictions)) {
+                int forecastDistanceInMinutes = (int) new Duration(np.start, p.timestamp).getStandardMinutes();
+                if (conflicts.contains(Arrays.asList(np.predictorId, forecastDistanceInMinutes, p.timestamp))) {
+                    continue;
+                }
+                insert.set(qPredictionHistory.predictorId, np.predictorId)
+                        .set(qPredictionHistory.forecastDistanceInMinutes, forecastDistanceInMinutes)
+                        .set(qPredictionHistory.ts, p.timestamp)
+                        .set(qPredictionHistory.spacesAvailable, p.spacesAvailable)
+                        .addBatch();
+            }
         }
-        Set<DateTime> conflicts = new HashSet<>(queryFactory.query().unionAll(queries).fetch());
-        // XXX: avoid an infinite retry loop by not inserting predictions which we know to conflict
-        predictions = predictions.stream()
-                .filter(p -> !conflicts.contains(p.timestamp))
-                .collect(toList());
-        if (predictions.isEmpty()) {
+        if (insert.isEmpty()) {
             return;
         }
+        if (isPostgreSQL) {
+            insert.addFlag(QueryFlag.Position.END, " ON CONFLICT DO NOTHING");
+        }
+        insert.execute();
+    }
 
-        SQLInsertClause insert = queryFactory.insert(qPredictionHistory);
-        predictions.forEach(p -> insert
-                .set(qPredictionHistory.predictorId, predictorId)
-                .set(qPredictionHistory.forecastDistanceInMinutes, ((int) new Duration(start, p.timestamp).getStandardMinutes()))
-                .set(qPredictionHistory.ts, p.timestamp)
-                .set(qPredictionHistory.spacesAvailable, p.spacesAvailable)
-                .addBatch());
-        try {
-            insert.execute();
-        } catch (QueryException e) {
-            // XXX: upsert would be a better way to ignore primary key conflicts, but this shall do for now
-            log.error("Failed save prediction history for predictor " + predictorId, e);
+    /**
+     * Fallback for H2, which does not support ON CONFLICT DO NOTHING.
+     *
+     * @return primary keys of the existing rows as (predictor_id, forecast_distance_in_minutes, ts)
+     */
+    private Set<List<Object>> findPredictionHistoryConflicts(List<NormalizedPredictions> batches) {
+        Set<Long> predictorIds = batches.stream().map(np -> np.predictorId).collect(toSet());
+        Set<DateTime> timestamps = batches.stream()
+                .flatMap(np -> selectPredictionDistancesToStore(np.start, np.predictions).stream())
+                .map(p -> p.timestamp)
+                .collect(toSet());
+        if (timestamps.isEmpty()) {
+            return Collections.emptySet();
         }
+        return queryFactory.from(qPredictionHistory)
+                .select(qPredictionHistory.predictorId, qPredictionHistory.forecastDistanceInMinutes, qPredictionHistory.ts)
+                .where(qPredictionHistory.predictorId.in(predictorIds),
+                        qPredictionHistory.ts.in(timestamps))
+                .fetch()
+                .stream()
+                .map(row -> Arrays.<Object>asList(
+                        row.get(qPredictionHistory.predictorId),
+                        row.get(qPredictionHistory.forecastDistanceInMinutes),
+                        row.get(qPredictionHistory.ts)))
+                .collect(toSet());
     }
 
     @TransactionalRead
@@ -238,6 +274,40 @@ public class PredictionDao implements PredictionRepository {
                 .fetch();
     }
 
+    @TransactionalRead
+    @Override
+    public Map<UtilizationKey, TimeSeries> findAllPredictions() {
+        Map<UtilizationKey, TimeSeries> predictions = new HashMap<>();
+        queryFactory.from(qPrediction)
+                .select(qPrediction.facilityId, qPrediction.capacityType, qPrediction.usage, qPrediction.start, qPrediction.spacesAvailable)
+                .where(qPrediction.spacesAvailable.isNotNull())
+                .fetch()
+                .forEach(row -> predictions.put(toUtilizationKey(row),
+                        PackedPredictions.unpack(row.get(qPrediction.start), row.get(qPrediction.spacesAvailable))));
+
+        // the rows which have not yet been updated in the packed format
+        int size = (int) (PREDICTION_WINDOW.toStandardDuration().getMillis() / TimeSeries.STEP_MILLIS);
+        queryFactory.from(qPrediction)
+                .select(qPrediction.all())
+                .where(qPrediction.spacesAvailable.isNull())
+                .fetch()
+                .forEach(row -> {
+                    TimeSeries series = new TimeSeries(row.get(qPrediction.start), size);
+                    for (int i = 0; i < size; i++) {
+                        Integer spacesAvailable = row.get(spacesAvailableAt(series.getStart().getMillis() + i * TimeSeries.STEP_MILLIS));
+                        if (spacesAvailable != null) {
+                            series.set(i, spacesAvailable);
+                        }
+                    }
+                    predictions.put(toUtilizationKey(row), series);
+                });
+        return predictions;
+    }
+
+    private static UtilizationKey toUtilizationKey(Tuple row) {
+        return new UtilizationKey(row.get(qPrediction.facilityId), row.get(qPrediction.capacityType), row.get(qPrediction.usage));
+    }
+
     @TransactionalRead
     @Override
     public List<Prediction> getPredictionHistoryByPredictor(Long predictorId, DateTime start, DateTime end, int forecastDistanceInMinutes) {
@@ -267,17 +337,17 @@ public class PredictionDao implements PredictionRepository {
                 qPrediction.capacityType,
                 qPrediction.usage,
                 qPrediction.start,
+                qPrediction.spacesAvailable,
                 spacesAvailableColumn) {
             @Override
             protected PredictionBatch map(Tuple row) {
                 PredictionBatch pb = new PredictionBatch();
-                pb.utilizationKey = new UtilizationKey(
-                        row.get(qPrediction.facilityId),
-                        row.get(qPrediction.capacityType),
-                        row.get(qPrediction.usage)
-                );
+                pb.utilizationKey = toUtilizationKey(row);
                 pb.sourceTimestamp = row.get(qPrediction.start);
-                Integer spacesAvailable = row.get(spacesAvailableColumn);
+                byte[] packed = row.get(qPrediction.spacesAvailable);
+                Integer spacesAvailable = packed != null
+                        ? PackedPredictions.get(packed, (int) ((time.getMillis() - pb.sourceTimestamp.getMillis()) / TimeSeries.STEP_MILLIS))
+                        : row.get(spacesAvailableColumn);
                 if (spacesAvailable != null) {
                     pb.predictions.add(new Prediction(time, spacesAvailable));
                 }
@@ -291,9 +361,12 @@ public class PredictionDao implements PredictionRepository {
         // so we don't do the rounding here, but require the timestamp
         // to already have been properly rounded.
         assert timestamp.equals(toPredictionResolution(timestamp)) : "not in prediction resolution: " + timestamp;
+        return spacesAvailableAt(timestamp.getMillis());
+    }
 
-        String hhmm = DateTimeFormat.forPattern("HHmm").print(timestamp.withZone(DateTimeZone.UTC));
-        return spacesAvailableColumnsByHHmm.get(hhmm);
+    private static Path<Integer> spacesAvailableAt(long instant) {
+        int slotOfDay = (int) Math.floorMod(Math.floorDiv(instant, TimeSeries.STEP_MILLIS), (long) spacesAvailableColumnsBySlotOfDay.size());
+        return spacesAvailableColumnsBySlotOfDay.get(slotOfDay);
     }
 
     static DateTime toPredictionResolution(DateTime time) {
@@ -3,11 +3,13 @@
 
 package fi.hsl.parkandride.back.prediction;
 
+import com.querydsl.core.QueryException;
 import com.querydsl.core.Tuple;
 import com.querydsl.sql.SQLExpressions;
 import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
 import com.querydsl.core.types.MappingProjection;
 import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.CaseBuilder;
 import com.querydsl.core.types.dsl.SimpleExpression;
 import fi.hsl.parkandride.back.sql.QPredictor;
 import fi.hsl.parkandride.core.back.PredictorRepository;
@@ -16,9 +18,11 @@ import fi.hsl.parkandride.core.domain.prediction.PredictorState;
 import fi.hsl.parkandride.core.service.TransactionalRead;
 import fi.hsl.parkandride.core.service.TransactionalWrite;
 import fi.hsl.parkandride.core.service.ValidationService;
+import org.joda.time.DateTime;
+import org.springframework.dao.ConcurrencyFailureException;
 
-import java.util.List;
-import java.util.Objects;
+import java.sql.SQLException;
+import java.util.*;
 
 public class PredictorDao implements PredictorRepository {
 
@@ -27,6 +31,9 @@ public class PredictorDao implements PredictorRepository {
 
     private static final QPredictor qPredictor = QPredictor.predictor;
 
+    private static final int H2_CONCURRENT_UPDATE = 90131;
+    private static final int H2_LOCK_TIMEOUT = 50200;
+
     private static final MappingProjection<PredictorState> predictorMapping = new MappingProjection<PredictorState>(PredictorState.class, qPredictor.all()) {
         @Override
         protected PredictorState map(Tuple row) {
@@ -35,6 +42,7 @@ public class PredictorDao implements PredictorRepository {
             state.latestUtilization = row.get(qPredictor.latestUtilization);
             state.moreUtilizations = row.get(qPredictor.moreUtilizations);
             state.internalState = row.get(qPredictor.internalState);
+            state.earliestNewUtilization = row.get(qPredictor.earliestNewUtilization);
             return state;
         }
     };
@@ -48,6 +56,10 @@ public class PredictorDao implements PredictorRepository {
     }
 
 
+    private static Predicate isNotClaimed(DateTime now) {
+        return qPredictor.claimedUntil.isNull().or(qPredictor.claimedUntil.before(now));
+    }
+
     private final PostgreSQLQueryFactory queryFactory;
     private final ValidationService validationService;
 
@@ -86,6 +98,7 @@ public class PredictorDao implements PredictorRepository {
                 .set(qPredictor.latestUtilization, state.latestUtilization)
                 .set(qPredictor.moreUtilizations, state.moreUtilizations)
                 .set(qPredictor.internalState, state.internalState)
+                .set(qPredictor.earliestNewUtilization, state.earliestNewUtilization)
                 .where(qPredictor.id.eq(state.predictorId))
                 .execute();
     }
@@ -128,10 +141,82 @@ public class PredictorDao implements PredictorRepository {
 
     @TransactionalWrite
     @Override
-    public void markPredictorsNeedAnUpdate(UtilizationKey utilizationKey) {
+    public List<Long> claimPredictorsNeedingUpdate(int batchSize, DateTime claimedUntil) {
+        DateTime now = DateTime.now();
+        Map<UtilizationKey, List<Long>> candidatesByKey = new LinkedHashMap<>();
+        queryFactory.from(qPredictor)
+                .where(qPredictor.moreUtilizations.eq(true), isNotClaimed(now))
+                .select(qPredictor.id, qPredictor.facilityId, qPredictor.capacityType, qPredictor.usage)
+                .fetch()
+                .forEach(row -> candidatesByKey.computeIfAbsent(
+                        new UtilizationKey(row.get(qPredictor.facilityId), row.get(qPredictor.capacityType), row.get(qPredictor.usage)),
+                        key -> new ArrayList<>()).add(row.get(qPredictor.id)));
+        List<List<Long>> candidates = new ArrayList<>(candidatesByKey.values());
+        Collections.shuffle(candidates); // reduce contention between the claiming threads and nodes
+
+        List<Long> claimed = new ArrayList<>();
+        for (Iterator<List<Long>> it = candidates.iterator(); it.hasNext() && claimed.size() < batchSize; ) {
+            for (Long predictorId : it.next()) {
+                if (claimPredictor(predictorId, claimedUntil, now)) {
+                    claimed.add(predictorId);
+                }
+            }
+        }
+        return claimed;
+    }
+
+    private boolean claimPredictor(Long predictorId, DateTime claimedUntil, DateTime now) {
+        try {
+            // conditional update: under READ_COMMITTED only one of the concurrent claimers will succeed
+            return queryFactory.update(qPredictor)
+                    .set(qPredictor.claimedUntil, claimedUntil)
+                    .where(qPredictor.id.eq(predictorId), qPredictor.moreUtilizations.eq(true), isNotClaimed(now))
+                    .execute() == 1;
+        } catch (QueryException e) {
+            if (isConcurrencyFailure(e.getCause())) {
+                throw new ConcurrencyFailureException("Failed to claim predictor " + predictorId, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * PostgreSQL waits for the concurrent claimer to commit, but may fail with a serialization failure
+     * or a deadlock. H2 fails immediately when another transaction has updated the same row.
+     */
+    private static boolean isConcurrencyFailure(Throwable cause) {
+        if (!(cause instanceof SQLException)) {
+            return false;
+        }
+        SQLException e = (SQLException) cause;
+        String sqlState = e.getSQLState();
+        return (sqlState != null && (sqlState.startsWith("40") || sqlState.equals("55P03")))
+                || e.getErrorCode() == H2_CONCURRENT_UPDATE
+                || e.getErrorCode() == H2_LOCK_TIMEOUT;
+    }
+
+    @TransactionalWrite
+    @Override
+    public void releasePredictors(Collection<Long> predictorIds, DateTime claimedUntil) {
+        if (predictorIds.isEmpty()) {
+            return;
+        }
+        queryFactory.update(qPredictor)
+                .setNull(qPredictor.claimedUntil)
+                .where(qPredictor.id.in(predictorIds), qPredictor.claimedUntil.eq(claimedUntil))
+                .execute();
+    }
+
+    @TransactionalWrite
+    @Override
+    public void markPredictorsNeedAnUpdate(UtilizationKey utilizationKey, DateTime earliestTimestamp) {
         validationService.validate(utilizationKey);
         queryFactory.update(qPredictor)
                 .set(qPredictor.moreUtilizations, true)
+                .set(qPredictor.earliestNewUtilization, new CaseBuilder()
+                        .when(qPredictor.earliestNewUtilization.isNull().or(qPredictor.earliestNewUtilization.after(earliestTimestamp)))
+                        .then(earliestTimestamp)
+                        .otherwise(qPredictor.earliestNewUtilization))
                 .where(utilizationKeyEquals(utilizationKey))
                 .execute();
     }
@@ -31,7 +31,9 @@ import javax.inject.Inject;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Paths;
 import java.security.SecureRandom;
+import java.util.List;
 
 @Configuration
 @Import(JdbcConfiguration.class)
@@ -49,6 +51,21 @@ public class CoreConfiguration {
     @Value("${security.token.expires}") String tokenExpires;
     @Value("${password.expires}") String passwordExpires;
     @Value("${password.reminder}") String passwordReminder;
+    @Value("${utilization.latest.cache.enabled:true}") boolean latestUtilizationCacheEnabled;
+    @Value("${facility.cache.size:1000}") long facilityCacheSize;
+    @Value("${requestlog.cache.size:10000}") long requestLogCacheSize;
+    @Value("${requestlog.spool.directory:${user.home}/parkandride/requestlog}") String requestLogSpoolDirectory;
+    @Value("${requestlog.rollup.rebuild.enabled:true}") boolean requestLogRollupRebuildEnabled;
+    @Value("${requestlog.rollup.rebuild.age:P1M}") String requestLogRollupRebuildAge;
+    @Value("${prediction.update.threads:4}") int predictionUpdateThreads;
+    @Value("${prediction.storage.packed:true}") boolean packedPredictionStorage;
+    @Value("${utilization.rollup.enabled:true}") boolean utilizationRollupEnabled;
+    @Value("${utilization.rollup.age:P5W}") String utilizationRollupAge;
+    @Value("${report.parallelism:4}") int reportParallelism;
+    @Value("${report.jobs.directory:${java.io.tmpdir}/parkandride-reports}") String reportJobDirectory;
+    @Value("${report.jobs.threads:2}") int reportJobThreads;
+    @Value("${report.jobs.queue:20}") int reportJobQueueSize;
+    @Value("${report.jobs.ttl:PT1H}") String reportJobTtl;
 
     private PeriodFormatter periodFormatter = ISOPeriodFormat.standard();
 
@@ -153,7 +170,7 @@ public class CoreConfiguration {
 
     @Bean
     public FacilityRepository facilityRepository() {
-        return new FacilityDao(queryFactory, facilityHistoryRepository());
+        return new FacilityDao(queryFactory, facilityHistoryRepository(), latestUtilizationStore(), facilityCache());
     }
 
     @Bean
@@ -181,9 +198,27 @@ public class CoreConfiguration {
         return new HubService(hubRepository(), validationService());
     }
 
+    @Bean
+    public ParallelReportExecutor parallelReportExecutor() {
+        return new ParallelReportExecutor(transactionManager, reportParallelism);
+    }
+
+    @Bean
+    public ReportJobService reportJobService(List<ReportService> reportServices) {
+        return new ReportJobService(reportServices, Paths.get(reportJobDirectory), reportJobThreads, reportJobQueueSize,
+                periodFormatter.parsePeriod(reportJobTtl).toStandardDuration());
+    }
+
     @Bean
     public PredictionService predictionService() {
-        return new PredictionService(utilizationRepository(), predictionRepository(), predictorRepository(), facilityRepository(), transactionManager, lockRepository(), predictors());
+        return new PredictionService(utilizationRepository(), predictionRepository(), predictorRepository(), facilityRepository(), hubRepository(), transactionManager, predictionUpdateThreads, predictors());
+    }
+
+    @Bean
+    public UtilizationRollupService utilizationRollupService() {
+        return new UtilizationRollupService(utilizationRepository(), facilityRepository(), lockRepository(),
+                utilizationRollupEnabled,
+                periodFormatter.parsePeriod(utilizationRollupAge));
     }
 
     @Bean
@@ -198,7 +233,17 @@ public class CoreConfiguration {
 
     @Bean
     public UtilizationRepository utilizationRepository() {
-        return new UtilizationDao(queryFactory);
+        return new UtilizationDao(queryFactory, latestUtilizationStore());
+    }
+
+    @Bean
+    public FacilityCache facilityCache() {
+        return new FacilityCache(facilityCacheSize);
+    }
+
+    @Bean
+    public LatestUtilizationStore latestUtilizationStore() {
+        return new LatestUtilizationStore(latestUtilizationCacheEnabled);
     }
 
     @Bean
@@ -208,7 +253,7 @@ public class CoreConfiguration {
 
     @Bean
     public PredictionRepository predictionRepository() {
-        return new PredictionDao(queryFactory, validationService());
+        return new PredictionDao(queryFactory, validationService(), packedPredictionStorage);
     }
 
     @Bean
@@ -218,12 +263,27 @@ public class CoreConfiguration {
 
     @Bean
     public RequestLogRepository requestLogRepository() {
-      return new RequestLogDao(queryFactory);
+      return new RequestLogDao(queryFactory, requestLogCacheSize);
     }
 
     @Bean
     public BatchingRequestLogService batchingRequestLogService(RequestLogRepository requestLogRepository) {
-      return new BatchingRequestLogService(requestLogRepository);
+      RequestLogSpool spool;
+      try {
+        spool = RequestLogSpool.open(Paths.get(requestLogSpoolDirectory));
+      } catch (RuntimeException e) {
+        log.error("Failed to open a request log spool in " + requestLogSpoolDirectory
+                + "; request logs are stored directly and are lost if the database is unavailable", e);
+        return new BatchingRequestLogService(requestLogRepository);
+      }
+      return new BatchingRequestLogService(requestLogRepository, spool);
+    }
+
+    @Bean
+    public RequestLogRollupService requestLogRollupService() {
+        return new RequestLogRollupService(requestLogRepository(), lockRepository(),
+                requestLogRollupRebuildEnabled,
+                periodFormatter.parsePeriod(requestLogRollupRebuildAge));
     }
 
     @Bean
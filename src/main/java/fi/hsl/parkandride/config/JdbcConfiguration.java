@@ -149,6 +149,12 @@ public class JdbcConfiguration {
         conf.register("FACILITY_UTILIZATION", "CAPACITY_TYPE", new EnumByNameType<>(CapacityType.class));
         conf.register("FACILITY_UTILIZATION", "USAGE", new EnumByNameType<>(Usage.class));
 
+        conf.register("FACILITY_UTILIZATION_DAILY", "CAPACITY_TYPE", new EnumByNameType<>(CapacityType.class));
+        conf.register("FACILITY_UTILIZATION_DAILY", "USAGE", new EnumByNameType<>(Usage.class));
+
+        conf.register("FACILITY_UTILIZATION_HOURLY", "CAPACITY_TYPE", new EnumByNameType<>(CapacityType.class));
+        conf.register("FACILITY_UTILIZATION_HOURLY", "USAGE", new EnumByNameType<>(Usage.class));
+
         conf.register("FACILITY_PREDICTION", "CAPACITY_TYPE", new EnumByNameType<>(CapacityType.class));
         conf.register("FACILITY_PREDICTION", "USAGE", new EnumByNameType<>(Usage.class));
 
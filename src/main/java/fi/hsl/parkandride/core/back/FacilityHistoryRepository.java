@@ -7,6 +7,7 @@ import fi.hsl.parkandride.core.domain.*;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -39,6 +40,12 @@ public interface FacilityHistoryRepository {
      */
     List<FacilityCapacityHistory> getCapacityHistory(long facilityId, LocalDate startInclusive, LocalDate endInclusive);
 
+    /**
+     * Get the capacity histories of the facilities between the dates by facility id, each ordered by start date asc.
+     * Facilities without history between the dates are left out.
+     */
+    Map<Long, List<FacilityCapacityHistory>> getCapacityHistories(Collection<Long> facilityIds, LocalDate startInclusive, LocalDate endInclusive);
+
     /**
      * Get the whole status history for the facility ordered by start date asc
      */
@@ -48,4 +55,10 @@ public interface FacilityHistoryRepository {
      * Get the status history for the facility between the dates ordered by start date asc
      */
     List<FacilityStatusHistory> getStatusHistory(long facilityId, LocalDate startInclusive, LocalDate endInclusive);
+
+    /**
+     * Get the status histories of the facilities between the dates by facility id, each ordered by start date asc.
+     * Facilities without history between the dates are left out.
+     */
+    Map<Long, List<FacilityStatusHistory>> getStatusHistories(Collection<Long> facilityIds, LocalDate startInclusive, LocalDate endInclusive);
 }
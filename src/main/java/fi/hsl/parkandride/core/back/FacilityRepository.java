@@ -5,6 +5,9 @@ package fi.hsl.parkandride.core.back;
 
 import fi.hsl.parkandride.core.domain.*;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface FacilityRepository {
 
     long insertFacility(Facility facility);
@@ -15,6 +18,12 @@ public interface FacilityRepository {
 
     Facility getFacility(long facilityId);
 
+    /**
+     * @return the facilities in the order of the given ids
+     * @throws FacilityNotFoundException if any of the facilities does not exist
+     */
+    Map<Long, Facility> getFacilities(Collection<Long> facilityIds);
+
     FacilityInfo getFacilityInfo(long facilityId);
 
     Facility getFacilityForUpdate(long facilityId);
@@ -6,12 +6,14 @@ package fi.hsl.parkandride.core.back;
 import fi.hsl.parkandride.core.domain.UtilizationKey;
 import fi.hsl.parkandride.core.domain.prediction.Prediction;
 import fi.hsl.parkandride.core.domain.prediction.PredictionBatch;
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
 import fi.hsl.parkandride.core.service.TransactionalWrite;
 import org.joda.time.DateTime;
 import org.joda.time.Hours;
 import org.joda.time.Minutes;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface PredictionRepository {
@@ -21,11 +23,22 @@ public interface PredictionRepository {
 
     void updatePredictions(PredictionBatch predictions, Long predictorId);
 
+    /**
+     * Updates the predictions of many predictors at once, with one JDBC batch per table.
+     * If many predictors have the same utilization key, the last one is used as the current prediction.
+     */
+    void updatePredictions(Map<Long, PredictionBatch> predictionsByPredictorId);
+
     void updateOnlyPredictionHistory(PredictionBatch pb, Long predictorId);
 
     Optional<PredictionBatch> getPrediction(UtilizationKey utilizationKey, DateTime time);
 
     List<PredictionBatch> getPredictionsByFacility(Long facilityId, DateTime time);
 
+    /**
+     * @return the whole prediction window of every utilization key, for {@link fi.hsl.parkandride.core.domain.prediction.PredictionIndex}
+     */
+    Map<UtilizationKey, TimeSeries> findAllPredictions();
+
     List<Prediction> getPredictionHistoryByPredictor(Long predictorId, DateTime start, DateTime end, int forecastDistanceInMinutes);
 }
@@ -5,7 +5,9 @@ package fi.hsl.parkandride.core.back;
 
 import fi.hsl.parkandride.core.domain.UtilizationKey;
 import fi.hsl.parkandride.core.domain.prediction.PredictorState;
+import org.joda.time.DateTime;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface PredictorRepository {
@@ -22,5 +24,22 @@ public interface PredictorRepository {
 
     List<Long> findPredictorsNeedingUpdate();
 
-    void markPredictorsNeedAnUpdate(UtilizationKey utilizationKey);
+    /**
+     * Claims predictors needing an update which are not claimed by anybody else. All predictors of
+     * a utilization key are claimed together, so the batch may exceed batchSize by the number of
+     * predictors per key. The claims expire at claimedUntil unless released before that.
+     *
+     * @return ids of the claimed predictors
+     * @throws org.springframework.dao.ConcurrencyFailureException if a concurrent claimer made the claim
+     * fail, in which case it may be retried
+     */
+    List<Long> claimPredictorsNeedingUpdate(int batchSize, DateTime claimedUntil);
+
+    void releasePredictors(Collection<Long> predictorIds, DateTime claimedUntil);
+
+    /**
+     * @param earliestTimestamp the earliest timestamp of the new utilizations; kept in
+     *                          {@link PredictorState#earliestNewUtilization} until the next update
+     */
+    void markPredictorsNeedAnUpdate(UtilizationKey utilizationKey, DateTime earliestTimestamp);
 }
@@ -6,6 +6,7 @@ package fi.hsl.parkandride.core.back;
 import fi.hsl.parkandride.core.domain.RequestLogEntry;
 import fi.hsl.parkandride.core.domain.RequestLogKey;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 
 import java.util.List;
 import java.util.Map;
@@ -22,6 +23,27 @@ public interface RequestLogRepository {
      */
     void batchIncrement(Map<RequestLogKey, Long> requestLogCounts);
 
+    /**
+     * Like {@link #batchIncrement(Map)}, but increments the counts of each batch only once, so that a batch can
+     * be retried without knowing whether an earlier attempt succeeded.
+     *
+     * @param batchId unique id of the batch
+     * @return false if the batch had already been applied
+     */
+    boolean batchIncrement(String batchId, Map<RequestLogKey, Long> requestLogCounts);
+
+    /**
+     * Forgets the ids of the batches applied before the given time. They can no longer be retried after that.
+     */
+    void deleteAppliedBatchesBefore(DateTime time);
+
+    /**
+     * Recomputes the daily and monthly counts of the months of the given dates from the hourly counts, e.g. after
+     * a rolling deploy during which nodes of an older version wrote only the hourly counts. Running it again gives
+     * the same counts, and counts which are incremented concurrently are not lost.
+     */
+    void rebuildDailyAndMonthlyCounts(LocalDate startInclusive, LocalDate endInclusive);
+
 
     /**
      * Get the request log entries between the two given dates ordered by (timestamp, source, url)
@@ -31,4 +53,16 @@ public interface RequestLogRepository {
      * @return a list of log entries or empty list if none
      */
     List<RequestLogEntry> getLogEntriesBetween(DateTime startInclusive, DateTime endInclusive);
+
+    /**
+     * Get the request counts summed by day between the two given dates, ordered by (day, source, url).
+     * The timestamps of the entries are at the start of the day.
+     */
+    List<RequestLogEntry> getDailyLogEntriesBetween(LocalDate startInclusive, LocalDate endInclusive);
+
+    /**
+     * Get the request counts summed by month for the months which start between the two given dates, ordered by
+     * (month, source, url). The timestamps of the entries are at the start of the month.
+     */
+    List<RequestLogEntry> getMonthlyLogEntriesBetween(LocalDate startInclusive, LocalDate endInclusive);
 }
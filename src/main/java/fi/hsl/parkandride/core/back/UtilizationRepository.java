@@ -4,10 +4,14 @@
 package fi.hsl.parkandride.core.back;
 
 import com.mysema.commons.lang.CloseableIterator;
+import fi.hsl.parkandride.core.domain.DailyUtilization;
+import fi.hsl.parkandride.core.domain.LatestUtilizationVersion;
 import fi.hsl.parkandride.core.domain.Utilization;
 import fi.hsl.parkandride.core.domain.UtilizationKey;
 import fi.hsl.parkandride.core.domain.UtilizationSearch;
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.joda.time.Minutes;
 
 import java.util.List;
@@ -20,11 +24,46 @@ public interface UtilizationRepository {
 
     Set<Utilization> findLatestUtilization(Long... facilityIds);
 
+    /**
+     * @return the version of what {@link #findLatestUtilization} currently returns, or empty if it is not tracked
+     */
+    Optional<LatestUtilizationVersion> getLatestUtilizationVersion();
+
     Optional<Utilization> findUtilizationAtInstant(UtilizationKey utilizationKey, DateTime instant);
 
     CloseableIterator<Utilization> findUtilizationsBetween(UtilizationKey utilizationKey, DateTime start, DateTime end);
 
     List<Utilization> findUtilizationsWithResolution(UtilizationKey utilizationKey, DateTime start, DateTime end, Minutes resolution);
 
+    /**
+     * Same as {@link #findUtilizationsWithResolution} with {@link PredictionRepository#PREDICTION_RESOLUTION},
+     * but only the spaces available.
+     */
+    TimeSeries findSpacesAvailableWithPredictionResolution(UtilizationKey utilizationKey, DateTime start, DateTime end);
+
     CloseableIterator<Utilization> findUtilizations(UtilizationSearch search);
+
+    /**
+     * Same criteria as {@link #findUtilizations}, but the daily summaries of the days from the date of
+     * the search start to the date of the search end, ordered by date.
+     */
+    CloseableIterator<DailyUtilization> findDailyUtilizations(UtilizationSearch search);
+
+    /**
+     * Same criteria as {@link #findUtilizations}, but only the last utilization of each hour needs to be returned,
+     * which is enough for sampling the latest utilization at whole hours. If all the searched facilities are
+     * rolled up (see {@link #rollUpUtilizations}) until after the search end, the utilizations are read from
+     * the hourly summaries. Otherwise they are the same as those of {@link #findUtilizations}.
+     */
+    CloseableIterator<Utilization> findLastUtilizationsOfHours(UtilizationSearch search);
+
+    /**
+     * Summarizes the utilizations of the facility by utilization key and hour: the minimum and maximum
+     * and the last spaces available and capacity. The utilizations themselves are kept. Continues from where
+     * the previous roll-up of the facility ended, rolling up at most {@code maxRange} at a time.
+     *
+     * @param end exclusive end of the roll-up, a whole hour
+     * @return the instant until which the utilizations of the facility are now rolled up
+     */
+    DateTime rollUpUtilizations(long facilityId, DateTime end, Duration maxRange);
 }
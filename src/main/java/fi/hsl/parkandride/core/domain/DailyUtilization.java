@@ -0,0 +1,73 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain;
+
+import com.google.common.base.MoreObjects;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * Summary of the utilizations of one utilization key during one day in {@link Facility#TIME_ZONE}.
+ */
+public class DailyUtilization {
+
+    public Long facilityId;
+    public CapacityType capacityType;
+    public Usage usage;
+    public LocalDate date;
+
+    public int minSpacesAvailable;
+    public int maxSpacesAvailable;
+    public int minCapacity;
+    public int maxCapacity;
+
+    public DateTime lastTimestamp;
+    public int lastSpacesAvailable;
+    public int lastCapacity;
+
+    public static DailyUtilization from(Utilization u) {
+        DailyUtilization d = new DailyUtilization();
+        d.facilityId = u.facilityId;
+        d.capacityType = u.capacityType;
+        d.usage = u.usage;
+        d.date = new LocalDate(u.timestamp.getMillis(), Facility.TIME_ZONE);
+        d.minSpacesAvailable = d.maxSpacesAvailable = d.lastSpacesAvailable = u.spacesAvailable;
+        d.minCapacity = d.maxCapacity = d.lastCapacity = u.capacity;
+        d.lastTimestamp = u.timestamp;
+        return d;
+    }
+
+    public UtilizationKey getUtilizationKey() {
+        return new UtilizationKey(facilityId, capacityType, usage);
+    }
+
+    /**
+     * Combines the summary of other utilizations of the same key and day into this one.
+     */
+    public DailyUtilization merge(DailyUtilization other) {
+        minSpacesAvailable = Math.min(minSpacesAvailable, other.minSpacesAvailable);
+        maxSpacesAvailable = Math.max(maxSpacesAvailable, other.maxSpacesAvailable);
+        minCapacity = Math.min(minCapacity, other.minCapacity);
+        maxCapacity = Math.max(maxCapacity, other.maxCapacity);
+        if (!other.lastTimestamp.isBefore(lastTimestamp)) {
+            lastTimestamp = other.lastTimestamp;
+            lastSpacesAvailable = other.lastSpacesAvailable;
+            lastCapacity = other.lastCapacity;
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("facilityId", facilityId)
+                .add("capacityType", capacityType)
+                .add("usage", usage)
+                .add("date", date)
+                .add("minSpacesAvailable", minSpacesAvailable)
+                .add("maxSpacesAvailable", maxSpacesAvailable)
+                .add("lastSpacesAvailable", lastSpacesAvailable)
+                .toString();
+    }
+}
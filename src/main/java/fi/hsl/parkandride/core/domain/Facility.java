@@ -4,6 +4,7 @@
 package fi.hsl.parkandride.core.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.collect.Maps;
 import fi.hsl.parkandride.core.domain.validation.ElementLength;
 import fi.hsl.parkandride.core.domain.validation.NotBlankElement;
 import fi.hsl.parkandride.core.domain.validation.NotNullElement;
@@ -13,20 +14,26 @@ import org.joda.time.LocalTime;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
 import static com.google.common.collect.Sets.newLinkedHashSet;
 import static fi.hsl.parkandride.core.domain.FacilityStatus.EXCEPTIONAL_SITUATION;
 import static fi.hsl.parkandride.core.domain.FacilityStatus.IN_OPERATION;
 import static java.util.Collections.sort;
 import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 public class Facility extends FacilityInfo {
 
-    private static final DateTimeZone TIME_ZONE = DateTimeZone.forID("Europe/Helsinki");
+    /**
+     * All the facilities are in the same time zone, in which their days (e.g. in the reports) are counted.
+     */
+    public static final DateTimeZone TIME_ZONE = DateTimeZone.forID("Europe/Helsinki");
 
     @NotNull
     @NotNullElement
@@ -74,6 +81,76 @@ public class Facility extends FacilityInfo {
         openingHours.initialize(pricing, new DateTime(), status);
     }
 
+    /**
+     * @return a deep copy which shares only the immutable values (enums, geometries and times) with this facility
+     */
+    public Facility copy() {
+        Facility copy = new Facility();
+        copy.id = id;
+        copy.name = copy(name);
+        copy.location = location;
+        copy.operatorId = operatorId;
+        copy.status = status;
+        copy.pricingMethod = pricingMethod;
+        copy.statusDescription = copy(statusDescription);
+        copy.builtCapacity = newHashMap(builtCapacity);
+        copy.usages = new NullSafeSortedSet<>(usages);
+        copy.pricing = pricing.stream().map(Facility::copy).collect(toList());
+        copy.unavailableCapacities = unavailableCapacities.stream()
+                .map(u -> new UnavailableCapacity(u.capacityType, u.usage, u.capacity))
+                .collect(toList());
+        copy.aliases = newLinkedHashSet(aliases);
+        copy.ports = ports.stream().map(Facility::copy).collect(toList());
+        copy.services = new NullSafeSortedSet<>(services);
+        copy.contacts = new FacilityContacts(contacts.emergency, contacts.operator, contacts.service);
+        copy.paymentInfo = new FacilityPaymentInfo();
+        copy.paymentInfo.detail = copy(paymentInfo.detail);
+        copy.paymentInfo.url = copy(paymentInfo.url);
+        copy.paymentInfo.paymentMethods = new NullSafeSortedSet<>(paymentInfo.paymentMethods);
+        copy.openingHours = new OpeningHours();
+        copy.openingHours.openNow = openingHours.openNow;
+        copy.openingHours.byDayType = openingHours.byDayType == null ? null : new LinkedHashMap<>(Maps.transformValues(openingHours.byDayType, Facility::copy));
+        copy.openingHours.info = copy(openingHours.info);
+        copy.openingHours.url = copy(openingHours.url);
+        return copy;
+    }
+
+    private static Pricing copy(Pricing pricing) {
+        Pricing copy = new Pricing();
+        copy.usage = pricing.usage;
+        copy.capacityType = pricing.capacityType;
+        copy.maxCapacity = pricing.maxCapacity;
+        copy.dayType = pricing.dayType;
+        copy.time = copy(pricing.time);
+        copy.price = copy(pricing.price);
+        return copy;
+    }
+
+    private static Port copy(Port port) {
+        Port copy = new Port(port.location, port.entry, port.exit, port.pedestrian, port.bicycle);
+        copy.address = port.address == null ? null : new Address(copy(port.address.streetAddress), port.address.postalCode, copy(port.address.city));
+        copy.info = copy(port.info);
+        return copy;
+    }
+
+    private static TimeDuration copy(TimeDuration time) {
+        if (time == null) {
+            return null;
+        }
+        TimeDuration copy = new TimeDuration();
+        copy.from = time.from;
+        copy.until = time.until;
+        return copy;
+    }
+
+    private static MultilingualString copy(MultilingualString string) {
+        return string == null ? null : new MultilingualString(string.fi, string.sv, string.en);
+    }
+
+    private static MultilingualUrl copy(MultilingualUrl url) {
+        return url == null ? null : new MultilingualUrl(url.fi, url.sv, url.en);
+    }
+
     public Set<Usage> analyzeUsages() {
         return pricing.stream().collect(mapping(Pricing::getUsage, toSet()));
     }
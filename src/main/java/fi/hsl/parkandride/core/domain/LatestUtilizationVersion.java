@@ -0,0 +1,49 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Objects;
+
+/**
+ * Identifies a state of the latest utilizations and of the facility status and pricing which
+ * determine whether the facilities are open.
+ */
+public class LatestUtilizationVersion {
+
+    public final long utilizations;
+
+    public final long facilities;
+
+    public LatestUtilizationVersion(long utilizations, long facilities) {
+        this.utilizations = utilizations;
+        this.facilities = facilities;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LatestUtilizationVersion)) {
+            return false;
+        }
+        LatestUtilizationVersion that = (LatestUtilizationVersion) obj;
+        return this.utilizations == that.utilizations && this.facilities == that.facilities;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(utilizations, facilities);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("utilizations", utilizations)
+                .add("facilities", facilities)
+                .toString();
+    }
+}
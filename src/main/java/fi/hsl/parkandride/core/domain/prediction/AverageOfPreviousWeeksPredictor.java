@@ -3,24 +3,44 @@
 
 package fi.hsl.parkandride.core.domain.prediction;
 
-import fi.hsl.parkandride.back.ListUtil;
+import com.mysema.commons.lang.CloseableIterator;
 import fi.hsl.parkandride.core.back.PredictionRepository;
 import fi.hsl.parkandride.core.domain.Utilization;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Weeks;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 
+/**
+ * Predicts the average of the same time of the previous weeks. The spaces available at each instant of
+ * the prediction resolution grid during the previous weeks are kept in a ring buffer in
+ * {@link PredictorState#internalState}, so that each update needs to read only the utilizations which
+ * have arrived since the previous update. Utilizations which arrive late, i.e. older than the latest
+ * utilization of the previous update, are applied by rewinding the ring to their timestamp.
+ * <p>
+ * Because the ring holds only the grid instants, the predictions start from the grid instant at or before
+ * the latest utilization instead of from the latest utilization itself.
+ */
 public class AverageOfPreviousWeeksPredictor implements Predictor {
 
-    private static final Logger log = LoggerFactory.getLogger(AverageOfPreviousWeeksPredictor.class);
-
     public static final String TYPE = "average-of-previous-weeks";
 
+    private static final int WEEKS = 3;
+    private static final long SLOT_MILLIS = TimeSeries.STEP_MILLIS;
+    private static final int SLOTS_PER_HOUR = (int) (60 * 60 * 1000 / SLOT_MILLIS);
+    private static final int SLOTS_PER_WEEK = 7 * 24 * SLOTS_PER_HOUR;
+    private static final long WEEK_MILLIS = SLOTS_PER_WEEK * SLOT_MILLIS;
+    private static final int PREDICTION_SLOTS = (int) (PredictionRepository.PREDICTION_WINDOW.toStandardDuration().getMillis() / SLOT_MILLIS);
+    private static final int RING_SIZE = WEEKS * SLOTS_PER_WEEK + SLOTS_PER_HOUR; // an extra hour for daylight saving time changes
+
     @Override
     public String getType() {
         return TYPE;
@@ -30,37 +50,156 @@ public class AverageOfPreviousWeeksPredictor implements Predictor {
     public List<Prediction> predict(PredictorState state, UtilizationHistory history, int maxCapacity) {
         Optional<Utilization> latest = history.getLatest();
         if (!latest.isPresent()) return Collections.emptyList();
-        DateTime now = state.latestUtilization = latest.get().timestamp;
-
-        List<List<Prediction>> groupedByWeek = Stream.of(Weeks.weeks(1), Weeks.weeks(2), Weeks.weeks(3))
-                .map(offset -> {
-                    DateTime start = now.minus(offset);
-                    DateTime end = start.plus(PredictionRepository.PREDICTION_WINDOW);
-                    List<Utilization> utilizations = history.getRange(start, end);
-                    return utilizations.stream()
-                            .map(u -> new Prediction(u.timestamp.plus(offset), u.spacesAvailable))
-                            .collect(Collectors.toList());
-                })
-                .collect(Collectors.toList());
-
-        List<List<Prediction>> groupedByTimeOfDay = ListUtil.transpose(groupedByWeek);
-
-        return groupedByTimeOfDay.stream()
-                .map(this::reduce)
-                .collect(Collectors.toList());
+        DateTime now = latest.get().timestamp;
+
+        SpacesAvailableRing ring = updateRing(state, history, now);
+        state.latestUtilization = now;
+        state.internalState = ring.encode();
+
+        long firstSlot = slotOf(now);
+        TimeSeries predictions = new TimeSeries(now.withMillis(firstSlot * SLOT_MILLIS), PREDICTION_SLOTS + 1);
+        DateTimeZone zone = now.getZone();
+        for (int i = 0; i < predictions.size(); i++) {
+            long localTimestamp = zone.convertUTCToLocal((firstSlot + i) * SLOT_MILLIS);
+            int sum = 0;
+            int count = 0;
+            for (int week = 1; week <= WEEKS; week++) {
+                // same local time on a previous week, like DateTime.minusWeeks
+                long timestamp = zone.convertLocalToUTC(localTimestamp - week * WEEK_MILLIS, false);
+                int spacesAvailable = ring.get(Math.floorDiv(timestamp, SLOT_MILLIS));
+                if (spacesAvailable != SpacesAvailableRing.NO_DATA) {
+                    sum += spacesAvailable;
+                    count++;
+                }
+            }
+            if (count > 0) {
+                predictions.set(i, (int) Math.round((double) sum / count));
+            }
+        }
+        return predictions.toPredictions();
+    }
+
+    private static SpacesAvailableRing updateRing(PredictorState state, UtilizationHistory history, DateTime now) {
+        Optional<SpacesAvailableRing> previous = SpacesAvailableRing.decode(state.internalState);
+        DateTime updatesSince = state.latestUtilization;
+        if (state.earliestNewUtilization != null && !state.earliestNewUtilization.isAfter(updatesSince)) {
+            updatesSince = state.earliestNewUtilization.minusMillis(1); // late arrivals
+        }
+        boolean incremental = previous.isPresent()
+                && !state.latestUtilization.isAfter(now)
+                && updatesSince.isAfter(now.minus(Weeks.weeks(WEEKS)));
+        SpacesAvailableRing ring;
+        if (incremental) {
+            ring = previous.get();
+            if (updatesSince.isBefore(state.latestUtilization)) {
+                // refill the slots which start after updatesSince
+                ring.filledUntil = slotOf(updatesSince);
+                ring.latest = history.getAt(updatesSince).map(u -> u.spacesAvailable).orElse(SpacesAvailableRing.NO_DATA);
+            }
+        } else {
+            long firstSlot = slotOf(now) - RING_SIZE + 1;
+            updatesSince = now.withMillis(firstSlot * SLOT_MILLIS);
+            ring = new SpacesAvailableRing(firstSlot - 1);
+            ring.latest = history.getAt(updatesSince).map(u -> u.spacesAvailable).orElse(SpacesAvailableRing.NO_DATA);
+            ring.fillUntil(firstSlot);
+        }
+        try (CloseableIterator<Utilization> updates = history.getUpdatesSince(updatesSince)) {
+            while (updates.hasNext()) {
+                Utilization u = updates.next();
+                if (u.timestamp.isAfter(now)) {
+                    break; // left for the next update
+                }
+                ring.fillUntil(Math.floorDiv(u.timestamp.getMillis() - 1, SLOT_MILLIS)); // the slots before this utilization
+                ring.latest = u.spacesAvailable;
+            }
+        }
+        ring.fillUntil(slotOf(now));
+        return ring;
+    }
+
+    private static long slotOf(DateTime instant) {
+        return Math.floorDiv(instant.getMillis(), SLOT_MILLIS);
     }
 
-    private Prediction reduce(List<Prediction> predictions) {
-        DateTime timestamp = predictions.get(0).timestamp;
-        if (!predictions.stream()
-                .map(p -> p.timestamp)
-                .allMatch(timestamp::equals)) {
-            log.warn("Something went wrong. Not all predictions have the same timestamp: {}", predictions);
+    /**
+     * Spaces available at the start of each slot (i.e. the latest utilization at or before it)
+     * for the last {@link #RING_SIZE} slots.
+     */
+    static class SpacesAvailableRing {
+        static final int NO_DATA = -1;
+        private static final String FORMAT = "ring-v1:";
+        private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+        final int[] slots = new int[RING_SIZE];
+        long filledUntil;
+        int latest = NO_DATA;
+
+        SpacesAvailableRing(long filledUntil) {
+            this.filledUntil = filledUntil;
+            Arrays.fill(slots, NO_DATA);
+        }
+
+        int get(long slot) {
+            if (slot > filledUntil || slot <= filledUntil - RING_SIZE) {
+                return NO_DATA;
+            }
+            return slots[index(slot)];
+        }
+
+        void fillUntil(long slot) {
+            for (long s = Math.max(filledUntil + 1, slot - RING_SIZE + 1); s <= slot; s++) {
+                slots[index(s)] = latest;
+            }
+            filledUntil = Math.max(filledUntil, slot);
+        }
+
+        private static int index(long slot) {
+            return (int) Math.floorMod(slot, (long) RING_SIZE);
+        }
+
+        /**
+         * Serializes the ring into one buffer which is deflated with a single write, because deflater
+         * streams allocate a buffer for every small write.
+         */
+        String encode() {
+            ByteBuffer raw = ByteBuffer.allocate(HEADER_BYTES + Integer.BYTES * slots.length);
+            raw.putInt(slots.length).putLong(filledUntil).putInt(latest);
+            raw.asIntBuffer().put(slots);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.capacity() / 4);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+                out.write(raw.array());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return FORMAT + Base64.getEncoder().encodeToString(bytes.toByteArray());
+        }
+
+        static Optional<SpacesAvailableRing> decode(String internalState) {
+            if (!internalState.startsWith(FORMAT)) {
+                return Optional.empty();
+            }
+            byte[] bytes = Base64.getDecoder().decode(internalState.substring(FORMAT.length()));
+            byte[] raw = new byte[HEADER_BYTES + Integer.BYTES * RING_SIZE];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(bytes);
+                int length = inflater.inflate(raw);
+                if (length != raw.length || !inflater.finished()) {
+                    return Optional.empty(); // a different ring size; rebuild from history
+                }
+            } catch (DataFormatException e) {
+                return Optional.empty();
+            } finally {
+                inflater.end();
+            }
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            if (in.getInt() != RING_SIZE) {
+                return Optional.empty(); // rebuild from history
+            }
+            SpacesAvailableRing ring = new SpacesAvailableRing(in.getLong());
+            ring.latest = in.getInt();
+            in.asIntBuffer().get(ring.slots);
+            return Optional.of(ring);
         }
-        int spacesAvailable = (int) Math.round(predictions.stream()
-                .mapToInt(u -> u.spacesAvailable)
-                .average()
-                .getAsDouble());
-        return new Prediction(timestamp, spacesAvailable);
     }
 }
@@ -0,0 +1,68 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import fi.hsl.parkandride.core.domain.StrictIsoDateTimeDeserializer;
+import fi.hsl.parkandride.core.domain.Violation;
+import org.joda.time.DateTime;
+
+import java.util.*;
+
+/**
+ * Predictions of many facilities and hubs at many times. The times are either absolute ({@link #at})
+ * or relative to the time of the request ({@link #after}, same format as {@link PredictionRequest#after});
+ * without any times the predictions are for the current time.
+ */
+public class BulkPredictionRequest {
+
+    public static final int MAX_TIMES = 288;
+
+    public Set<Long> facilityIds = new LinkedHashSet<>();
+
+    public Set<Long> hubIds = new LinkedHashSet<>();
+
+    @JsonDeserialize(contentUsing = StrictIsoDateTimeDeserializer.class)
+    public List<DateTime> at = new ArrayList<>();
+
+    public List<String> after = new ArrayList<>();
+
+    public List<Violation> validate() {
+        List<Violation> violations = new ArrayList<>();
+        if (facilityIds == null || facilityIds.contains(null)) {
+            violations.add(new Violation("NotNull", "facilityIds", "may not be null"));
+        }
+        if (hubIds == null || hubIds.contains(null)) {
+            violations.add(new Violation("NotNull", "hubIds", "may not be null"));
+        }
+        if (at == null || at.contains(null)) {
+            violations.add(new Violation("NotNull", "at", "may not be null"));
+        }
+        if (after == null) {
+            violations.add(new Violation("NotNull", "after", "may not be null"));
+        } else {
+            for (int i = 0; i < after.size(); i++) {
+                if (after.get(i) == null || !after.get(i).matches(PredictionRequest.HHMM_PATTERN)) {
+                    violations.add(new Violation("Pattern", "after[" + i + "]", "must match \"" + PredictionRequest.HHMM_PATTERN + "\""));
+                }
+            }
+        }
+        if (violations.isEmpty() && at.size() + after.size() > MAX_TIMES) {
+            violations.add(new Violation("Size", "at", "at most " + MAX_TIMES + " times are allowed"));
+        }
+        return violations;
+    }
+
+    /**
+     * Must be called only for a valid request.
+     */
+    public List<DateTime> requestedTimes(DateTime now) {
+        List<DateTime> times = new ArrayList<>(at);
+        after.forEach(relativeTime -> times.add(now.plus(PredictionRequest.parseRelativeTime(relativeTime))));
+        if (times.isEmpty()) {
+            times.add(now);
+        }
+        return times;
+    }
+}
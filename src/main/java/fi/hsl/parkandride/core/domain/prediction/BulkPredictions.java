@@ -0,0 +1,56 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import fi.hsl.parkandride.core.domain.Facility;
+import org.joda.time.DateTime;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Results of a {@link BulkPredictionRequest} whose facilities, hubs and times have already been resolved,
+ * so that the results can be written out one at a time as they are read from the prediction index.
+ */
+public class BulkPredictions {
+
+    private final PredictionIndex index;
+    private final Collection<Facility> facilities;
+    private final Map<Long, Collection<Facility>> hubFacilities;
+    private final List<DateTime> times;
+
+    /**
+     * @param hubFacilities the current facilities of each hub by hub id
+     */
+    public BulkPredictions(PredictionIndex index, Collection<Facility> facilities, Map<Long, Collection<Facility>> hubFacilities, List<DateTime> times) {
+        this.index = index;
+        this.facilities = facilities;
+        this.hubFacilities = hubFacilities;
+        this.times = times;
+    }
+
+    /**
+     * Ordered by facility and then by time.
+     */
+    public void forEachFacilityPrediction(Consumer<PredictionResult> action) {
+        for (Facility facility : facilities) {
+            for (DateTime time : times) {
+                index.getPredictionResults(facility, time).forEach(action);
+            }
+        }
+    }
+
+    /**
+     * Ordered by hub and then by time.
+     */
+    public void forEachHubPrediction(Consumer<HubPredictionResult> action) {
+        hubFacilities.forEach((hubId, facilities) -> {
+            for (DateTime time : times) {
+                index.getHubPredictionResults(hubId, facilities, time).forEach(action);
+            }
+        });
+    }
+}
@@ -0,0 +1,152 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import fi.hsl.parkandride.core.domain.*;
+import org.joda.time.DateTime;
+
+import java.util.*;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+
+/**
+ * Immutable snapshot of the current predictions of all facilities and hubs, so that reading them
+ * needs no database queries. It is rebuilt as a whole and swapped in place of the previous snapshot.
+ * <p>
+ * The visibility of the predictions depends on the facilities, which may change between rebuilds,
+ * so the callers pass in the current facilities. The precomputed sums of a hub are used only when its
+ * facilities are the same instances which the sums were computed from; otherwise they are recomputed
+ * from the predictions of the facilities.
+ */
+public class PredictionIndex {
+
+    private final DateTime loadedAt;
+    private final Map<Long, Map<UtilizationKey, TimeSeries>> predictionsByFacilityId;
+    private final Map<Long, HubPredictions> predictionsByHubId;
+
+    private static class HubPredictions {
+        final Map<Long, Facility> facilities;
+        final Map<CapacityType, Map<Usage, TimeSeries>> sums;
+
+        HubPredictions(Map<Long, Facility> facilities, Map<CapacityType, Map<Usage, TimeSeries>> sums) {
+            this.facilities = facilities;
+            this.sums = sums;
+        }
+    }
+
+    /**
+     * @param facilities the facilities of the predictions and of the hubs
+     */
+    public PredictionIndex(DateTime loadedAt, Map<UtilizationKey, TimeSeries> predictions, Map<Long, Facility> facilities, Collection<Hub> hubs) {
+        this.loadedAt = loadedAt;
+        Map<Long, Map<UtilizationKey, TimeSeries>> predictionsByFacilityId = new HashMap<>();
+        predictions.forEach((key, series) -> predictionsByFacilityId.computeIfAbsent(key.facilityId, id -> new HashMap<>()).put(key, series));
+        this.predictionsByFacilityId = predictionsByFacilityId;
+
+        Map<Long, HubPredictions> predictionsByHubId = new HashMap<>();
+        for (Hub hub : hubs) {
+            Map<Long, Facility> hubFacilities = new HashMap<>();
+            hub.facilityIds.forEach(id -> Optional.ofNullable(facilities.get(id)).ifPresent(f -> hubFacilities.put(id, f)));
+            if (hubFacilities.size() == hub.facilityIds.size()) {
+                predictionsByHubId.put(hub.id, new HubPredictions(hubFacilities, sumVisiblePredictions(hubFacilities.values())));
+            }
+        }
+        this.predictionsByHubId = predictionsByHubId;
+    }
+
+    public DateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    public boolean containsHub(long hubId) {
+        return predictionsByHubId.containsKey(hubId);
+    }
+
+    public Set<Long> getHubFacilityIds(long hubId) {
+        HubPredictions hub = predictionsByHubId.get(hubId);
+        return hub == null ? emptySet() : hub.facilities.keySet();
+    }
+
+    /**
+     * Predictions of the facility at the time, rounded to the prediction resolution.
+     *
+     * @param facility the current version of the facility
+     */
+    public List<PredictionResult> getPredictionResults(Facility facility, DateTime time) {
+        DateTime instant = TimeSeries.toPredictionResolution(time);
+        List<PredictionResult> results = new ArrayList<>();
+        predictionsByFacilityId.getOrDefault(facility.id, emptyMap()).forEach((key, series) -> {
+            int i = series.indexOf(instant);
+            if (series.hasValue(i) && isVisible(facility, key)) {
+                results.add(PredictionResult.from(key, new Prediction(instant, series.get(i))));
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Sums of the predictions of the hub's facilities by capacity type and usage.
+     *
+     * @param facilities the current versions of the hub's facilities
+     */
+    public List<HubPredictionResult> getHubPredictionResults(long hubId, Collection<Facility> facilities, DateTime time) {
+        HubPredictions hub = predictionsByHubId.get(hubId);
+        Map<CapacityType, Map<Usage, TimeSeries>> sums = hub != null && isSameInstances(hub.facilities, facilities)
+                ? hub.sums
+                : sumVisiblePredictions(facilities);
+        DateTime instant = TimeSeries.toPredictionResolution(time);
+        List<HubPredictionResult> results = new ArrayList<>();
+        sums.forEach((capacityType, byUsage) -> byUsage.forEach((usage, series) -> {
+            int i = series.indexOf(instant);
+            if (series.hasValue(i)) {
+                HubPredictionResult result = new HubPredictionResult();
+                result.hubId = hubId;
+                result.capacityType = capacityType;
+                result.usage = usage;
+                result.timestamp = instant;
+                result.spacesAvailable = series.get(i);
+                results.add(result);
+            }
+        }));
+        return results;
+    }
+
+    /**
+     * Predictions are shown only for the capacity types which are built and for the usages which are priced.
+     */
+    public static boolean isVisible(Facility facility, UtilizationKey key) {
+        return FacilityUtil.usagesByCapacityType(facility).getOrDefault(key.capacityType, emptySet()).contains(key.usage)
+                && facility.builtCapacity.getOrDefault(key.capacityType, 0) > 0;
+    }
+
+    private Map<CapacityType, Map<Usage, TimeSeries>> sumVisiblePredictions(Collection<Facility> facilities) {
+        Map<CapacityType, Map<Usage, List<TimeSeries>>> grouped = new EnumMap<>(CapacityType.class);
+        for (Facility facility : facilities) {
+            predictionsByFacilityId.getOrDefault(facility.id, emptyMap()).forEach((key, series) -> {
+                if (isVisible(facility, key)) {
+                    grouped.computeIfAbsent(key.capacityType, c -> new EnumMap<>(Usage.class))
+                            .computeIfAbsent(key.usage, u -> new ArrayList<>())
+                            .add(series);
+                }
+            });
+        }
+        Map<CapacityType, Map<Usage, TimeSeries>> sums = new EnumMap<>(CapacityType.class);
+        grouped.forEach((capacityType, byUsage) -> byUsage.forEach((usage, series) ->
+                sums.computeIfAbsent(capacityType, c -> new EnumMap<>(Usage.class)).put(usage, TimeSeries.sum(series))));
+        return sums;
+    }
+
+    private static boolean isSameInstances(Map<Long, Facility> expected, Collection<Facility> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (Facility facility : actual) {
+            if (expected.get(facility.id) != facility) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -20,6 +20,11 @@ public class PredictorState {
     @NotNull public DateTime latestUtilization = new DateTime(0);
     public boolean moreUtilizations = true;
     @NotNull public String internalState = "";
+    /**
+     * The earliest timestamp of the utilizations registered since the previous update, or null if there are none.
+     * It is before {@link #latestUtilization} when utilizations have arrived late.
+     */
+    public DateTime earliestNewUtilization;
 
     public PredictorState(Long predictorId, String predictorType, UtilizationKey utilizationKey) {
         this.predictorId = predictorId;
@@ -38,12 +43,13 @@ public class PredictorState {
                 && Objects.equals(this.utilizationKey, that.utilizationKey)
                 && Objects.equals(this.latestUtilization, that.latestUtilization)
                 && Objects.equals(this.moreUtilizations, that.moreUtilizations)
-                && Objects.equals(this.internalState, that.internalState);
+                && Objects.equals(this.internalState, that.internalState)
+                && Objects.equals(this.earliestNewUtilization, that.earliestNewUtilization);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(predictorId, predictorType, utilizationKey, latestUtilization, moreUtilizations, internalState);
+        return Objects.hash(predictorId, predictorType, utilizationKey, latestUtilization, moreUtilizations, internalState, earliestNewUtilization);
     }
 
     @Override
@@ -55,6 +61,7 @@ public class PredictorState {
                 .add("latestUtilization", latestUtilization)
                 .add("moreUtilizations", moreUtilizations)
                 .add("internalState", internalState)
+                .add("earliestNewUtilization", earliestNewUtilization)
                 .toString();
     }
 }
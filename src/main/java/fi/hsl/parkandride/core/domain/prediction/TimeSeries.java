@@ -0,0 +1,214 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.DoubleToIntFunction;
+
+import static fi.hsl.parkandride.core.back.PredictionRepository.PREDICTION_RESOLUTION;
+
+/**
+ * Values at {@link fi.hsl.parkandride.core.back.PredictionRepository#PREDICTION_RESOLUTION} intervals
+ * from a start instant. The values are kept in a primitive array, so that computing predictions does
+ * not need an object per data point. Missing values are {@link #NO_VALUE}.
+ */
+public class TimeSeries {
+
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+    public static final long STEP_MILLIS = PREDICTION_RESOLUTION.toStandardDuration().getMillis();
+    private static final int STEP_MINUTES = PREDICTION_RESOLUTION.getMinutes();
+
+    private final DateTime start;
+    private final int[] values;
+
+    public TimeSeries(DateTime start, int size) {
+        this.start = start;
+        this.values = new int[size];
+        Arrays.fill(values, NO_VALUE);
+    }
+
+    /**
+     * @return a series with no values which covers the range
+     */
+    public static TimeSeries between(DateTime startInclusive, DateTime endInclusive) {
+        long steps = Math.floorDiv(endInclusive.getMillis() - startInclusive.getMillis(), STEP_MILLIS);
+        return new TimeSeries(startInclusive, (int) Math.max(0, steps + 1));
+    }
+
+    /**
+     * Rounds the timestamps of the predictions to the prediction resolution, keeping the newest prediction
+     * of each instant, and fills the instants between them by linear interpolation.
+     *
+     * @param start any instant of the prediction resolution grid; determines the time zone of the result
+     */
+    public static TimeSeries fromPredictions(DateTime start, List<Prediction> predictions) {
+        if (predictions.isEmpty()) {
+            return new TimeSeries(start, 0);
+        }
+        long startSlot = toSlot(start.getMillis());
+        long firstSlot = Long.MAX_VALUE;
+        long lastSlot = Long.MIN_VALUE;
+        for (Prediction p : predictions) {
+            long slot = toSlot(p.timestamp.getMillis());
+            firstSlot = Math.min(firstSlot, slot);
+            lastSlot = Math.max(lastSlot, slot);
+        }
+        TimeSeries series = new TimeSeries(start.plus((firstSlot - startSlot) * STEP_MILLIS), (int) (lastSlot - firstSlot + 1));
+        long[] newest = new long[series.size()];
+        Arrays.fill(newest, Long.MIN_VALUE);
+        for (Prediction p : predictions) {
+            int i = (int) (toSlot(p.timestamp.getMillis()) - firstSlot);
+            if (p.timestamp.getMillis() >= newest[i]) {
+                newest[i] = p.timestamp.getMillis();
+                series.values[i] = p.spacesAvailable;
+            }
+        }
+        return series.interpolate();
+    }
+
+    /**
+     * Averages the values of each index over all series, ignoring missing values.
+     *
+     * @param toValue maps the average to the resulting value
+     */
+    public static TimeSeries transposeAverage(DateTime start, List<TimeSeries> series, DoubleToIntFunction toValue) {
+        int size = series.stream().mapToInt(TimeSeries::size).max().orElse(0);
+        TimeSeries result = new TimeSeries(start, size);
+        for (int i = 0; i < size; i++) {
+            long sum = 0;
+            int count = 0;
+            for (TimeSeries s : series) {
+                if (s.hasValue(i)) {
+                    sum += s.values[i];
+                    count++;
+                }
+            }
+            if (count > 0) {
+                result.values[i] = toValue.applyAsInt((double) sum / count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sums the values of each instant over all series, ignoring missing values. The series may have
+     * different starts, but they must all be on the same prediction resolution grid.
+     */
+    public static TimeSeries sum(List<TimeSeries> series) {
+        if (series.isEmpty()) {
+            return new TimeSeries(new DateTime(0), 0);
+        }
+        TimeSeries first = series.stream().min(Comparator.comparing(s -> s.start.getMillis())).get();
+        long end = series.stream().mapToLong(s -> s.start.getMillis() + (s.size() - 1) * STEP_MILLIS).max().getAsLong();
+        TimeSeries result = between(first.start, first.start.withMillis(end));
+        for (TimeSeries s : series) {
+            int offset = result.indexOf(s.start);
+            for (int i = 0; i < s.size(); i++) {
+                if (s.hasValue(i)) {
+                    int j = offset + i;
+                    result.values[j] = result.hasValue(j) ? result.values[j] + s.values[i] : s.values[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same rounding as in PredictionDao: the seconds are ignored and the minutes are rounded to the nearest
+     * instant of the prediction resolution grid. Keeps the time zone.
+     */
+    public static DateTime toPredictionResolution(DateTime time) {
+        return time.withMillis(toSlot(time.getMillis()) * STEP_MILLIS);
+    }
+
+    public DateTime getStart() {
+        return start;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean hasValue(int index) {
+        return index >= 0 && index < values.length && values[index] != NO_VALUE;
+    }
+
+    public int get(int index) {
+        return hasValue(index) ? values[index] : NO_VALUE;
+    }
+
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    public DateTime timestampAt(int index) {
+        return start.plus(index * STEP_MILLIS);
+    }
+
+    /**
+     * @return index of the last instant at or before the timestamp; may be outside this series
+     */
+    public int indexOf(DateTime timestamp) {
+        return (int) Math.floorDiv(timestamp.getMillis() - start.getMillis(), STEP_MILLIS);
+    }
+
+    /**
+     * @return the values between the timestamps, both inclusive and clipped to this series
+     */
+    public TimeSeries slice(DateTime startInclusive, DateTime endInclusive) {
+        int from = (int) Math.max(0, -Math.floorDiv(start.getMillis() - startInclusive.getMillis(), STEP_MILLIS));
+        int to = Math.min(values.length - 1, indexOf(endInclusive));
+        TimeSeries slice = new TimeSeries(timestampAt(from), Math.max(0, to - from + 1));
+        if (to >= from) {
+            System.arraycopy(values, from, slice.values, 0, to - from + 1);
+        }
+        return slice;
+    }
+
+    /**
+     * Fills the missing values between two values by linear interpolation. Missing values before the first
+     * and after the last value are left missing.
+     */
+    public TimeSeries interpolate() {
+        int previous = -1;
+        for (int next = 0; next < values.length; next++) {
+            if (values[next] == NO_VALUE) {
+                continue;
+            }
+            if (previous >= 0) {
+                int totalChange = values[next] - values[previous];
+                for (int i = previous + 1; i < next; i++) {
+                    double proportion = (double) (i - previous) / (next - previous);
+                    values[i] = values[previous] + (int) Math.round(totalChange * proportion);
+                }
+            }
+            previous = next;
+        }
+        return this;
+    }
+
+    public List<Prediction> toPredictions() {
+        List<Prediction> predictions = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != NO_VALUE) {
+                predictions.add(new Prediction(timestampAt(i), values[i]));
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Same rounding as in PredictionDao: the seconds are ignored and the minutes are rounded to the nearest
+     * instant of the prediction resolution grid.
+     */
+    private static long toSlot(long millis) {
+        long minute = Math.floorDiv(millis, 60_000);
+        return Math.floorDiv(minute + STEP_MINUTES / 2, STEP_MINUTES);
+    }
+}
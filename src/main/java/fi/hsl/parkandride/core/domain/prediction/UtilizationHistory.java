@@ -7,6 +7,7 @@ import com.mysema.commons.lang.CloseableIterator;
 import fi.hsl.parkandride.core.domain.Utilization;
 import org.joda.time.DateTime;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,4 +20,24 @@ public interface UtilizationHistory {
     CloseableIterator<Utilization> getUpdatesSince(DateTime startExclusive);
 
     Optional<Utilization> getAt(DateTime timestamp);
+
+    /**
+     * @return the spaces available at each instant of the prediction resolution grid
+     * starting from startInclusive, i.e. the latest utilization at or before each instant
+     */
+    default TimeSeries getSpacesAvailable(DateTime startInclusive, DateTime endInclusive) {
+        TimeSeries series = TimeSeries.between(startInclusive, endInclusive);
+        int current = getAt(startInclusive).map(u -> u.spacesAvailable).orElse(TimeSeries.NO_VALUE);
+        Iterator<Utilization> utilizations = getRange(startInclusive, endInclusive).iterator();
+        Utilization next = utilizations.hasNext() ? utilizations.next() : null;
+        for (int i = 0; i < series.size(); i++) {
+            DateTime instant = series.timestampAt(i);
+            while (next != null && !next.timestamp.isAfter(instant)) {
+                current = next.spacesAvailable;
+                next = utilizations.hasNext() ? utilizations.next() : null;
+            }
+            series.set(i, current);
+        }
+        return series;
+    }
 }
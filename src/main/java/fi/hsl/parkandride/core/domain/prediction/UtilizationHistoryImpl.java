@@ -37,6 +37,11 @@ public class UtilizationHistoryImpl implements UtilizationHistory {
         return utilizationRepository.findUtilizationsWithResolution(utilizationKey, startInclusive, endInclusive, PredictionRepository.PREDICTION_RESOLUTION);
     }
 
+    @Override
+    public TimeSeries getSpacesAvailable(DateTime startInclusive, DateTime endInclusive) {
+        return utilizationRepository.findSpacesAvailableWithPredictionResolution(utilizationKey, startInclusive, endInclusive);
+    }
+
     @Override
     public CloseableIterator<Utilization> getUpdatesSince(DateTime startExclusive) {
         DateTime start = startExclusive.plusMillis(1);
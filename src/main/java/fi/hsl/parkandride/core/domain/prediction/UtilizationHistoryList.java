@@ -37,6 +37,30 @@ public class UtilizationHistoryList implements UtilizationHistory {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Walks the list, which must be in time order, once without copying the range of it.
+     */
+    @Override
+    public TimeSeries getSpacesAvailable(DateTime startInclusive, DateTime endInclusive) {
+        TimeSeries series = TimeSeries.between(startInclusive, endInclusive);
+        long start = startInclusive.getMillis();
+        int current = TimeSeries.NO_VALUE;
+        int i = 0;
+        for (Utilization u : utilizationList) {
+            if (u.timestamp.isAfter(endInclusive)) {
+                break;
+            }
+            for (long timestamp = u.timestamp.getMillis(); i < series.size() && start + i * TimeSeries.STEP_MILLIS < timestamp; i++) {
+                series.set(i, current);
+            }
+            current = u.spacesAvailable;
+        }
+        for (; i < series.size(); i++) {
+            series.set(i, current);
+        }
+        return series;
+    }
+
     @Override
     public CloseableIterator<Utilization> getUpdatesSince(DateTime startExclusive) {
         return new IteratorAdapter<Utilization>(
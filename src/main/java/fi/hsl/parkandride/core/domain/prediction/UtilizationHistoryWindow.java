@@ -0,0 +1,157 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import fi.hsl.parkandride.core.back.PredictionRepository;
+import fi.hsl.parkandride.core.back.UtilizationRepository;
+import fi.hsl.parkandride.core.domain.Utilization;
+import fi.hsl.parkandride.core.domain.UtilizationKey;
+import org.joda.time.DateTime;
+import org.joda.time.ReadablePeriod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * In-memory history of one utilization key, loaded once so that all predictors of the key can share it.
+ * Contains the utilizations from a window before the latest utilization onwards, stored in primitive arrays
+ * ordered by time. Queries reaching before the window fall back to the database.
+ * <p>
+ * Produces the same results as {@link UtilizationHistoryImpl}.
+ */
+public class UtilizationHistoryWindow implements UtilizationHistory {
+
+    private final UtilizationHistory fallback;
+    private final UtilizationKey utilizationKey;
+    private final Optional<Utilization> latest;
+    private final long windowStart;
+
+    // the first utilization may precede the window: it is the one in effect at the start of the window
+    private final long[] timestamps;
+    private final int[] spacesAvailable;
+    private final int[] capacities;
+    private final int size;
+
+    /**
+     * Must be called inside a transaction.
+     *
+     * @param window how far before the latest utilization (or now, if there are no utilizations) to load
+     */
+    public static UtilizationHistoryWindow load(UtilizationRepository utilizationRepository, UtilizationKey utilizationKey, ReadablePeriod window) {
+        UtilizationHistoryImpl fallback = new UtilizationHistoryImpl(utilizationRepository, utilizationKey);
+        Optional<Utilization> latest = fallback.getLatest();
+        DateTime windowStart = latest.map(u -> u.timestamp).orElseGet(DateTime::now).minus(window);
+
+        List<Utilization> utilizations = new ArrayList<>();
+        utilizationRepository.findUtilizationAtInstant(utilizationKey, windowStart).ifPresent(utilizations::add);
+        try (CloseableIterator<Utilization> rest = fallback.getUpdatesSince(windowStart)) {
+            rest.forEachRemaining(utilizations::add);
+        }
+        return new UtilizationHistoryWindow(fallback, utilizationKey, latest, windowStart, utilizations);
+    }
+
+    UtilizationHistoryWindow(UtilizationHistory fallback, UtilizationKey utilizationKey, Optional<Utilization> latest,
+                             DateTime windowStart, List<Utilization> utilizations) {
+        this.fallback = fallback;
+        this.utilizationKey = utilizationKey;
+        this.latest = latest;
+        this.windowStart = windowStart.getMillis();
+        this.size = utilizations.size();
+        this.timestamps = new long[size];
+        this.spacesAvailable = new int[size];
+        this.capacities = new int[size];
+        for (int i = 0; i < size; i++) {
+            Utilization u = utilizations.get(i);
+            timestamps[i] = u.timestamp.getMillis();
+            spacesAvailable[i] = u.spacesAvailable;
+            capacities[i] = u.capacity;
+        }
+    }
+
+    @Override
+    public Optional<Utilization> getLatest() {
+        return latest.map(Utilization::copy);
+    }
+
+    @Override
+    public List<Utilization> getRange(DateTime startInclusive, DateTime endInclusive) {
+        if (startInclusive.getMillis() < windowStart) {
+            return fallback.getRange(startInclusive, endInclusive);
+        }
+        List<Utilization> results = new ArrayList<>();
+        int index = floorIndex(startInclusive.getMillis());
+        for (DateTime instant = startInclusive; !instant.isAfter(endInclusive); instant = instant.plus(PredictionRepository.PREDICTION_RESOLUTION)) {
+            while (index + 1 < size && timestamps[index + 1] <= instant.getMillis()) {
+                index++;
+            }
+            if (index >= 0) {
+                results.add(toUtilization(index, instant));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public TimeSeries getSpacesAvailable(DateTime startInclusive, DateTime endInclusive) {
+        if (startInclusive.getMillis() < windowStart) {
+            return UtilizationHistory.super.getSpacesAvailable(startInclusive, endInclusive);
+        }
+        TimeSeries series = TimeSeries.between(startInclusive, endInclusive);
+        int index = floorIndex(startInclusive.getMillis());
+        for (int i = 0; i < series.size(); i++) {
+            long instant = startInclusive.getMillis() + i * TimeSeries.STEP_MILLIS;
+            while (index + 1 < size && timestamps[index + 1] <= instant) {
+                index++;
+            }
+            if (index >= 0) {
+                series.set(i, spacesAvailable[index]);
+            }
+        }
+        return series;
+    }
+
+    @Override
+    public CloseableIterator<Utilization> getUpdatesSince(DateTime startExclusive) {
+        if (startExclusive.getMillis() < windowStart) {
+            return fallback.getUpdatesSince(startExclusive);
+        }
+        List<Utilization> results = new ArrayList<>();
+        for (int i = floorIndex(startExclusive.getMillis()) + 1; i < size; i++) {
+            results.add(toUtilization(i, new DateTime(timestamps[i])));
+        }
+        return new IteratorAdapter<>(results.iterator());
+    }
+
+    @Override
+    public Optional<Utilization> getAt(DateTime instant) {
+        if (instant.getMillis() < windowStart) {
+            return fallback.getAt(instant);
+        }
+        int index = floorIndex(instant.getMillis());
+        return index < 0 ? Optional.empty() : Optional.of(toUtilization(index, instant));
+    }
+
+    /**
+     * @return index of the last utilization at or before the instant, or -1 if there is none
+     */
+    private int floorIndex(long instant) {
+        int i = Arrays.binarySearch(timestamps, 0, size, instant);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private Utilization toUtilization(int index, DateTime timestamp) {
+        Utilization u = new Utilization();
+        u.facilityId = utilizationKey.facilityId;
+        u.capacityType = utilizationKey.capacityType;
+        u.usage = utilizationKey.usage;
+        u.timestamp = timestamp;
+        u.spacesAvailable = spacesAvailable[index];
+        u.capacity = capacities[index];
+        return u;
+    }
+}
@@ -5,62 +5,144 @@ package fi.hsl.parkandride.core.service;
 
 import fi.hsl.parkandride.core.back.RequestLogRepository;
 import fi.hsl.parkandride.core.domain.RequestLogKey;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.LongAdder;
-
-import static java.util.stream.Collectors.toMap;
 
+/**
+ * Counts the API requests in memory and stores the counts periodically. The counts go through a local
+ * {@link RequestLogSpool}, from which they are stored in the database exactly once, even when storing them
+ * has to be retried after a database outage or a restart. Without a spool the counts are stored directly,
+ * and the counts which fail to be stored are retried only until the application stops.
+ */
 public class BatchingRequestLogService {
 
     private static final Logger logger = LoggerFactory.getLogger(BatchingRequestLogService.class);
-    private Map<RequestLogKey, LongAdder> requestLogBatch = new ConcurrentHashMap<>();
-    public Duration staggeredUpdateMaxDelay = Duration.ofMinutes(1);
+    private static final Duration APPLIED_BATCH_RETENTION = Duration.standardDays(30);
+    private final RequestLogCounter requestLogCounter = new RequestLogCounter();
 
     private final RequestLogRepository requestLogRepository;
+    private final RequestLogSpool spool; // null if the spool could not be opened
+    private boolean closed;
 
     public BatchingRequestLogService(RequestLogRepository requestLogRepository) {
+        this(requestLogRepository, null);
+    }
+
+    public BatchingRequestLogService(RequestLogRepository requestLogRepository, RequestLogSpool spool) {
         this.requestLogRepository = requestLogRepository;
+        this.spool = spool;
     }
 
-    public void increment(RequestLogKey key) {
-        final RequestLogKey roundedTimestamp = key.roundTimestampDown();
-        requestLogBatch.computeIfAbsent(roundedTimestamp, k -> new LongAdder()).increment();
+    /**
+     * Called on every API request, so it does not allocate once the url pattern and source have been seen
+     * during the current hour.
+     */
+    public void increment(String urlPattern, String source) {
+        requestLogCounter.increment(urlPattern, source, DateTimeUtils.currentTimeMillis());
     }
 
     @Scheduled(cron = "${requestlog.cron:0 */5 * * * *}")
-    public void updateRequestLogs() {
-        try {
-            // When multiple instances in the cluster do this update
-            // in parallel, it quite often causes transaction conflicts
-            // and starvation. A staggered start using a random delay
-            // improves the probability of them not conflicting.
-            long delayMillis = ThreadLocalRandom.current().nextLong(staggeredUpdateMaxDelay.toMillis() + 1);
-            Thread.sleep(delayMillis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    public synchronized void updateRequestLogs() {
+        if (closed) {
             return;
         }
         logger.info("Update request logs");
+        if (spoolCounts()) {
+            storeSpooledBatches();
+        }
+    }
 
-        final Map<RequestLogKey, LongAdder> previousMap = this.requestLogBatch;
-        clearLogStash();
+    /**
+     * Runs also right after startup, to store the batches which the previous run left in the spool.
+     */
+    @Scheduled(fixedDelayString = "${requestlog.spool.retry:60000}")
+    public synchronized void retrySpooledBatches() {
+        if (!closed && spool != null && spool.hasPending()) {
+            storeSpooledBatches();
+        }
+    }
 
-        final Map<RequestLogKey, Long> requestCounts = previousMap.keySet().stream()
-                .collect(toMap(
-                        key -> key,
-                        key -> previousMap.get(key).sum()
-                ));
-        requestLogRepository.batchIncrement(requestCounts);
+    /**
+     * @return false if there is no spool or it failed, and the counts were stored directly instead
+     */
+    private boolean spoolCounts() {
+        final Map<RequestLogKey, Long> requestCounts = requestLogCounter.drain(DateTimeUtils.currentTimeMillis());
+        if (spool != null) {
+            if (requestCounts.isEmpty()) {
+                return true;
+            }
+            try {
+                spool.append(requestCounts);
+                return true;
+            } catch (UncheckedIOException e) {
+                logger.error("Failed to spool request logs; storing them directly", e);
+            }
+        }
+        storeDirectly(requestCounts);
+        return false;
     }
 
-    public void clearLogStash() {
-        requestLogBatch = new ConcurrentHashMap<>();
+    private void storeDirectly(Map<RequestLogKey, Long> requestCounts) {
+        if (requestCounts.isEmpty()) {
+            return;
+        }
+        try {
+            requestLogRepository.batchIncrement(requestCounts);
+        } catch (RuntimeException e) {
+            // Put the counts back to be stored on the next update
+            requestCounts.forEach(requestLogCounter::add);
+            throw e;
+        }
+    }
+
+    private void storeSpooledBatches() {
+        for (Map.Entry<String, Map<RequestLogKey, Long>> batch : spool.getPending().entrySet()) {
+            try {
+                requestLogRepository.batchIncrement(batch.getKey(), batch.getValue());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to store request logs; they are kept in the spool and retried later", e);
+                return;
+            }
+            spool.markFlushed(batch.getKey());
+        }
+        requestLogRepository.deleteAppliedBatchesBefore(DateTime.now().minus(APPLIED_BATCH_RETENTION));
+    }
+
+    public synchronized void clearLogStash() {
+        requestLogCounter.clear();
+        if (spool != null) {
+            spool.clear();
+        }
+    }
+
+    /**
+     * Spools the counts which have not been stored yet, to be stored after the restart.
+     * Without a spool they are stored directly.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (spool == null) {
+            storeDirectly(requestLogCounter.drain(DateTimeUtils.currentTimeMillis()));
+            return;
+        }
+        try {
+            Map<RequestLogKey, Long> requestCounts = requestLogCounter.drain(DateTimeUtils.currentTimeMillis());
+            if (!requestCounts.isEmpty()) {
+                spool.append(requestCounts);
+            }
+        } finally {
+            spool.close();
+        }
     }
 }
@@ -4,6 +4,8 @@
 package fi.hsl.parkandride.core.service;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import fi.hsl.parkandride.core.back.FacilityHistoryRepository;
 import fi.hsl.parkandride.core.back.FacilityRepository;
@@ -13,15 +15,17 @@ import org.joda.time.Interval;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.BinaryOperator;
+import java.util.function.Function;
 
 import static fi.hsl.parkandride.util.Iterators.iterateFor;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
-import static java.util.stream.Collectors.reducing;
+import static java.util.stream.Collectors.toList;
 
 public class FacilityHistoryService {
 
@@ -45,7 +49,17 @@ public class FacilityHistoryService {
     @TransactionalRead
     public Map<LocalDate, FacilityStatus> getStatusHistoryByDay(final long facilityId, final LocalDate start, final LocalDate end) {
         final List<FacilityStatusHistory> statusHistory = facilityHistoryRepository.getStatusHistory(facilityId, start, end);
-        return Maps.toMap(dateRangeClosed(start, end), date -> findEntryForDate(statusHistory, date, IDENTITY_STATUS).status);
+        return findEntriesByDate(statusHistory, start, end, IDENTITY_STATUS, h -> h.status);
+    }
+
+    /**
+     * Bulk version of {@link #getStatusHistoryByDay} which reads the histories of all the facilities at once.
+     */
+    @TransactionalRead
+    public Map<Long, Map<LocalDate, FacilityStatus>> getStatusHistoriesByDay(final Collection<Long> facilityIds, final LocalDate start, final LocalDate end) {
+        final Map<Long, List<FacilityStatusHistory>> statusHistories = facilityHistoryRepository.getStatusHistories(facilityIds, start, end);
+        return Maps.toMap(ImmutableSet.copyOf(facilityIds),
+                id -> findEntriesByDate(statusHistories.getOrDefault(id, emptyList()), start, end, IDENTITY_STATUS, h -> h.status));
     }
 
     /**
@@ -59,20 +73,56 @@ public class FacilityHistoryService {
 
         // Fall back to current unavailable capacities
         final Facility facility = facilityRepository.getFacility(facilityId);
-        final FacilityCapacityHistory identity = new FacilityCapacityHistory(
+        return findEntriesByDate(capacityHistory, start, end, currentCapacity(facility), FacilityCapacity::new);
+    }
+
+    /**
+     * Bulk version of {@link #getCapacityHistory} which reads the histories and facilities of all the facilities at once.
+     */
+    @TransactionalRead
+    public Map<Long, Map<LocalDate, FacilityCapacity>> getCapacityHistories(final Collection<Long> facilityIds, final LocalDate start, final LocalDate end) {
+        final Map<Long, List<FacilityCapacityHistory>> capacityHistories = facilityHistoryRepository.getCapacityHistories(facilityIds, start, end);
+        final Map<Long, Facility> facilities = facilityRepository.getFacilities(facilityIds);
+        return Maps.toMap(ImmutableSet.copyOf(facilityIds), id -> {
+            final Facility facility = facilities.get(id);
+            if (facility == null) {
+                throw new FacilityNotFoundException(id);
+            }
+            return findEntriesByDate(capacityHistories.getOrDefault(id, emptyList()), start, end, currentCapacity(facility), FacilityCapacity::new);
+        });
+    }
+
+    private static FacilityCapacityHistory currentCapacity(Facility facility) {
+        return new FacilityCapacityHistory(
                 null, null, null,
                 Optional.ofNullable(facility.builtCapacity).orElse(emptyMap()),
                 Optional.ofNullable(facility.unavailableCapacities).orElse(emptyList())
         );
-
-        return Maps.toMap(dateRangeClosed(start, end), date -> new FacilityCapacity(findEntryForDate(capacityHistory, date, identity)));
     }
 
-    private static <T extends HasInterval> T findEntryForDate(List<T> entries, LocalDate date, T identity) {
-        final Interval significantWindow = windowForDate(date);
-        return entries.stream()
-                .filter(e -> e.getInterval().overlaps(date.toInterval()))
-                .collect(reducing(identity, greatestOverlap(significantWindow)));
+    /**
+     * Selects the entry of each date by walking the entries, which are sorted by start, only once:
+     * the entries which have ended before a date are not looked at again for the later dates.
+     */
+    private static <T extends HasInterval, R> Map<LocalDate, R> findEntriesByDate(List<T> entries, LocalDate start, LocalDate end, T identity, Function<T, R> mapper) {
+        final List<Interval> intervals = entries.stream().map(HasInterval::getInterval).collect(toList());
+        final ImmutableMap.Builder<LocalDate, R> entriesByDate = ImmutableMap.builder();
+        int first = 0;
+        for (LocalDate date : dateRangeClosed(start, end)) {
+            final Interval day = date.toInterval();
+            while (first < entries.size() && intervals.get(first).getEndMillis() <= day.getStartMillis()) {
+                first++;
+            }
+            final BinaryOperator<T> greatestOverlap = greatestOverlap(windowForDate(date));
+            T selected = identity;
+            for (int i = first; i < entries.size() && intervals.get(i).getStartMillis() < day.getEndMillis(); i++) {
+                if (intervals.get(i).overlaps(day)) {
+                    selected = greatestOverlap.apply(selected, entries.get(i));
+                }
+            }
+            entriesByDate.put(date, mapper.apply(selected));
+        }
+        return entriesByDate.build();
     }
 
     private static <T extends HasInterval> BinaryOperator<T> greatestOverlap(Interval significantWindow) {
@@ -86,6 +86,11 @@ public class FacilityService {
         return repository.getFacility(id);
     }
 
+    @TransactionalRead
+    public Map<Long, Facility> getFacilities(Collection<Long> ids) {
+        return repository.getFacilities(ids);
+    }
+
     @TransactionalRead
     public SearchResults<FacilityInfo> search(PageableFacilitySearch search) {
         return repository.findFacilities(search);
@@ -166,7 +171,11 @@ public class FacilityService {
 
     private void autoUpdateFacilityCapacity(List<Utilization> utilization) {
         for (Utilization u : utilization) {
-            Facility facility = repository.getFacility(u.facilityId);
+            if (!capacityNeedsUpdate(repository.getFacility(u.facilityId), u)) {
+                continue;
+            }
+            // the facility returned by getFacility may be shared, so modify a copy loaded for update
+            Facility facility = repository.getFacilityForUpdate(u.facilityId);
 
             Integer builtCapacity = facility.builtCapacity.get(u.capacityType);
             if (builtCapacity == null) {
@@ -178,12 +187,8 @@ public class FacilityService {
                 repository.updateFacility(facility.id, facility);
             }
 
-            Predicate<UnavailableCapacity> matchesUtilization = uc -> uc.capacityType.equals(u.capacityType) && uc.usage.equals(u.usage);
-            int unavailableCapacity = facility.unavailableCapacities.stream()
-                    .filter(matchesUtilization)
-                    .map(uc -> uc.capacity)
-                    .findFirst()
-                    .orElse(0);
+            Predicate<UnavailableCapacity> matchesUtilization = matchesUtilization(u);
+            int unavailableCapacity = unavailableCapacity(facility, u);
             if (builtCapacity - unavailableCapacity != u.capacity) {
                 facility.unavailableCapacities.removeIf(matchesUtilization);
                 facility.unavailableCapacities.add(new UnavailableCapacity(u.capacityType, u.usage, builtCapacity - u.capacity));
@@ -192,8 +197,32 @@ public class FacilityService {
         }
     }
 
+    private static boolean capacityNeedsUpdate(Facility facility, Utilization u) {
+        Integer builtCapacity = facility.builtCapacity.get(u.capacityType);
+        if (builtCapacity == null) {
+            return false;
+        }
+        return builtCapacity < u.capacity || Math.max(builtCapacity, u.capacity) - unavailableCapacity(facility, u) != u.capacity;
+    }
+
+    private static int unavailableCapacity(Facility facility, Utilization u) {
+        return facility.unavailableCapacities.stream()
+                .filter(matchesUtilization(u))
+                .map(uc -> uc.capacity)
+                .findFirst()
+                .orElse(0);
+    }
+
+    private static Predicate<UnavailableCapacity> matchesUtilization(Utilization u) {
+        return uc -> uc.capacityType.equals(u.capacityType) && uc.usage.equals(u.usage);
+    }
+
     @TransactionalRead
     public Set<Utilization> findLatestUtilization(Long... facilityIds) {
         return utilizationRepository.findLatestUtilization(facilityIds);
     }
+
+    public Optional<LatestUtilizationVersion> getLatestUtilizationVersion() {
+        return utilizationRepository.getLatestUtilizationVersion();
+    }
 }
@@ -3,13 +3,17 @@
 
 package fi.hsl.parkandride.core.service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import fi.hsl.parkandride.core.back.*;
 import fi.hsl.parkandride.core.domain.*;
 import fi.hsl.parkandride.core.domain.prediction.*;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
+import org.joda.time.Period;
+import org.joda.time.ReadablePeriod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -17,9 +21,12 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import static java.util.Collections.emptySet;
-import static java.util.stream.Collectors.toList;
+import static java.util.Collections.singletonList;
 import static org.springframework.transaction.annotation.Isolation.READ_COMMITTED;
 import static org.springframework.transaction.annotation.Propagation.REQUIRES_NEW;
 
@@ -27,27 +34,38 @@ public class PredictionService {
 
     private static final Logger log = LoggerFactory.getLogger(PredictionService.class);
 
+    private static final int PREDICTOR_BATCH_SIZE = 50;
+    private static final Duration PREDICTOR_CLAIM_DURATION = Duration.standardMinutes(2);
+    private static final int MAX_FAILED_CLAIMS = 3;
+    private static final Duration UPDATE_PASS_DURATION = Duration.standardMinutes(4); // must fit in the cron interval
+    private static final ReadablePeriod HISTORY_WINDOW = Period.weeks(3).plus(RelativizedAverageOfPreviousWeeksPredictor.LOOKBACK_MINUTES);
+
     private final UtilizationRepository utilizationRepository;
     private final PredictionRepository predictionRepository;
     private final PredictorRepository predictorRepository;
     private final PlatformTransactionManager transactionManager;
     private final Map<String, Predictor> predictorsByType;
     private final FacilityRepository facilityRepository;
-    private final LockRepository lockRepository;
+    private final HubRepository hubRepository;
+    private final int updateThreads;
+
+    private volatile PredictionIndex predictionIndex = null; // loaded lazily
 
     public PredictionService(UtilizationRepository utilizationRepository,
                              PredictionRepository predictionRepository,
                              PredictorRepository predictorRepository,
                              FacilityRepository facilityRepository,
+                             HubRepository hubRepository,
                              PlatformTransactionManager transactionManager,
-                             LockRepository lockRepository,
+                             int updateThreads,
                              Predictor... predictors) {
         this.utilizationRepository = utilizationRepository;
         this.predictionRepository = predictionRepository;
         this.predictorRepository = predictorRepository;
         this.transactionManager = transactionManager;
         this.facilityRepository = facilityRepository;
-        this.lockRepository = lockRepository;
+        this.hubRepository = hubRepository;
+        this.updateThreads = updateThreads;
         Map<String, Predictor> predictorsByType = new HashMap<>();
         for (Predictor predictor : predictors) {
             predictorsByType.put(predictor.getType(), predictor);
@@ -57,17 +75,18 @@ public class PredictionService {
 
     @TransactionalWrite
     public void signalUpdateNeeded(List<Utilization> utilizations) {
-        utilizations.stream()
-                .map(Utilization::getUtilizationKey)
-                .distinct()
-                .forEach(this::signalUpdateNeeded);
+        Map<UtilizationKey, DateTime> earliestTimestamps = new LinkedHashMap<>();
+        for (Utilization u : utilizations) {
+            earliestTimestamps.merge(u.getUtilizationKey(), u.timestamp, (a, b) -> a.isBefore(b) ? a : b);
+        }
+        earliestTimestamps.forEach(this::signalUpdateNeeded);
     }
 
-    private void signalUpdateNeeded(UtilizationKey utilizationKey) {
+    private void signalUpdateNeeded(UtilizationKey utilizationKey, DateTime earliestTimestamp) {
         // TODO: should we cache that which predictors are already enabled? it would require resetting the cache when DevHelper.deleteAll() is called
         predictorsByType.keySet().stream()
                 .forEach(predictorType -> predictorRepository.enablePredictor(predictorType, utilizationKey));
-        predictorRepository.markPredictorsNeedAnUpdate(utilizationKey);
+        predictorRepository.markPredictorsNeedAnUpdate(utilizationKey, earliestTimestamp);
     }
 
     private Optional<Predictor> getPredictor(String predictorType) {
@@ -95,58 +114,183 @@ public class PredictionService {
      * @return prediction results
      */
     public List<PredictionResult> getPredictionResultByFacility(long facilityId, DateTime time) {
-        final Facility facility = facilityRepository.getFacility(facilityId);
+        return getPredictionIndex().getPredictionResults(facilityRepository.getFacility(facilityId), time);
+    }
+
+    /**
+     * Get the sums of the predictions of the hub's facilities by capacity type and usage.
+     *
+     * @see #getPredictionResultByFacility(long, DateTime)
+     */
+    public List<HubPredictionResult> getPredictionResultByHub(long hubId, DateTime time) {
+        PredictionIndex index = getPredictionIndex();
+        Set<Long> facilityIds = index.containsHub(hubId)
+                ? index.getHubFacilityIds(hubId)
+                : hubRepository.getHub(hubId).facilityIds; // created after the index was loaded
+        return index.getHubPredictionResults(hubId, facilityRepository.getFacilities(facilityIds).values(), time);
+    }
+
+    /**
+     * Resolves the facilities, hubs and times of the request up front, so that an invalid request
+     * fails before any results are written.
+     */
+    public BulkPredictions getBulkPredictions(BulkPredictionRequest request) {
+        List<Violation> violations = request.validate();
+        if (!violations.isEmpty()) {
+            throw new ValidationException(violations);
+        }
+        PredictionIndex index = getPredictionIndex();
+        Map<Long, Set<Long>> hubFacilityIds = new LinkedHashMap<>();
+        for (Long hubId : request.hubIds) {
+            hubFacilityIds.put(hubId, index.containsHub(hubId)
+                    ? index.getHubFacilityIds(hubId)
+                    : hubRepository.getHub(hubId).facilityIds); // created after the index was loaded
+        }
+        Set<Long> facilityIds = new LinkedHashSet<>(request.facilityIds);
+        hubFacilityIds.values().forEach(facilityIds::addAll);
+        Map<Long, Facility> facilities = facilityRepository.getFacilities(facilityIds); // throws if any of them does not exist
+
+        List<Facility> requestedFacilities = new ArrayList<>();
+        request.facilityIds.forEach(id -> requestedFacilities.add(facilities.get(id)));
+        Map<Long, Collection<Facility>> hubFacilities = new LinkedHashMap<>();
+        hubFacilityIds.forEach((hubId, ids) -> {
+            List<Facility> list = new ArrayList<>();
+            ids.forEach(id -> list.add(facilities.get(id)));
+            hubFacilities.put(hubId, list);
+        });
+        return new BulkPredictions(index, requestedFacilities, hubFacilities, request.requestedTimes(DateTime.now()));
+    }
 
-        Map<CapacityType, Set<Usage>> usagesByCapacityType = FacilityUtil.usagesByCapacityType(facility);
+    private PredictionIndex getPredictionIndex() {
+        PredictionIndex index = predictionIndex;
+        return index != null ? index : reloadPredictionIndex(false);
+    }
 
-        return getPredictionsByFacility(facilityId, time)
-                .stream()
-                .flatMap(pb -> PredictionResult.from(pb).stream())
-                .filter(pr -> usagesByCapacityType.getOrDefault(pr.capacityType, emptySet()).contains(pr.usage))
-                .filter(pr -> facility.builtCapacity.getOrDefault(pr.capacityType, 0) > 0)
-                .collect(toList());
+    /**
+     * Picks up the predictions made by the other cluster nodes.
+     */
+    @Scheduled(fixedDelayString = "${prediction.index.poll:60000}")
+    public void refreshPredictionIndex() {
+        if (predictionIndex != null) {
+            reloadPredictionIndex(true);
+        }
     }
 
+    /**
+     * Makes the next read reload the prediction index.
+     */
+    public void invalidatePredictionIndex() {
+        predictionIndex = null;
+    }
+
+    private synchronized PredictionIndex reloadPredictionIndex(boolean force) {
+        PredictionIndex index = predictionIndex;
+        if (!force && index != null) {
+            return index; // another thread already loaded it
+        }
+        DateTime now = DateTime.now();
+        Map<UtilizationKey, TimeSeries> predictions = predictionRepository.findAllPredictions();
+        List<Hub> hubs = hubRepository.findHubs(new HubSearch()).results;
+        Set<Long> facilityIds = new HashSet<>();
+        predictions.keySet().forEach(key -> facilityIds.add(key.facilityId));
+        hubs.forEach(hub -> facilityIds.addAll(hub.facilityIds));
+        index = new PredictionIndex(now, predictions, facilityRepository.getFacilities(facilityIds), hubs);
+        predictionIndex = index;
+        return index;
+    }
+
+    /**
+     * Updates the predictors needing an update on a bounded thread pool. The worker threads of all
+     * cluster nodes claim disjoint batches of predictors until there are no more predictors to update.
+     */
     @Scheduled(cron = "0 */5 * * * *") // every 5 minutes to match PredictionDao.PREDICTION_RESOLUTION
     public void updatePredictions() {
-        Optional<Lock> lock = Optional.empty();
+        log.info("Updating predictions");
+        DateTime deadline = DateTime.now().plus(UPDATE_PASS_DURATION);
+        ExecutorService executor = Executors.newFixedThreadPool(updateThreads,
+                new ThreadFactoryBuilder().setNameFormat("update-predictions-%d").setDaemon(true).build());
         try {
-            lock = Optional.of(lockRepository.acquireLock("update-predictions", Duration.standardMinutes(2)));
-            doUpdatePredictions();
-        } catch (LockException e) {
-            log.debug("Failed to get lock for updating predictions - another node updates them.");
-            return;
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < updateThreads; i++) {
+                workers.add(executor.submit(() -> updateClaimedPredictors(deadline)));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    log.error("Failed to update predictions", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
-            lock.ifPresent(l -> lockRepository.releaseLock(l));
+            executor.shutdownNow();
+        }
+        try {
+            reloadPredictionIndex(true);
+        } catch (RuntimeException e) {
+            log.error("Failed to reload the prediction index", e);
         }
     }
 
-    private void doUpdatePredictions() {
-        log.info("Updating predictions");
+    private void updateClaimedPredictors(DateTime deadline) {
         TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
         txTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED); // TODO: set in Core/JdbcConfiguration
         txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
 
-        for (Long predictorId : findPredictorsNeedingUpdate()) {
+        int failedClaims = 0;
+        while (DateTime.now().isBefore(deadline)) {
+            DateTime claimedUntil = DateTime.now().plus(PREDICTOR_CLAIM_DURATION);
+            List<Long> predictorIds;
+            try {
+                predictorIds = predictorRepository.claimPredictorsNeedingUpdate(PREDICTOR_BATCH_SIZE, claimedUntil);
+                failedClaims = 0;
+            } catch (ConcurrencyFailureException e) {
+                if (++failedClaims >= MAX_FAILED_CLAIMS) {
+                    throw e;
+                }
+                log.debug("Failed to claim predictors, retrying", e);
+                continue;
+            }
+            if (predictorIds.isEmpty()) {
+                return;
+            }
             try {
-                txTemplate.execute(tx -> {
-                    updatePredictor(predictorId);
-                    log.debug("Updating predictor {} done", predictorId);
-                    return null;
-                });
-            } catch (Exception e) {
-                log.error("Failed to update predictor {}", predictorId, e);
+                updatePredictors(predictorIds, txTemplate);
+            } finally {
+                predictorRepository.releasePredictors(predictorIds, claimedUntil);
             }
         }
     }
 
-    private List<Long> findPredictorsNeedingUpdate() {
-        List<Long> predictorIds = predictorRepository.findPredictorsNeedingUpdate();
-        Collections.shuffle(predictorIds); // distribute the load over all servers
-        return predictorIds;
+    private void updatePredictors(List<Long> predictorIds, TransactionTemplate txTemplate) {
+        // the claimed batch contains all predictors of a utilization key, so they can share its history
+        Map<UtilizationKey, UtilizationHistory> histories = new HashMap<>();
+        try {
+            updatePredictors(predictorIds, histories, txTemplate);
+        } catch (Exception e) {
+            log.warn("Failed to update predictors {} in one transaction, updating them one at a time", predictorIds, e);
+            for (Long predictorId : predictorIds) {
+                try {
+                    updatePredictors(singletonList(predictorId), histories, txTemplate);
+                } catch (Exception e2) {
+                    log.error("Failed to update predictor {}", predictorId, e2);
+                }
+            }
+        }
+    }
+
+    private void updatePredictors(List<Long> predictorIds, Map<UtilizationKey, UtilizationHistory> histories, TransactionTemplate txTemplate) {
+        txTemplate.execute(tx -> {
+            Map<Long, PredictionBatch> results = new LinkedHashMap<>();
+            predictorIds.forEach(predictorId -> updatePredictor(predictorId, histories, results));
+            predictionRepository.updatePredictions(results); // one batch for all predictors
+            log.debug("Updating predictors {} done", predictorIds);
+            return null;
+        });
     }
 
-    private void updatePredictor(Long predictorId) {
+    private void updatePredictor(Long predictorId, Map<UtilizationKey, UtilizationHistory> histories, Map<Long, PredictionBatch> results) {
         final PredictorState state = predictorRepository.getById(predictorId);
         if (state.moreUtilizations == false) {
             log.debug("Another cluster node already updated predictor ID {} (type {} for {}), skipping...", state.predictorId, state.predictorType, state.utilizationKey);
@@ -156,12 +300,15 @@ public class PredictionService {
         state.moreUtilizations = false; // by default mark everything as processed, but allow the predictor to override it (and uninstalled predictors get disabled)
         getPredictor(state.predictorType).ifPresent(predictor -> {
             // TODO: consider the update interval of prediction types? or leave that up to the predictor?
-            List<Prediction> predictions = predictor.predict(state, new UtilizationHistoryImpl(utilizationRepository, state.utilizationKey), getAvailableMaxCapacity(state));
+            UtilizationHistory history = histories.computeIfAbsent(state.utilizationKey,
+                    key -> UtilizationHistoryWindow.load(utilizationRepository, key, HISTORY_WINDOW));
+            List<Prediction> predictions = predictor.predict(state, history, getAvailableMaxCapacity(state));
             // TODO: should we set state.latestUtilization here so that all predictors don't need to remember do it? or will some predictors use different logic for it, for example if they process only part of the updates?
             // TODO: save to prediction log
             log.debug("Got {} predictions. state = {}", predictions.size(), state);
-            predictionRepository.updatePredictions(toPredictionBatch(state, predictions), predictorId);
+            results.put(predictorId, toPredictionBatch(state, predictions));
         });
+        state.earliestNewUtilization = null;
         predictorRepository.save(state); // save state even if predictor is not present: this disables uninstalled predictors
     }
 
@@ -0,0 +1,147 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.domain.RequestLogKey;
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free request counts by hour, url pattern and source. Once a (url pattern, source) pair has been seen
+ * during the hour, counting it allocates nothing. Draining never loses counts: each count is read and zeroed
+ * atomically, so an increment racing with a drain is included either in this drain or in the next one.
+ */
+class RequestLogCounter {
+
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2;
+
+    private final ConcurrentMap<Long, HourCounts> hours = new ConcurrentHashMap<>();
+    private final AtomicReference<HourCounts> latest = new AtomicReference<>();
+
+    public void increment(String urlPattern, String source, long timestampMillis) {
+        hourCounts(hourStart(timestampMillis)).get(urlPattern, source).add(1);
+    }
+
+    public void add(RequestLogKey key, long count) {
+        hourCounts(hourStart(key.timestamp.getMillis())).get(key.urlPattern, key.source).add(count);
+    }
+
+    /**
+     * Reads and zeroes all the counts. The hours which can no longer receive increments are dropped.
+     *
+     * @param nowMillis the current time, which tells which hours may still receive increments
+     * @return the non-zero counts, with the timestamps rounded down to the hour
+     */
+    public Map<RequestLogKey, Long> drain(long nowMillis) {
+        long currentHour = hourStart(nowMillis);
+        long previousHour = hourStart(currentHour - 1);
+        Map<RequestLogKey, Long> counts = new HashMap<>();
+        hours.forEach((hourStart, hour) -> {
+            if (hourStart != currentHour && hourStart != previousHour && hour != latest.get()) {
+                // Removed before draining, so that only a thread which looked up the hour before this
+                // and has not incremented yet, i.e. one stalled for over an hour, could still miss the drain
+                hours.remove(hourStart, hour);
+            }
+            hour.drainTo(counts);
+        });
+        return counts;
+    }
+
+    public void clear() {
+        hours.clear();
+        latest.set(null);
+    }
+
+    private HourCounts hourCounts(long hourStart) {
+        HourCounts hour = latest.get();
+        if (hour != null && hour.hourStart == hourStart) {
+            return hour;
+        }
+        HourCounts counts = hours.computeIfAbsent(hourStart, HourCounts::new);
+        latest.accumulateAndGet(counts, (prev, next) -> prev == null || next.hourStart > prev.hourStart ? next : prev);
+        return counts;
+    }
+
+    private static long hourStart(long millis) {
+        return ISOChronology.getInstance().hourOfDay().roundFloor(millis);
+    }
+
+    private static class HourCounts {
+        final long hourStart;
+        final ConcurrentMap<String, UrlCounts> byUrlPattern = new ConcurrentHashMap<>();
+
+        HourCounts(long hourStart) {
+            this.hourStart = hourStart;
+        }
+
+        StripedCount get(String urlPattern, String source) {
+            UrlCounts urlCounts = byUrlPattern.get(urlPattern);
+            if (urlCounts == null) {
+                urlCounts = byUrlPattern.computeIfAbsent(urlPattern, k -> new UrlCounts());
+            }
+            return urlCounts.get(source);
+        }
+
+        void drainTo(Map<RequestLogKey, Long> counts) {
+            DateTime timestamp = new DateTime(hourStart);
+            byUrlPattern.forEach((urlPattern, urlCounts) -> {
+                drainTo(counts, new RequestLogKey(urlPattern, null, timestamp), urlCounts.unknownSource);
+                urlCounts.bySource.forEach((source, count) ->
+                        drainTo(counts, new RequestLogKey(urlPattern, source, timestamp), count));
+            });
+        }
+
+        private static void drainTo(Map<RequestLogKey, Long> counts, RequestLogKey key, StripedCount count) {
+            long sum = count.drain();
+            if (sum != 0) {
+                counts.merge(key, sum, Long::sum);
+            }
+        }
+    }
+
+    private static class UrlCounts {
+        final ConcurrentMap<String, StripedCount> bySource = new ConcurrentHashMap<>();
+        final StripedCount unknownSource = new StripedCount();
+
+        StripedCount get(String source) {
+            if (source == null) {
+                return unknownSource;
+            }
+            StripedCount count = bySource.get(source);
+            if (count == null) {
+                count = bySource.computeIfAbsent(source, k -> new StripedCount());
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Spreads the updates of concurrent threads over several cells, like LongAdder, but can also be drained
+     * without losing the updates which happen at the same time.
+     */
+    private static class StripedCount {
+        final AtomicLongArray cells = new AtomicLongArray(STRIPES);
+
+        void add(long n) {
+            cells.addAndGet((int) Thread.currentThread().getId() & (STRIPES - 1), n);
+        }
+
+        long drain() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                if (cells.get(i) != 0) {
+                    sum += cells.getAndSet(i, 0);
+                }
+            }
+            return sum;
+        }
+    }
+}
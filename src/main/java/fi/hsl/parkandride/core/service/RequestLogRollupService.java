@@ -0,0 +1,71 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.back.LockRepository;
+import fi.hsl.parkandride.core.back.RequestLogRepository;
+import fi.hsl.parkandride.core.domain.Lock;
+import fi.hsl.parkandride.core.domain.LockAcquireFailedException;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+import org.joda.time.ReadablePeriod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Rebuilds the daily and monthly request counts of the recent months from the hourly counts (see
+ * {@link RequestLogRepository#rebuildDailyAndMonthlyCounts}), so that they catch up with the hourly counts
+ * which were written without them, e.g. by nodes of an older version during a rolling deploy.
+ */
+public class RequestLogRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestLogRollupService.class);
+
+    private static final String LOCK_NAME = "request-log-rollup";
+    private static final Duration LOCK_DURATION = Duration.standardMinutes(30);
+
+    private final RequestLogRepository requestLogRepository;
+    private final LockRepository lockRepository;
+    private final boolean enabled;
+    private final ReadablePeriod age;
+
+    /**
+     * @param age how far back the months are rebuilt, e.g. P1M for the current and the previous month
+     */
+    public RequestLogRollupService(RequestLogRepository requestLogRepository,
+                                   LockRepository lockRepository,
+                                   boolean enabled,
+                                   ReadablePeriod age) {
+        this.requestLogRepository = requestLogRepository;
+        this.lockRepository = lockRepository;
+        this.enabled = enabled;
+        this.age = age;
+    }
+
+    /**
+     * Only one cluster node rebuilds at a time; the others skip the pass.
+     */
+    @Scheduled(cron = "${requestlog.rollup.rebuild.cron:0 50 3 * * *}")
+    public void rebuildDailyAndMonthlyCounts() {
+        if (!enabled) {
+            return;
+        }
+        Lock lock;
+        try {
+            lock = lockRepository.acquireLock(LOCK_NAME, LOCK_DURATION);
+        } catch (LockAcquireFailedException e) {
+            log.info("Skipping request log rollup rebuild: {}", e.getMessage());
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            LocalDate start = today.minus(age);
+            log.info("Rebuilding the daily and monthly request counts of the months from {} to {}", start, today);
+            requestLogRepository.rebuildDailyAndMonthlyCounts(start, today);
+        } finally {
+            lockRepository.releaseLock(lock);
+        }
+    }
+}
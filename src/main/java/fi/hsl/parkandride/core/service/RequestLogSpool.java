@@ -0,0 +1,305 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.domain.RequestLogKey;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Node-local, append-only spool of the request log batches which have not been stored in the database yet.
+ * Each batch is forced to a memory-mapped file before it is sent to the database and marked flushed once the
+ * database has it, so that the counts survive restarts and database outages. The spool is compacted whenever
+ * it has no unflushed batches left, or by rewriting the unflushed ones when the file grows too large.
+ * <p>
+ * A record is: type (byte), body length (int), body, CRC32 of the body (int). The records end at a zero type
+ * byte, or at a record whose checksum does not match, which is what a write torn by a crash leaves behind.
+ */
+public class RequestLogSpool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestLogSpool.class);
+
+    private static final byte END = 0;
+    private static final byte BATCH = 1;
+    private static final byte FLUSHED = 2;
+    private static final int RECORD_OVERHEAD = 1 + 4 + 4;
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final int COMPACTION_THRESHOLD = 1024 * 1024;
+    private static final int MAX_SPOOLS = 16;
+
+    private final Path file;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private final Map<String, Map<RequestLogKey, Long>> pending = new LinkedHashMap<>();
+
+    /**
+     * Opens the first spool in the directory which is not in use by another application instance,
+     * and recovers the batches which were left unflushed in it.
+     */
+    public static RequestLogSpool open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            for (int i = 0; i < MAX_SPOOLS; i++) {
+                FileChannel lockChannel = FileChannel.open(directory.resolve("requestlog-" + i + ".lock"), CREATE, WRITE);
+                FileLock lock = tryLock(lockChannel);
+                if (lock != null) {
+                    return new RequestLogSpool(directory.resolve("requestlog-" + i + ".spool"), lockChannel, lock);
+                }
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        throw new IllegalStateException("All request log spools in " + directory + " are in use");
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null; // locked by another application context in this JVM
+        }
+    }
+
+    private RequestLogSpool(Path file, FileChannel lockChannel, FileLock lock) throws IOException {
+        this.file = file;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        map();
+        recover();
+        if (!pending.isEmpty()) {
+            log.info("Recovered {} unflushed request log batches from {}", pending.size(), file);
+        }
+    }
+
+    /**
+     * @return the id of the batch
+     */
+    public synchronized String append(Map<RequestLogKey, Long> counts) {
+        String batchId = UUID.randomUUID().toString();
+        write(BATCH, encodeBatch(batchId, counts));
+        pending.put(batchId, new HashMap<>(counts));
+        return batchId;
+    }
+
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return the unflushed batches by id, in the order they were appended
+     */
+    public synchronized Map<String, Map<RequestLogKey, Long>> getPending() {
+        return new LinkedHashMap<>(pending);
+    }
+
+    public synchronized void markFlushed(String batchId) {
+        if (pending.remove(batchId) == null) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            reset();
+        } else {
+            write(FLUSHED, encodeBatchId(batchId));
+            if (position > COMPACTION_THRESHOLD) {
+                rewrite();
+            }
+        }
+    }
+
+    /**
+     * Discards also the unflushed batches.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        reset();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        buffer.force();
+        channel.close();
+        lock.release();
+        lockChannel.close();
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(file, CREATE, READ, WRITE);
+        buffer = channel.map(READ_WRITE, 0, Math.max(INITIAL_SIZE, channel.size()));
+    }
+
+    private void recover() throws IOException {
+        position = 0;
+        while (position + RECORD_OVERHEAD <= buffer.capacity()) {
+            byte type = buffer.get(position);
+            int length = buffer.getInt(position + 1);
+            if (type == END || length < 0 || position + RECORD_OVERHEAD + length > buffer.capacity()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.position(position + 5);
+            buffer.get(body);
+            if (buffer.getInt() != checksum(body)) {
+                log.warn("Ignoring a torn request log spool record at {} in {}", position, file);
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            String batchId = in.readUTF();
+            if (type == BATCH) {
+                pending.put(batchId, decodeCounts(in));
+            } else {
+                pending.remove(batchId);
+            }
+            position += RECORD_OVERHEAD + length;
+        }
+        if (pending.isEmpty()) {
+            reset();
+        } else {
+            rewrite();
+        }
+    }
+
+    private void write(byte type, byte[] body) {
+        int end = position + RECORD_OVERHEAD + body.length;
+        ensureCapacity(end + 1);
+        buffer.put(end, END);
+        buffer.putInt(position + 1, body.length);
+        buffer.position(position + 5);
+        buffer.put(body);
+        buffer.putInt(checksum(body));
+        buffer.put(position, type);
+        buffer.force();
+        position = end;
+    }
+
+    private void reset() {
+        position = 0;
+        buffer.put(0, END);
+        buffer.force();
+    }
+
+    /**
+     * Replaces the file with one which has only the unflushed batches, so that a crash in the middle
+     * cannot lose any of them.
+     */
+    private void rewrite() {
+        try {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            pending.forEach((batchId, counts) -> writeRecord(records, BATCH, encodeBatch(batchId, counts)));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                out.write(ByteBuffer.wrap(records.toByteArray()));
+                out.force(true);
+            }
+            Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            channel.close();
+            map();
+            position = records.size();
+            ensureCapacity(position + 1);
+            buffer.put(position, END);
+            buffer.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        try {
+            buffer = channel.map(READ_WRITE, 0, Math.max(required, buffer.capacity() * 2L));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream records, byte type, byte[] body) {
+        DataOutputStream out = new DataOutputStream(records);
+        try {
+            out.writeByte(type);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt(checksum(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encodeBatchId(String batchId) {
+        return encode(out -> out.writeUTF(batchId));
+    }
+
+    private static byte[] encodeBatch(String batchId, Map<RequestLogKey, Long> counts) {
+        return encode(out -> {
+            out.writeUTF(batchId);
+            out.writeInt(counts.size());
+            for (Map.Entry<RequestLogKey, Long> entry : counts.entrySet()) {
+                RequestLogKey key = entry.getKey();
+                out.writeLong(key.timestamp.getMillis());
+                out.writeUTF(key.urlPattern);
+                out.writeBoolean(key.source != null);
+                if (key.source != null) {
+                    out.writeUTF(key.source);
+                }
+                out.writeLong(entry.getValue());
+            }
+        });
+    }
+
+    private static Map<RequestLogKey, Long> decodeCounts(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<RequestLogKey, Long> counts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            DateTime timestamp = new DateTime(in.readLong());
+            String urlPattern = in.readUTF();
+            String source = in.readBoolean() ? in.readUTF() : null;
+            counts.put(new RequestLogKey(urlPattern, source, timestamp), in.readLong());
+        }
+        return counts;
+    }
+
+    private interface Encoder {
+        void encode(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.encode(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
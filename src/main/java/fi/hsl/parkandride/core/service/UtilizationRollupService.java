@@ -0,0 +1,93 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.back.FacilityRepository;
+import fi.hsl.parkandride.core.back.LockRepository;
+import fi.hsl.parkandride.core.back.UtilizationRepository;
+import fi.hsl.parkandride.core.domain.FacilityInfo;
+import fi.hsl.parkandride.core.domain.Lock;
+import fi.hsl.parkandride.core.domain.LockAcquireFailedException;
+import fi.hsl.parkandride.core.domain.PageableFacilitySearch;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.ReadablePeriod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Rolls up the utilizations which are older than the roll-up age into hourly summaries (see
+ * {@link UtilizationRepository#rollUpUtilizations}), which the usage reports read instead of every utilization.
+ * The utilizations themselves are kept. The age must exceed how late utilizations may be registered, because
+ * a roll-up does not see the utilizations which are registered after it.
+ */
+public class UtilizationRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(UtilizationRollupService.class);
+
+    private static final String LOCK_NAME = "utilization-rollup";
+    private static final Duration LOCK_DURATION = Duration.standardHours(1);
+    private static final Duration ROLLUP_PASS_DURATION = LOCK_DURATION.minus(Duration.standardMinutes(5)); // must fit in the lock
+    static final Duration MAX_RANGE_PER_TRANSACTION = Duration.standardDays(7);
+
+    private final UtilizationRepository utilizationRepository;
+    private final FacilityRepository facilityRepository;
+    private final LockRepository lockRepository;
+    private final boolean enabled;
+    private final ReadablePeriod age;
+
+    public UtilizationRollupService(UtilizationRepository utilizationRepository,
+                                    FacilityRepository facilityRepository,
+                                    LockRepository lockRepository,
+                                    boolean enabled,
+                                    ReadablePeriod age) {
+        this.utilizationRepository = utilizationRepository;
+        this.facilityRepository = facilityRepository;
+        this.lockRepository = lockRepository;
+        this.enabled = enabled;
+        this.age = age;
+    }
+
+    /**
+     * Only one cluster node rolls up at a time; the others skip the pass.
+     */
+    @Scheduled(cron = "${utilization.rollup.cron:0 40 3 * * *}")
+    public void rollUpUtilizations() {
+        if (!enabled) {
+            return;
+        }
+        Lock lock;
+        try {
+            lock = lockRepository.acquireLock(LOCK_NAME, LOCK_DURATION);
+        } catch (LockAcquireFailedException e) {
+            log.info("Skipping utilization roll-up: {}", e.getMessage());
+            return;
+        }
+        try {
+            rollUpUtilizations(DateTime.now().minus(age), DateTime.now().plus(ROLLUP_PASS_DURATION));
+        } finally {
+            lockRepository.releaseLock(lock);
+        }
+    }
+
+    /**
+     * Rolls up one facility at a time in transactions of bounded size. What is left over when the deadline
+     * is reached will be rolled up on the next pass.
+     */
+    public void rollUpUtilizations(DateTime olderThan, DateTime deadline) {
+        DateTime end = olderThan.hourOfDay().roundFloorCopy();
+        log.info("Rolling up utilizations older than {}", end);
+        for (FacilityInfo facility : facilityRepository.findFacilities(new PageableFacilitySearch()).results) {
+            DateTime rolledUpUntil;
+            do {
+                if (DateTime.now().isAfter(deadline)) {
+                    log.warn("Utilization roll-up did not finish in time; continuing on the next pass");
+                    return;
+                }
+                rolledUpUntil = utilizationRepository.rollUpUtilizations(facility.id, end, MAX_RANGE_PER_TRANSACTION);
+            } while (rolledUpUntil.isBefore(end));
+        }
+    }
+}
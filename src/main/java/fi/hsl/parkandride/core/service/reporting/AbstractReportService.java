@@ -11,13 +11,17 @@ import org.joda.time.LocalDate;
 
 import javax.inject.Inject;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
 
 import static com.google.common.collect.Iterators.filter;
 import static fi.hsl.parkandride.core.domain.Permission.REPORT_GENERATE;
 import static fi.hsl.parkandride.core.service.AuthenticationService.authorize;
 import static fi.hsl.parkandride.core.service.AuthenticationService.getLimitedOperatorId;
 import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
@@ -27,22 +31,25 @@ public abstract class AbstractReportService extends ReportServiceSupport impleme
     @Inject
     ExcelUtil excelUtil;
 
+    @Inject
+    ParallelReportExecutor parallelReportExecutor;
+
     protected AbstractReportService(String reportName, FacilityService facilityService, OperatorService operatorService, ContactService contactService, HubService hubService, UtilizationRepository utilizationRepository, TranslationService translationService, RegionRepository regionRepository, FacilityHistoryService facilityHistoryService) {
         super(facilityService, operatorService, contactService, hubService, utilizationRepository, translationService, regionRepository, facilityHistoryService);
         this.reportName = reportName;
     }
 
     /**
-     * Generates the Excel report and converts it to bytes.
+     * Generates the Excel report to be streamed with {@link ExcelReport#writeTo}.
      * Verifies that the current user has permission to generate reports.
      * Do not override.
      */
     @Override
     @TransactionalRead
-    public byte[] generateReport(User currentUser, ReportParameters reportParameters) {
+    public ExcelReport generateReport(User currentUser, ReportParameters reportParameters) {
         authorize(currentUser, REPORT_GENERATE);
         ReportContext ctx = new ReportContext(this, getLimitedOperatorId(currentUser));
-        return generateReport(ctx, reportParameters).toBytes();
+        return ExcelReport.build(excel -> generateReport(excel, ctx, reportParameters));
     }
 
     /**
@@ -53,7 +60,7 @@ public abstract class AbstractReportService extends ReportServiceSupport impleme
         return reportName;
     }
 
-    protected abstract Excel generateReport(ReportContext reportContext, ReportParameters params);
+    protected abstract void generateReport(Excel excel, ReportContext reportContext, ReportParameters params);
 
 
     protected final UtilizationSearch toUtilizationSearch(ReportParameters parameters, final ReportContext ctx) {
@@ -96,6 +103,32 @@ public abstract class AbstractReportService extends ReportServiceSupport impleme
         return search;
     }
 
+    /**
+     * Computes a part of the report for each subset of the searched facilities in parallel. The parts
+     * can be merged simply, since no report row combines the utilizations of several facilities.
+     */
+    protected final <R> List<R> mapFacilityParts(UtilizationSearch search, ReportContext ctx, ReportParameters parameters, Function<UtilizationSearch, R> fn) {
+        Set<Long> facilityIds = new TreeSet<>(search.facilityIds.isEmpty() ? ctx.facilities.keySet() : search.facilityIds);
+        if (!isEmpty(parameters.facilities)) {
+            // the other facilities would be filtered out anyway
+            facilityIds.retainAll(parameters.facilities);
+        }
+        List<UtilizationSearch> parts = parallelReportExecutor.partition(facilityIds).stream()
+                .map(ids -> withFacilityIds(search, ids))
+                .collect(toList());
+        return parallelReportExecutor.map(parts, fn);
+    }
+
+    private static UtilizationSearch withFacilityIds(UtilizationSearch search, Set<Long> facilityIds) {
+        UtilizationSearch part = new UtilizationSearch();
+        part.facilityIds = facilityIds;
+        part.capacityTypes = search.capacityTypes;
+        part.usages = search.usages;
+        part.start = search.start;
+        part.end = search.end;
+        return part;
+    }
+
     protected Iterator<Utilization> addFilters(Iterator<Utilization> iter, ReportContext ctx, ReportParameters parameters) {
         if (ctx.allowedOperatorId != null) {
             iter = filter(iter, u -> ctx.facilities.containsKey(u.facilityId));
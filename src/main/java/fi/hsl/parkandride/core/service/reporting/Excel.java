@@ -6,15 +6,17 @@ package fi.hsl.parkandride.core.service.reporting;
 import fi.hsl.parkandride.core.domain.MultilingualString;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
@@ -25,10 +27,16 @@ import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.joining;
 import static org.apache.poi.ss.usermodel.Cell.*;
 
+/**
+ * Rows are kept in memory only within a window of the most recently created rows; older rows are flushed
+ * to a temporary file, which is copied to the output when the workbook is written.
+ */
 class Excel {
     private static final Logger log = LoggerFactory.getLogger(Excel.class);
 
-    private final Workbook wb = new XSSFWorkbook();
+    static final int ROW_ACCESS_WINDOW_SIZE = 100;
+
+    private final SXSSFWorkbook wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
     private final Font font12pt = wb.createFont();
     private final Font font12ptGreen = wb.createFont();
     private final Font font12ptRed = wb.createFont();
@@ -53,6 +61,7 @@ class Excel {
     private Sheet sheet;
 
     {
+        wb.setCompressTempFiles(true);
         font12pt.setFontHeightInPoints((short) 12);
         font12ptGreen.setFontHeightInPoints((short) 12);
         font12ptGreen.setColor(IndexedColors.GREEN.index);
@@ -117,6 +126,13 @@ class Excel {
     }
 
     public <T> void addSheet(String name, List<T> rows, List<TableColumn<T>> columns) {
+        addSheet(name, rows.iterator(), columns);
+    }
+
+    /**
+     * Writes the rows as they are iterated, so that they need not all be in memory at once.
+     */
+    public <T> void addSheet(String name, Iterator<T> rows, List<TableColumn<T>> columns) {
         sheet = wb.createSheet(name);
         sheet.createFreezePane(0, 1, 0, 1);
 
@@ -129,13 +145,18 @@ class Excel {
             cell.setCellValue(colType.name);
         }
 
-        for (int r = 0; r < rows.size(); ++r) {
+        int r = 0;
+        for (; rows.hasNext(); ++r) {
+            final T v = rows.next();
+            if (r + 1 == ROW_ACCESS_WINDOW_SIZE) {
+                // size the columns by the first rows while they are still in memory
+                autosize(maxColumns);
+            }
             Row row = sheet.createRow(r + 1);
             for (int column = 0; column < columns.size(); ++column) {
                 TableColumn<T> colType = columns.get(column);
                 Object value;
                 Optional<CellStyle> style;
-                final T v = rows.get(r);
                 try {
                   value = colType.valueFunction.apply(v);
                 } catch (RuntimeException ex) {
@@ -186,10 +207,12 @@ class Excel {
                 }
             }
         }
-        if (!rows.isEmpty()) {
-            sheet.setAutoFilter(new CellRangeAddress(0, rows.size(), 0, maxColumns));
+        if (r > 0) {
+            sheet.setAutoFilter(new CellRangeAddress(0, r, 0, maxColumns));
+        }
+        if (r < ROW_ACCESS_WINDOW_SIZE) {
+            autosize(maxColumns);
         }
-        autosize(maxColumns);
     }
 
     private static String cleanExceptionMessage(RuntimeException ex) {
@@ -216,15 +239,24 @@ class Excel {
         }
     }
 
-    byte[] toBytes() {
+    /**
+     * Writes the workbook and deletes its temporary files. The workbook cannot be used after this.
+     */
+    void write(OutputStream out) {
         try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
             wb.write(out);
-            out.close();
-            wb.close();
-            return out.toByteArray();
+            out.flush();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
+        } finally {
+            dispose();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Deletes the temporary files of the workbook. The workbook cannot be used after this.
+     */
+    void dispose() {
+        wb.dispose();
+    }
+}
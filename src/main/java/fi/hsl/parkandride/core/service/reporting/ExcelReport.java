@@ -0,0 +1,38 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * A generated report which has not yet been written out. Its rows are buffered in temporary files
+ * rather than in the heap, so it must be written exactly once to release them.
+ */
+public class ExcelReport {
+
+    private final Excel excel;
+
+    private ExcelReport(Excel excel) {
+        this.excel = excel;
+    }
+
+    /**
+     * Builds the report into a new workbook, whose temporary files are deleted if building it fails.
+     */
+    static ExcelReport build(Consumer<Excel> builder) {
+        Excel excel = new Excel();
+        try {
+            builder.accept(excel);
+        } catch (RuntimeException | Error e) {
+            excel.dispose();
+            throw e;
+        }
+        return new ExcelReport(excel);
+    }
+
+    public void writeTo(OutputStream out) {
+        excel.write(out);
+    }
+}
@@ -3,6 +3,7 @@
 
 package fi.hsl.parkandride.core.service.reporting;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
 import com.mysema.commons.lang.CloseableIterator;
 import fi.hsl.parkandride.back.RegionRepository;
@@ -15,9 +16,11 @@ import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import static fi.hsl.parkandride.core.domain.DayType.*;
@@ -26,11 +29,12 @@ import static fi.hsl.parkandride.util.ArgumentValidator.validate;
 import static java.time.LocalTime.ofSecondOfDay;
 import static java.util.Arrays.asList;
 import static java.util.Arrays.fill;
+import static java.util.Collections.emptyIterator;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Comparator.comparing;
-import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.*;
+import static org.joda.time.DateTimeConstants.SECONDS_PER_HOUR;
 
 public class FacilityUsageReportService extends AbstractReportService {
 
@@ -42,32 +46,12 @@ public class FacilityUsageReportService extends AbstractReportService {
     }
 
     @Override
-    protected Excel generateReport(ReportContext ctx, ReportParameters parameters) {
+    protected void generateReport(Excel excel, ReportContext ctx, ReportParameters parameters) {
         int intervalSeconds = validate(parameters.interval).gt(0) * 60;
 
         UtilizationSearch search = toUtilizationSearch(parameters, ctx);
         validate(search.start).lte(search.end);
 
-        Map<UtilizationReportKey, UtilizationReportRow> reportRows = new LinkedHashMap<>();
-
-        try (CloseableIterator<Utilization> utilizations = utilizationRepository.findUtilizations(search)) {
-            addFilters(utilizations, ctx, parameters)
-                    .forEachRemaining(setValueToLatestFreeSpacesInWindow(ctx, intervalSeconds, reportRows));
-        }
-
-        addDayToDayStatusInformation(reportRows, parameters.startDate, parameters.endDate);
-
-        Excel excel = new Excel();
-
-        List<UtilizationReportRow> rows = reportRows.values()
-                .stream()
-                .sorted(comparing((UtilizationReportRow row) -> row.key.date)
-                        .thenComparing(row -> row.key.facility.name.fi)
-                        .thenComparing(row -> row.key.capacityType)
-                        .thenComparing(row -> row.key.usage)
-                )
-                .collect(toList());
-
         Map<FacilityStatus, CellStyle> colors = ImmutableMap.of(
                 IN_OPERATION, excel.green,
                 EXCEPTIONAL_SITUATION, excel.yellow,
@@ -100,31 +84,105 @@ public class FacilityUsageReportService extends AbstractReportService {
                 return dateTime.isAfter(currentDateTime) ? "" : r.values[idx];
             }));
         }
-        excel.addSheet(excelUtil.getMessage("reports.usage.sheets.usage"), rows, columns);
+        excel.addSheet(excelUtil.getMessage("reports.usage.sheets.usage"), new ReportRowIterator(ctx, parameters, search, intervalSeconds), columns);
         excel.addSheet(excelUtil.getMessage("reports.usage.sheets.legend"),
                 excelUtil.getMessage("reports.usage.legend").split("\n"));
-        return excel;
+    }
+
+    /**
+     * Computes the rows one date at a time as they are written, so that only the rows of one date
+     * (and the previous date, for the initial values) are in memory at once.
+     */
+    private class ReportRowIterator extends AbstractIterator<UtilizationReportRow> {
+        private final ReportContext ctx;
+        private final ReportParameters parameters;
+        private final UtilizationSearch search;
+        private final int intervalSeconds;
+        private final LocalDate lastDate;
+        private LocalDate date;
+        private Map<UtilizationReportKey, UtilizationReportRow> previousDayRows = emptyMap();
+        private Iterator<UtilizationReportRow> rows = emptyIterator();
+
+        ReportRowIterator(ReportContext ctx, ReportParameters parameters, UtilizationSearch search, int intervalSeconds) {
+            this.ctx = ctx;
+            this.parameters = parameters;
+            this.search = search;
+            this.intervalSeconds = intervalSeconds;
+            this.date = search.start.toLocalDate();
+            this.lastDate = search.end.toLocalDate();
+        }
+
+        @Override
+        protected UtilizationReportRow computeNext() {
+            while (!rows.hasNext()) {
+                if (date.isAfter(lastDate)) {
+                    return endOfData();
+                }
+                rows = getReportRows(date).iterator();
+                date = date.plusDays(1);
+            }
+            return rows.next();
+        }
+
+        private List<UtilizationReportRow> getReportRows(LocalDate date) {
+            UtilizationSearch daySearch = withinDate(search, date);
+            Map<UtilizationReportKey, UtilizationReportRow> reportRows = new LinkedHashMap<>();
+            mapFacilityParts(daySearch, ctx, parameters, partSearch -> FacilityUsageReportService.this.getReportRows(ctx, parameters, partSearch, intervalSeconds, previousDayRows))
+                    .forEach(reportRows::putAll);
+            previousDayRows = reportRows;
+            return reportRows.values()
+                    .stream()
+                    .sorted(comparing((UtilizationReportRow row) -> row.key.facility.name.fi)
+                            .thenComparing(row -> row.key.capacityType)
+                            .thenComparing(row -> row.key.usage)
+                    )
+                    .collect(toList());
+        }
+    }
+
+    private static UtilizationSearch withinDate(UtilizationSearch search, LocalDate date) {
+        UtilizationSearch daySearch = new UtilizationSearch();
+        daySearch.facilityIds = search.facilityIds;
+        daySearch.capacityTypes = search.capacityTypes;
+        daySearch.usages = search.usages;
+        daySearch.start = date.toDateTimeAtStartOfDay();
+        daySearch.end = date.toDateTimeAtStartOfDay().millisOfDay().withMaximumValue();
+        return daySearch;
+    }
+
+    private Map<UtilizationReportKey, UtilizationReportRow> getReportRows(ReportContext ctx, ReportParameters parameters, UtilizationSearch search, int intervalSeconds,
+                                                                          Map<UtilizationReportKey, UtilizationReportRow> previousDayRows) {
+        Map<UtilizationReportKey, UtilizationReportRow> reportRows = new LinkedHashMap<>();
+
+        // the utilizations of one hour fall into the same whole-hour interval, where only the last of them is shown
+        boolean wholeHours = intervalSeconds % SECONDS_PER_HOUR == 0;
+        try (CloseableIterator<Utilization> utilizations = wholeHours
+                ? utilizationRepository.findLastUtilizationsOfHours(search)
+                : utilizationRepository.findUtilizations(search)) {
+            addFilters(utilizations, ctx, parameters)
+                    .forEachRemaining(setValueToLatestFreeSpacesInWindow(ctx, intervalSeconds, reportRows, previousDayRows));
+        }
+
+        LocalDate date = search.start.toLocalDate();
+        addDayToDayStatusInformation(reportRows, date, date);
+        return reportRows;
     }
 
     private void addDayToDayStatusInformation(Map<UtilizationReportKey, UtilizationReportRow> reportRows, LocalDate startDate, LocalDate endDate) {
-        final Map<Long, Map<LocalDate, FacilityStatus>> statusHistory = reportRows.keySet().stream()
-                .map(key -> key.facility.id)
-                .distinct()
-                .collect(toMap(
-                        identity(),
-                        id -> facilityHistoryService.getStatusHistoryByDay(id, startDate, endDate)
-                ));
+        final Set<Long> facilityIds = reportRows.keySet().stream().map(key -> key.facility.id).collect(toSet());
+        final Map<Long, Map<LocalDate, FacilityStatus>> statusHistory = facilityHistoryService.getStatusHistoriesByDay(facilityIds, startDate, endDate);
         reportRows.forEach((key, row) -> row.effectiveStatus = statusHistory.getOrDefault(key.facility.id, emptyMap())
                 .getOrDefault(key.date, key.facility.status));
     }
 
-    private Consumer<Utilization> setValueToLatestFreeSpacesInWindow(ReportContext ctx, int intervalSeconds, Map<UtilizationReportKey, UtilizationReportRow> reportRows) {
+    private Consumer<Utilization> setValueToLatestFreeSpacesInWindow(ReportContext ctx, int intervalSeconds, Map<UtilizationReportKey, UtilizationReportRow> reportRows,
+                                                                     Map<UtilizationReportKey, UtilizationReportRow> previousDayRows) {
         return u -> {
             UtilizationReportKey key = new UtilizationReportKey(u);
             key.facility = ctx.facilities.get(u.facilityId);
             UtilizationReportRow value = reportRows.get(key);
             if (value == null) {
-                UtilizationReportRow prevDayRow = reportRows.get(key.prevDay());
+                UtilizationReportRow prevDayRow = previousDayRows.get(key.prevDay());
                 int initialValue = 0;
                 if (prevDayRow != null) {
                     initialValue = prevDayRow.values[prevDayRow.values.length - 1];
@@ -31,13 +31,11 @@ public class HubsAndFacilitiesReportService extends AbstractReportService {
     }
 
     @Override
-    protected Excel generateReport(ReportContext ctx, ReportParameters params) {
-        Excel excel = new Excel();
+    protected void generateReport(Excel excel, ReportContext ctx, ReportParameters params) {
         addRegionsSheet(excel, new ArrayList<>(ctx.hubs.values()), ctx);
         addFacilitiesSheet(excel, new ArrayList<>(ctx.facilities.values()), ctx);
         excel.addSheet(excelUtil.getMessage("reports.hf.sheets.legend"),
                 excelUtil.getMessage("reports.hf.legend").split("\n"));
-        return excel;
     }
 
     private void addFacilitiesSheet(Excel excel, List<Facility> facilities, ReportContext ctx) {
@@ -18,6 +18,7 @@ import java.util.function.Function;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
+import static com.google.common.collect.Iterators.transform;
 import static com.google.common.collect.Lists.newArrayList;
 import static fi.hsl.parkandride.core.domain.FacilityStatus.*;
 import static fi.hsl.parkandride.core.domain.Region.UNKNOWN_REGION;
@@ -53,7 +54,7 @@ public class MaxUtilizationReportService extends AbstractReportService {
     }
 
     @Override
-    protected Excel generateReport(ReportContext ctx, ReportParameters parameters) {
+    protected void generateReport(Excel excel, ReportContext ctx, ReportParameters parameters) {
         // Filtered utilizations to spaces available
         // (Facility, LocalDate, CapacityType, Usage) -> [totalCapacity,unavailableCapacity,availableSpaces]
         MaxUtilizationReportInfo reportInfo = getReportInfo(ctx, parameters);
@@ -64,13 +65,18 @@ public class MaxUtilizationReportService extends AbstractReportService {
         // calculate averages and sums
         List<MaxUtilizationReportRow> rows = createReportRows(ctx, hubStats, reportInfo);
 
-        Excel excel = createExcelReport(ctx, rows);
-
-        return excel;
+        createExcelReport(excel, ctx, rows);
     }
 
     private MaxUtilizationReportInfo getReportInfo(ReportContext ctx, ReportParameters params) {
-        Map<MaxUtilizationReportKeyWithDate, Integer> facilityStats = getFacilityStats(ctx, params, toUtilizationSearch(params, ctx));
+        MaxUtilizationReportInfo reportInfo = new MaxUtilizationReportInfo();
+        mapFacilityParts(toUtilizationSearch(params, ctx), ctx, params, search -> getReportInfo(ctx, params, search))
+                .forEach(part -> part.rows.forEach(reportInfo::addRow));
+        return reportInfo;
+    }
+
+    private MaxUtilizationReportInfo getReportInfo(ReportContext ctx, ReportParameters params, UtilizationSearch search) {
+        Map<MaxUtilizationReportKeyWithDate, Integer> facilityStats = getFacilityStats(ctx, params, search);
         Set<Long> facilityIds = facilityStats.keySet().stream().map(key -> key.targetId).distinct().collect(toSet());
         // Historical information
         Map<Long, Map<LocalDate, FacilityStatus>> facilityStatusHistory = getFacilityStatusHistory(facilityIds, params.startDate, params.endDate);
@@ -97,11 +103,11 @@ public class MaxUtilizationReportService extends AbstractReportService {
     }
 
     private Map<Long, Map<LocalDate, FacilityStatus>> getFacilityStatusHistory(Set<Long> facilityIds, LocalDate startDate, LocalDate endDate) {
-        return Maps.toMap(facilityIds, id -> facilityHistoryService.getStatusHistoryByDay(id, startDate, endDate));
+        return facilityHistoryService.getStatusHistoriesByDay(facilityIds, startDate, endDate);
     }
 
     private Map<Long, Map<LocalDate, FacilityCapacity>> getFacilityCapacityHistory(Set<Long> facilityIds, LocalDate startDate, LocalDate endDate) {
-        return Maps.toMap(facilityIds, id -> facilityHistoryService.getCapacityHistory(id, startDate, endDate));
+        return facilityHistoryService.getCapacityHistories(facilityIds, startDate, endDate);
     }
 
     private Map<MaxUtilizationReportKey, Integer> getFacilityUnavailableCapacity(ReportContext ctx, Map<Long, Map<LocalDate, FacilityCapacity>> capacityHistory) {
@@ -133,8 +139,7 @@ public class MaxUtilizationReportService extends AbstractReportService {
         }).entrySet().stream().map(mappingKey((key, val) -> key.toReportKey())).collect(entriesToMap(Math::max));
     }
 
-    private Excel createExcelReport(ReportContext ctx, List<MaxUtilizationReportRow> rows) {
-        Excel excel = new Excel();
+    private void createExcelReport(Excel excel, ReportContext ctx, List<MaxUtilizationReportRow> rows) {
         Function<MaxUtilizationReportRow, Object> valFn = (MaxUtilizationReportRow r) -> r.average;
         List<Excel.TableColumn<MaxUtilizationReportRow>> columns = asList(
                 excelUtil.tcol("reports.utilization.col.hub", (MaxUtilizationReportRow r) -> r.hubName),
@@ -151,7 +156,6 @@ public class MaxUtilizationReportService extends AbstractReportService {
         excel.addSheet(excelUtil.getMessage("reports.utilization.sheets.summary"), rows, columns);
         excel.addSheet(excelUtil.getMessage("reports.utilization.sheets.legend"),
                 excelUtil.getMessage("reports.utilization.legend").split("\n"));
-        return excel;
     }
 
     private List<MaxUtilizationReportRow> createReportRows(ReportContext ctx, Map<HubReportKey, List<MaxUtilizationReportKeyWithDate>> hubStats, MaxUtilizationReportInfo reportInfo) {
@@ -267,8 +271,13 @@ public class MaxUtilizationReportService extends AbstractReportService {
         return hubStats;
     }
 
+    /**
+     * Reads the daily minimums instead of the raw utilizations, so that the cost depends on the number of
+     * days and utilization keys instead of the number of utilizations.
+     */
     private Map<MaxUtilizationReportKeyWithDate, Integer> getFacilityStats(ReportContext ctx, ReportParameters parameters, UtilizationSearch search) {
-        try (CloseableIterator<Utilization> utilizations = utilizationRepository.findUtilizations(search)) {
+        try (CloseableIterator<DailyUtilization> dailyUtilizations = utilizationRepository.findDailyUtilizations(search)) {
+            Iterator<Utilization> utilizations = transform(dailyUtilizations, MaxUtilizationReportService::toMinimumOfDay);
             return stream(spliteratorUnknownSize(addFilters(utilizations, ctx, parameters), Spliterator.ORDERED), false)
                     .filter(u -> hasBuiltCapacity(u, ctx.facilities))
                     .collect(toMap(
@@ -280,6 +289,17 @@ public class MaxUtilizationReportService extends AbstractReportService {
         }
     }
 
+    private static Utilization toMinimumOfDay(DailyUtilization d) {
+        Utilization u = new Utilization();
+        u.facilityId = d.facilityId;
+        u.capacityType = d.capacityType;
+        u.usage = d.usage;
+        u.timestamp = d.date.toDateTimeAtStartOfDay();
+        u.spacesAvailable = d.minSpacesAvailable;
+        u.capacity = d.maxCapacity;
+        return u;
+    }
+
     private static class MaxUtilizationReportInfo {
 
         Map<MaxUtilizationReportKeyWithDate, FacilityRowInfo> rows = new LinkedHashMap<>();
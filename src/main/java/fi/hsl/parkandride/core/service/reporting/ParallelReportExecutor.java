@@ -0,0 +1,122 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import static org.springframework.transaction.TransactionDefinition.ISOLATION_READ_COMMITTED;
+import static org.springframework.transaction.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+
+/**
+ * Computes the parts of a report in parallel on a bounded pool which is shared by all reports.
+ * <p>
+ * The calling thread computes parts in its own transaction, and each helper computes parts in a read-only
+ * transaction of its own. Helpers claim parts only after they have got a connection, so a report finishes
+ * (serially, at worst) even when the connection pool has no connections to spare.
+ */
+public class ParallelReportExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelReportExecutor.class);
+
+    private static final int PARTS_PER_WORKER = 2; // evens out the parts whose facilities have more data
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final TransactionTemplate txTemplate;
+
+    public ParallelReportExecutor(PlatformTransactionManager transactionManager, int parallelism) {
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism);
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        txTemplate.setReadOnly(true);
+        txTemplate.setIsolationLevel(ISOLATION_READ_COMMITTED);
+        txTemplate.setPropagationBehavior(PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Splits the ids into consecutive parts of about equal size, as many as there is work for the workers.
+     */
+    <T> List<Set<T>> partition(Collection<T> ids) {
+        int partSize = Math.max(1, (ids.size() + parallelism * PARTS_PER_WORKER - 1) / (parallelism * PARTS_PER_WORKER));
+        List<Set<T>> parts = new ArrayList<>();
+        for (List<T> part : Iterables.partition(ids, partSize)) {
+            parts.add(new LinkedHashSet<>(part));
+        }
+        return parts;
+    }
+
+    /**
+     * @return the results in the order of the parts
+     */
+    <T, R> List<R> map(List<T> parts, Function<T, R> fn) {
+        int partCount = parts.size();
+        AtomicInteger nextPart = new AtomicInteger();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(partCount);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(partCount);
+        Runnable worker = () -> {
+            for (int i; (i = nextPart.getAndIncrement()) < partCount; ) {
+                try {
+                    if (failure.get() == null) {
+                        results.set(i, fn.apply(parts.get(i)));
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < Math.min(parallelism, partCount); i++) {
+            helpers.add(pool.submit(() -> {
+                try {
+                    txTemplate.execute(tx -> {
+                        worker.run();
+                        return null;
+                    });
+                } catch (RuntimeException e) {
+                    log.warn("Report worker failed to get a transaction; the other workers compute its parts", e);
+                }
+            }));
+        }
+        try {
+            worker.run();
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing a report", e);
+        } finally {
+            // the helpers which are still waiting for a connection have nothing left to do
+            helpers.forEach(helper -> helper.cancel(false));
+        }
+        if (failure.get() != null) {
+            throw Throwables.propagate(failure.get());
+        }
+        List<R> resultList = new ArrayList<>(partCount);
+        for (int i = 0; i < partCount; i++) {
+            resultList.add(results.get(i));
+        }
+        return resultList;
+    }
+}
@@ -75,7 +75,7 @@ final class ReportContext {
         search.setLimit(10000);
         search.setOperatorId(allowedOperatorId);
         List<FacilityInfo> facilityInfos = reportService.facilityService.search(search).results;
-        return facilityInfos.stream().map((FacilityInfo f) -> reportService.facilityService.getFacility(f.id)).collect(toMap((Facility f) -> f.id, identity(), (u, v) -> u, LinkedHashMap::new));
+        return reportService.facilityService.getFacilities(facilityInfos.stream().map((FacilityInfo f) -> f.id).collect(toList()));
     }
 
     private Map<Long, Operator> getOperators(ReportServiceSupport reportService, Long allowedOperatorId) {
@@ -0,0 +1,46 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import com.google.common.base.MoreObjects;
+import org.joda.time.DateTime;
+
+/**
+ * A report generated in the background by {@link ReportJobService}. Only the public fields are shown to clients.
+ */
+public class ReportJob {
+
+    public final String id;
+    public final String reportName;
+    public final DateTime submitted;
+    public volatile ReportJobStatus status = ReportJobStatus.QUEUED;
+    public volatile DateTime finished;
+
+    final ReportJobKey key;
+
+    ReportJob(String id, ReportJobKey key, DateTime submitted) {
+        this.id = id;
+        this.reportName = key.reportName;
+        this.key = key;
+        this.submitted = submitted;
+    }
+
+    void finish(ReportJobStatus status) {
+        this.finished = DateTime.now();
+        this.status = status;
+    }
+
+    boolean isVisibleTo(Long limitedOperatorId) {
+        return limitedOperatorId == null || limitedOperatorId.equals(key.allowedOperatorId);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("reportName", reportName)
+                .add("status", status)
+                .toString();
+    }
+}
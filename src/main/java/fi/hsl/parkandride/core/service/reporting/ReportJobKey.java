@@ -0,0 +1,81 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import com.google.common.collect.ImmutableSet;
+import fi.hsl.parkandride.core.domain.CapacityType;
+import fi.hsl.parkandride.core.domain.Usage;
+import org.joda.time.LocalDate;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Identifies the reports which have the same contents: the report, its parameters with missing filters
+ * normalized to empty sets, and the operator whose facilities the requesting user is limited to.
+ */
+final class ReportJobKey {
+
+    final String reportName;
+    final Long allowedOperatorId;
+
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int interval;
+    private final RequestLogInterval requestLogInterval;
+    private final Set<Long> operators;
+    private final Set<Long> hubs;
+    private final Set<Long> facilities;
+    private final Set<Long> regions;
+    private final Set<Usage> usages;
+    private final Set<CapacityType> capacityTypes;
+
+    ReportJobKey(String reportName, Long allowedOperatorId, ReportParameters parameters) {
+        this.reportName = reportName;
+        this.allowedOperatorId = allowedOperatorId;
+        this.startDate = parameters.startDate;
+        this.endDate = parameters.endDate;
+        this.interval = parameters.interval;
+        this.requestLogInterval = parameters.requestLogInterval;
+        this.operators = normalize(parameters.operators);
+        this.hubs = normalize(parameters.hubs);
+        this.facilities = normalize(parameters.facilities);
+        this.regions = normalize(parameters.regions);
+        this.usages = normalize(parameters.usages);
+        this.capacityTypes = normalize(parameters.capacityTypes);
+    }
+
+    private static <T> Set<T> normalize(Set<T> values) {
+        return values == null ? ImmutableSet.of() : ImmutableSet.copyOf(values);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        ReportJobKey other = (ReportJobKey) obj;
+        return reportName.equals(other.reportName)
+                && Objects.equals(allowedOperatorId, other.allowedOperatorId)
+                && Objects.equals(startDate, other.startDate)
+                && Objects.equals(endDate, other.endDate)
+                && interval == other.interval
+                && requestLogInterval == other.requestLogInterval
+                && operators.equals(other.operators)
+                && hubs.equals(other.hubs)
+                && facilities.equals(other.facilities)
+                && regions.equals(other.regions)
+                && usages.equals(other.usages)
+                && capacityTypes.equals(other.capacityTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(reportName, allowedOperatorId, startDate, endDate, interval, requestLogInterval,
+                operators, hubs, facilities, regions, usages, capacityTypes);
+    }
+}
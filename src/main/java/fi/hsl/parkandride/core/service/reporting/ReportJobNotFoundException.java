@@ -0,0 +1,13 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import fi.hsl.parkandride.core.domain.NotFoundException;
+
+public class ReportJobNotFoundException extends NotFoundException {
+
+    public ReportJobNotFoundException(String jobId) {
+        super("ReportJob#%s not found", jobId);
+    }
+}
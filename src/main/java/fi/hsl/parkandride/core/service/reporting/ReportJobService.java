@@ -0,0 +1,181 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fi.hsl.parkandride.core.domain.NotFoundException;
+import fi.hsl.parkandride.core.domain.User;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static fi.hsl.parkandride.core.domain.Permission.REPORT_GENERATE;
+import static fi.hsl.parkandride.core.service.AuthenticationService.authorize;
+import static fi.hsl.parkandride.core.service.AuthenticationService.getLimitedOperatorId;
+import static fi.hsl.parkandride.core.service.reporting.ReportJobStatus.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Generates reports in a bounded pool of worker threads so that HTTP requests don't wait for them.
+ * Identical reports are generated only once, and the results are kept on local disk until they expire.
+ * The jobs are not shared between cluster nodes, so clients must poll the node that they submitted to.
+ */
+public class ReportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+    private static final String RESULT_SUFFIX = ".xlsx";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final Pattern RESULT_FILE_NAME = Pattern.compile(
+            "([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})" + Pattern.quote(RESULT_SUFFIX) + "(" + Pattern.quote(TEMPORARY_SUFFIX) + ")?");
+
+    private final Map<String, ReportService> reporters;
+    private final Path resultDirectory;
+    private final Duration resultTtl;
+    private final ExecutorService executor;
+
+    private final Map<String, ReportJob> jobsById = new ConcurrentHashMap<>();
+    private final Map<ReportJobKey, ReportJob> jobsByKey = new HashMap<>(); // guarded by this
+
+    public ReportJobService(Collection<ReportService> reportServices, Path resultDirectory, int workerThreads, int maxQueuedJobs, Duration resultTtl) {
+        this.reporters = reportServices.stream().collect(toMap(ReportService::reportName, rs -> rs));
+        this.resultDirectory = resultDirectory;
+        this.resultTtl = resultTtl;
+        this.executor = new ThreadPoolExecutor(workerThreads, workerThreads, 0, MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs),
+                new ThreadFactoryBuilder().setNameFormat("report-job-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Returns the unexpired job of an identical earlier request if there is one, unless it failed.
+     *
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public synchronized ReportJob submit(User currentUser, String reportName, ReportParameters parameters) {
+        authorize(currentUser, REPORT_GENERATE);
+        ReportService reporter = reporters.get(reportName);
+        if (reporter == null) {
+            throw new NotFoundException("Report %s not found", reportName);
+        }
+        ReportJobKey key = new ReportJobKey(reportName, getLimitedOperatorId(currentUser), parameters);
+        ReportJob existing = jobsByKey.get(key);
+        if (existing != null && existing.status != FAILED) {
+            return existing;
+        }
+
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), key, DateTime.now());
+        try {
+            executor.execute(() -> run(job, reporter, currentUser, parameters));
+        } catch (RejectedExecutionException e) {
+            throw new RejectedExecutionException("Too many reports queued", e);
+        }
+        jobsByKey.put(key, job);
+        jobsById.put(job.id, job);
+        log.info("Submitted {}", job);
+        return job;
+    }
+
+    public ReportJob getJob(User currentUser, String jobId) {
+        authorize(currentUser, REPORT_GENERATE);
+        ReportJob job = jobsById.get(jobId);
+        if (job == null || !job.isVisibleTo(getLimitedOperatorId(currentUser))) {
+            throw new ReportJobNotFoundException(jobId);
+        }
+        return job;
+    }
+
+    /**
+     * @throws NotFoundException if the job has not finished successfully
+     */
+    public Path getResult(User currentUser, String jobId) {
+        ReportJob job = getJob(currentUser, jobId);
+        if (job.status != FINISHED) {
+            throw new NotFoundException("Result of ReportJob#%s is not available", jobId);
+        }
+        return resultFile(job.id);
+    }
+
+    private void run(ReportJob job, ReportService reporter, User currentUser, ReportParameters parameters) {
+        job.status = RUNNING;
+        Path temporaryFile = resultDirectory.resolve(job.id + RESULT_SUFFIX + TEMPORARY_SUFFIX);
+        try {
+            Files.createDirectories(resultDirectory);
+            ExcelReport report = reporter.generateReport(currentUser, parameters);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporaryFile))) {
+                report.writeTo(out);
+            }
+            Files.move(temporaryFile, resultFile(job.id), ATOMIC_MOVE);
+            job.finish(FINISHED);
+            log.info("Finished {}", job);
+        } catch (Exception e) {
+            log.error("Failed " + job, e);
+            deleteQuietly(temporaryFile);
+            job.finish(FAILED);
+        }
+    }
+
+    /**
+     * Also removes the results which were left over from a previous run of the application. Only files named
+     * like results are removed, so that other files in the directory are left alone.
+     */
+    @Scheduled(fixedDelayString = "${report.jobs.eviction.poll:60000}")
+    public synchronized void evictExpiredJobs() {
+        DateTime expiredBefore = DateTime.now().minus(resultTtl);
+        for (Iterator<ReportJob> it = jobsById.values().iterator(); it.hasNext(); ) {
+            ReportJob job = it.next();
+            if (job.finished != null && job.finished.isBefore(expiredBefore)) {
+                it.remove();
+                jobsByKey.remove(job.key, job);
+                deleteQuietly(resultFile(job.id));
+            }
+        }
+        if (Files.isDirectory(resultDirectory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(resultDirectory)) {
+                for (Path file : files) {
+                    Matcher name = RESULT_FILE_NAME.matcher(file.getFileName().toString());
+                    if (name.matches() && !jobsById.containsKey(name.group(1))) {
+                        deleteQuietly(file);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to list report results in " + resultDirectory, e);
+            }
+        }
+    }
+
+    private Path resultFile(String jobId) {
+        return resultDirectory.resolve(jobId + RESULT_SUFFIX);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete " + file, e);
+        }
+    }
+}
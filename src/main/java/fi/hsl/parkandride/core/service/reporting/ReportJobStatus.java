@@ -0,0 +1,11 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+public enum ReportJobStatus {
+    QUEUED,
+    RUNNING,
+    FINISHED,
+    FAILED
+}
@@ -8,10 +8,10 @@ import fi.hsl.parkandride.core.domain.User;
 public interface ReportService {
 
     /**
-     * Generates the Excel report and converts it to bytes.
+     * Generates the Excel report, which is then streamed to its destination with {@link ExcelReport#writeTo}.
      * Verifies that the current user has permission to generate reports.
      */
-    byte[] generateReport(User currentUser, ReportParameters reportParameters);
+    ExcelReport generateReport(User currentUser, ReportParameters reportParameters);
 
     /**
      * Get the name of the report this service produces. Names should be unique.
@@ -13,6 +13,7 @@ import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -33,29 +34,58 @@ public class RequestLogReportService implements ReportService {
     RequestLogRepository requestLogRepository;
 
     @Override
-    public byte[] generateReport(User currentUser, ReportParameters reportParameters) {
+    public ExcelReport generateReport(User currentUser, ReportParameters reportParameters) {
         authorize(currentUser, Permission.REPORT_GENERATE);
-        Excel excel = new Excel();
 
         final RequestLogInterval interval = Optional.ofNullable(reportParameters.requestLogInterval).orElse(RequestLogInterval.DAY);
-        addRequestLogSheet(excel, getRowsForDates(
+        final List<RequestLogEntry> rows = getRowsForDates(
                 validate(reportParameters.startDate).notNull(),
                 validate(reportParameters.endDate).notNull(),
                 interval
-        ), interval);
-
-        excel.addSheet(excelUtil.getMessage("reports.requestlog.sheets.legend"),
-                excelUtil.getMessage("reports.requestlog.legend").split("\n"));
-
-        return excel.toBytes();
+        );
+        return ExcelReport.build(excel -> {
+            addRequestLogSheet(excel, rows, interval);
+            excel.addSheet(excelUtil.getMessage("reports.requestlog.sheets.legend"),
+                    excelUtil.getMessage("reports.requestlog.legend").split("\n"));
+        });
     }
 
-    private List<RequestLogEntry> getRowsForDates(LocalDate startDate, LocalDate endDate, RequestLogInterval interval) {
+    List<RequestLogEntry> getRowsForDates(LocalDate startDate, LocalDate endDate, RequestLogInterval interval) {
         final DateTime start = startDate.toDateTimeAtStartOfDay();
         final DateTime end = endDate.toDateTimeAtStartOfDay().millisOfDay().withMaximumValue();
         validate(start).lte(end);
-        final List<RequestLogEntry> logEntriesBetween = requestLogRepository.getLogEntriesBetween(start, end);
-        return logEntriesBetween.stream()
+        return sumByInterval(getLogEntries(startDate, endDate, interval), interval);
+    }
+
+    /**
+     * Reads the counts from the coarsest rollup which matches the interval. The months which are only partly
+     * within the range are read from the daily rollup.
+     */
+    private List<RequestLogEntry> getLogEntries(LocalDate startDate, LocalDate endDate, RequestLogInterval interval) {
+        if (interval == RequestLogInterval.HOUR) {
+            return requestLogRepository.getLogEntriesBetween(startDate.toDateTimeAtStartOfDay(),
+                    endDate.toDateTimeAtStartOfDay().millisOfDay().withMaximumValue());
+        } else if (interval == RequestLogInterval.DAY) {
+            return requestLogRepository.getDailyLogEntriesBetween(startDate, endDate);
+        }
+        final LocalDate firstFullMonth = startDate.getDayOfMonth() == 1 ? startDate : startDate.plusMonths(1).withDayOfMonth(1);
+        final LocalDate endOfLastFullMonth = endDate.plusDays(1).withDayOfMonth(1).minusDays(1);
+        if (!firstFullMonth.isBefore(endOfLastFullMonth)) {
+            return requestLogRepository.getDailyLogEntriesBetween(startDate, endDate);
+        }
+        final List<RequestLogEntry> entries = new ArrayList<>();
+        if (startDate.isBefore(firstFullMonth)) {
+            entries.addAll(requestLogRepository.getDailyLogEntriesBetween(startDate, firstFullMonth.minusDays(1)));
+        }
+        entries.addAll(requestLogRepository.getMonthlyLogEntriesBetween(firstFullMonth, endOfLastFullMonth));
+        if (endDate.isAfter(endOfLastFullMonth)) {
+            entries.addAll(requestLogRepository.getDailyLogEntriesBetween(endOfLastFullMonth.plusDays(1), endDate));
+        }
+        return entries;
+    }
+
+    private static List<RequestLogEntry> sumByInterval(List<RequestLogEntry> entries, RequestLogInterval interval) {
+        return entries.stream()
                 .collect(groupingBy(entry -> interval.apply(entry.key)))
                 .entrySet().stream()
                 .map(groupedEntry -> {
@@ -6,6 +6,9 @@ package fi.hsl.parkandride.dev;
 import com.querydsl.sql.RelationalPath;
 import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
 import fi.hsl.parkandride.FeatureProfile;
+import fi.hsl.parkandride.back.FacilityCache;
+import fi.hsl.parkandride.back.LatestUtilizationStore;
+import fi.hsl.parkandride.back.RequestLogDao;
 import fi.hsl.parkandride.back.sql.*;
 import fi.hsl.parkandride.core.back.UserRepository;
 import fi.hsl.parkandride.core.domain.*;
@@ -40,6 +43,14 @@ public class DevHelper {
 
     @Resource BatchingRequestLogService batchingRequestLogService;
 
+    @Resource RequestLogDao requestLogDao;
+
+    @Resource LatestUtilizationStore latestUtilizationStore;
+
+    @Resource FacilityCache facilityCache;
+
+    @Resource PredictionService predictionService;
+
     @Inject
     public DevHelper(PostgreSQLQueryFactory queryFactory, JdbcTemplate jdbcTemplate) {
         this.queryFactory = queryFactory;
@@ -122,6 +133,9 @@ public class DevHelper {
                 QFacilityPrediction.facilityPrediction,
                 QPredictor.predictor,
                 QFacilityUtilization.facilityUtilization,
+                QFacilityUtilizationRollup.facilityUtilizationRollup,
+                QFacilityUtilizationHourly.facilityUtilizationHourly,
+                QFacilityUtilizationDaily.facilityUtilizationDaily,
                 QFacilityService.facilityService,
                 QFacilityPaymentMethod.facilityPaymentMethod,
                 QFacilityAlias.facilityAlias,
@@ -132,6 +146,9 @@ public class DevHelper {
                 QUnavailableCapacityHistory.unavailableCapacityHistory,
                 QFacilityCapacityHistory.facilityCapacityHistory,
                 QFacility.facility);
+        latestUtilizationStore.utilizationKeysChanged();
+        facilityCache.invalidateAll();
+        predictionService.invalidatePredictionIndex();
         resetPredictorSequence();
         resetFacilitySequence();
     }
@@ -139,6 +156,7 @@ public class DevHelper {
     @TransactionalWrite
     public void deleteHubs() {
         delete(QHubFacility.hubFacility, QHub.hub);
+        predictionService.invalidatePredictionIndex();
         resetHubSequence();
     }
 
@@ -146,8 +164,12 @@ public class DevHelper {
     private void deleteRequestLog() {
         batchingRequestLogService.clearLogStash();
         delete(QRequestLog.requestLog);
+        delete(QRequestLogDaily.requestLogDaily);
+        delete(QRequestLogMonthly.requestLogMonthly);
+        delete(QRequestLogBatch.requestLogBatch);
         delete(QRequestLogSource.requestLogSource);
         delete(QRequestLogUrl.requestLogUrl);
+        requestLogDao.invalidateCachedIds();
     }
 
     @TransactionalWrite
@@ -30,6 +30,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 import static fi.hsl.parkandride.MDCFilter.LIIPI_APPLICATION_ID;
 import static java.util.stream.Collectors.toList;
@@ -63,6 +64,11 @@ public class ExceptionHandlers {
         return handleError(request, BAD_REQUEST, ex, ex.getMessage(), null);
     }
 
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, Object>> rejectedExecutionException(HttpServletRequest request, RejectedExecutionException ex) {
+        return handleError(request, SERVICE_UNAVAILABLE, ex);
+    }
+
     @ExceptionHandler(ClientAbortException.class)
     public void clientAbortException(ClientAbortException e) {
         // Nothing to respond here as client has terminated connection
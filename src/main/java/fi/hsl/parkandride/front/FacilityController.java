@@ -16,13 +16,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import static fi.hsl.parkandride.front.UrlSchema.*;
@@ -40,6 +39,7 @@ public class FacilityController {
 
     @Inject FacilityService facilityService;
     @Inject PredictionService predictionService;
+    @Inject UtilizationsResponseCache utilizationsResponseCache;
 
     @RequestMapping(method = POST, value = FACILITIES, produces = APPLICATION_JSON_VALUE)
     public ResponseEntity<Facility> createFacility(@RequestBody Facility facility,
@@ -99,17 +99,13 @@ public class FacilityController {
     }
 
     @RequestMapping(method = GET, value = UTILIZATIONS, produces = APPLICATION_JSON_VALUE)
-    public ResponseEntity<Set<UtilizationStatus>> getUtilizations() {
+    public ResponseEntity<byte[]> getUtilizations(WebRequest request) {
         log.info("getUtilizations()");
-        DateTime now = new DateTime();
-        Map<Long, Facility> facilities = new HashMap<>();
-        Set<UtilizationStatus> results = facilityService.findLatestUtilization().stream()
-                .map(utilization -> {
-                    Facility facility = facilities.computeIfAbsent(utilization.facilityId, facilityService::getFacility);
-                    return new UtilizationStatus(utilization, facility, now);
-                })
-                .collect(toSet());
-        return new ResponseEntity<>(results, OK);
+        UtilizationsResponseCache.Response response = utilizationsResponseCache.get(new DateTime());
+        if (request.checkNotModified(response.etag)) {
+            return null;
+        }
+        return new ResponseEntity<>(response.body, OK);
     }
 
     @RequestMapping(method = PUT, value = FACILITY_UTILIZATION, produces = APPLICATION_JSON_VALUE)
@@ -27,8 +27,6 @@ import java.util.List;
 
 import static fi.hsl.parkandride.front.UrlSchema.*;
 import static fi.hsl.parkandride.front.geojson.FeatureCollection.HUB_TO_FEATURE;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toList;
 import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
@@ -98,13 +96,7 @@ public class HubController {
                                                                    @ModelAttribute @Valid PredictionRequest request) {
         DateTime time = request.requestedTime();
         log.info("getPrediction({}, {})", hubId, time);
-        final List<HubPredictionResult> results = hubService.getHub(hubId).facilityIds
-                .stream()
-                .flatMap(facilityId -> predictionService.getPredictionResultByFacility(facilityId, time).stream())
-                .collect(groupingBy(result -> result.capacityType.name() + result.usage.name()))
-                .values().stream()
-                .map(list -> HubPredictionResult.sumFrom(hubId, list))
-                .collect(toList());
+        final List<HubPredictionResult> results = predictionService.getPredictionResultByHub(hubId, time);
         return new ResponseEntity<>(results, OK);
     }
 }
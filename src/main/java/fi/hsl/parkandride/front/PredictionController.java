@@ -0,0 +1,74 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.front;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import fi.hsl.parkandride.core.domain.prediction.BulkPredictionRequest;
+import fi.hsl.parkandride.core.domain.prediction.BulkPredictions;
+import fi.hsl.parkandride.core.service.PredictionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+
+import static com.fasterxml.jackson.databind.SerializationFeature.FLUSH_AFTER_WRITE_VALUE;
+import static fi.hsl.parkandride.front.UrlSchema.PREDICTIONS;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
+
+@RestController
+public class PredictionController {
+
+    private final Logger log = LoggerFactory.getLogger(PredictionController.class);
+
+    @Inject
+    PredictionService predictionService;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    /**
+     * Streams the results as they are read from the prediction index, so that the whole response
+     * is never held in memory: {"facilities": [PredictionResult...], "hubs": [HubPredictionResult...]}
+     */
+    @RequestMapping(method = POST, value = PREDICTIONS, consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public void getPredictions(@RequestBody BulkPredictionRequest request, HttpServletResponse response) throws IOException {
+        log.info("getPredictions({} facilities, {} hubs)", sizeOf(request.facilityIds), sizeOf(request.hubIds));
+        BulkPredictions predictions = predictionService.getBulkPredictions(request);
+
+        response.setContentType(APPLICATION_JSON_VALUE);
+        ObjectWriter writer = objectMapper.writer().without(FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("facilities");
+            predictions.forEachFacilityPrediction(result -> write(writer, json, result));
+            json.writeEndArray();
+            json.writeArrayFieldStart("hubs");
+            predictions.forEachHubPrediction(result -> write(writer, json, result));
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static void write(ObjectWriter writer, JsonGenerator json, Object value) {
+        try {
+            writer.writeValue(json, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int sizeOf(Collection<?> ids) {
+        return ids == null ? 0 : ids.size();
+    }
+}
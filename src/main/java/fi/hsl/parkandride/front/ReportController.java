@@ -4,28 +4,37 @@
 package fi.hsl.parkandride.front;
 
 import fi.hsl.parkandride.core.domain.User;
+import fi.hsl.parkandride.core.service.reporting.ExcelReport;
+import fi.hsl.parkandride.core.service.reporting.ReportJob;
+import fi.hsl.parkandride.core.service.reporting.ReportJobService;
 import fi.hsl.parkandride.core.service.reporting.ReportParameters;
 import fi.hsl.parkandride.core.service.reporting.ReportService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 
-import static fi.hsl.parkandride.front.UrlSchema.REPORT;
-import static fi.hsl.parkandride.front.UrlSchema.REPORT_ID;
+import static fi.hsl.parkandride.front.UrlSchema.*;
 import static java.util.stream.Collectors.toMap;
 import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
-import static org.springframework.http.ResponseEntity.ok;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 @RestController
@@ -34,16 +43,52 @@ public class ReportController {
     public static final String MEDIA_TYPE_EXCEL = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
 
     private final Map<String, ReportService> reporters;
+    private final ReportJobService reportJobService;
 
     @Inject
-    public ReportController(Collection<ReportService> reportServices) {
+    public ReportController(Collection<ReportService> reportServices, ReportJobService reportJobService) {
         this.reporters = reportServices.stream().collect(toMap(rs -> rs.reportName(), rs -> rs));
+        this.reportJobService = reportJobService;
     }
 
+    /**
+     * The report is generated before anything is written, so that errors still get a proper response,
+     * and is then streamed to the client without being copied to a byte array.
+     */
     @RequestMapping(method = POST, value = REPORT, consumes = APPLICATION_JSON_VALUE,  produces = MEDIA_TYPE_EXCEL)
-    public ResponseEntity<?> report(@NotNull @PathVariable(REPORT_ID) String reportId, @RequestBody ReportParameters parameters, User currentUser) {
+    public void report(@NotNull @PathVariable(REPORT_ID) String reportId, @RequestBody ReportParameters parameters, User currentUser, HttpServletResponse response) throws IOException {
         log.info("report({})", reportId);
-        byte[] report = Optional.ofNullable(reporters.get(reportId)).get().generateReport(currentUser, parameters);
-        return ok().header(CONTENT_DISPOSITION, "attachment; filename=\"" + reportId + "\"").body(report);
+        ExcelReport report = Optional.ofNullable(reporters.get(reportId)).get().generateReport(currentUser, parameters);
+        response.setContentType(MEDIA_TYPE_EXCEL);
+        response.setHeader(CONTENT_DISPOSITION, "attachment; filename=\"" + reportId + "\"");
+        report.writeTo(response.getOutputStream());
+    }
+
+    @RequestMapping(method = POST, value = REPORT_JOBS, consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<ReportJob> submitReportJob(@NotNull @PathVariable(REPORT_ID) String reportId, @RequestBody ReportParameters parameters, User currentUser, UriComponentsBuilder builder) {
+        log.info("submitReportJob({})", reportId);
+        ReportJob job = reportJobService.submit(currentUser, reportId, parameters);
+        log.info("submitReportJob({}) = {}", reportId, job.id);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path(REPORT_JOB).buildAndExpand(job.id).toUri());
+        return new ResponseEntity<>(job, headers, ACCEPTED);
+    }
+
+    @RequestMapping(method = GET, value = REPORT_JOB, produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<ReportJob> getReportJob(@PathVariable(REPORT_JOB_ID) String jobId, User currentUser) {
+        log.info("getReportJob({})", jobId);
+        return ResponseEntity.ok(reportJobService.getJob(currentUser, jobId));
+    }
+
+    @RequestMapping(method = GET, value = REPORT_JOB_RESULT, produces = MEDIA_TYPE_EXCEL)
+    public void getReportJobResult(@PathVariable(REPORT_JOB_ID) String jobId, User currentUser, HttpServletResponse response) throws IOException {
+        log.info("getReportJobResult({})", jobId);
+        ReportJob job = reportJobService.getJob(currentUser, jobId);
+        Path result = reportJobService.getResult(currentUser, jobId);
+        response.setContentType(MEDIA_TYPE_EXCEL);
+        response.setHeader(CONTENT_DISPOSITION, "attachment; filename=\"" + job.reportName + "\"");
+        response.setContentLengthLong(Files.size(result));
+        Files.copy(result, response.getOutputStream());
     }
 }
@@ -4,9 +4,7 @@
 package fi.hsl.parkandride.front;
 
 import fi.hsl.parkandride.MDCFilter;
-import fi.hsl.parkandride.core.domain.RequestLogKey;
 import fi.hsl.parkandride.core.service.BatchingRequestLogService;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.HandlerMapping;
@@ -14,7 +12,6 @@ import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Optional;
 
 public class RequestLoggingInterceptor extends HandlerInterceptorAdapter {
 
@@ -31,13 +28,12 @@ public class RequestLoggingInterceptor extends HandlerInterceptorAdapter {
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        Optional.ofNullable((String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE))
-                .filter(s -> s.startsWith(UrlSchema.API))
-                .ifPresent(urlPattern -> {
-                    final String source = request.getHeader(SOURCE_HEADER);
-                    logger.trace("Intercepted API call: <{}> for source <{}>", urlPattern, source);
-                    batchingRequestLogService.increment(new RequestLogKey(urlPattern, source, DateTime.now()));
-                });
+        final String urlPattern = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (urlPattern != null && urlPattern.startsWith(UrlSchema.API)) {
+            final String source = request.getHeader(SOURCE_HEADER);
+            logger.trace("Intercepted API call: <{}> for source <{}>", urlPattern, source);
+            batchingRequestLogService.increment(urlPattern, source);
+        }
         return super.preHandle(request, response, handler);
     }
 }
@@ -44,6 +44,8 @@ public final class UrlSchema {
     public static final String HUB_PREDICTION_ABSOLUTE = HUB_PREDICTION + "?" + ABSOLUTE_TIME + "={timestamp}";;
     public static final String HUB_PREDICTION_RELATIVE = HUB_PREDICTION + "?" + RELATIVE_TIME + "={hhmm}";
 
+    public static final String PREDICTIONS = API + "/predictions";
+
     public static final String CONTACTS = API + "/contacts";
     public static final String CONTACT_ID = "contactId";
     public static final String CONTACT = CONTACTS + "/{" + CONTACT_ID + "}";
@@ -60,6 +62,10 @@ public final class UrlSchema {
     public static final String REPORTS = API + "/reports";
     public static final String REPORT_ID = "reportId";
     public static final String REPORT = REPORTS + "/{" + REPORT_ID + "}";
+    public static final String REPORT_JOBS = REPORT + "/jobs";
+    public static final String REPORT_JOB_ID = "jobId";
+    public static final String REPORT_JOB = REPORTS + "/jobs/{" + REPORT_JOB_ID + "}";
+    public static final String REPORT_JOB_RESULT = REPORT_JOB + "/result";
 
     public static final String INTERNAL = "/internal";
     public static final String FEATURES = INTERNAL + "/features";
@@ -0,0 +1,112 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.front;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import fi.hsl.parkandride.core.domain.Facility;
+import fi.hsl.parkandride.core.domain.LatestUtilizationVersion;
+import fi.hsl.parkandride.core.domain.Utilization;
+import fi.hsl.parkandride.core.domain.UtilizationStatus;
+import fi.hsl.parkandride.core.service.FacilityService;
+import org.joda.time.DateTime;
+
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Pre-serialized body of GET {@link UrlSchema#UTILIZATIONS}. The body is rebuilt from memory when
+ * the latest utilizations change or when a new minute starts (opening hours have minute resolution).
+ * Facilities are reloaded only when their status or pricing may have changed. Changes made on this node
+ * are seen immediately; status changes made on the other cluster nodes are seen within
+ * {@code facility.cache.poll} and new utilizations within {@code utilization.latest.cache.poll}.
+ */
+public class UtilizationsResponseCache {
+
+    public static class Response {
+        public final byte[] body;
+        public final String etag;
+        final Optional<LatestUtilizationVersion> version;
+        final long minute;
+
+        Response(byte[] body, Optional<LatestUtilizationVersion> version, long minute) {
+            this.body = body;
+            this.etag = "\"" + Hashing.murmur3_128().hashBytes(body) + "\"";
+            this.version = version;
+            this.minute = minute;
+        }
+
+        boolean isValid(Optional<LatestUtilizationVersion> version, long minute) {
+            return version.isPresent() && this.version.equals(version) && this.minute == minute;
+        }
+    }
+
+    private final FacilityService facilityService;
+    private final ObjectMapper objectMapper;
+
+    private volatile Response cached;
+
+    private final Map<Long, Facility> facilities = new HashMap<>();
+    private long facilitiesVersion = -1;
+
+    public UtilizationsResponseCache(FacilityService facilityService, ObjectMapper objectMapper) {
+        this.facilityService = facilityService;
+        this.objectMapper = objectMapper;
+    }
+
+    public Response get(DateTime now) {
+        // read the version before the data so that a concurrent change can only cause an extra rebuild
+        Optional<LatestUtilizationVersion> version = facilityService.getLatestUtilizationVersion();
+        long minute = toMinute(now);
+        Response response = cached;
+        if (response != null && response.isValid(version, minute)) {
+            return response;
+        }
+        return rebuild(version, minute, now);
+    }
+
+    private synchronized Response rebuild(Optional<LatestUtilizationVersion> version, long minute, DateTime now) {
+        Response response = cached;
+        if (response != null && response.isValid(version, minute)) {
+            return response;
+        }
+        if (!version.isPresent() || version.get().facilities != facilitiesVersion) {
+            facilities.clear();
+            facilitiesVersion = version.map(v -> v.facilities).orElse(-1L);
+        }
+        Set<Utilization> latest = facilityService.findLatestUtilization();
+        loadMissingFacilities(latest);
+        List<UtilizationStatus> statuses = latest.stream()
+                .map(utilization -> new UtilizationStatus(utilization, facilities.get(utilization.facilityId), now))
+                .collect(toList());
+        response = new Response(serialize(statuses), version, minute);
+        cached = response;
+        return response;
+    }
+
+    private void loadMissingFacilities(Set<Utilization> utilizations) {
+        Set<Long> missing = utilizations.stream()
+                .map(utilization -> utilization.facilityId)
+                .filter(facilityId -> !facilities.containsKey(facilityId))
+                .collect(toSet());
+        if (!missing.isEmpty()) {
+            facilities.putAll(facilityService.getFacilities(missing));
+        }
+    }
+
+    private byte[] serialize(List<UtilizationStatus> statuses) {
+        try {
+            return objectMapper.writeValueAsBytes(statuses);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize utilizations", e);
+        }
+    }
+
+    private static long toMinute(DateTime now) {
+        return now.getMillis() / 60_000;
+    }
+}
@@ -0,0 +1,3 @@
+-- supports polling for recently registered utilizations
+CREATE INDEX facility_utilization_ts_idx
+  ON facility_utilization (ts);
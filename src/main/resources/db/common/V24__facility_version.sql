@@ -0,0 +1,3 @@
+CREATE SEQUENCE facility_version_seq INCREMENT BY 1 START WITH 1;
+
+ALTER TABLE facility ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
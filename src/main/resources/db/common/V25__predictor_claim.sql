@@ -0,0 +1 @@
+ALTER TABLE predictor ADD COLUMN claimed_until TIMESTAMP;
@@ -0,0 +1,3 @@
+-- predictions of the whole window in one column, see PackedPredictions; the spaces_available_at_* columns
+-- are read only for the rows which have not yet been updated in the packed format
+ALTER TABLE facility_prediction ADD COLUMN spaces_available BYTEA;
@@ -0,0 +1,9 @@
+CREATE TABLE facility_utilization_compaction (
+  facility_id BIGINT NOT NULL,
+  compacted_until TIMESTAMP NOT NULL,
+
+  PRIMARY KEY (facility_id),
+
+  CONSTRAINT facility_utilization_compaction_facility_id_fk FOREIGN KEY (facility_id)
+    REFERENCES facility (id)
+);
@@ -0,0 +1,45 @@
+CREATE TABLE facility_utilization_daily (
+  facility_id BIGINT NOT NULL,
+  capacity_type VARCHAR(64) NOT NULL,
+  usage VARCHAR(64) NOT NULL,
+  local_date DATE NOT NULL,
+  min_spaces_available INT NOT NULL,
+  max_spaces_available INT NOT NULL,
+  min_capacity INT NOT NULL,
+  max_capacity INT NOT NULL,
+  last_ts TIMESTAMP NOT NULL,
+  last_spaces_available INT NOT NULL,
+  last_capacity INT NOT NULL,
+
+  PRIMARY KEY (facility_id, capacity_type, usage, local_date),
+
+  CONSTRAINT facility_utilization_daily_facility_id_fk FOREIGN KEY (facility_id)
+    REFERENCES facility (id),
+
+  CONSTRAINT facility_utilization_daily_capacity_type_fk FOREIGN KEY (capacity_type)
+    REFERENCES capacity_type (name),
+
+  CONSTRAINT facility_utilization_daily_usage_fk FOREIGN KEY (usage)
+    REFERENCES usage (name)
+);
+
+CREATE INDEX facility_utilization_daily_date_idx ON facility_utilization_daily (local_date);
+
+INSERT INTO facility_utilization_daily (facility_id, capacity_type, usage, local_date,
+                                        min_spaces_available, max_spaces_available, min_capacity, max_capacity,
+                                        last_ts, last_spaces_available, last_capacity)
+  SELECT d.facility_id, d.capacity_type, d.usage, d.local_date,
+    d.min_spaces_available, d.max_spaces_available, d.min_capacity, d.max_capacity,
+    d.last_ts, MAX(u.spaces_available), MAX(u.capacity)
+  FROM (
+         SELECT facility_id, capacity_type, usage, CAST(ts AS DATE) AS local_date,
+           MIN(spaces_available) AS min_spaces_available, MAX(spaces_available) AS max_spaces_available,
+           MIN(capacity) AS min_capacity, MAX(capacity) AS max_capacity,
+           MAX(ts) AS last_ts
+         FROM facility_utilization
+         GROUP BY facility_id, capacity_type, usage, CAST(ts AS DATE)
+       ) d
+    JOIN facility_utilization u
+      ON u.facility_id = d.facility_id AND u.capacity_type = d.capacity_type AND u.usage = d.usage AND u.ts = d.last_ts
+  GROUP BY d.facility_id, d.capacity_type, d.usage, d.local_date,
+    d.min_spaces_available, d.max_spaces_available, d.min_capacity, d.max_capacity, d.last_ts;
@@ -0,0 +1,10 @@
+-- Ids of the request log batches which have been added to request_log, so that a batch replayed
+-- from the spool of a node is added only once.
+CREATE TABLE request_log_batch (
+  id      VARCHAR(36) NOT NULL,
+  applied TIMESTAMP   NOT NULL,
+
+  PRIMARY KEY (id)
+);
+
+CREATE INDEX request_log_batch_applied_idx ON request_log_batch (applied);
@@ -0,0 +1,40 @@
+-- Request counts summed by day and by month, maintained together with request_log so that the
+-- request log report does not need to read and sum the hourly rows.
+CREATE TABLE request_log_daily (
+  source_id  BIGINT NOT NULL,
+  url_id     BIGINT NOT NULL,
+  local_date DATE   NOT NULL,
+  count      BIGINT NOT NULL,
+
+  PRIMARY KEY (source_id, url_id, local_date),
+
+  CONSTRAINT request_log_daily_source_id FOREIGN KEY (source_id)
+  REFERENCES request_log_source (id),
+
+  CONSTRAINT request_log_daily_url_id FOREIGN KEY (url_id)
+  REFERENCES request_log_url (id)
+);
+
+CREATE INDEX request_log_daily_date_idx ON request_log_daily (local_date);
+
+CREATE TABLE request_log_monthly (
+  source_id   BIGINT NOT NULL,
+  url_id      BIGINT NOT NULL,
+  month_start DATE   NOT NULL,
+  count       BIGINT NOT NULL,
+
+  PRIMARY KEY (source_id, url_id, month_start),
+
+  CONSTRAINT request_log_monthly_source_id FOREIGN KEY (source_id)
+  REFERENCES request_log_source (id),
+
+  CONSTRAINT request_log_monthly_url_id FOREIGN KEY (url_id)
+  REFERENCES request_log_url (id)
+);
+
+CREATE INDEX request_log_monthly_month_idx ON request_log_monthly (month_start);
+
+INSERT INTO request_log_daily (source_id, url_id, local_date, count)
+  SELECT source_id, url_id, CAST(ts AS DATE), SUM(count)
+  FROM request_log
+  GROUP BY source_id, url_id, CAST(ts AS DATE);
@@ -0,0 +1 @@
+ALTER TABLE predictor ADD COLUMN earliest_new_utilization TIMESTAMP;
@@ -0,0 +1,39 @@
+-- the in-place compaction is replaced by hourly roll-ups which keep the utilizations
+DROP TABLE facility_utilization_compaction;
+
+CREATE TABLE facility_utilization_hourly (
+  facility_id BIGINT NOT NULL,
+  capacity_type VARCHAR(64) NOT NULL,
+  usage VARCHAR(64) NOT NULL,
+  ts TIMESTAMP NOT NULL,
+  min_spaces_available INT NOT NULL,
+  max_spaces_available INT NOT NULL,
+  min_capacity INT NOT NULL,
+  max_capacity INT NOT NULL,
+  last_ts TIMESTAMP NOT NULL,
+  last_spaces_available INT NOT NULL,
+  last_capacity INT NOT NULL,
+
+  PRIMARY KEY (facility_id, capacity_type, usage, ts),
+
+  CONSTRAINT facility_utilization_hourly_facility_id_fk FOREIGN KEY (facility_id)
+    REFERENCES facility (id),
+
+  CONSTRAINT facility_utilization_hourly_capacity_type_fk FOREIGN KEY (capacity_type)
+    REFERENCES capacity_type (name),
+
+  CONSTRAINT facility_utilization_hourly_usage_fk FOREIGN KEY (usage)
+    REFERENCES usage (name)
+);
+
+CREATE INDEX facility_utilization_hourly_ts_idx ON facility_utilization_hourly (ts);
+
+CREATE TABLE facility_utilization_rollup (
+  facility_id BIGINT NOT NULL,
+  rolled_up_until TIMESTAMP NOT NULL,
+
+  PRIMARY KEY (facility_id),
+
+  CONSTRAINT facility_utilization_rollup_facility_id_fk FOREIGN KEY (facility_id)
+    REFERENCES facility (id)
+);
@@ -0,0 +1,4 @@
+-- Requests without a source (or url) are logged under a NULL dimension value. UNIQUE allows many NULLs,
+-- so these make concurrent INSERT ... ON CONFLICT DO NOTHING of the NULL value insert it only once.
+CREATE UNIQUE INDEX request_log_source_null_idx ON request_log_source ((source IS NULL)) WHERE source IS NULL;
+CREATE UNIQUE INDEX request_log_url_null_idx ON request_log_url ((url IS NULL)) WHERE url IS NULL;
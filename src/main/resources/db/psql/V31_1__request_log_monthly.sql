@@ -0,0 +1,4 @@
+INSERT INTO request_log_monthly (source_id, url_id, month_start, count)
+  SELECT source_id, url_id, CAST(date_trunc('month', local_date) AS DATE), SUM(count)
+  FROM request_log_daily
+  GROUP BY source_id, url_id, CAST(date_trunc('month', local_date) AS DATE);
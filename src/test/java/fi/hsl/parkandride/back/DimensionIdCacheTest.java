@@ -0,0 +1,75 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class DimensionIdCacheTest {
+
+    private final DimensionIdCache cache = new DimensionIdCache(10);
+
+    @After
+    public void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void caches_ids_both_ways() {
+        cache.putAll(ImmutableMap.of("foo", 1L, "bar", 2L));
+
+        assertThat(cache.getIds(asList("foo", "bar", "baz"))).containsOnly(entry("foo", 1L), entry("bar", 2L));
+        assertThat(cache.getValues(asList(1L, 2L, 3L))).containsOnly(entry(1L, "foo"), entry(2L, "bar"));
+    }
+
+    @Test
+    public void caches_the_null_value() {
+        cache.put(null, 3L);
+
+        assertThat(cache.getIds(asList("foo", null))).containsOnly(entry(null, 3L));
+        assertThat(cache.getValues(asList(3L))).containsOnly(entry(3L, null));
+    }
+
+    @Test
+    public void inserted_ids_are_cached_only_after_commit() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.putAllAfterCommit(ImmutableMap.of("foo", 1L));
+        assertThat(cache.getIds(asList("foo"))).isEmpty();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(cache.getIds(asList("foo"))).containsOnly(entry("foo", 1L));
+    }
+
+    @Test
+    public void inserted_ids_are_not_cached_on_rollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.putAllAfterCommit(ImmutableMap.of("foo", 1L));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertThat(cache.getIds(asList("foo"))).isEmpty();
+    }
+
+    @Test
+    public void size_is_bounded() {
+        Map<String, Long> ids = new HashMap<>();
+        for (long id = 0; id < 100; id++) {
+            ids.put("value" + id, id);
+        }
+        cache.putAll(ids);
+
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+    }
+}
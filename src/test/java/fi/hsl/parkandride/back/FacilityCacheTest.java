@@ -0,0 +1,112 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import com.google.common.collect.ImmutableMap;
+import fi.hsl.parkandride.core.domain.Facility;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static fi.hsl.parkandride.core.domain.FacilityStatus.INACTIVE;
+import static fi.hsl.parkandride.core.domain.FacilityStatus.IN_OPERATION;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class FacilityCacheTest {
+
+    private final FacilityCache cache = new FacilityCache(2);
+
+    @After
+    public void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void returns_cached_facilities() {
+        Facility f1 = newFacility(1L);
+        Facility f2 = newFacility(2L);
+        cache.put(1L, 10L, f1);
+        cache.put(2L, 20L, f2);
+
+        assertThat(cache.get(1L).get().id).isEqualTo(1L);
+        assertThat(cache.get(3L)).isEmpty();
+        assertThat(cache.getAll(asList(1L, 2L, 3L))).containsOnlyKeys(1L, 2L);
+        assertThat(cache.getAll(asList(1L, 2L, 3L)).get(2L).id).isEqualTo(2L);
+    }
+
+    @Test
+    public void callers_cannot_modify_the_cached_facilities() {
+        Facility put = newFacility(1L);
+        cache.put(1L, 10L, put);
+        put.status = INACTIVE;
+
+        Facility got = cache.get(1L).get();
+        assertThat(got).isNotSameAs(put);
+        assertThat(got.status).isEqualTo(IN_OPERATION);
+        got.status = INACTIVE;
+        cache.getAll(asList(1L)).get(1L).status = INACTIVE;
+
+        assertThat(cache.get(1L).get().status).isEqualTo(IN_OPERATION);
+    }
+
+    @Test
+    public void evicts_facilities_whose_version_has_changed_or_which_have_been_deleted() {
+        cache.put(1L, 10L, newFacility(1L));
+        cache.put(2L, 20L, newFacility(2L));
+
+        cache.evictChanged(ImmutableMap.of(1L, 10L, 3L, 30L));
+        assertThat(cache.get(1L)).isPresent();
+        assertThat(cache.get(2L)).isEmpty();
+
+        cache.evictChanged(ImmutableMap.of(1L, 11L));
+        assertThat(cache.get(1L)).isEmpty();
+    }
+
+    @Test
+    public void changed_facilities_are_invalidated_now_and_after_commit() {
+        cache.put(1L, 10L, newFacility(1L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.facilityChanged(1L);
+        assertThat(cache.get(1L)).isEmpty();
+        assertThat(cache.isUsableInCurrentTransaction()).isFalse();
+
+        cache.put(1L, 10L, newFacility(1L)); // loaded by someone else before commit
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(cache.get(1L)).isEmpty();
+        assertThat(cache.isUsableInCurrentTransaction()).isTrue();
+    }
+
+    @Test
+    public void is_bounded_and_exposes_metrics() {
+        cache.put(1L, 10L, newFacility(1L));
+        cache.put(2L, 20L, newFacility(2L));
+        cache.put(3L, 30L, newFacility(3L));
+        cache.get(3L);
+        cache.get(4L);
+
+        assertThat(cache.metrics())
+                .extracting(Metric::getName, m -> m.getValue().doubleValue())
+                .contains(
+                        tuple("cache.facility.size", 2.0),
+                        tuple("cache.facility.hits", 1.0),
+                        tuple("cache.facility.misses", 1.0),
+                        tuple("cache.facility.evictions", 1.0));
+    }
+
+    private static Facility newFacility(long id) {
+        Facility facility = new Facility();
+        facility.id = id;
+        facility.status = IN_OPERATION;
+        return facility;
+    }
+}
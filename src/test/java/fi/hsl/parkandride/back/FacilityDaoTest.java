@@ -7,15 +7,19 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
 import fi.hsl.parkandride.core.back.ContactRepository;
 import fi.hsl.parkandride.core.back.FacilityRepository;
 import fi.hsl.parkandride.core.back.OperatorRepository;
 import fi.hsl.parkandride.core.domain.*;
+import fi.hsl.parkandride.back.sql.QFacility;
 import fi.hsl.parkandride.core.service.ValidationException;
 import org.geolatte.geom.Point;
 import org.geolatte.geom.Polygon;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.inject.Inject;
 import java.util.*;
@@ -98,6 +102,15 @@ public class FacilityDaoTest extends AbstractDaoTest {
     @Inject
     OperatorRepository operatorDao;
 
+    @Inject
+    LatestUtilizationStore latestUtilizationStore;
+
+    @Inject
+    PostgreSQLQueryFactory queryFactory;
+
+    @Inject
+    PlatformTransactionManager transactionManager;
+
     private FacilityContacts dummyContacts;
 
     private Long operatorId;
@@ -270,6 +283,12 @@ public class FacilityDaoTest extends AbstractDaoTest {
         return facilityDao.findFacilities(search).results;
     }
 
+    private static void assertSameFacility(Facility actual, Facility expected) {
+        assertThat(actual).isEqualToIgnoringGivenFields(expected, "paymentInfo", "openingHours");
+        assertThat(actual.paymentInfo).isEqualToComparingFieldByField(expected.paymentInfo);
+        assertThat(actual.openingHours).isEqualToComparingFieldByField(expected.openingHours);
+    }
+
     private Facility createFacility() {
         return createFacility(operatorId, dummyContacts);
     }
@@ -300,6 +319,32 @@ public class FacilityDaoTest extends AbstractDaoTest {
         return facility;
     }
 
+    @Test
+    public void get_facilities_in_bulk() {
+        Facility f1 = createFacility();
+        f1.id = facilityDao.insertFacility(f1);
+        Facility f2 = createFacility();
+        f2.name = new MultilingualString("another facility");
+        f2.ports = new ArrayList<>();
+        f2.id = facilityDao.insertFacility(f2);
+
+        Map<Long, Facility> facilities = facilityDao.getFacilities(asList(f2.id, f1.id));
+
+        assertThat(facilities.keySet()).containsExactly(f2.id, f1.id);
+        assertSameFacility(facilities.get(f1.id), facilityDao.getFacility(f1.id));
+        assertSameFacility(facilities.get(f2.id), facilityDao.getFacility(f2.id));
+        assertThat(facilities.get(f2.id).ports).isEmpty();
+        assertThat(facilityDao.getFacilities(new ArrayList<>())).isEmpty();
+    }
+
+    @Test(expected = FacilityNotFoundException.class)
+    public void get_facilities_in_bulk_requires_all_facilities_to_exist() {
+        Facility facility = createFacility();
+        facility.id = facilityDao.insertFacility(facility);
+
+        facilityDao.getFacilities(asList(facility.id, facility.id + 1));
+    }
+
     @Test
     public void sorting() {
         Facility f1 = new Facility();
@@ -382,4 +427,26 @@ public class FacilityDaoTest extends AbstractDaoTest {
     public void update_throws_an_exception_if_not_found() {
         facilityDao.updateFacility(0, createFacility());
     }
+
+    @Test
+    public void changes_made_by_other_nodes_are_signalled_to_the_latest_utilization_store_on_the_next_poll() {
+        long id = facilityDao.insertFacility(createFacility());
+        FacilityDao dao = (FacilityDao) facilityDao;
+        dao.evictChangedFacilities();
+        long facilitiesVersion = latestUtilizationStore.getFacilitiesVersion();
+
+        dao.evictChangedFacilities();
+        assertThat(latestUtilizationStore.getFacilitiesVersion()).isEqualTo(facilitiesVersion);
+
+        QFacility qFacility = QFacility.facility;
+        new TransactionTemplate(transactionManager).execute(tx -> queryFactory.update(qFacility)
+                .set(qFacility.status, EXCEPTIONAL_SITUATION)
+                .set(qFacility.version, qFacility.version.add(1))
+                .where(qFacility.id.eq(id))
+                .execute());
+        dao.evictChangedFacilities();
+
+        assertThat(latestUtilizationStore.getFacilitiesVersion()).isGreaterThan(facilitiesVersion);
+        assertThat(facilityDao.getFacility(id).status).isEqualTo(EXCEPTIONAL_SITUATION);
+    }
 }
@@ -23,6 +23,7 @@ import static fi.hsl.parkandride.core.domain.FacilityStatus.INACTIVE;
 import static fi.hsl.parkandride.core.domain.FacilityStatus.TEMPORARILY_CLOSED;
 import static fi.hsl.parkandride.core.domain.Usage.PARK_AND_RIDE;
 import static fi.hsl.parkandride.test.DateTimeTestUtils.withDate;
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class FacilityHistoryDaoTest extends AbstractDaoTest {
@@ -158,6 +159,37 @@ public class FacilityHistoryDaoTest extends AbstractDaoTest {
         assertThat(historyAt).containsExactly(second);
     }
 
+    @Test
+    public void histories_of_many_facilities_are_read_at_once() {
+        final long facilityId1 = withDate(firstDate, () -> insertFacilityNamed("first"));
+        final long facilityId2 = withDate(firstDate, () -> insertFacilityNamed("second"));
+        final long facilityWithoutHistoryBetween = withDate(fourthDate, () -> insertFacilityNamed("fourth"));
+        final Facility fac = facilityDao.getFacility(facilityId2);
+        withDate(secondDate, () -> {
+            fac.status = FacilityStatus.INACTIVE;
+            fac.unavailableCapacities = newArrayList(new UnavailableCapacity(BICYCLE, PARK_AND_RIDE, 5));
+            facilityDao.updateFacility(facilityId2, fac);
+        });
+        final List<Long> facilityIds = asList(facilityId1, facilityId2, facilityWithoutHistoryBetween);
+
+        final Map<Long, List<FacilityStatusHistory>> statusHistories = facilityHistoryDao.getStatusHistories(facilityIds, firstDate.toLocalDate(), thirdDate.toLocalDate());
+        assertThat(statusHistories).containsOnlyKeys(facilityId1, facilityId2);
+        assertThat(statusHistories.get(facilityId1)).isEqualTo(facilityHistoryDao.getStatusHistory(facilityId1, firstDate.toLocalDate(), thirdDate.toLocalDate()));
+        assertThat(statusHistories.get(facilityId2)).isEqualTo(facilityHistoryDao.getStatusHistory(facilityId2, firstDate.toLocalDate(), thirdDate.toLocalDate()));
+        assertThat(statusHistories.get(facilityId2)).extracting("status").containsExactly(EXCEPTIONAL_SITUATION, INACTIVE);
+
+        final Map<Long, List<FacilityCapacityHistory>> capacityHistories = facilityHistoryDao.getCapacityHistories(facilityIds, firstDate.toLocalDate(), thirdDate.toLocalDate());
+        assertThat(capacityHistories).containsOnlyKeys(facilityId1, facilityId2);
+        assertThat(capacityHistories.get(facilityId1)).isEqualTo(facilityHistoryDao.getCapacityHistory(facilityId1, firstDate.toLocalDate(), thirdDate.toLocalDate()));
+        assertThat(capacityHistories.get(facilityId2)).isEqualTo(facilityHistoryDao.getCapacityHistory(facilityId2, firstDate.toLocalDate(), thirdDate.toLocalDate()));
+        assertThat(capacityHistories.get(facilityId2)).hasSize(2);
+    }
+
+    private long insertFacilityNamed(String name) {
+        facility.name = new MultilingualString(name);
+        return facilityDao.insertFacility(facility);
+    }
+
     @Test(expected = IllegalStateException.class)
     public void ensuresCapacityHistoryLinearity() {
         final Facility fac = withDate(secondDate, () -> facilityDao.getFacility(facilityDao.insertFacility(facility)));
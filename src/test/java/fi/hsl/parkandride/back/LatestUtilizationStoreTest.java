@@ -0,0 +1,190 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back;
+
+import fi.hsl.parkandride.core.domain.CapacityType;
+import fi.hsl.parkandride.core.domain.Usage;
+import fi.hsl.parkandride.core.domain.Utilization;
+import fi.hsl.parkandride.core.domain.UtilizationKey;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+
+import static fi.hsl.parkandride.core.domain.CapacityType.CAR;
+import static fi.hsl.parkandride.core.domain.CapacityType.MOTORCYCLE;
+import static fi.hsl.parkandride.core.domain.Usage.COMMERCIAL;
+import static fi.hsl.parkandride.core.domain.Usage.PARK_AND_RIDE;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatestUtilizationStoreTest {
+
+    private static final DateTime NOW = new DateTime(2000, 1, 1, 12, 0);
+
+    private final LatestUtilizationStore store = new LatestUtilizationStore(true);
+
+    @After
+    public void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void is_not_loaded_initially_nor_after_invalidation() {
+        assertThat(store.isLoaded()).isFalse();
+
+        store.load(new HashSet<>(), asList());
+        assertThat(store.isLoaded()).isTrue();
+
+        store.invalidate();
+        assertThat(store.isLoaded()).isFalse();
+    }
+
+    @Test
+    public void keeps_only_the_latest_utilization_per_key() {
+        Utilization u1 = newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 10);
+        Utilization u2 = newUtilization(1L, CAR, PARK_AND_RIDE, NOW.plusMinutes(1), 20);
+        store.load(keys(u1), asList(u1));
+
+        store.merge(asList(u2));
+        store.merge(asList(u1));
+
+        assertThat(store.find(1L)).containsExactly(u2);
+    }
+
+    @Test
+    public void returns_only_keys_which_have_pricing_in_facility_and_key_order() {
+        Utilization u1 = newUtilization(2L, MOTORCYCLE, PARK_AND_RIDE, NOW, 10);
+        Utilization u2 = newUtilization(1L, MOTORCYCLE, PARK_AND_RIDE, NOW, 20);
+        Utilization u3 = newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 30);
+        Utilization unpriced = newUtilization(1L, CAR, COMMERCIAL, NOW, 40);
+        store.load(keys(u1, u2, u3), asList(u1, u2, u3, unpriced));
+
+        assertThat(store.find()).containsExactly(u3, u2, u1);
+        assertThat(store.find(2L, 1L)).containsExactly(u3, u2, u1);
+        assertThat(store.find(2L)).containsExactly(u1);
+        assertThat(store.find(3L)).isEmpty();
+    }
+
+    @Test
+    public void returns_copies() {
+        Utilization u = newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 10);
+        store.load(keys(u), asList(u));
+
+        store.find(1L).iterator().next().spacesAvailable = 0;
+
+        assertThat(store.find(1L)).containsExactly(u);
+    }
+
+    @Test
+    public void inserted_utilizations_are_visible_only_after_commit() {
+        Utilization u1 = newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 10);
+        Utilization u2 = newUtilization(1L, CAR, PARK_AND_RIDE, NOW.plusMinutes(1), 20);
+        store.load(keys(u1), asList(u1));
+        TransactionSynchronizationManager.initSynchronization();
+
+        store.utilizationsInserted(asList(u2));
+
+        assertThat(store.isUpToDateForCurrentTransaction()).isFalse();
+        assertThat(store.find(1L)).containsExactly(u1);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(store.isUpToDateForCurrentTransaction()).isTrue();
+        assertThat(store.find(1L)).containsExactly(u2);
+    }
+
+    @Test
+    public void inserted_utilizations_are_visible_immediately_without_transaction() {
+        Utilization u = newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 10);
+        store.load(keys(u), asList());
+
+        store.utilizationsInserted(asList(u));
+
+        assertThat(store.find(1L)).containsExactly(u);
+    }
+
+    @Test
+    public void changing_utilization_keys_invalidates_now_and_after_commit() {
+        Utilization u = newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 10);
+        store.load(keys(u), asList(u));
+        TransactionSynchronizationManager.initSynchronization();
+
+        store.utilizationKeysChanged();
+        assertThat(store.isLoaded()).isFalse();
+
+        store.load(keys(u), asList(u)); // reloaded by someone else before commit
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertThat(store.isLoaded()).isFalse();
+    }
+
+    @Test
+    public void versions_change_only_when_contents_may_have_changed() {
+        Utilization u1 = newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 10);
+        Utilization u2 = newUtilization(1L, CAR, PARK_AND_RIDE, NOW.plusMinutes(1), 20);
+        store.load(keys(u1), asList(u1));
+        long utilizations = store.getUtilizationsVersion();
+        long facilities = store.getFacilitiesVersion();
+
+        store.merge(asList(u1));
+        assertThat(store.getUtilizationsVersion()).isEqualTo(utilizations);
+
+        store.merge(asList(u2));
+        assertThat(store.getUtilizationsVersion()).isGreaterThan(utilizations);
+        assertThat(store.getFacilitiesVersion()).isEqualTo(facilities);
+
+        store.facilitiesChanged();
+        assertThat(store.getFacilitiesVersion()).isGreaterThan(facilities);
+    }
+
+    @Test
+    public void facility_changes_are_signaled_after_commit() {
+        store.load(new HashSet<>(), asList());
+        long facilities = store.getFacilitiesVersion();
+        TransactionSynchronizationManager.initSynchronization();
+
+        store.facilitiesChanged();
+        assertThat(store.getFacilitiesVersion()).isEqualTo(facilities);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(store.getFacilitiesVersion()).isGreaterThan(facilities);
+    }
+
+    @Test
+    public void disabled_store_ignores_changes() {
+        LatestUtilizationStore disabled = new LatestUtilizationStore(false);
+        TransactionSynchronizationManager.initSynchronization();
+
+        disabled.utilizationsInserted(asList(newUtilization(1L, CAR, PARK_AND_RIDE, NOW, 10)));
+        disabled.utilizationKeysChanged();
+
+        assertThat(TransactionSynchronizationManager.getSynchronizations()).isEmpty();
+    }
+
+    private static HashSet<UtilizationKey> keys(Utilization... utilizations) {
+        HashSet<UtilizationKey> keys = new HashSet<>();
+        for (Utilization u : utilizations) {
+            keys.add(u.getUtilizationKey());
+        }
+        return keys;
+    }
+
+    private static Utilization newUtilization(long facilityId, CapacityType capacityType, Usage usage, DateTime time, int spacesAvailable) {
+        Utilization u = new Utilization();
+        u.facilityId = facilityId;
+        u.capacityType = capacityType;
+        u.usage = usage;
+        u.timestamp = time;
+        u.spacesAvailable = spacesAvailable;
+        u.capacity = 100;
+        return u;
+    }
+}
@@ -4,13 +4,20 @@
 package fi.hsl.parkandride.back;
 
 import com.google.common.collect.Maps;
+import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
+import fi.hsl.parkandride.back.sql.QRequestLogDaily;
+import fi.hsl.parkandride.back.sql.QRequestLogMonthly;
 import fi.hsl.parkandride.core.domain.RequestLogEntry;
 import fi.hsl.parkandride.core.domain.RequestLogKey;
 import org.joda.time.DateTime;
 import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.inject.Inject;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyMap;
@@ -36,6 +43,12 @@ public class RequestLogDaoTest extends AbstractDaoTest {
     @Inject
     RequestLogDao requestLogDao;
 
+    @Inject
+    PostgreSQLQueryFactory queryFactory;
+
+    @Inject
+    PlatformTransactionManager transactionManager;
+
     @Test
     public void testDao_pureBatchInsert() {
         final List<RequestLogKey> keys = getKeysForTimes(TEST_DATE, TEST_DATE.plusHours(1), TEST_DATE.plusHours(2));
@@ -91,6 +104,81 @@ public class RequestLogDaoTest extends AbstractDaoTest {
         assertThat(logEntries.get(0).count).isEqualTo(666l * 4);
     }
 
+    @Test
+    public void testDao_insertAndUpdateInSameBatch() {
+        requestLogDao.batchIncrement(singletonMap(new RequestLogKey(URL, SOURCE, TEST_DATE), 100l));
+
+        final Map<RequestLogKey, Long> batch = new HashMap<>();
+        batch.put(new RequestLogKey(URL, SOURCE, TEST_DATE), 10l);
+        batch.put(new RequestLogKey(URL, SOURCE + "foo", TEST_DATE), 20l);
+        batch.put(new RequestLogKey(URL + "foo", SOURCE + "foo", TEST_DATE), 30l);
+        requestLogDao.batchIncrement(batch);
+
+        assertThat(getRelevantLogEntries()).extracting("count").containsOnly(110l, 20l, 30l);
+    }
+
+    @Test
+    public void testDao_batchIsAppliedOnlyOnce() {
+        final Map<RequestLogKey, Long> batch = singletonMap(new RequestLogKey(URL, SOURCE, TEST_DATE), 10l);
+
+        assertThat(requestLogDao.batchIncrement("batch-1", batch)).isTrue();
+        assertThat(requestLogDao.batchIncrement("batch-1", batch)).isFalse();
+        assertThat(requestLogDao.batchIncrement("batch-2", batch)).isTrue();
+
+        assertThat(getRelevantLogEntries()).extracting("count").containsExactly(20l);
+    }
+
+    @Test
+    public void testDao_dailyAndMonthlyRollups() {
+        final DateTime march1st = new DateTime(2018, 3, 1, 10, 0);
+        final DateTime march31st = new DateTime(2018, 3, 31, 23, 0);
+        final DateTime april1st = new DateTime(2018, 4, 1, 0, 0);
+        final Map<RequestLogKey, Long> batch = new HashMap<>();
+        batch.put(new RequestLogKey(URL, SOURCE, march1st), 1l);
+        batch.put(new RequestLogKey(URL, SOURCE, march1st.plusHours(1)), 2l);
+        batch.put(new RequestLogKey(URL, SOURCE, march31st), 4l);
+        batch.put(new RequestLogKey(URL, SOURCE, april1st), 8l);
+        requestLogDao.batchIncrement(batch);
+        requestLogDao.batchIncrement(singletonMap(new RequestLogKey(URL, SOURCE, march1st), 16l));
+
+        assertThat(requestLogDao.getDailyLogEntriesBetween(march1st.toLocalDate(), april1st.toLocalDate())).containsExactly(
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, march1st.withTimeAtStartOfDay()), 19l),
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, march31st.withTimeAtStartOfDay()), 4l),
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, april1st), 8l));
+        assertThat(requestLogDao.getMonthlyLogEntriesBetween(march1st.toLocalDate(), march31st.toLocalDate())).containsExactly(
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, march1st.withTimeAtStartOfDay()), 23l));
+    }
+
+    @Test
+    public void testDao_rebuildDailyAndMonthlyRollups() {
+        final DateTime march1st = new DateTime(2018, 3, 1, 10, 0);
+        final DateTime march31st = new DateTime(2018, 3, 31, 23, 0);
+        final DateTime april1st = new DateTime(2018, 4, 1, 0, 0);
+        final Map<RequestLogKey, Long> batch = new HashMap<>();
+        batch.put(new RequestLogKey(URL, SOURCE, march1st), 1l);
+        batch.put(new RequestLogKey(URL, SOURCE, march31st), 4l);
+        batch.put(new RequestLogKey(URL, SOURCE, april1st), 8l);
+        requestLogDao.batchIncrement(batch);
+        // like the hourly counts written by an older version without the rollups
+        final QRequestLogDaily qDaily = QRequestLogDaily.requestLogDaily;
+        final QRequestLogMonthly qMonthly = QRequestLogMonthly.requestLogMonthly;
+        new TransactionTemplate(transactionManager).execute(tx -> {
+            queryFactory.delete(qDaily).where(qDaily.localDate.eq(march31st.toLocalDate())).execute();
+            return queryFactory.update(qMonthly).set(qMonthly.count, 1l).execute();
+        });
+
+        requestLogDao.rebuildDailyAndMonthlyCounts(march1st.toLocalDate(), march1st.toLocalDate());
+        requestLogDao.rebuildDailyAndMonthlyCounts(march1st.toLocalDate(), march1st.toLocalDate());
+
+        assertThat(requestLogDao.getDailyLogEntriesBetween(march1st.toLocalDate(), april1st.toLocalDate())).containsExactly(
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, march1st.withTimeAtStartOfDay()), 1l),
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, march31st.withTimeAtStartOfDay()), 4l),
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, april1st), 8l));
+        assertThat(requestLogDao.getMonthlyLogEntriesBetween(march1st.toLocalDate(), april1st.toLocalDate())).containsExactly(
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, march1st.withTimeAtStartOfDay()), 5l),
+                new RequestLogEntry(new RequestLogKey(URL, SOURCE, april1st), 1l)); // not in the rebuilt months
+    }
+
     @Test
     public void testDao_emptySet() {
         requestLogDao.batchIncrement(emptyMap());
@@ -3,27 +3,41 @@
 
 package fi.hsl.parkandride.back;
 
+import com.google.common.collect.Lists;
 import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
+import fi.hsl.parkandride.back.migration.V34__Rebuild_daily_utilizations;
+import fi.hsl.parkandride.back.sql.QFacilityUtilizationHourly;
 import fi.hsl.parkandride.core.back.FacilityRepository;
 import fi.hsl.parkandride.core.back.UtilizationRepository;
 import fi.hsl.parkandride.core.domain.*;
+import fi.hsl.parkandride.core.domain.prediction.Prediction;
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
 import org.joda.time.Minutes;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import static fi.hsl.parkandride.core.back.PredictionRepository.PREDICTION_RESOLUTION;
 import static fi.hsl.parkandride.core.domain.CapacityType.CAR;
 import static fi.hsl.parkandride.core.domain.CapacityType.MOTORCYCLE;
 import static fi.hsl.parkandride.core.domain.Usage.COMMERCIAL;
 import static fi.hsl.parkandride.core.domain.Usage.HSL_TRAVEL_CARD;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @Transactional
@@ -32,6 +46,10 @@ public class UtilizationDaoTest extends AbstractDaoTest {
     @Inject Dummies dummies;
     @Inject UtilizationRepository utilizationDao;
     @Inject FacilityRepository facilityDao;
+    @Inject PostgreSQLQueryFactory queryFactory;
+    @Inject DataSource dataSource;
+
+    private static final QFacilityUtilizationHourly qHourly = QFacilityUtilizationHourly.facilityUtilizationHourly;
 
     private long facilityId;
 
@@ -303,9 +321,192 @@ public class UtilizationDaoTest extends AbstractDaoTest {
                 newUtilization(facilityId, end, 100, 100));
     }
 
+    @Test
+    public void findSpacesAvailableWithPredictionResolution_has_the_same_values_as_findUtilizationsWithResolution() {
+        DateTime start = new DateTime(2000, 1, 1, 12, 0);
+        DateTime end = start.plusHours(1);
+
+        Utilization u1 = newUtilization(facilityId, start.plusMinutes(12), 100, 100);
+        Utilization u2 = newUtilization(facilityId, start.plusMinutes(41), 150, 200);
+        utilizationDao.insertUtilizations(asList(u1, u2));
+        UtilizationKey utilizationKey = u1.getUtilizationKey();
+
+        TimeSeries series = utilizationDao.findSpacesAvailableWithPredictionResolution(utilizationKey, start, end);
+        List<Utilization> expected = utilizationDao.findUtilizationsWithResolution(utilizationKey, start, end, PREDICTION_RESOLUTION);
+        assertThat(series.getStart()).isEqualTo(start);
+        assertThat(series.size()).isEqualTo(13);
+        assertThat(series.toPredictions()).containsExactlyElementsOf(expected.stream()
+                .map(u -> new Prediction(u.timestamp, u.spacesAvailable))
+                .collect(toList()));
+    }
+
+
+    // daily utilizations
+
+    @Test
+    public void daily_utilizations_are_updated_incrementally_on_insert() {
+        DateTime day = new DateTime(2000, 1, 1, 0, 0);
+        utilizationDao.insertUtilizations(asList(
+                newUtilization(facilityId, day.plusHours(8), 50, 100),
+                newUtilization(facilityId, day.plusHours(9), 20, 100),
+                newUtilization(facilityId, day.plusDays(1).plusHours(8), 70, 100)));
+        utilizationDao.insertUtilizations(asList(
+                newUtilization(facilityId, day.plusHours(10), 60, 110),
+                newUtilization(facilityId, day.plusHours(7), 10, 90))); // arrives late
+
+        UtilizationSearch search = new UtilizationSearch();
+        search.start = day;
+        search.end = day.plusDays(1).millisOfDay().withMaximumValue();
+        List<DailyUtilization> results;
+        try (CloseableIterator<DailyUtilization> it = utilizationDao.findDailyUtilizations(search)) {
+            results = Lists.newArrayList(it);
+        }
+
+        assertThat(results).extracting(d -> d.date).containsExactly(day.toLocalDate(), day.plusDays(1).toLocalDate());
+        DailyUtilization first = results.get(0);
+        assertThat(asList(first.minSpacesAvailable, first.maxSpacesAvailable, first.lastSpacesAvailable)).containsExactly(10, 60, 60);
+        assertThat(asList(first.minCapacity, first.maxCapacity, first.lastCapacity)).containsExactly(90, 110, 110);
+        assertThat(first.lastTimestamp.getMillis()).isEqualTo(day.plusHours(10).getMillis());
+        DailyUtilization second = results.get(1);
+        assertThat(asList(second.minSpacesAvailable, second.maxSpacesAvailable, second.lastSpacesAvailable)).containsExactly(70, 70, 70);
+    }
+
+    @Test
+    public void daily_utilizations_are_dated_in_the_facility_time_zone() {
+        DateTime lateEvening = new DateTime(2000, 1, 1, 23, 30, DateTimeZone.UTC);
+        utilizationDao.insertUtilizations(asList(newUtilization(facilityId, lateEvening, 50, 100)));
+
+        assertThat(findDailyUtilizations(lateEvening.minusDays(1), lateEvening.plusDays(1)))
+                .extracting(d -> d.date)
+                .containsExactly(new LocalDate(2000, 1, 2));
+    }
+
+    @Test
+    public void rebuilt_daily_utilizations_are_the_same_as_the_incrementally_updated_ones() {
+        DateTime day = new DateTime(2000, 1, 1, 0, 0, Facility.TIME_ZONE);
+        Utilization other = newUtilization(facilityId, day.plusHours(12), 5, 10);
+        other.usage = COMMERCIAL;
+        utilizationDao.insertUtilizations(asList(
+                newUtilization(facilityId, day.plusHours(8), 50, 100),
+                newUtilization(facilityId, day.plusHours(23).plusMinutes(30), 20, 100),
+                newUtilization(facilityId, day.plusDays(1).plusHours(1), 70, 90),
+                other));
+        List<DailyUtilization> incremental = findDailyUtilizations(day, day.plusDays(2));
+
+        new V34__Rebuild_daily_utilizations().migrate(new JdbcTemplate(dataSource));
+
+        assertThat(incremental).hasSize(3);
+        assertThat(findDailyUtilizations(day, day.plusDays(2))).usingFieldByFieldElementComparator().containsOnlyElementsOf(incremental);
+    }
+
+
+    // roll-ups
+
+    @Test
+    public void rollup_summarizes_each_hour_and_keeps_the_utilizations() {
+        DateTime start = new DateTime(2000, 1, 1, 12, 0);
+        DateTime end = start.plusHours(2);
+        insertUtilizationsEveryTenMinutes(start.plusMinutes(10), 50, 10, 60, 90, 70, 80, 30);
+        insertUtilizationsEveryTenMinutes(end, 40, 45);
+        UtilizationKey utilizationKey = newUtilization(facilityId, start, 0, 0).getUtilizationKey();
+
+        DateTime rolledUpUntil = utilizationDao.rollUpUtilizations(facilityId, end, Duration.standardDays(7));
+
+        assertThat(rolledUpUntil.getMillis()).isEqualTo(end.getMillis());
+        assertThat(findUtilizationsBetween(utilizationKey, start, end.plusHours(1))).hasSize(9);
+        assertThat(queryFactory.from(qHourly)
+                .select(qHourly.minSpacesAvailable, qHourly.maxSpacesAvailable, qHourly.lastSpacesAvailable)
+                .orderBy(qHourly.ts.asc())
+                .fetch())
+                .extracting(row -> asList(row.get(qHourly.minSpacesAvailable), row.get(qHourly.maxSpacesAvailable), row.get(qHourly.lastSpacesAvailable)))
+                .containsExactly(asList(10, 90, 70), asList(30, 80, 30));
+        assertThat(utilizationDao.rollUpUtilizations(facilityId, end, Duration.standardDays(7)).getMillis())
+                .as("rolling up again").isEqualTo(end.getMillis());
+        assertThat(queryFactory.from(qHourly).fetchCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void rollup_continues_from_where_the_previous_rollup_ended() {
+        DateTime start = new DateTime(2000, 1, 1, 0, 0);
+        DateTime end = start.plusHours(6);
+        Duration maxRange = Duration.standardHours(2);
+        insertUtilizationsEveryTenMinutes(start.plusMinutes(10), 5, 1, 9, 5);
+        insertUtilizationsEveryTenMinutes(start.plusHours(5), 5, 1, 9, 5);
+
+        assertThat(utilizationDao.rollUpUtilizations(facilityId, end, maxRange).getMillis())
+                .as("starts from the oldest utilization").isEqualTo(start.plusHours(2).getMillis());
+        assertThat(queryFactory.from(qHourly).fetchCount()).isEqualTo(1);
+
+        assertThat(utilizationDao.rollUpUtilizations(facilityId, end, maxRange).getMillis()).isEqualTo(start.plusHours(4).getMillis());
+        assertThat(utilizationDao.rollUpUtilizations(facilityId, end, maxRange).getMillis()).isEqualTo(end.getMillis());
+        assertThat(queryFactory.from(qHourly).fetchCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void last_utilizations_of_hours_are_read_from_the_rollups_of_rolled_up_hours() {
+        DateTime start = new DateTime(2000, 1, 1, 0, 0);
+        DateTime end = start.plusHours(3);
+        insertUtilizationsEveryTenMinutes(start.plusMinutes(10), 5, 1, 9, 5, 4, 3, 2);
+        UtilizationSearch search = new UtilizationSearch();
+        search.start = start;
+        search.end = start.plusHours(2).minusMillis(1);
+        List<Utilization> utilizations = findUtilizations(search);
+
+        assertThat(findLastUtilizationsOfHours(search)).as("not rolled up").isEqualTo(utilizations);
+
+        utilizationDao.rollUpUtilizations(facilityId, end, Duration.standardDays(7));
+        assertThat(findLastUtilizationsOfHours(search)).containsExactly(utilizations.get(4), utilizations.get(6));
+
+        search.facilityIds.add(facilityId);
+        assertThat(findLastUtilizationsOfHours(search)).as("by facility").containsExactly(utilizations.get(4), utilizations.get(6));
+
+        createFacility();
+        search.facilityIds.clear();
+        assertThat(findLastUtilizationsOfHours(search)).as("another facility is not rolled up").isEqualTo(utilizations);
+
+        search.facilityIds.add(facilityId);
+        search.start = start.plusMinutes(30);
+        assertThat(findLastUtilizationsOfHours(search)).as("partial hours").isEqualTo(findUtilizations(search));
+    }
+
 
     // helpers
 
+    private void insertUtilizationsEveryTenMinutes(DateTime start, int... spacesAvailable) {
+        List<Utilization> utilizations = new ArrayList<>();
+        for (int i = 0; i < spacesAvailable.length; i++) {
+            utilizations.add(newUtilization(facilityId, start.plusMinutes(10 * i), spacesAvailable[i], 100));
+        }
+        utilizationDao.insertUtilizations(utilizations);
+    }
+
+    private List<DailyUtilization> findDailyUtilizations(DateTime start, DateTime end) {
+        UtilizationSearch search = new UtilizationSearch();
+        search.start = start;
+        search.end = end;
+        try (CloseableIterator<DailyUtilization> it = utilizationDao.findDailyUtilizations(search)) {
+            return Lists.newArrayList(it);
+        }
+    }
+
+    private List<Utilization> findUtilizations(UtilizationSearch search) {
+        try (CloseableIterator<Utilization> it = utilizationDao.findUtilizations(search)) {
+            return Lists.newArrayList(it);
+        }
+    }
+
+    private List<Utilization> findLastUtilizationsOfHours(UtilizationSearch search) {
+        try (CloseableIterator<Utilization> it = utilizationDao.findLastUtilizationsOfHours(search)) {
+            return Lists.newArrayList(it);
+        }
+    }
+
+    private List<Utilization> findUtilizationsBetween(UtilizationKey utilizationKey, DateTime start, DateTime end) {
+        try (CloseableIterator<Utilization> it = utilizationDao.findUtilizationsBetween(utilizationKey, start, end)) {
+            return Lists.newArrayList(it);
+        }
+    }
+
     public long createFacility() {
         long facilityId = dummies.createFacility();
 
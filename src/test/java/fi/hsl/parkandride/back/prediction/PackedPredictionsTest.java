@@ -0,0 +1,52 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.back.prediction;
+
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PackedPredictionsTest {
+
+    private static final DateTime START = new DateTime(2016, 3, 1, 12, 0);
+
+    @Test
+    public void packs_and_unpacks_the_values() {
+        TimeSeries series = new TimeSeries(START.plusMinutes(10), 5);
+        series.set(0, 100);
+        series.set(1, 0);
+        series.set(3, 100_000);
+        series.set(4, 99_999);
+
+        byte[] packed = PackedPredictions.pack(START, series);
+
+        assertThat(PackedPredictions.unpack(START, packed).toPredictions()).isEqualTo(series.toPredictions());
+        assertThat(PackedPredictions.get(packed, 0)).as("before the values").isNull();
+        assertThat(PackedPredictions.get(packed, 2)).isEqualTo(100);
+        assertThat(PackedPredictions.get(packed, 3)).isEqualTo(0);
+        assertThat(PackedPredictions.get(packed, 4)).as("missing value").isNull();
+        assertThat(PackedPredictions.get(packed, 5)).isEqualTo(100_000);
+        assertThat(PackedPredictions.get(packed, 6)).isEqualTo(99_999);
+        assertThat(PackedPredictions.get(packed, 7)).as("after the values").isNull();
+    }
+
+    @Test
+    public void small_changes_take_one_byte_each() {
+        TimeSeries series = new TimeSeries(START, 288);
+        for (int i = 0; i < series.size(); i++) {
+            series.set(i, 500 + (i % 20) - 10);
+        }
+
+        byte[] packed = PackedPredictions.pack(START, series);
+
+        assertThat(packed.length).isLessThan(series.size() + 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_values_before_the_start() {
+        PackedPredictions.pack(START, new TimeSeries(START.minusMinutes(5), 1));
+    }
+}
@@ -3,6 +3,7 @@
 
 package fi.hsl.parkandride.back.prediction;
 
+import com.querydsl.sql.postgresql.PostgreSQLQueryFactory;
 import fi.hsl.parkandride.back.AbstractDaoTest;
 import fi.hsl.parkandride.back.Dummies;
 import fi.hsl.parkandride.core.back.PredictionRepository;
@@ -12,7 +13,9 @@ import fi.hsl.parkandride.core.domain.Usage;
 import fi.hsl.parkandride.core.domain.UtilizationKey;
 import fi.hsl.parkandride.core.domain.prediction.Prediction;
 import fi.hsl.parkandride.core.domain.prediction.PredictionBatch;
+import fi.hsl.parkandride.core.domain.prediction.TimeSeries;
 import fi.hsl.parkandride.core.service.ValidationException;
+import fi.hsl.parkandride.core.service.ValidationService;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
@@ -20,12 +23,17 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.inject.Inject;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 import static fi.hsl.parkandride.core.back.PredictionRepository.PREDICTION_RESOLUTION;
@@ -46,6 +54,9 @@ public class PredictionDaoTest extends AbstractDaoTest {
     @Inject Dummies dummies;
     @Inject PredictionRepository predictionDao;
     @Inject PredictorRepository predictorDao;
+    @Inject PostgreSQLQueryFactory queryFactory;
+    @Inject ValidationService validationService;
+    @Inject PlatformTransactionManager transactionManager;
 
     private final DateTime now = new DateTime();
     private long facilityId;
@@ -252,6 +263,74 @@ public class PredictionDaoTest extends AbstractDaoTest {
     }
 
 
+    @Test
+    public void updates_the_predictions_of_many_predictors_at_once() {
+        PredictionBatch pb1 = newPredictionBatch(now, new Prediction(now, 10), new Prediction(now.plusHours(1), 10));
+        PredictionBatch pb2 = newPredictionBatch(now, new Prediction(now, 20), new Prediction(now.plusHours(1), 20));
+        pb2.utilizationKey.capacityType = MOTORCYCLE;
+        PredictionBatch pb3 = newPredictionBatch(now, new Prediction(now, 30), new Prediction(now.plusHours(1), 30));
+        Map<Long, PredictionBatch> batches = new LinkedHashMap<>();
+        batches.put(predictorId, pb1);
+        batches.put(newPredictorId(pb2), pb2);
+        Long otherPredictorId = predictorDao.enablePredictor("other", pb3.utilizationKey);
+        batches.put(otherPredictorId, pb3); // same utilization key as pb1
+
+        predictionDao.updatePredictions(batches);
+        predictionDao.updatePredictions(batches); // the history already exists
+
+        assertPredictionsSavedAsIs(pb2);
+        assertPredictionsSavedAsIs(pb3);
+        assertThat(predictionDao.getPredictionHistoryByPredictor(predictorId, now.minusHours(1), now.plusHours(2), 60))
+                .containsExactly(toPredictionResolution(new Prediction(now.plusHours(1), 10)));
+        assertThat(predictionDao.getPredictionHistoryByPredictor(otherPredictorId, now.minusHours(1), now.plusHours(2), 60))
+                .containsExactly(toPredictionResolution(new Prediction(now.plusHours(1), 30)));
+    }
+
+
+    // storage formats
+
+    @Test
+    public void predictions_are_readable_after_changing_the_storage_format() {
+        PredictionDao columnStorageDao = new PredictionDao(queryFactory, validationService, false);
+        DateTime later = now.plusHours(3);
+
+        PredictionBatch pb1 = newPredictionBatch(now, new Prediction(now, 10), new Prediction(later, 20));
+        inTransaction(() -> columnStorageDao.updatePredictions(pb1, predictorId));
+        assertPredictionsSavedAsIs(pb1);
+
+        PredictionBatch pb2 = newPredictionBatch(now, new Prediction(now, 30), new Prediction(later, 40));
+        predictionDao.updatePredictions(pb2, predictorId);
+        assertPredictionsSavedAsIs(pb2);
+        assertThat(inTransaction(() -> columnStorageDao.getPrediction(pb2.utilizationKey, later)).get().predictions)
+                .containsExactly(toPredictionResolution(new Prediction(later, 40)));
+
+        PredictionBatch pb3 = newPredictionBatch(now, new Prediction(now, 50), new Prediction(later, 60));
+        inTransaction(() -> columnStorageDao.updatePredictions(pb3, predictorId));
+        assertPredictionsSavedAsIs(pb3);
+    }
+
+    @Test
+    public void finds_all_predictions_in_both_storage_formats() {
+        PredictionDao columnStorageDao = new PredictionDao(queryFactory, validationService, false);
+        PredictionBatch pb1 = newPredictionBatch(now, new Prediction(now, 10), new Prediction(now.plusHours(1), 10));
+        PredictionBatch pb2 = newPredictionBatch(now, new Prediction(now, 20), new Prediction(now.plusHours(1), 20));
+        pb2.utilizationKey.capacityType = MOTORCYCLE;
+        predictionDao.updatePredictions(pb1, predictorId);
+        inTransaction(() -> columnStorageDao.updatePredictions(pb2, newPredictorId(pb2)));
+
+        Map<UtilizationKey, TimeSeries> predictions = predictionDao.findAllPredictions();
+
+        assertThat(predictions).containsOnlyKeys(pb1.utilizationKey, pb2.utilizationKey);
+        for (PredictionBatch pb : Arrays.asList(pb1, pb2)) {
+            for (DateTime t = now; t.isBefore(now.plusHours(1)); t = t.plusMinutes(5)) {
+                TimeSeries series = predictions.get(pb.utilizationKey);
+                assertThat(series.get(series.indexOf(toPredictionResolution(t)))).as("%s at %s", pb.utilizationKey, t)
+                        .isEqualTo(predictionDao.getPrediction(pb.utilizationKey, t).get().predictions.get(0).spacesAvailable);
+            }
+        }
+    }
+
+
     // history
 
     @Test
@@ -314,12 +393,42 @@ public class PredictionDaoTest extends AbstractDaoTest {
         predictionDao.updateOnlyPredictionHistory(pb, predictorId); // this used to crash with "Unique index or primary key violation"
     }
 
+    /**
+     * PostgreSQL skips the existing history rows with ON CONFLICT DO NOTHING and H2 by reading them first,
+     * so run this also with the psql profile (mvn verify -P psql) after changing either of them.
+     */
+    @Test
+    public void existing_prediction_history_is_kept_when_the_same_predictions_are_written_again() {
+        PredictionBatch first = newPredictionBatch(now, new Prediction(now, 10), new Prediction(now.plusHours(1), 10));
+        PredictionBatch second = newPredictionBatch(now, new Prediction(now, 20), new Prediction(now.plusHours(1), 20), new Prediction(now.plusHours(2), 20));
+
+        predictionDao.updatePredictions(first, predictorId);
+        predictionDao.updatePredictions(second, predictorId);
+
+        assertPredictionsSavedAsIs(second);
+        assertThat(predictionDao.getPredictionHistoryByPredictor(predictorId, now.minusHours(1), now.plusHours(3), 60))
+                .as("existing row").containsExactly(toPredictionResolution(new Prediction(now.plusHours(1), 10)));
+        assertThat(predictionDao.getPredictionHistoryByPredictor(predictorId, now.minusHours(1), now.plusHours(3), 120))
+                .as("new row in the same batch").containsExactly(toPredictionResolution(new Prediction(now.plusHours(2), 20)));
+    }
+
     // helpers
 
     public Long newPredictorId(PredictionBatch pb) {
         return predictorDao.enablePredictor(DUMMY_PREDICTOR_TYPE, pb.utilizationKey);
     }
 
+    private void inTransaction(Runnable action) {
+        inTransaction(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T inTransaction(Supplier<T> action) {
+        return new TransactionTemplate(transactionManager).execute(status -> action.get());
+    }
+
     private PredictionBatch newPredictionBatch(DateTime sourceTimestamp, Prediction... predictions) {
         PredictionBatch batch = new PredictionBatch();
         batch.utilizationKey.facilityId = facilityId;
@@ -18,7 +18,9 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import javax.inject.Inject;
+import java.util.List;
 
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class PredictorDaoTest extends AbstractDaoTest {
@@ -130,12 +132,82 @@ public class PredictorDaoTest extends AbstractDaoTest {
         state.moreUtilizations = false;
         predictorRepository.save(state);
 
-        predictorRepository.markPredictorsNeedAnUpdate(utilizationKey);
+        predictorRepository.markPredictorsNeedAnUpdate(utilizationKey, new DateTime());
 
         state.moreUtilizations = true;
         assertThat(predictorRepository.findPredictorsNeedingUpdate()).containsExactly(state.predictorId);
     }
 
+    @Test
+    public void marking_predictors_remembers_the_earliest_new_utilization_until_saved() {
+        PredictorState state = enablePredictor("type", utilizationKey);
+        DateTime now = new DateTime();
+        assertThat(state.earliestNewUtilization).isNull();
+
+        predictorRepository.markPredictorsNeedAnUpdate(utilizationKey, now);
+        predictorRepository.markPredictorsNeedAnUpdate(utilizationKey, now.minusHours(1));
+        predictorRepository.markPredictorsNeedAnUpdate(utilizationKey, now.plusHours(1));
+        state = predictorRepository.getById(state.predictorId);
+        assertThat(state.earliestNewUtilization).isEqualTo(now.minusHours(1));
+
+        state.earliestNewUtilization = null;
+        predictorRepository.save(state);
+        assertThat(predictorRepository.getById(state.predictorId).earliestNewUtilization).isNull();
+    }
+
+
+    // claiming predictors for update
+
+    @Test
+    public void claimed_predictors_cannot_be_claimed_again_until_released() {
+        PredictorState state1 = enablePredictor("type", utilizationKey);
+        PredictorState state2 = enablePredictor("type", new UtilizationKey(facilityId, CapacityType.ELECTRIC_CAR, Usage.PARK_AND_RIDE));
+        DateTime claimedUntil = new DateTime().plusMinutes(1);
+
+        List<Long> claimed = predictorRepository.claimPredictorsNeedingUpdate(1, claimedUntil);
+        assertThat(claimed).hasSize(1);
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(10, claimedUntil)).hasSize(1).doesNotContainAnyElementsOf(claimed);
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(10, claimedUntil)).isEmpty();
+
+        predictorRepository.releasePredictors(asList(state1.predictorId, state2.predictorId), claimedUntil);
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(10, claimedUntil)).containsOnly(state1.predictorId, state2.predictorId);
+    }
+
+    @Test
+    public void predictors_of_the_same_utilization_key_are_claimed_together() {
+        PredictorState state1 = enablePredictor("type1", utilizationKey);
+        PredictorState state2 = enablePredictor("type2", utilizationKey);
+
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(1, new DateTime().plusMinutes(1))).containsOnly(state1.predictorId, state2.predictorId);
+    }
+
+    @Test
+    public void expired_claims_can_be_claimed_again() {
+        PredictorState state = enablePredictor("type", utilizationKey);
+
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(10, new DateTime().minusSeconds(1))).containsExactly(state.predictorId);
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(10, new DateTime().plusMinutes(1))).containsExactly(state.predictorId);
+    }
+
+    @Test
+    public void releasing_does_not_affect_claims_made_by_others() {
+        PredictorState state = enablePredictor("type", utilizationKey);
+        DateTime expiredClaim = new DateTime().minusSeconds(1);
+        predictorRepository.claimPredictorsNeedingUpdate(10, expiredClaim);
+        predictorRepository.claimPredictorsNeedingUpdate(10, new DateTime().plusMinutes(1));
+
+        predictorRepository.releasePredictors(asList(state.predictorId), expiredClaim);
+
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(10, new DateTime().plusMinutes(1))).isEmpty();
+    }
+
+    @Test
+    public void only_predictors_needing_update_are_claimed() {
+        createPredictorNotNeedingUpdate(utilizationKey);
+
+        assertThat(predictorRepository.claimPredictorsNeedingUpdate(10, new DateTime().plusMinutes(1))).isEmpty();
+    }
+
 
     // uniqueness
 
@@ -179,7 +251,7 @@ public class PredictorDaoTest extends AbstractDaoTest {
         createPredictorNotNeedingUpdate(key1);
         createPredictorNotNeedingUpdate(key2);
 
-        predictorRepository.markPredictorsNeedAnUpdate(key1);
+        predictorRepository.markPredictorsNeedAnUpdate(key1, new DateTime());
 
         assertThat(predictorRepository.findPredictorsNeedingUpdate()).hasSize(1);
     }
@@ -191,7 +263,7 @@ public class PredictorDaoTest extends AbstractDaoTest {
         createPredictorNotNeedingUpdate(key1);
         createPredictorNotNeedingUpdate(key2);
 
-        predictorRepository.markPredictorsNeedAnUpdate(key1);
+        predictorRepository.markPredictorsNeedAnUpdate(key1, new DateTime());
 
         assertThat(predictorRepository.findPredictorsNeedingUpdate()).hasSize(1);
     }
@@ -203,7 +275,7 @@ public class PredictorDaoTest extends AbstractDaoTest {
         createPredictorNotNeedingUpdate(key1);
         createPredictorNotNeedingUpdate(key2);
 
-        predictorRepository.markPredictorsNeedAnUpdate(key1);
+        predictorRepository.markPredictorsNeedAnUpdate(key1, new DateTime());
 
         assertThat(predictorRepository.findPredictorsNeedingUpdate()).hasSize(1);
     }
@@ -0,0 +1,94 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain;
+
+import org.geolatte.geom.Point;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static fi.hsl.parkandride.core.domain.CapacityType.CAR;
+import static fi.hsl.parkandride.core.domain.DayType.BUSINESS_DAY;
+import static fi.hsl.parkandride.core.domain.DayType.SATURDAY;
+import static fi.hsl.parkandride.core.domain.FacilityStatus.IN_OPERATION;
+import static fi.hsl.parkandride.core.domain.PaymentMethod.COINS;
+import static fi.hsl.parkandride.core.domain.PricingMethod.CUSTOM;
+import static fi.hsl.parkandride.core.domain.Service.LIGHTING;
+import static fi.hsl.parkandride.core.domain.Usage.PARK_AND_RIDE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FacilityCopyTest {
+
+    @Test
+    public void copy_is_equal_but_shares_no_mutable_state() {
+        Facility original = newFacility();
+        Facility copy = original.copy();
+
+        assertThat(copy.id).isEqualTo(original.id);
+        assertThat(copy.name).isEqualTo(original.name).isNotSameAs(original.name);
+        assertThat(copy.statusDescription).isEqualTo(original.statusDescription).isNotSameAs(original.statusDescription);
+        assertThat(copy.status).isEqualTo(original.status);
+        assertThat(copy.builtCapacity).isEqualTo(original.builtCapacity).isNotSameAs(original.builtCapacity);
+        assertThat(copy.usages).isEqualTo(original.usages).isNotSameAs(original.usages);
+        assertThat(copy.pricing).isEqualTo(original.pricing).isNotSameAs(original.pricing);
+        assertThat(copy.pricing.get(0)).isNotSameAs(original.pricing.get(0));
+        assertThat(copy.pricing.get(0).time).isNotSameAs(original.pricing.get(0).time);
+        assertThat(copy.unavailableCapacities).isEqualTo(original.unavailableCapacities);
+        assertThat(copy.unavailableCapacities.get(0)).isNotSameAs(original.unavailableCapacities.get(0));
+        assertThat(copy.aliases).isEqualTo(original.aliases).isNotSameAs(original.aliases);
+        assertThat(copy.ports).isEqualTo(original.ports);
+        assertThat(copy.ports.get(0)).isNotSameAs(original.ports.get(0));
+        assertThat(copy.ports.get(0).address).isNotSameAs(original.ports.get(0).address);
+        assertThat(copy.services).isEqualTo(original.services).isNotSameAs(original.services);
+        assertThat(copy.contacts).isEqualTo(original.contacts).isNotSameAs(original.contacts);
+        assertThat(copy.paymentInfo.detail).isEqualTo(original.paymentInfo.detail).isNotSameAs(original.paymentInfo.detail);
+        assertThat(copy.paymentInfo.url).isEqualTo(original.paymentInfo.url).isInstanceOf(MultilingualUrl.class);
+        assertThat(copy.paymentInfo.paymentMethods).isEqualTo(original.paymentInfo.paymentMethods).isNotSameAs(original.paymentInfo.paymentMethods);
+        assertThat(copy.openingHours.openNow).isEqualTo(original.openingHours.openNow);
+        assertThat(copy.openingHours.byDayType).isEqualTo(original.openingHours.byDayType).isNotSameAs(original.openingHours.byDayType);
+        assertThat(copy.openingHours.url).isEqualTo(original.openingHours.url).isInstanceOf(MultilingualUrl.class);
+    }
+
+    @Test
+    public void modifying_the_copy_leaves_the_original_intact() {
+        Facility original = newFacility();
+        Facility copy = original.copy();
+
+        copy.name.fi = "muutettu";
+        copy.pricing.get(0).maxCapacity = 1;
+        copy.pricing.add(new Pricing(CAR, PARK_AND_RIDE, 1, SATURDAY, "00", "24", null));
+        copy.ports.get(0).address.postalCode = "99999";
+        copy.openingHours.byDayType.clear();
+
+        assertThat(original.name.fi).isEqualTo("nimi");
+        assertThat(original.pricing).hasSize(1);
+        assertThat(original.pricing.get(0).maxCapacity).isEqualTo(10);
+        assertThat(original.ports.get(0).address.postalCode).isEqualTo("00100");
+        assertThat(original.openingHours.byDayType).containsKey(BUSINESS_DAY);
+    }
+
+    private static Facility newFacility() {
+        Facility facility = new Facility();
+        facility.id = 1L;
+        facility.name = new MultilingualString("nimi", "namn", "name");
+        facility.operatorId = 2L;
+        facility.status = IN_OPERATION;
+        facility.statusDescription = new MultilingualString("status");
+        facility.pricingMethod = CUSTOM;
+        facility.builtCapacity.put(CAR, 10);
+        facility.usages.add(PARK_AND_RIDE);
+        facility.pricing.add(new Pricing(CAR, PARK_AND_RIDE, 10, BUSINESS_DAY, "8", "18", "2 EUR"));
+        facility.unavailableCapacities.add(new UnavailableCapacity(CAR, PARK_AND_RIDE, 2));
+        facility.aliases.add("alias");
+        facility.ports.add(new Port((Point) Spatial.fromWkt("POINT(25.010822 60.25054)"), true, true, false, false, "katu", "00100", "Helsinki", "info"));
+        facility.services.add(LIGHTING);
+        facility.contacts = new FacilityContacts(3L, 4L, 5L);
+        facility.paymentInfo.detail = new MultilingualString("detail");
+        facility.paymentInfo.url = new MultilingualUrl("http://www.hsl.fi");
+        facility.paymentInfo.paymentMethods.add(COINS);
+        facility.openingHours.url = new MultilingualUrl("http://www.hsl.fi");
+        facility.initialize();
+        facility.openingHours.initialize(facility.pricing, new DateTime(2016, 3, 1, 12, 0), facility.status);
+        return facility;
+    }
+}
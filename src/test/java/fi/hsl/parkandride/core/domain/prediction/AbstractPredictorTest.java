@@ -33,12 +33,17 @@ public abstract class AbstractPredictorTest extends AbstractDaoTest {
     protected UtilizationKey utilizationKey;
     protected UtilizationHistory utilizationHistory;
     protected PredictorState predictorState;
-    protected final DateTime now = new DateTime();
+    protected final DateTime now;
     protected Optional<Utilization> latestInsertedUtilization;
     protected int availableMaxCapacity;
 
     protected AbstractPredictorTest(Predictor predictor) {
+        this(predictor, new DateTime());
+    }
+
+    protected AbstractPredictorTest(Predictor predictor, DateTime now) {
         this.predictor = predictor;
+        this.now = now;
     }
 
     @Before
@@ -3,18 +3,31 @@
 
 package fi.hsl.parkandride.core.domain.prediction;
 
+import fi.hsl.parkandride.core.domain.Utilization;
+import org.joda.time.DateTime;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static fi.hsl.parkandride.core.back.PredictionRepository.PREDICTION_RESOLUTION;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class AverageOfPreviousWeeksPredictorTest extends AbstractPredictorTest {
 
+    private static final int PREDICTION_SLOTS = 24 * 12 + 1;
+
     public AverageOfPreviousWeeksPredictorTest() {
-        super(new AverageOfPreviousWeeksPredictor());
+        // the ring buffer holds only the instants of the prediction resolution grid, and so do the predictions
+        super(new AverageOfPreviousWeeksPredictor(), onPredictionGrid(new DateTime()));
+    }
+
+    private static DateTime onPredictionGrid(DateTime time) {
+        return time.withMillisOfSecond(0).withSecondOfMinute(0)
+                .minusMinutes(time.getMinuteOfHour() % PREDICTION_RESOLUTION.getMinutes());
     }
 
     @Before
@@ -82,6 +95,61 @@ public class AverageOfPreviousWeeksPredictorTest extends AbstractPredictorTest {
                 new Prediction(now.plusDays(1), 20));
     }
 
+    @Test
+    public void incremental_update_gives_the_same_result_as_a_full_update() {
+        List<Utilization> utilizations = new ArrayList<>();
+        for (DateTime t = now.minusWeeks(4); !t.isAfter(now); t = t.plusMinutes(7)) {
+            utilizations.add(newUtilization(t, t.getMinuteOfDay() % 100));
+        }
+        List<Utilization> older = utilizations.stream().filter(u -> u.timestamp.isBefore(now.minusHours(3))).collect(toList());
+        AverageOfPreviousWeeksPredictor predictor = new AverageOfPreviousWeeksPredictor();
+        PredictorState fullState = new PredictorState(2L, predictor.getType(), utilizationKey);
+
+        predictor.predict(predictorState, new UtilizationHistoryList(older), availableMaxCapacity);
+        List<Prediction> incremental = predictor.predict(predictorState, new UtilizationHistoryList(utilizations), availableMaxCapacity);
+        List<Prediction> full = predictor.predict(fullState, new UtilizationHistoryList(utilizations), availableMaxCapacity);
+
+        assertThat(incremental).hasSize(PREDICTION_SLOTS).isEqualTo(full);
+        assertThat(predictorState.internalState).isEqualTo(fullState.internalState);
+    }
+
+    @Test
+    public void late_arriving_utilizations_are_applied_on_the_next_update() {
+        List<Utilization> utilizations = new ArrayList<>();
+        for (DateTime t = now.minusWeeks(4); !t.isAfter(now); t = t.plusMinutes(7)) {
+            utilizations.add(newUtilization(t, t.getMinuteOfDay() % 100));
+        }
+        DateTime lateSince = now.minusWeeks(2);
+        DateTime lateUntil = lateSince.plusHours(1);
+        List<Utilization> onTime = utilizations.stream()
+                .filter(u -> u.timestamp.isBefore(lateSince) || !u.timestamp.isBefore(lateUntil))
+                .collect(toList());
+        AverageOfPreviousWeeksPredictor predictor = new AverageOfPreviousWeeksPredictor();
+        PredictorState fullState = new PredictorState(2L, predictor.getType(), utilizationKey);
+
+        predictor.predict(predictorState, new UtilizationHistoryList(onTime), availableMaxCapacity);
+        predictorState.earliestNewUtilization = utilizations.stream()
+                .map(u -> u.timestamp)
+                .filter(t -> !t.isBefore(lateSince))
+                .findFirst().get();
+        List<Prediction> incremental = predictor.predict(predictorState, new UtilizationHistoryList(utilizations), availableMaxCapacity);
+        List<Prediction> full = predictor.predict(fullState, new UtilizationHistoryList(utilizations), availableMaxCapacity);
+
+        assertThat(incremental).hasSize(PREDICTION_SLOTS).isEqualTo(full);
+        assertThat(predictorState.internalState).isEqualTo(fullState.internalState);
+    }
+
+    private Utilization newUtilization(DateTime timestamp, int spacesAvailable) {
+        Utilization u = new Utilization();
+        u.facilityId = utilizationKey.facilityId;
+        u.capacityType = utilizationKey.capacityType;
+        u.usage = utilizationKey.usage;
+        u.timestamp = timestamp;
+        u.spacesAvailable = spacesAvailable;
+        u.capacity = 1000;
+        return u;
+    }
+
     // TODO: shift prediction up/down to start from current utilization baseline
     // TODO: 5 weeks of history, discard 2 outliers, average
     // TODO: more than 5 weeks of history, use only the last 5 weeks
@@ -0,0 +1,122 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import com.google.common.collect.ImmutableMap;
+import fi.hsl.parkandride.core.domain.*;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.*;
+
+import static fi.hsl.parkandride.core.domain.CapacityType.*;
+import static fi.hsl.parkandride.core.domain.Usage.COMMERCIAL;
+import static fi.hsl.parkandride.core.domain.Usage.PARK_AND_RIDE;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class PredictionIndexTest {
+
+    private static final DateTime START = new DateTime(2016, 3, 1, 12, 0);
+    private static final long HUB_ID = 100;
+
+    private final Facility f1 = newFacility(1, CAR);
+    private final Facility f2 = newFacility(2, CAR);
+    private final Map<UtilizationKey, TimeSeries> predictions = new HashMap<>();
+
+    @Test
+    public void finds_the_predictions_of_a_facility_at_the_time() {
+        predictions.put(key(f1, CAR, PARK_AND_RIDE), series(START, 10, 11, 12));
+
+        PredictionIndex index = newIndex();
+
+        assertThat(index.getPredictionResults(f1, START.plusMinutes(6))).extracting(r -> r.timestamp, r -> r.spacesAvailable)
+                .containsExactly(tuple(START.plusMinutes(5), 11));
+        assertThat(index.getPredictionResults(f1, START.minusMinutes(5))).as("before the window").isEmpty();
+        assertThat(index.getPredictionResults(f1, START.plusMinutes(15))).as("after the window").isEmpty();
+        assertThat(index.getPredictionResults(f2, START)).as("other facility").isEmpty();
+    }
+
+    @Test
+    public void leaves_out_the_predictions_which_are_not_built_or_priced() {
+        predictions.put(key(f1, CAR, PARK_AND_RIDE), series(START, 10));
+        predictions.put(key(f1, CAR, COMMERCIAL), series(START, 20));
+        predictions.put(key(f1, MOTORCYCLE, PARK_AND_RIDE), series(START, 30));
+
+        PredictionIndex index = newIndex();
+
+        assertThat(index.getPredictionResults(f1, START)).extracting(r -> r.capacityType, r -> r.usage)
+                .containsExactly(tuple(CAR, PARK_AND_RIDE));
+    }
+
+    @Test
+    public void sums_the_predictions_of_the_hub_facilities() {
+        predictions.put(key(f1, CAR, PARK_AND_RIDE), series(START, 10, 10));
+        predictions.put(key(f2, CAR, PARK_AND_RIDE), series(START.plusMinutes(5), 20, 20));
+
+        PredictionIndex index = newIndex(newHub(f1, f2));
+
+        assertThat(index.getHubFacilityIds(HUB_ID)).containsOnly(f1.id, f2.id);
+        assertThat(hubSpacesAvailable(index, asList(f1, f2), START)).containsExactly(10);
+        assertThat(hubSpacesAvailable(index, asList(f1, f2), START.plusMinutes(5))).containsExactly(30);
+        assertThat(hubSpacesAvailable(index, asList(f1, f2), START.plusMinutes(10))).containsExactly(20);
+    }
+
+    @Test
+    public void recomputes_the_hub_sums_when_a_facility_has_changed() {
+        predictions.put(key(f1, CAR, PARK_AND_RIDE), series(START, 10));
+        predictions.put(key(f2, CAR, PARK_AND_RIDE), series(START, 20));
+        PredictionIndex index = newIndex(newHub(f1, f2));
+
+        Facility changed = newFacility(f2.id, BICYCLE);
+
+        assertThat(hubSpacesAvailable(index, asList(f1, changed), START)).containsExactly(10);
+    }
+
+    // helpers
+
+    private PredictionIndex newIndex(Hub... hubs) {
+        return new PredictionIndex(START, predictions, ImmutableMap.of(f1.id, f1, f2.id, f2), asList(hubs));
+    }
+
+    private static List<Integer> hubSpacesAvailable(PredictionIndex index, Collection<Facility> facilities, DateTime time) {
+        List<Integer> results = new ArrayList<>();
+        index.getHubPredictionResults(HUB_ID, facilities, time).forEach(r -> {
+            assertThat(r.hubId).isEqualTo(HUB_ID);
+            assertThat(r.timestamp).isEqualTo(time);
+            results.add(r.spacesAvailable);
+        });
+        return results;
+    }
+
+    private static TimeSeries series(DateTime start, int... values) {
+        TimeSeries series = new TimeSeries(start, values.length);
+        for (int i = 0; i < values.length; i++) {
+            series.set(i, values[i]);
+        }
+        return series;
+    }
+
+    private static UtilizationKey key(Facility facility, CapacityType capacityType, Usage usage) {
+        return new UtilizationKey(facility.id, capacityType, usage);
+    }
+
+    private static Facility newFacility(long id, CapacityType builtCapacityType) {
+        Facility facility = new Facility();
+        facility.id = id;
+        facility.pricingMethod = PricingMethod.PARK_AND_RIDE_247_FREE;
+        facility.builtCapacity = ImmutableMap.of(builtCapacityType, 100);
+        return facility;
+    }
+
+    private static Hub newHub(Facility... facilities) {
+        Hub hub = new Hub();
+        hub.id = HUB_ID;
+        for (Facility facility : facilities) {
+            hub.facilityIds.add(facility.id);
+        }
+        return hub;
+    }
+}
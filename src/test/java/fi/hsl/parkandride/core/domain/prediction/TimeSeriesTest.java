@@ -0,0 +1,82 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeSeriesTest {
+
+    private static final DateTime START = new DateTime(2016, 3, 1, 12, 0);
+
+    @Test
+    public void rounds_predictions_to_the_prediction_resolution_keeping_the_newest() {
+        TimeSeries series = TimeSeries.fromPredictions(START, asList(
+                new Prediction(START.minusMinutes(2), 20),
+                new Prediction(START.plusMinutes(2).plusSeconds(59), 10),
+                new Prediction(START.plusMinutes(3), 30)));
+
+        assertThat(series.toPredictions()).containsExactly(
+                new Prediction(START, 10),
+                new Prediction(START.plusMinutes(5), 30));
+    }
+
+    @Test
+    public void interpolates_linearly_between_values() {
+        TimeSeries series = TimeSeries.fromPredictions(START, asList(
+                new Prediction(START, 10),
+                new Prediction(START.plusMinutes(15), 20)));
+
+        assertThat(series.toPredictions()).containsExactly(
+                new Prediction(START, 10),
+                new Prediction(START.plusMinutes(5), 13),
+                new Prediction(START.plusMinutes(10), 17),
+                new Prediction(START.plusMinutes(15), 20));
+    }
+
+    @Test
+    public void slices_are_clipped_to_the_series() {
+        TimeSeries series = TimeSeries.between(START, START.plusMinutes(10));
+        for (int i = 0; i < series.size(); i++) {
+            series.set(i, i);
+        }
+
+        assertThat(series.slice(START.minusHours(1), START.plusMinutes(5)).toPredictions()).containsExactly(
+                new Prediction(START, 0),
+                new Prediction(START.plusMinutes(5), 1));
+        assertThat(series.slice(START.plusMinutes(3), START.plusHours(1)).toPredictions()).containsExactly(
+                new Prediction(START.plusMinutes(5), 1),
+                new Prediction(START.plusMinutes(10), 2));
+        assertThat(series.slice(START.plusHours(1), START.plusHours(2)).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void transpose_average_ignores_missing_values() {
+        TimeSeries a = TimeSeries.fromPredictions(START, asList(new Prediction(START, 10), new Prediction(START.plusMinutes(5), 10)));
+        TimeSeries b = TimeSeries.fromPredictions(START, asList(new Prediction(START, 15)));
+
+        TimeSeries average = TimeSeries.transposeAverage(START, asList(a, b), avg -> (int) Math.round(avg));
+
+        assertThat(average.toPredictions()).containsExactly(
+                new Prediction(START, 13),
+                new Prediction(START.plusMinutes(5), 10));
+        assertThat(TimeSeries.transposeAverage(START, emptyList(), avg -> (int) Math.round(avg)).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void sum_aligns_the_series_by_time() {
+        TimeSeries a = TimeSeries.fromPredictions(START, asList(new Prediction(START, 10), new Prediction(START.plusMinutes(5), 10)));
+        TimeSeries b = TimeSeries.fromPredictions(START, asList(new Prediction(START.plusMinutes(5), 20), new Prediction(START.plusMinutes(10), 20)));
+
+        assertThat(TimeSeries.sum(asList(a, b)).toPredictions()).containsExactly(
+                new Prediction(START, 10),
+                new Prediction(START.plusMinutes(5), 30),
+                new Prediction(START.plusMinutes(10), 20));
+        assertThat(TimeSeries.sum(emptyList()).size()).isEqualTo(0);
+    }
+}
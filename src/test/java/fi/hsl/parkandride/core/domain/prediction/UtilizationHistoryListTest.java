@@ -92,6 +92,32 @@ public class UtilizationHistoryListTest {
         }
     }
 
+    public static class GetSpacesAvailable extends Base {
+        @Test
+        public void spaces_available_are_the_latest_at_or_before_each_instant() {
+            TimeSeries series = historyList.getSpacesAvailable(LATEST_DATETIME.minusMinutes(27), LATEST_DATETIME.minusMinutes(2));
+
+            assertThat(series.size()).isEqualTo(6);
+            assertThat(series.hasValue(0)).isFalse();
+            assertThat(series.get(1)).isEqualTo(50);
+            assertThat(series.get(2)).isEqualTo(40);
+            assertThat(series.get(3)).isEqualTo(30);
+            assertThat(series.get(4)).isEqualTo(20);
+            assertThat(series.get(5)).isEqualTo(15);
+        }
+
+        @Test
+        public void instants_matching_a_timestamp_get_its_utilization() {
+            TimeSeries series = historyList.getSpacesAvailable(LATEST_DATETIME.minusMinutes(10), LATEST_DATETIME.plusMinutes(5));
+
+            assertThat(series.size()).isEqualTo(4);
+            assertThat(series.get(0)).isEqualTo(20);
+            assertThat(series.get(1)).isEqualTo(15);
+            assertThat(series.get(2)).isEqualTo(10);
+            assertThat(series.get(3)).isEqualTo(10);
+        }
+    }
+
     private static Utilization newUtilization(DateTime time, int spacesAvailable) {
         Utilization u = new Utilization();
         u.facilityId = FACILITY_ID;
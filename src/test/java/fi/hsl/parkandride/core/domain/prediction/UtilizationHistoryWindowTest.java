@@ -0,0 +1,96 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.domain.prediction;
+
+import com.google.common.collect.Lists;
+import fi.hsl.parkandride.back.AbstractDaoTest;
+import fi.hsl.parkandride.back.Dummies;
+import fi.hsl.parkandride.core.back.FacilityRepository;
+import fi.hsl.parkandride.core.back.UtilizationRepository;
+import fi.hsl.parkandride.core.domain.*;
+import org.joda.time.DateTime;
+import org.joda.time.Weeks;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Transactional
+public class UtilizationHistoryWindowTest extends AbstractDaoTest {
+
+    private static final DateTime LATEST = new DateTime(2016, 3, 1, 12, 3);
+
+    @Inject Dummies dummies;
+    @Inject UtilizationRepository utilizationRepository;
+    @Inject FacilityRepository facilityRepository;
+
+    private UtilizationKey utilizationKey;
+
+    @Before
+    public void initTestData() {
+        long facilityId = dummies.createFacility();
+        utilizationKey = new UtilizationKey(facilityId, CapacityType.CAR, Usage.PARK_AND_RIDE);
+        Facility facility = facilityRepository.getFacilityForUpdate(facilityId);
+        facility.pricingMethod = PricingMethod.PARK_AND_RIDE_247_FREE;
+        facilityRepository.updateFacility(facilityId, facility);
+
+        // every 17 minutes, so that the utilizations do not align with the prediction resolution
+        List<Utilization> utilizations = new ArrayList<>();
+        int spacesAvailable = 0;
+        for (DateTime t = LATEST; t.isAfter(LATEST.minusWeeks(5)); t = t.minusMinutes(17)) {
+            utilizations.add(newUtilization(t, spacesAvailable++ % 100));
+        }
+        utilizationRepository.insertUtilizations(Lists.reverse(utilizations));
+    }
+
+    @Test
+    public void returns_the_same_results_as_the_database() {
+        UtilizationHistory database = new UtilizationHistoryImpl(utilizationRepository, utilizationKey);
+        UtilizationHistory window = UtilizationHistoryWindow.load(utilizationRepository, utilizationKey, Weeks.weeks(3));
+
+        assertThat(window.getLatest()).isEqualTo(database.getLatest());
+        for (DateTime t : new DateTime[]{
+                LATEST.minusWeeks(3), // window start
+                LATEST.minusWeeks(3).plusMinutes(1),
+                LATEST.minusWeeks(2).minusMinutes(17),
+                LATEST.minusWeeks(1).plusHours(5),
+                LATEST,
+                LATEST.plusMinutes(10),
+                LATEST.minusWeeks(4) // before window
+        }) {
+            assertThat(window.getRange(t, t.plusDays(1))).as("range from %s", t).isEqualTo(database.getRange(t, t.plusDays(1)));
+            assertThat(window.getAt(t)).as("at %s", t).isEqualTo(database.getAt(t));
+            assertThat(Lists.newArrayList(window.getUpdatesSince(t))).as("updates since %s", t)
+                    .isEqualTo(Lists.newArrayList(database.getUpdatesSince(t)));
+        }
+    }
+
+    @Test
+    public void is_empty_when_there_are_no_utilizations() {
+        UtilizationKey otherKey = new UtilizationKey(utilizationKey.facilityId, CapacityType.MOTORCYCLE, Usage.PARK_AND_RIDE);
+
+        UtilizationHistory window = UtilizationHistoryWindow.load(utilizationRepository, otherKey, Weeks.weeks(3));
+
+        assertThat(window.getLatest()).isEmpty();
+        assertThat(window.getAt(new DateTime())).isEmpty();
+        assertThat(window.getRange(new DateTime(), new DateTime().plusDays(1))).isEmpty();
+        assertThat(window.getUpdatesSince(new DateTime()).hasNext()).isFalse();
+    }
+
+    private Utilization newUtilization(DateTime timestamp, int spacesAvailable) {
+        Utilization u = new Utilization();
+        u.facilityId = utilizationKey.facilityId;
+        u.capacityType = utilizationKey.capacityType;
+        u.usage = utilizationKey.usage;
+        u.timestamp = timestamp;
+        u.spacesAvailable = spacesAvailable;
+        u.capacity = 100;
+        return u;
+    }
+}
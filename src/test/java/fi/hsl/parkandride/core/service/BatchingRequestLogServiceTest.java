@@ -0,0 +1,105 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.back.RequestLogRepository;
+import fi.hsl.parkandride.core.domain.RequestLogKey;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.IOException;
+
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BatchingRequestLogServiceTest {
+
+    private static final DateTime NOW = new DateTime(2018, 3, 1, 12, 30);
+    private static final RequestLogKey KEY = new RequestLogKey("/a", "x", new DateTime(2018, 3, 1, 12, 0));
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    RequestLogRepository requestLogRepository;
+
+    private BatchingRequestLogService service;
+
+    @Before
+    public void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(NOW.getMillis());
+        service = new BatchingRequestLogService(requestLogRepository, RequestLogSpool.open(folder.getRoot().toPath()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        service.close();
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void batch_which_failed_to_be_stored_is_retried_with_the_same_id() {
+        when(requestLogRepository.batchIncrement(anyString(), anyMapOf(RequestLogKey.class, Long.class)))
+                .thenThrow(new DataAccessResourceFailureException("database is down"))
+                .thenReturn(true);
+        service.increment("/a", "x");
+
+        service.updateRequestLogs();
+        service.retrySpooledBatches();
+
+        verify(requestLogRepository, times(2)).batchIncrement(anyString(), eq(singletonMap(KEY, 1L)));
+        verify(requestLogRepository, times(1)).deleteAppliedBatchesBefore(any());
+        service.retrySpooledBatches();
+        verifyNoMoreInteractions(requestLogRepository);
+    }
+
+    @Test
+    public void counts_are_spooled_on_close_and_stored_after_restart() throws IOException {
+        service.increment("/a", "x");
+        service.close();
+        verifyZeroInteractions(requestLogRepository);
+
+        service = new BatchingRequestLogService(requestLogRepository, RequestLogSpool.open(folder.getRoot().toPath()));
+        service.retrySpooledBatches();
+
+        verify(requestLogRepository).batchIncrement(anyString(), eq(singletonMap(KEY, 1L)));
+    }
+
+    @Test
+    public void without_spool_counts_are_stored_directly_and_retried_until_close() throws IOException {
+        service.close();
+        service = new BatchingRequestLogService(requestLogRepository);
+        doThrow(new DataAccessResourceFailureException("database is down"))
+                .doNothing()
+                .when(requestLogRepository).batchIncrement(anyMapOf(RequestLogKey.class, Long.class));
+        service.increment("/a", "x");
+
+        try {
+            service.updateRequestLogs();
+        } catch (DataAccessResourceFailureException expected) {
+        }
+        service.increment("/a", "x");
+        service.close();
+
+        verify(requestLogRepository).batchIncrement(singletonMap(KEY, 2L));
+        verify(requestLogRepository, never()).batchIncrement(anyString(), anyMapOf(RequestLogKey.class, Long.class));
+    }
+}
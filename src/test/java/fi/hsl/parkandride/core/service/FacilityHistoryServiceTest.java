@@ -163,6 +163,46 @@ public class FacilityHistoryServiceTest {
                 .containsEntry(START.plusDays(3), new FacilityCapacity(third));
     }
 
+    @Test
+    public void statusHistories_resolvesEachFacility_andDefaultsToInOperation() {
+        when(repository.getStatusHistories(asList(1l, 2l), START, fourth.toLocalDate())).thenReturn(ImmutableMap.of(1l, asList(
+                new FacilityStatusHistory(1l, first,  second,  EXCEPTIONAL_SITUATION, STATUS_DESCRIPTION),
+                new FacilityStatusHistory(1l, second,  third,  IN_OPERATION,          STATUS_DESCRIPTION),
+                new FacilityStatusHistory(1l, third,  fourth,  TEMPORARILY_CLOSED,    STATUS_DESCRIPTION),
+                new FacilityStatusHistory(1l, fourth,   null,  IN_OPERATION,          STATUS_DESCRIPTION)
+        )));
+
+        final Map<Long, Map<LocalDate, FacilityStatus>> histories = service.getStatusHistoriesByDay(asList(1l, 2l), START, fourth.toLocalDate());
+        assertThat(histories.get(1l))
+                .isEqualTo(ImmutableMap.of(
+                        START, EXCEPTIONAL_SITUATION,
+                        START.plusDays(1), IN_OPERATION,
+                        START.plusDays(2), IN_OPERATION,
+                        START.plusDays(3), TEMPORARILY_CLOSED));
+        assertThat(histories.get(2l)).hasSize(4);
+        histories.get(2l).values().forEach(s -> assertThat(s).isEqualTo(IN_OPERATION));
+    }
+
+    @Test
+    public void capacityHistories_fallBackToCurrentCapacitiesOfEachFacility() {
+        final Facility facility = new Facility();
+        facility.builtCapacity = ImmutableMap.of(CAR, 50);
+        facility.unavailableCapacities = dummyUnavailable();
+        when(facilityRepository.getFacilities(asList(1l, 2l))).thenReturn(ImmutableMap.of(1l, new Facility(), 2l, facility));
+
+        final FacilityCapacityHistory first = new FacilityCapacityHistory(1l, START_DATETIME, NEXT_DATETIME, null, null);
+        final FacilityCapacityHistory second = new FacilityCapacityHistory(1l, NEXT_DATETIME, null, null, dummyUnavailable());
+        when(repository.getCapacityHistories(asList(1l, 2l), START, NEXT)).thenReturn(ImmutableMap.of(1l, asList(first, second)));
+
+        final Map<Long, Map<LocalDate, FacilityCapacity>> histories = service.getCapacityHistories(asList(1l, 2l), START, NEXT);
+        assertThat(histories.get(1l)).hasSize(2)
+                .containsEntry(START, new FacilityCapacity(first))
+                .containsEntry(NEXT, new FacilityCapacity(second));
+        assertThat(histories.get(2l)).hasSize(2)
+                .containsEntry(START, new FacilityCapacity(facility.builtCapacity, facility.unavailableCapacities))
+                .containsEntry(NEXT, new FacilityCapacity(facility.builtCapacity, facility.unavailableCapacities));
+    }
+
     private Facility returnFacilityWithDummyCapacities(List<UnavailableCapacity> capacities) {
         final Facility facility = new Facility();
         facility.builtCapacity = ImmutableMap.of(CAR, 50);
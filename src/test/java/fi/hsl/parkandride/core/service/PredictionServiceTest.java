@@ -14,6 +14,7 @@ import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Matchers;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.inject.Inject;
@@ -26,6 +27,9 @@ import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.*;
 
 public class PredictionServiceTest extends AbstractDaoTest {
@@ -35,8 +39,10 @@ public class PredictionServiceTest extends AbstractDaoTest {
     @Inject PredictionRepository predictionRepository;
     @Inject PredictorRepository predictorRepository;
     @Inject FacilityRepository facilityRepository;
+    @Inject HubRepository hubRepository;
     @Inject PlatformTransactionManager transactionManager;
-    @Inject LockRepository lockRepostory;
+
+    private static final int UPDATE_THREADS = 2;
 
     private PredictionService predictionService;
     private final DateTime now = new DateTime();
@@ -122,28 +128,78 @@ public class PredictionServiceTest extends AbstractDaoTest {
         assertThat(spy.getMaxConcurrentPredictors()).as("max concurrent predictors").isEqualTo(1);
     }
 
-    /* Disabled concurrent updates due to concurrency problems in cluster
     @Test
     public void allows_updating_different_predictors_concurrently() throws InterruptedException {
         ConcurrentPredictorsSpy spy = new ConcurrentPredictorsSpy();
         usePredictor(spy);
         registerUtilizations(Stream.generate(() -> newUtilization(dummies.createFacility(), now, 42))
-                .limit(10)
+                .limit(150) // more than one batch per thread
                 .toArray(Utilization[]::new));
 
-        inParallel(
-                predictionService::updatePredictions,
-                predictionService::updatePredictions);
+        predictionService.updatePredictions();
 
-        assertThat(spy.getMaxConcurrentPredictors()).as("max concurrent predictors").isEqualTo(2);
+        assertThat(spy.getMaxConcurrentPredictors()).as("max concurrent predictors").isEqualTo(UPDATE_THREADS);
+    }
+
+    @Test
+    public void updates_all_predictors_needing_an_update_in_one_pass() {
+        usePredictor(new SameAsLatestPredictor());
+        registerUtilizations(Stream.generate(() -> newUtilization(dummies.createFacility(), now, 42))
+                .limit(50)
+                .toArray(Utilization[]::new));
+
+        predictionService.updatePredictions();
+
+        assertThat(predictorRepository.findPredictorsNeedingUpdate()).isEmpty();
+    }
+
+    @Test
+    public void remembers_the_earliest_new_utilization_until_the_next_update() {
+        usePredictor(new SameAsLatestPredictor());
+        registerUtilizations(newUtilization(facilityId, now, 42), newUtilization(facilityId, now.minusHours(1), 41));
+        Long predictorId = predictorRepository.findPredictorsNeedingUpdate().get(0);
+        assertThat(predictorRepository.getById(predictorId).earliestNewUtilization).isEqualTo(now.minusHours(1));
+
+        predictionService.updatePredictions();
+
+        assertThat(predictorRepository.getById(predictorId).earliestNewUtilization).isNull();
+    }
+
+    @Test
+    public void retries_claims_which_fail_because_of_concurrent_claimers() {
+        PredictorRepository failingOnce = mock(PredictorRepository.class, delegatesTo(predictorRepository));
+        doThrow(new ConcurrencyFailureException("concurrent claim")).doAnswer(delegatesTo(predictorRepository))
+                .when(failingOnce).claimPredictorsNeedingUpdate(anyInt(), any());
+        usePredictor(new SameAsLatestPredictor(), failingOnce);
+        registerUtilizations(newUtilization(facilityId, now, 42));
+
+        predictionService.updatePredictions();
+
+        assertThat(predictorRepository.findPredictorsNeedingUpdate()).isEmpty();
+    }
+
+    @Test
+    public void does_not_retry_claims_which_fail_for_other_reasons() {
+        PredictorRepository failing = mock(PredictorRepository.class, delegatesTo(predictorRepository));
+        doThrow(new IllegalStateException("bug")).when(failing).claimPredictorsNeedingUpdate(anyInt(), any());
+        usePredictor(new SameAsLatestPredictor(), failing);
+        registerUtilizations(newUtilization(facilityId, now, 42));
+
+        predictionService.updatePredictions();
+
+        verify(failing, times(UPDATE_THREADS)).claimPredictorsNeedingUpdate(anyInt(), any());
+        assertThat(predictorRepository.findPredictorsNeedingUpdate()).isNotEmpty();
     }
-    */
 
     // helpers
 
     private void usePredictor(Predictor predictor) {
+        usePredictor(predictor, predictorRepository);
+    }
+
+    private void usePredictor(Predictor predictor, PredictorRepository predictorRepository) {
         predictionService = new PredictionService(utilizationRepository, predictionRepository,
-                predictorRepository, facilityRepository, transactionManager, lockRepostory, predictor);
+                predictorRepository, facilityRepository, hubRepository, transactionManager, UPDATE_THREADS, predictor);
     }
 
     private void registerUtilizations(Utilization... utilizations) {
@@ -0,0 +1,118 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.domain.RequestLogKey;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class RequestLogCounterTest {
+
+    private static final DateTime NOW = new DateTime(2018, 3, 1, 12, 30);
+    private static final DateTime HOUR = new DateTime(2018, 3, 1, 12, 0);
+
+    private final RequestLogCounter counter = new RequestLogCounter();
+
+    @Test
+    public void counts_by_hour_url_pattern_and_source() {
+        counter.increment("/a", "x", NOW.getMillis());
+        counter.increment("/a", "x", NOW.plusMinutes(29).getMillis());
+        counter.increment("/a", null, NOW.getMillis());
+        counter.increment("/b", "x", NOW.getMillis());
+        counter.increment("/a", "x", NOW.plusMinutes(30).getMillis());
+
+        assertThat(counter.drain(NOW.getMillis())).containsOnly(
+                entry(new RequestLogKey("/a", "x", HOUR), 2L),
+                entry(new RequestLogKey("/a", null, HOUR), 1L),
+                entry(new RequestLogKey("/b", "x", HOUR), 1L),
+                entry(new RequestLogKey("/a", "x", HOUR.plusHours(1)), 1L));
+    }
+
+    @Test
+    public void drain_zeroes_the_counts() {
+        counter.increment("/a", "x", NOW.getMillis());
+        counter.drain(NOW.getMillis());
+
+        assertThat(counter.drain(NOW.getMillis())).isEmpty();
+
+        counter.increment("/a", "x", NOW.getMillis());
+        assertThat(counter.drain(NOW.getMillis())).containsOnly(entry(new RequestLogKey("/a", "x", HOUR), 1L));
+    }
+
+    @Test
+    public void drained_counts_can_be_put_back() {
+        counter.increment("/a", "x", NOW.getMillis());
+        Map<RequestLogKey, Long> drained = counter.drain(NOW.getMillis());
+        counter.increment("/a", "x", NOW.getMillis());
+
+        drained.forEach(counter::add);
+
+        assertThat(counter.drain(NOW.getMillis())).containsOnly(entry(new RequestLogKey("/a", "x", HOUR), 2L));
+    }
+
+    @Test
+    public void late_increments_of_an_old_hour_are_counted_even_after_it_is_dropped() {
+        counter.increment("/a", "x", NOW.minusHours(5).getMillis());
+        counter.increment("/a", "x", NOW.getMillis());
+        counter.drain(NOW.getMillis());
+
+        counter.increment("/a", "x", NOW.minusHours(5).getMillis());
+
+        assertThat(counter.drain(NOW.getMillis())).containsOnly(entry(new RequestLogKey("/a", "x", HOUR.minusHours(5)), 1L));
+    }
+
+    @Test
+    public void concurrent_drains_lose_no_increments() throws Exception {
+        int threads = 4;
+        int incrementsPerThread = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            Future<Long> drained = executor.submit(() -> {
+                long sum = 0;
+                while (!done.get()) {
+                    sum += sum(counter.drain(NOW.getMillis()));
+                }
+                return sum + sum(counter.drain(NOW.getMillis()));
+            });
+            IntStream.range(0, threads)
+                    .mapToObj(i -> executor.submit(() -> {
+                        for (int j = 0; j < incrementsPerThread; j++) {
+                            counter.increment("/a", "source" + (j % 3), NOW.getMillis());
+                        }
+                    }))
+                    .collect(Collectors.toList())
+                    .forEach(this::await);
+            done.set(true);
+
+            assertThat(drained.get(10, TimeUnit.SECONDS)).isEqualTo((long) threads * incrementsPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long sum(Map<RequestLogKey, Long> counts) {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.back.LockRepository;
+import fi.hsl.parkandride.core.back.RequestLogRepository;
+import fi.hsl.parkandride.core.domain.Lock;
+import fi.hsl.parkandride.core.domain.LockAcquireFailedException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+import org.joda.time.Months;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class RequestLogRollupServiceTest {
+
+    private static final DateTime NOW = new DateTime(2018, 3, 15, 3, 50);
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    RequestLogRepository requestLogRepository;
+
+    @Mock
+    LockRepository lockRepository;
+
+    @Before
+    public void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(NOW.getMillis());
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void rebuilds_the_months_within_the_age() {
+        Lock lock = new Lock("request-log-rollup", "node", NOW.plusMinutes(30));
+        when(lockRepository.acquireLock(anyString(), any(Duration.class))).thenReturn(lock);
+
+        new RequestLogRollupService(requestLogRepository, lockRepository, true, Months.ONE).rebuildDailyAndMonthlyCounts();
+
+        verify(requestLogRepository).rebuildDailyAndMonthlyCounts(new LocalDate(2018, 2, 15), new LocalDate(2018, 3, 15));
+        verify(lockRepository).releaseLock(lock);
+    }
+
+    @Test
+    public void skips_the_rebuild_when_another_node_is_rebuilding() {
+        when(lockRepository.acquireLock(anyString(), any(Duration.class))).thenThrow(new LockAcquireFailedException("locked"));
+
+        new RequestLogRollupService(requestLogRepository, lockRepository, true, Months.ONE).rebuildDailyAndMonthlyCounts();
+
+        verifyZeroInteractions(requestLogRepository);
+    }
+
+    @Test
+    public void does_nothing_when_disabled() {
+        new RequestLogRollupService(requestLogRepository, lockRepository, false, Months.ONE).rebuildDailyAndMonthlyCounts();
+
+        verifyZeroInteractions(requestLogRepository, lockRepository);
+    }
+}
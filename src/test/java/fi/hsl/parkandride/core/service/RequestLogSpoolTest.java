@@ -0,0 +1,119 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import com.google.common.collect.ImmutableMap;
+import fi.hsl.parkandride.core.domain.RequestLogKey;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestLogSpoolTest {
+
+    private static final DateTime HOUR = new DateTime(2018, 3, 1, 12, 0);
+    private static final Map<RequestLogKey, Long> COUNTS = ImmutableMap.of(
+            new RequestLogKey("/a", "x", HOUR), 3L,
+            new RequestLogKey("/a", null, HOUR), 5L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RequestLogSpool spool;
+
+    @After
+    public void close() throws IOException {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void unflushed_batches_are_recovered_after_reopening() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        spool = RequestLogSpool.open(dir);
+        String flushed = spool.append(COUNTS);
+        String unflushed = spool.append(COUNTS);
+        spool.markFlushed(flushed);
+        spool.close();
+
+        spool = RequestLogSpool.open(dir);
+
+        assertThat(spool.getPending()).containsOnlyKeys(unflushed);
+        assertThat(spool.getPending().get(unflushed)).isEqualTo(COUNTS);
+    }
+
+    @Test
+    public void spool_is_empty_after_all_batches_are_flushed() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        spool = RequestLogSpool.open(dir);
+        spool.markFlushed(spool.append(COUNTS));
+        spool.markFlushed(spool.append(COUNTS));
+        spool.close();
+
+        spool = RequestLogSpool.open(dir);
+
+        assertThat(spool.hasPending()).isFalse();
+    }
+
+    @Test
+    public void torn_record_ends_the_recovery() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        spool = RequestLogSpool.open(dir);
+        String first = spool.append(COUNTS);
+        spool.append(COUNTS);
+        spool.close();
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("requestlog-0.spool").toFile(), "rw")) {
+            // the last byte of the body of the second record
+            int firstLength = 9 + readInt(file, 1);
+            int secondBodyEnd = firstLength + 5 + readInt(file, firstLength + 1);
+            file.seek(secondBodyEnd - 1);
+            file.write(file.read() ^ 0xff);
+        }
+
+        spool = RequestLogSpool.open(dir);
+
+        assertThat(spool.getPending()).containsOnlyKeys(first);
+    }
+
+    @Test
+    public void compaction_keeps_the_unflushed_batches() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        spool = RequestLogSpool.open(dir);
+        String unflushed = spool.append(COUNTS);
+        for (int i = 0; i < 20_000; i++) {
+            spool.markFlushed(spool.append(COUNTS));
+        }
+        spool.close();
+
+        // about 3 MB without compaction
+        assertThat(dir.resolve("requestlog-0.spool").toFile().length()).isLessThanOrEqualTo(2 * 1024 * 1024);
+        spool = RequestLogSpool.open(dir);
+        assertThat(spool.getPending()).containsOnlyKeys(unflushed);
+    }
+
+    @Test
+    public void concurrent_instances_use_separate_spools() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        spool = RequestLogSpool.open(dir);
+        spool.append(COUNTS);
+
+        try (RequestLogSpool other = RequestLogSpool.open(dir)) {
+            assertThat(other.hasPending()).isFalse();
+        }
+    }
+
+    private static int readInt(RandomAccessFile file, long position) throws IOException {
+        file.seek(position);
+        return file.readInt();
+    }
+}
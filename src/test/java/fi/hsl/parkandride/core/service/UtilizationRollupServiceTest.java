@@ -0,0 +1,119 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service;
+
+import fi.hsl.parkandride.core.back.FacilityRepository;
+import fi.hsl.parkandride.core.back.LockRepository;
+import fi.hsl.parkandride.core.back.UtilizationRepository;
+import fi.hsl.parkandride.core.domain.FacilityInfo;
+import fi.hsl.parkandride.core.domain.PageableFacilitySearch;
+import fi.hsl.parkandride.core.domain.SearchResults;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Weeks;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import static fi.hsl.parkandride.core.service.UtilizationRollupService.MAX_RANGE_PER_TRANSACTION;
+import static java.util.Arrays.asList;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class UtilizationRollupServiceTest {
+
+    private static final DateTime NOW = new DateTime(2016, 3, 1, 3, 40);
+    private static final DateTime END = new DateTime(2016, 2, 1, 3, 0);
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    UtilizationRepository utilizationRepository;
+
+    @Mock
+    FacilityRepository facilityRepository;
+
+    @Mock
+    LockRepository lockRepository;
+
+    private UtilizationRollupService service;
+
+    @Before
+    public void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(NOW.getMillis());
+        service = new UtilizationRollupService(utilizationRepository, facilityRepository, lockRepository, true, Weeks.weeks(4));
+        when(facilityRepository.findFacilities(any(PageableFacilitySearch.class)))
+                .thenReturn(SearchResults.of(asList(facility(1), facility(2))));
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void rolls_up_every_facility_until_the_end_of_the_rollup() {
+        when(utilizationRepository.rollUpUtilizations(1, END, MAX_RANGE_PER_TRANSACTION))
+                .thenReturn(END.minusWeeks(1), END);
+        when(utilizationRepository.rollUpUtilizations(2, END, MAX_RANGE_PER_TRANSACTION))
+                .thenReturn(END);
+
+        service.rollUpUtilizations(END.plusMinutes(30), NOW.plusHours(1));
+
+        verify(utilizationRepository, times(2)).rollUpUtilizations(1, END, MAX_RANGE_PER_TRANSACTION);
+        verify(utilizationRepository).rollUpUtilizations(2, END, MAX_RANGE_PER_TRANSACTION);
+        verifyNoMoreInteractions(utilizationRepository);
+    }
+
+    @Test
+    public void stops_when_the_deadline_is_reached() {
+        when(utilizationRepository.rollUpUtilizations(1, END, MAX_RANGE_PER_TRANSACTION)).thenAnswer(invocation -> {
+            DateTimeUtils.setCurrentMillisFixed(NOW.plusMinutes(10).getMillis());
+            return END.minusWeeks(1);
+        });
+
+        service.rollUpUtilizations(END, NOW.plusMinutes(5));
+
+        verify(utilizationRepository).rollUpUtilizations(1, END, MAX_RANGE_PER_TRANSACTION);
+        verifyNoMoreInteractions(utilizationRepository);
+    }
+
+    @Test
+    public void the_next_pass_resumes_from_where_the_repository_left_off() {
+        // the repository keeps the progress, so the next pass asks it again for the same end
+        when(utilizationRepository.rollUpUtilizations(1, END, MAX_RANGE_PER_TRANSACTION)).thenAnswer(invocation -> {
+            DateTimeUtils.setCurrentMillisFixed(NOW.plusMinutes(10).getMillis());
+            return END.minusWeeks(1);
+        }).thenReturn(END);
+        when(utilizationRepository.rollUpUtilizations(2, END, MAX_RANGE_PER_TRANSACTION))
+                .thenReturn(END);
+        service.rollUpUtilizations(END, NOW.plusMinutes(5));
+
+        service.rollUpUtilizations(END, NOW.plusHours(1));
+
+        verify(utilizationRepository, times(2)).rollUpUtilizations(1, END, MAX_RANGE_PER_TRANSACTION);
+        verify(utilizationRepository).rollUpUtilizations(2, END, MAX_RANGE_PER_TRANSACTION);
+        verifyNoMoreInteractions(utilizationRepository);
+    }
+
+    @Test
+    public void does_nothing_when_disabled() {
+        service = new UtilizationRollupService(utilizationRepository, facilityRepository, lockRepository, false, Weeks.weeks(4));
+
+        service.rollUpUtilizations();
+
+        verifyZeroInteractions(utilizationRepository, lockRepository);
+    }
+
+    private static FacilityInfo facility(long id) {
+        FacilityInfo facility = new FacilityInfo();
+        facility.id = id;
+        return facility;
+    }
+}
@@ -0,0 +1,61 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static fi.hsl.parkandride.core.service.reporting.Excel.TableColumn.col;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExcelTest {
+
+    @Test
+    public void writes_rows_which_have_been_flushed_out_of_the_window() throws IOException {
+        int rowCount = Excel.ROW_ACCESS_WINDOW_SIZE * 3 + 1;
+        List<Integer> rows = range(0, rowCount).boxed().collect(toList());
+        Excel excel = new Excel();
+        excel.addSheet("numbers", rows, asList(
+                col("number", (Integer i) -> i),
+                col("a long text column", (Integer i) -> "row number " + i + " of the sheet")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        excel.write(out);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = wb.getSheet("numbers");
+            assertThat(sheet.getLastRowNum()).isEqualTo(rowCount);
+            assertThat(sheet.getRow(0).getCell(1).getStringCellValue()).isEqualTo("a long text column");
+            assertThat(sheet.getRow(1).getCell(0).getNumericCellValue()).isEqualTo(0);
+            assertThat(sheet.getRow(rowCount).getCell(0).getNumericCellValue()).isEqualTo(rowCount - 1);
+            assertThat(sheet.getColumnWidth(1)).isGreaterThan(sheet.getColumnWidth(0));
+        }
+    }
+
+    @Test
+    public void writes_rows_as_they_are_iterated() throws IOException {
+        int rowCount = Excel.ROW_ACCESS_WINDOW_SIZE * 2;
+        Excel excel = new Excel();
+        excel.addSheet("numbers", range(0, rowCount).boxed().iterator(), asList(
+                col("number", (Integer i) -> i)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        excel.write(out);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = wb.getSheet("numbers");
+            assertThat(sheet.getLastRowNum()).isEqualTo(rowCount);
+            assertThat(sheet.getRow(rowCount).getCell(0).getNumericCellValue()).isEqualTo(rowCount - 1);
+        }
+    }
+}
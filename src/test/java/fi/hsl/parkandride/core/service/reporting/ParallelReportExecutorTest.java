@@ -0,0 +1,86 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.rangeClosed;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+public class ParallelReportExecutorTest {
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    public void partitions_ids_into_consecutive_parts() {
+        ParallelReportExecutor executor = new ParallelReportExecutor(transactionManager, 2);
+
+        List<Set<Long>> parts = executor.partition(rangeClosed(1, 10).mapToObj(Long::valueOf).collect(toList()));
+
+        assertThat(parts).hasSize(4);
+        assertThat(parts.get(0)).containsExactly(1L, 2L, 3L);
+        assertThat(parts.get(3)).containsExactly(10L);
+        assertThat(executor.partition(asList(1L))).hasSize(1);
+    }
+
+    @Test
+    public void returns_results_in_the_order_of_the_parts() {
+        ParallelReportExecutor executor = new ParallelReportExecutor(transactionManager, 4);
+
+        List<Integer> results = executor.map(asList(1, 2, 3, 4, 5, 6, 7, 8), i -> i * 10);
+
+        assertThat(results).containsExactly(10, 20, 30, 40, 50, 60, 70, 80);
+    }
+
+    @Test
+    public void computes_all_parts_in_the_calling_thread_when_helpers_get_no_transaction() {
+        when(transactionManager.getTransaction(any())).thenThrow(new CannotCreateTransactionException("no connections left"));
+        ParallelReportExecutor executor = new ParallelReportExecutor(transactionManager, 4);
+        Thread caller = Thread.currentThread();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        List<Integer> results = executor.map(asList(1, 2, 3, 4, 5, 6), i -> {
+            threads.add(Thread.currentThread());
+            return i;
+        });
+
+        assertThat(results).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThat(threads).containsExactly(caller);
+    }
+
+    @Test
+    public void rethrows_the_failure_of_a_part() {
+        ParallelReportExecutor executor = new ParallelReportExecutor(transactionManager, 4);
+        try {
+            executor.map(asList(1, 2, 3), i -> {
+                if (i == 2) {
+                    throw new IllegalArgumentException("part " + i);
+                }
+                return i;
+            });
+            fail("expected an exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("part 2");
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import fi.hsl.parkandride.core.domain.Role;
+import fi.hsl.parkandride.core.domain.User;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static fi.hsl.parkandride.core.service.reporting.ReportJobStatus.FINISHED;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ReportJobServiceTest {
+
+    private static final String REPORT_NAME = "Test";
+    private static final DateTime NOW = new DateTime(2018, 3, 1, 12, 30);
+    private static final Duration TTL = Duration.standardHours(1);
+
+    private static final User admin = new User(1L, "admin", Role.ADMIN);
+    private static final User operator1 = new User(2L, "operator1", Role.OPERATOR, 1L);
+    private static final User operator2 = new User(3L, "operator2", Role.OPERATOR, 2L);
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    ReportService reportService;
+
+    private final CountDownLatch reportsMayFinish = new CountDownLatch(1);
+    private Path resultDirectory;
+    private ReportJobService service;
+
+    @Before
+    public void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(NOW.getMillis());
+        resultDirectory = folder.getRoot().toPath();
+        when(reportService.reportName()).thenReturn(REPORT_NAME);
+        when(reportService.generateReport(any(), any())).thenAnswer(invocation -> {
+            reportsMayFinish.await(10, TimeUnit.SECONDS);
+            return ExcelReport.build(excel -> excel.addSheet("sheet", "text"));
+        });
+        service = new ReportJobService(singletonList(reportService), resultDirectory, 1, 1, TTL);
+    }
+
+    @After
+    public void tearDown() {
+        reportsMayFinish.countDown();
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void identical_reports_are_generated_once() {
+        ReportJob job = service.submit(admin, REPORT_NAME, parameters(1));
+
+        assertThat(service.submit(admin, REPORT_NAME, parameters(1))).isSameAs(job);
+        assertThat(service.submit(operator1, REPORT_NAME, parameters(1))).isNotSameAs(job);
+    }
+
+    @Test
+    public void reports_of_different_operators_are_generated_separately() {
+        reportsMayFinish.countDown();
+        ReportJob job1 = service.submit(operator1, REPORT_NAME, parameters(1));
+        awaitFinished(job1);
+        ReportJob job2 = service.submit(operator2, REPORT_NAME, parameters(1));
+
+        assertThat(job2).isNotSameAs(job1);
+        assertThat(service.submit(operator1, REPORT_NAME, parameters(1))).isSameAs(job1);
+        assertThat(service.submit(operator2, REPORT_NAME, parameters(1))).isSameAs(job2);
+    }
+
+    @Test
+    public void full_queue_rejects_new_reports() {
+        service.submit(admin, REPORT_NAME, parameters(1)); // running
+        service.submit(admin, REPORT_NAME, parameters(2)); // queued
+
+        try {
+            service.submit(admin, REPORT_NAME, parameters(3));
+            fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+        }
+        // identical to a queued report, so it needs no room in the queue
+        assertThat(service.submit(admin, REPORT_NAME, parameters(2))).isNotNull();
+    }
+
+    @Test
+    public void finished_jobs_and_their_results_expire() throws IOException {
+        reportsMayFinish.countDown();
+        ReportJob job = service.submit(admin, REPORT_NAME, parameters(1));
+        awaitFinished(job);
+        Path result = service.getResult(admin, job.id);
+        assertThat(result).exists();
+
+        service.evictExpiredJobs();
+        assertThat(result).exists();
+
+        DateTimeUtils.setCurrentMillisFixed(NOW.plus(TTL).plusMillis(1).getMillis());
+        service.evictExpiredJobs();
+
+        assertThat(result).doesNotExist();
+        try {
+            service.getJob(admin, job.id);
+            fail("expected ReportJobNotFoundException");
+        } catch (ReportJobNotFoundException expected) {
+        }
+        assertThat(service.submit(admin, REPORT_NAME, parameters(1))).isNotSameAs(job);
+    }
+
+    @Test
+    public void only_orphaned_result_files_are_removed() throws IOException {
+        Path orphanedResult = Files.createFile(resultDirectory.resolve(UUID.randomUUID() + ".xlsx"));
+        Path orphanedTemporaryResult = Files.createFile(resultDirectory.resolve(UUID.randomUUID() + ".xlsx.tmp"));
+        Path otherFile = Files.createFile(resultDirectory.resolve("notes.xlsx"));
+        Path otherUuidFile = Files.createFile(resultDirectory.resolve(UUID.randomUUID() + ".txt"));
+
+        service.evictExpiredJobs();
+
+        assertThat(orphanedResult).doesNotExist();
+        assertThat(orphanedTemporaryResult).doesNotExist();
+        assertThat(otherFile).exists();
+        assertThat(otherUuidFile).exists();
+    }
+
+    private static ReportParameters parameters(int days) {
+        ReportParameters parameters = new ReportParameters();
+        parameters.startDate = new LocalDate(2018, 2, 1);
+        parameters.endDate = parameters.startDate.plusDays(days);
+        return parameters;
+    }
+
+    private static void awaitFinished(ReportJob job) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (job.status != FINISHED) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("job did not finish: " + job);
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
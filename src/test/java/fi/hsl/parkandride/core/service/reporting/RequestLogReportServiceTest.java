@@ -0,0 +1,84 @@
+// Copyright © 2018 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.core.service.reporting;
+
+import fi.hsl.parkandride.core.back.RequestLogRepository;
+import fi.hsl.parkandride.core.domain.RequestLogEntry;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import static fi.hsl.parkandride.core.service.reporting.RequestLogInterval.MONTH;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class RequestLogReportServiceTest {
+
+    private static final String URL = "/api/v1/facilities";
+    private static final String SOURCE = "source";
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    RequestLogRepository requestLogRepository;
+
+    private final RequestLogReportService service = new RequestLogReportService();
+
+    @Before
+    public void setUp() {
+        service.requestLogRepository = requestLogRepository;
+    }
+
+    @Test
+    public void month_range_starting_and_ending_mid_month_reads_the_partial_months_by_day() {
+        when(requestLogRepository.getDailyLogEntriesBetween(date(2018, 1, 15), date(2018, 1, 31)))
+                .thenReturn(asList(entry(date(2018, 1, 15), 1), entry(date(2018, 1, 31), 2)));
+        when(requestLogRepository.getMonthlyLogEntriesBetween(date(2018, 2, 1), date(2018, 2, 28)))
+                .thenReturn(singletonList(entry(date(2018, 2, 1), 4)));
+        when(requestLogRepository.getDailyLogEntriesBetween(date(2018, 3, 1), date(2018, 3, 10)))
+                .thenReturn(singletonList(entry(date(2018, 3, 10), 8)));
+
+        assertThat(service.getRowsForDates(date(2018, 1, 15), date(2018, 3, 10), MONTH)).containsExactly(
+                entry(date(2018, 1, 1), 3),
+                entry(date(2018, 2, 1), 4),
+                entry(date(2018, 3, 1), 8));
+    }
+
+    @Test
+    public void month_range_within_one_month_reads_only_days() {
+        when(requestLogRepository.getDailyLogEntriesBetween(date(2018, 2, 5), date(2018, 2, 20)))
+                .thenReturn(asList(entry(date(2018, 2, 5), 1), entry(date(2018, 2, 20), 2)));
+
+        assertThat(service.getRowsForDates(date(2018, 2, 5), date(2018, 2, 20), MONTH)).containsExactly(
+                entry(date(2018, 2, 1), 3));
+        verify(requestLogRepository, never()).getMonthlyLogEntriesBetween(any(), any());
+    }
+
+    @Test
+    public void month_range_of_whole_months_reads_only_months() {
+        when(requestLogRepository.getMonthlyLogEntriesBetween(date(2018, 1, 1), date(2018, 2, 28)))
+                .thenReturn(asList(entry(date(2018, 1, 1), 1), entry(date(2018, 2, 1), 2)));
+
+        assertThat(service.getRowsForDates(date(2018, 1, 1), date(2018, 2, 28), MONTH)).containsExactly(
+                entry(date(2018, 1, 1), 1),
+                entry(date(2018, 2, 1), 2));
+        verify(requestLogRepository, never()).getDailyLogEntriesBetween(any(), any());
+    }
+
+    private static LocalDate date(int year, int month, int day) {
+        return new LocalDate(year, month, day);
+    }
+
+    private static RequestLogEntry entry(LocalDate date, long count) {
+        return new RequestLogEntry(URL, SOURCE, date.toDateTimeAtStartOfDay(), count);
+    }
+}
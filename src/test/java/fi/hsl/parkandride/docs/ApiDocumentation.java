@@ -8,6 +8,7 @@ import fi.hsl.parkandride.back.Dummies;
 import fi.hsl.parkandride.back.FacilityDaoTest;
 import fi.hsl.parkandride.core.back.FacilityRepository;
 import fi.hsl.parkandride.core.domain.*;
+import fi.hsl.parkandride.core.domain.prediction.BulkPredictionRequest;
 import fi.hsl.parkandride.core.service.FacilityService;
 import fi.hsl.parkandride.core.service.PredictionService;
 import fi.hsl.parkandride.front.UrlSchema;
@@ -44,6 +45,7 @@ import static org.springframework.restdocs.operation.preprocess.Preprocessors.*;
 import static org.springframework.restdocs.payload.PayloadDocumentation.fieldWithPath;
 import static org.springframework.restdocs.payload.PayloadDocumentation.responseFields;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -459,6 +461,38 @@ public class ApiDocumentation extends AbstractIntegrationTest {
                 .andDo(document("hub-prediction-relative-example-minutes", requestPreprocessor, responsePreprocessor));
     }
 
+    @Test
+    public void bulkPredictionExample() throws Exception {
+        final long hubId = dummies.createHub(facilityId);
+        facilityService.registerUtilization(facilityId, Collections.singletonList(newUtilization()), currentUser);
+        predictionService.updatePredictions();
+        BulkPredictionRequest bulkRequest = new BulkPredictionRequest();
+        bulkRequest.facilityIds.add(facilityId);
+        bulkRequest.hubIds.add(hubId);
+        bulkRequest.after.addAll(Arrays.asList("30", "01:30"));
+
+        MockHttpServletRequestBuilder request = post(UrlSchema.PREDICTIONS)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(bulkRequest));
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("facilities[*].facilityId", contains((int) facilityId, (int) facilityId)))
+                .andExpect(jsonPath("hubs[*].hubId", contains((int) hubId, (int) hubId)))
+                .andDo(documentationHandler.document(responseFields(
+                        fieldWithPath("facilities[]").description("Predictions of the requested facilities, for each facility, capacity type and usage combination and requested time"),
+                        fieldWithPath("facilities[].facilityId").description("The facility ID"),
+                        fieldWithPath("facilities[].capacityType").description("The capacity type"),
+                        fieldWithPath("facilities[].usage").description("The usage"),
+                        fieldWithPath("facilities[].timestamp").description("The time of the prediction"),
+                        fieldWithPath("facilities[].spacesAvailable").description("Predicted number of available parking spaces"),
+                        fieldWithPath("hubs[]").description("Predictions of the requested hubs, summed over their facilities like in the hub prediction API"),
+                        fieldWithPath("hubs[].hubId").description("The hub ID"),
+                        fieldWithPath("hubs[].capacityType").description("The capacity type"),
+                        fieldWithPath("hubs[].usage").description("The usage"),
+                        fieldWithPath("hubs[].timestamp").description("The time of the prediction"),
+                        fieldWithPath("hubs[].spacesAvailable").description("Predicted number of available parking spaces"))));
+    }
+
     @Test
     public void allHubsExample() throws Exception {
         dummies.createHub();
@@ -327,12 +327,12 @@ public class MaxUtilizationReportITest extends AbstractReportingITest {
         params.endDate = new LocalDate(2015, 10, 31); // Saturday
 
         facilityService.registerUtilization(facility1.id, asList(
-                utilize(CAR, 10, params.startDate.toDateTimeAtCurrentTime(), facility1),
-                utilize(CAR, 20, params.endDate.toDateTimeAtCurrentTime(), facility1)
+                utilize(CAR, 10, params.startDate.toDateTimeAtCurrentTime(Facility.TIME_ZONE), facility1),
+                utilize(CAR, 20, params.endDate.toDateTimeAtCurrentTime(Facility.TIME_ZONE), facility1)
         ), apiUser);
         facilityService.registerUtilization(facility2.id, asList(
-                utilize(CAR, 0, params.startDate.toDateTimeAtCurrentTime(), facility2),
-                utilize(CAR, 0, params.endDate.toDateTimeAtCurrentTime(), facility2)
+                utilize(CAR, 0, params.startDate.toDateTimeAtCurrentTime(Facility.TIME_ZONE), facility2),
+                utilize(CAR, 0, params.endDate.toDateTimeAtCurrentTime(Facility.TIME_ZONE), facility2)
         ), apiUser2);
 
         final Response whenPostingToReportUrl = postToReportUrl(params, MAX_UTILIZATION, adminUser);
@@ -358,8 +358,82 @@ public class PredictionITest extends AbstractIntegrationTest {
         assertThat(getPredictionsForHub(hubId)).isEmpty();
     }
 
+    // bulk predictions
+
+    @Test
+    public void bulk_predictions_match_the_predictions_of_single_facilities_and_hubs() {
+        final long hubId = dummies.createHub(facilityId);
+        makeDummyPredictions();
+        DateTime absoluteTime = now.plusHours(3);
+
+        BulkPredictionResponse response = givenWithContent().body(new JSONObjectBuilder()
+                .put("facilityIds", asList(facilityId))
+                .put("hubIds", asList(hubId))
+                .put("at", asList(absoluteTime.toString()))
+                .put("after", asList("5:30"))
+                .jsonObject.toString())
+                .when().post(UrlSchema.PREDICTIONS)
+                .then().assertThat().statusCode(HttpStatus.OK.value())
+                .extract().as(BulkPredictionResponse.class);
+
+        PredictionResult[] facilityPredictions = response.facilities;
+        assertThat(facilityPredictions).hasSize(2)
+                .extracting(pr -> pr.facilityId)
+                .containsOnly(facilityId);
+        assertIsNear(absoluteTime, facilityPredictions[0].timestamp);
+        assertIsNear(now.plusHours(5).plusMinutes(30), facilityPredictions[1].timestamp);
+        assertThat(facilityPredictions[0].spacesAvailable).isEqualTo(getPredictionsAtAbsoluteTime(facilityId, absoluteTime)[0].spacesAvailable);
+
+        HubPredictionResult[] hubPredictions = response.hubs;
+        assertThat(hubPredictions).hasSize(2)
+                .extracting(pr -> pr.hubId)
+                .containsOnly(hubId);
+        assertIsNear(absoluteTime, hubPredictions[0].timestamp);
+        assertThat(hubPredictions[0].spacesAvailable).isEqualTo(facilityPredictions[0].spacesAvailable);
+    }
+
+    @Test
+    public void bulk_predictions_default_to_the_current_time() {
+        makeDummyPredictions();
+
+        PredictionResult[] predictions = givenWithContent().body(new JSONObjectBuilder()
+                .put("facilityIds", asList(facilityId))
+                .jsonObject.toString())
+                .when().post(UrlSchema.PREDICTIONS)
+                .then().assertThat().statusCode(HttpStatus.OK.value())
+                .extract().as(BulkPredictionResponse.class).facilities;
+
+        assertThat(predictions).hasSize(1);
+        assertIsNear(DateTime.now(), predictions[0].timestamp);
+    }
+
+    @Test
+    public void bulk_predictions_validate_relative_times() {
+        givenWithContent().body(new JSONObjectBuilder()
+                .put("facilityIds", asList(facilityId))
+                .put("after", asList("1:00", "tomorrow"))
+                .jsonObject.toString())
+                .when().post(UrlSchema.PREDICTIONS)
+                .then().assertThat().statusCode(HttpStatus.BAD_REQUEST.value())
+                .assertThat().content(containsString("after[1]"));
+    }
+
+    @Test
+    public void bulk_predictions_of_unknown_facility_are_not_found() {
+        givenWithContent().body(new JSONObjectBuilder()
+                .put("facilityIds", asList(facilityId, 0L))
+                .jsonObject.toString())
+                .when().post(UrlSchema.PREDICTIONS)
+                .then().assertThat().statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
     // helpers
 
+    public static class BulkPredictionResponse {
+        public PredictionResult[] facilities;
+        public HubPredictionResult[] hubs;
+    }
+
     private static void assertIsNear(DateTime expected, DateTime actual) {
         Instant i1 = Instant.ofEpochMilli(expected.getMillis());
         Instant i2 = Instant.ofEpochMilli(actual.getMillis());
@@ -0,0 +1,105 @@
+// Copyright © 2016 HSL <https://www.hsl.fi>
+// This program is dual-licensed under the EUPL v1.2 and AGPLv3 licenses.
+
+package fi.hsl.parkandride.itest;
+
+import com.jayway.restassured.http.ContentType;
+import com.jayway.restassured.response.Response;
+import fi.hsl.parkandride.core.domain.User;
+import fi.hsl.parkandride.core.service.reporting.ReportJobStatus;
+import fi.hsl.parkandride.core.service.reporting.ReportParameters;
+import fi.hsl.parkandride.front.UrlSchema;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import static com.jayway.restassured.RestAssured.given;
+import static fi.hsl.parkandride.core.service.reporting.ReportJobStatus.FINISHED;
+import static fi.hsl.parkandride.front.ReportController.MEDIA_TYPE_EXCEL;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ReportJobITest extends AbstractReportingITest {
+    private static final String HUBS_AND_FACILITIES = "HubsAndFacilities";
+
+    @Test
+    public void submitted_report_can_be_downloaded_when_finished() {
+        String jobId = submit(baseParams(), adminUser)
+                .then().assertThat().statusCode(HttpStatus.ACCEPTED.value())
+                .extract().path("id");
+
+        awaitStatus(jobId, adminUser, FINISHED);
+
+        Response result = given().accept(MEDIA_TYPE_EXCEL)
+                .header(authorization(devHelper.login(adminUser.username).token))
+                .when().get(UrlSchema.REPORT_JOB_RESULT, jobId);
+        result.then()
+                .assertThat().statusCode(HttpStatus.OK.value())
+                .assertThat().contentType(MEDIA_TYPE_EXCEL);
+        withWorkbook(result, workbook ->
+                assertThat(getSheetNames(workbook)).containsExactly("Alueet", "Pysäköintipaikat", "Selite"));
+    }
+
+    @Test
+    public void identical_reports_of_the_same_operator_share_a_job() {
+        ReportParameters params = baseParams(BASE_DATE.minusMonths(1));
+        String jobId = submit(params, operator1User).then().extract().path("id");
+
+        submit(params, operator1User).then().assertThat().body("id", equalTo(jobId));
+        String otherOperatorsJobId = submit(params, operator2User).then().extract().path("id");
+        assertThat(otherOperatorsJobId).isNotEqualTo(jobId);
+
+        awaitStatus(jobId, operator1User, FINISHED);
+        awaitStatus(otherOperatorsJobId, operator2User, FINISHED);
+    }
+
+    @Test
+    public void jobs_of_other_operators_are_not_found() {
+        String jobId = submit(baseParams(BASE_DATE.minusMonths(2)), operator1User).then().extract().path("id");
+        awaitStatus(jobId, operator1User, FINISHED);
+
+        given().header(authorization(devHelper.login(operator2User.username).token))
+                .when().get(UrlSchema.REPORT_JOB, jobId)
+                .then().assertThat().statusCode(HttpStatus.NOT_FOUND.value());
+        given().accept(MEDIA_TYPE_EXCEL)
+                .header(authorization(devHelper.login(operator2User.username).token))
+                .when().get(UrlSchema.REPORT_JOB_RESULT, jobId)
+                .then().assertThat().statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void submitting_requires_report_permission() {
+        submit(baseParams(), apiUser)
+                .then().assertThat().statusCode(HttpStatus.FORBIDDEN.value());
+    }
+
+    private Response submit(ReportParameters params, User user) {
+        return given().contentType(ContentType.JSON)
+                .header(authorization(devHelper.login(user.username).token))
+                .body(params)
+                .when()
+                .post(UrlSchema.REPORT_JOBS, HUBS_AND_FACILITIES);
+    }
+
+    private void awaitStatus(String jobId, User user, ReportJobStatus expected) {
+        String token = devHelper.login(user.username).token;
+        String status = null;
+        for (int i = 0; i < 100 && !expected.name().equals(status); i++) {
+            status = given().header(authorization(token))
+                    .when().get(UrlSchema.REPORT_JOB, jobId)
+                    .then().assertThat().statusCode(HttpStatus.OK.value())
+                    .extract().path("status");
+            if (!expected.name().equals(status)) {
+                sleep(100);
+            }
+        }
+        assertThat(status).isEqualTo(expected.name());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
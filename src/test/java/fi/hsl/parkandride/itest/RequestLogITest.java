@@ -19,7 +19,6 @@ import org.junit.Test;
 import org.springframework.http.HttpStatus;
 
 import javax.inject.Inject;
-import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
@@ -49,7 +48,6 @@ public class RequestLogITest extends AbstractReportingITest {
     @Before
     public void init() {
         unknownSource = messageSource.getMessage("reports.requestlog.unknownSource", null, new Locale("fi"));
-        batchingRequestLogService.staggeredUpdateMaxDelay = Duration.ZERO;
     }
 
     // ---------------------
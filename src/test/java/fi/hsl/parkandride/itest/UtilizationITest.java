@@ -26,6 +26,7 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import javax.inject.Inject;
 import java.util.List;
 
+import static com.jayway.restassured.RestAssured.given;
 import static com.jayway.restassured.RestAssured.when;
 import static fi.hsl.parkandride.core.domain.CapacityType.*;
 import static fi.hsl.parkandride.core.domain.DayType.*;
@@ -421,6 +422,27 @@ public class UtilizationITest extends AbstractIntegrationTest {
         assertThat(getUtilizations()).containsOnly(u2, u4);
     }
 
+    @Test
+    public void latest_utilization_for_all_facilities_supports_conditional_requests() {
+        submitUtilization(OK, facility.id, minValidPayload());
+
+        String etag = when().get(UrlSchema.UTILIZATIONS)
+                .then().statusCode(OK.value())
+                .header("ETag", notNullValue())
+                .extract().header("ETag");
+        given().header("If-None-Match", etag)
+                .when().get(UrlSchema.UTILIZATIONS)
+                .then().statusCode(NOT_MODIFIED.value());
+
+        submitUtilization(OK, facility.id, minValidPayload()
+                .put(Key.TIMESTAMP, DateTime.now().plusSeconds(1))
+                .put(Key.SPACES_AVAILABLE, 1));
+        given().header("If-None-Match", etag)
+                .when().get(UrlSchema.UTILIZATIONS)
+                .then().statusCode(OK.value())
+                .header("ETag", not(etag));
+    }
+
 
     // helpers
 